@@ -74,6 +74,7 @@ import org.sonar.server.computation.queue.PurgeCeActivities;
 import org.sonar.server.computation.taskprocessor.CeTaskProcessorModule;
 import org.sonar.server.debt.DebtModelPluginRepository;
 import org.sonar.server.debt.DebtRulesXMLImporter;
+import org.sonar.server.es.IndexingQueue;
 import org.sonar.server.event.NewAlerts;
 import org.sonar.server.issue.IssueUpdater;
 import org.sonar.server.issue.index.IssueAuthorizationIndexer;
@@ -417,6 +418,7 @@ public class ComputeEngineContainerImpl implements ComputeEngineContainer {
     // IssueIndexDefinition.class,
     IssueIndexer.class,
     IssueAuthorizationIndexer.class,
+    IndexingQueue.class,
     // ServerIssueStorage.class, indirectly used only in Web Services
     IssueUpdater.class, // used in Web Services and CE's DebtCalculator
     FunctionExecutor.class, // used by IssueWorkflow
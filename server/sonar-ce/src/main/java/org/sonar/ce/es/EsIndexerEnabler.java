@@ -22,6 +22,7 @@ package org.sonar.ce.es;
 import org.picocontainer.Startable;
 import org.sonar.server.activity.index.ActivityIndexer;
 import org.sonar.server.es.IndexerStartupTask;
+import org.sonar.server.es.IndexingQueue;
 import org.sonar.server.issue.index.IssueAuthorizationIndexer;
 import org.sonar.server.issue.index.IssueIndexer;
 import org.sonar.server.test.index.TestIndexer;
@@ -40,15 +41,18 @@ public class EsIndexerEnabler implements Startable {
   private final UserIndexer userIndexer;
   private final ViewIndexer viewIndexer;
   private final ActivityIndexer activityIndexer;
+  private final IndexingQueue indexingQueue;
 
   public EsIndexerEnabler(TestIndexer testIndexer, IssueAuthorizationIndexer issueAuthorizationIndexer,
-    IssueIndexer issueIndexer, UserIndexer userIndexer, ViewIndexer viewIndexer, ActivityIndexer activityIndexer) {
+    IssueIndexer issueIndexer, UserIndexer userIndexer, ViewIndexer viewIndexer, ActivityIndexer activityIndexer,
+    IndexingQueue indexingQueue) {
     this.testIndexer = testIndexer;
     this.issueAuthorizationIndexer = issueAuthorizationIndexer;
     this.issueIndexer = issueIndexer;
     this.userIndexer = userIndexer;
     this.viewIndexer = viewIndexer;
     this.activityIndexer = activityIndexer;
+    this.indexingQueue = indexingQueue;
   }
 
   @Override
@@ -59,6 +63,7 @@ public class EsIndexerEnabler implements Startable {
     testIndexer.setEnabled(true);
     userIndexer.setEnabled(true);
     viewIndexer.setEnabled(true);
+    indexingQueue.setEnabled(true);
   }
 
   @Override
@@ -83,9 +83,9 @@ public class ComputeEngineContainerImplTest {
     assertThat(picoContainer.getComponentAdapters())
       .hasSize(
         CONTAINER_ITSELF
-          + 75 // level 4
+          + 76 // level 4
           + 7 // content of CeModule
-          + 7 // content of CeQueueModule
+          + 8 // content of CeQueueModule
           + 4 // content of ReportProcessingModule
           + 4 // content of CeTaskProcessorModule
     );
@@ -100,7 +100,7 @@ public class ComputeEngineContainerImplTest {
     assertThat(picoContainer.getParent().getParent().getParent().getComponentAdapters()).hasSize(
       COMPONENTS_IN_LEVEL_1_AT_CONSTRUCTION
         + 22 // level 1
-        + 46 // content of DaoModule
+        + 47 // content of DaoModule
         + 1 // content of EsSearchModule
         + 55 // content of CorePropertyDefinitions
         + 1 // content of CePropertyDefinitions
@@ -21,6 +21,7 @@ package org.sonar.ce.es;
 
 import org.junit.Test;
 import org.sonar.server.activity.index.ActivityIndexer;
+import org.sonar.server.es.IndexingQueue;
 import org.sonar.server.issue.index.IssueAuthorizationIndexer;
 import org.sonar.server.issue.index.IssueIndexer;
 import org.sonar.server.test.index.TestIndexer;
@@ -37,10 +38,12 @@ public class EsIndexerEnablerTest {
   private UserIndexer userIndexer = mock(UserIndexer.class);
   private ViewIndexer viewIndexer = mock(ViewIndexer.class);
   private ActivityIndexer activityIndexer = mock(ActivityIndexer.class);
-  private EsIndexerEnabler underTest = new EsIndexerEnabler(testIndexer, issueAuthorizationIndexer, issueIndexer, userIndexer, viewIndexer, activityIndexer);
+  private IndexingQueue indexingQueue = mock(IndexingQueue.class);
+  private EsIndexerEnabler underTest = new EsIndexerEnabler(testIndexer, issueAuthorizationIndexer, issueIndexer, userIndexer, viewIndexer, activityIndexer,
+    indexingQueue);
 
   @Test
-  public void start_enables_all_indexers() {
+  public void start_enables_all_indexers_and_indexing_queue() {
     underTest.start();
 
     verify(testIndexer).setEnabled(true);
@@ -49,5 +52,6 @@ public class EsIndexerEnablerTest {
     verify(userIndexer).setEnabled(true);
     verify(viewIndexer).setEnabled(true);
     verify(activityIndexer).setEnabled(true);
+    verify(indexingQueue).setEnabled(true);
   }
 }
@@ -61,6 +61,29 @@ public interface CEQueueStatus {
    */
   long addError(long processingTime);
 
+  /**
+   * Adds the specified time to the counter of time spent by tasks waiting in the queue before being claimed by a
+   * worker.
+   *
+   * @param queueLatency time between submission and start of processing, in ms
+   *
+   * @return the new time spent by tasks waiting in the queue
+   *
+   * @see #getQueueLatency()
+   *
+   * @throws IllegalArgumentException if queueLatency is < 0
+   */
+  long addQueueLatency(long queueLatency);
+
+  /**
+   * Adds 1 to the count of tasks which could not be claimed because another worker claimed them first.
+   *
+   * @return the new count of claim conflicts
+   *
+   * @see #getClaimConflictCount()
+   */
+  long addClaimConflict();
+
   /**
    * Count of batch reports waiting for processing since startup, including reports received before instance startup.
    */
@@ -85,4 +108,14 @@ public interface CEQueueStatus {
    * Time spent processing batch reports since startup, in milliseconds.
    */
   long getProcessingTime();
+
+  /**
+   * Time spent by tasks waiting in the queue before being claimed by a worker since startup, in milliseconds.
+   */
+  long getQueueLatency();
+
+  /**
+   * Count of tasks which could not be claimed because another worker claimed them first, since startup.
+   */
+  long getClaimConflictCount();
 }
@@ -119,7 +119,7 @@ public class CeQueueImpl implements CeQueue {
     return new CeQueueDtoToCeTask().apply(dto);
   }
 
-  private List<CeTask> loadTasks(DbSession dbSession, List<CeQueueDto> dtos) {
+  protected List<CeTask> loadTasks(DbSession dbSession, List<CeQueueDto> dtos) {
     Set<String> componentUuids = from(dtos)
       .transform(CeQueueDtoToComponentUuid.INSTANCE)
       .filter(notNull())
@@ -19,6 +19,8 @@
  */
 package org.sonar.server.activity;
 
+import java.util.Collection;
+import java.util.Collections;
 import org.sonar.api.utils.KeyValueFormat;
 import org.sonar.core.util.Uuids;
 import org.sonar.db.DbClient;
@@ -40,21 +42,36 @@ public class ActivityService {
   }
 
   public void save(Activity activity) {
-    ActivityDto dto = new ActivityDto()
-      .setKey(Uuids.create())
-      .setAuthor(userSession.getLogin())
-      .setAction(activity.getAction())
-      .setMessage(activity.getMessage())
-      .setData(KeyValueFormat.format(activity.getData()))
-      .setProfileKey(activity.getProfileKey())
-      .setType(activity.getType().name());
+    save(Collections.singletonList(activity));
+  }
+
+  /**
+   * Saves activities in a single transaction, then indexes them at once
+   */
+  public void save(Collection<Activity> activities) {
+    if (activities.isEmpty()) {
+      return;
+    }
     DbSession dbSession = dbClient.openSession(false);
     try {
-      dbClient.activityDao().insert(dbSession, dto);
+      for (Activity activity : activities) {
+        dbClient.activityDao().insert(dbSession, toDto(activity));
+      }
       dbSession.commit();
       indexer.index();
     } finally {
       dbClient.closeSession(dbSession);
     }
   }
+
+  private ActivityDto toDto(Activity activity) {
+    return new ActivityDto()
+      .setKey(Uuids.create())
+      .setAuthor(userSession.getLogin())
+      .setAction(activity.getAction())
+      .setMessage(activity.getMessage())
+      .setData(KeyValueFormat.format(activity.getData()))
+      .setProfileKey(activity.getProfileKey())
+      .setType(activity.getType().name());
+  }
 }
@@ -0,0 +1,225 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.batch;
+
+import com.google.common.base.Splitter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.apache.commons.io.IOUtils;
+import org.sonar.api.resources.Scopes;
+import org.sonar.api.server.ws.Request;
+import org.sonar.api.server.ws.Response;
+import org.sonar.api.server.ws.WebService;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.MyBatis;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.source.FileSourceDao;
+import org.sonar.scanner.protocol.input.ScannerInput;
+import org.sonar.server.issue.index.IssueDoc;
+import org.sonar.server.issue.index.IssueIndex;
+import org.sonar.server.user.UserSession;
+import org.sonarqube.ws.MediaTypes;
+
+import static com.google.common.collect.Maps.newHashMap;
+import static java.lang.String.format;
+import static org.sonar.api.web.UserRole.USER;
+import static org.sonar.server.ws.KeyExamples.KEY_FILE_EXAMPLE_001;
+
+/**
+ * Streams the line hashes, and optionally the open issues, of many files in a single response,
+ * so that the batch does not have to call api/sources/hash once per changed file.
+ */
+public class FilesAction implements BatchWsAction {
+
+  static final int MAX_FILES = 500;
+
+  private static final String PARAM_KEYS = "keys";
+  private static final String PARAM_ISSUES = "issues";
+  private static final Splitter END_OF_LINE_SPLITTER = Splitter.on('\n');
+
+  private final DbClient dbClient;
+  private final IssueIndex issueIndex;
+  private final UserSession userSession;
+
+  public FilesAction(DbClient dbClient, IssueIndex issueIndex, UserSession userSession) {
+    this.dbClient = dbClient;
+    this.issueIndex = issueIndex;
+    this.userSession = userSession;
+  }
+
+  @Override
+  public void define(WebService.NewController controller) {
+    WebService.NewAction action = controller.createAction("files")
+      .setDescription("Return the line hashes, and optionally the open issues, of files as a stream of ServerFile messages. " +
+        "Unknown keys and keys of components that are not files are ignored. Files are not returned in the order of the request. " +
+        "Requires 'Browse' permission on the projects of the files.")
+      .setSince("6.0")
+      .setPost(true)
+      .setInternal(true)
+      .setHandler(this);
+
+    action
+      .createParam(PARAM_KEYS)
+      .setRequired(true)
+      .setDescription(format("Comma-separated list of file keys. At most %d keys.", MAX_FILES))
+      .setExampleValue(KEY_FILE_EXAMPLE_001 + ",my_project:/src/foo/Baz.php");
+
+    action
+      .createParam(PARAM_ISSUES)
+      .setDescription("Also return the open issues of the files")
+      .setBooleanPossibleValues()
+      .setDefaultValue(false);
+  }
+
+  @Override
+  public void handle(Request request, Response response) throws Exception {
+    List<String> fileKeys = request.mandatoryParamAsStrings(PARAM_KEYS);
+    if (fileKeys.size() > MAX_FILES) {
+      throw new IllegalArgumentException(format("Too many files: %d. The maximum is %d.", fileKeys.size(), MAX_FILES));
+    }
+    boolean withIssues = request.mandatoryParamAsBoolean(PARAM_ISSUES);
+
+    DbSession session = dbClient.openSession(false);
+    try {
+      Map<String, ComponentDto> filesByUuid = loadFiles(session, fileKeys);
+      Map<String, List<ScannerInput.ServerIssue>> issuesByFileUuid = withIssues ? loadIssues(session, filesByUuid.keySet())
+        : new LinkedHashMap<String, List<ScannerInput.ServerIssue>>();
+
+      response.stream().setMediaType(MediaTypes.PROTOBUF);
+      OutputStream output = response.stream().output();
+      try {
+        FileWriter writer = new FileWriter(filesByUuid, issuesByFileUuid, output);
+        dbClient.fileSourceDao().readLineHashesStream(session, filesByUuid.keySet(), writer);
+        writer.writeFilesWithoutSource();
+      } finally {
+        output.close();
+      }
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  private Map<String, ComponentDto> loadFiles(DbSession session, List<String> fileKeys) {
+    Map<String, ComponentDto> filesByUuid = new LinkedHashMap<>();
+    Set<String> projectUuids = new HashSet<>();
+    for (ComponentDto component : dbClient.componentDao().selectByKeys(session, fileKeys)) {
+      if (Scopes.FILE.equals(component.scope())) {
+        filesByUuid.put(component.uuid(), component);
+        projectUuids.add(component.projectUuid());
+      }
+    }
+    for (String projectUuid : projectUuids) {
+      userSession.checkComponentUuidPermission(USER, projectUuid);
+    }
+    return filesByUuid;
+  }
+
+  private Map<String, List<ScannerInput.ServerIssue>> loadIssues(DbSession session, Collection<String> fileUuids) {
+    Map<String, List<ScannerInput.ServerIssue>> issuesByFileUuid = newHashMap();
+    if (fileUuids.isEmpty()) {
+      return issuesByFileUuid;
+    }
+    List<IssueDoc> issueDocs = new ArrayList<>();
+    Set<String> moduleUuids = new HashSet<>();
+    for (Iterator<IssueDoc> it = issueIndex.selectIssuesForBatch(fileUuids); it.hasNext();) {
+      IssueDoc issueDoc = it.next();
+      issueDocs.add(issueDoc);
+      moduleUuids.add(issueDoc.moduleUuid());
+    }
+
+    Map<String, String> moduleKeysByUuid = newHashMap();
+    for (ComponentDto module : dbClient.componentDao().selectByUuids(session, moduleUuids)) {
+      moduleKeysByUuid.put(module.uuid(), module.key());
+    }
+
+    ScannerInput.ServerIssue.Builder issueBuilder = ScannerInput.ServerIssue.newBuilder();
+    for (IssueDoc issueDoc : issueDocs) {
+      List<ScannerInput.ServerIssue> issues = issuesByFileUuid.get(issueDoc.componentUuid());
+      if (issues == null) {
+        issues = new ArrayList<>();
+        issuesByFileUuid.put(issueDoc.componentUuid(), issues);
+      }
+      issues.add(IssuesAction.toServerIssue(issueDoc, issueBuilder, moduleKeysByUuid));
+    }
+    return issuesByFileUuid;
+  }
+
+  private static class FileWriter implements FileSourceDao.LineHashesHandler {
+    private final Map<String, ComponentDto> remainingFilesByUuid;
+    private final Map<String, List<ScannerInput.ServerIssue>> issuesByFileUuid;
+    private final OutputStream output;
+    private final ScannerInput.ServerFile.Builder fileBuilder = ScannerInput.ServerFile.newBuilder();
+
+    private FileWriter(Map<String, ComponentDto> filesByUuid, Map<String, List<ScannerInput.ServerIssue>> issuesByFileUuid, OutputStream output) {
+      this.remainingFilesByUuid = new LinkedHashMap<>(filesByUuid);
+      this.issuesByFileUuid = issuesByFileUuid;
+      this.output = output;
+    }
+
+    @Override
+    public void handle(String fileUuid, @Nullable Reader lineHashes) {
+      ComponentDto file = remainingFilesByUuid.remove(fileUuid);
+      if (file == null) {
+        return;
+      }
+      fileBuilder.clear();
+      if (lineHashes != null) {
+        try {
+          fileBuilder.addAllLineHash(END_OF_LINE_SPLITTER.split(IOUtils.toString(lineHashes)));
+        } catch (IOException e) {
+          throw new IllegalStateException(format("Can't read line hashes of file '%s'", file.key()), e);
+        }
+      }
+      write(file);
+    }
+
+    void writeFilesWithoutSource() {
+      for (ComponentDto file : remainingFilesByUuid.values()) {
+        fileBuilder.clear();
+        write(file);
+      }
+      remainingFilesByUuid.clear();
+    }
+
+    private void write(ComponentDto file) {
+      fileBuilder.setKey(file.key());
+      List<ScannerInput.ServerIssue> issues = issuesByFileUuid.get(file.uuid());
+      if (issues != null) {
+        fileBuilder.addAllIssue(issues);
+      }
+      try {
+        fileBuilder.build().writeDelimitedTo(output);
+      } catch (IOException e) {
+        throw new IllegalStateException("Unable to serialize file", e);
+      }
+    }
+  }
+}
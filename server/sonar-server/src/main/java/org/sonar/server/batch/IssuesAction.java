@@ -96,6 +96,18 @@ public class IssuesAction implements BatchWsAction {
   }
 
   private static void handleIssue(IssueDoc issue, ScannerInput.ServerIssue.Builder issueBuilder, Map<String, String> keysByUUid, OutputStream out) {
+    try {
+      toServerIssue(issue, issueBuilder, keysByUUid).writeDelimitedTo(out);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to serialize issue", e);
+    }
+  }
+
+  /**
+   * Also used by {@link FilesAction}. The builder is cleared.
+   */
+  static ScannerInput.ServerIssue toServerIssue(IssueDoc issue, ScannerInput.ServerIssue.Builder issueBuilder, Map<String, String> keysByUUid) {
+    issueBuilder.clear();
     issueBuilder.setKey(issue.key());
     issueBuilder.setModuleKey(keysByUUid.get(issue.moduleUuid()));
     String path = issue.filePath();
@@ -128,12 +140,7 @@ public class IssuesAction implements BatchWsAction {
       issueBuilder.setResolution(resolution);
     }
     issueBuilder.setCreationDate(issue.creationDate().getTime());
-    try {
-      issueBuilder.build().writeDelimitedTo(out);
-    } catch (IOException e) {
-      throw new IllegalStateException("Unable to serialize issue", e);
-    }
-    issueBuilder.clear();
+    return issueBuilder.build();
   }
 
   private Map<String, String> keysByUUid(DbSession session, ComponentDto component) {
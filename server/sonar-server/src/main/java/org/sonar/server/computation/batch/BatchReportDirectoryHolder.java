@@ -24,7 +24,8 @@ import org.sonar.ce.queue.CeTask;
 
 public interface BatchReportDirectoryHolder {
   /**
-   * The File of the directory where the Batch report files for the current {@link CeTask} are stored.
+   * The File of the directory where the Batch report files for the current {@link CeTask} are stored, or the
+   * {@link org.sonar.scanner.protocol.output.ReportArchive} containing them.
    *
    * @throws IllegalStateException if the holder is empty (ie. there is no directory yet)
    */
@@ -71,4 +71,13 @@ final class DequeBasedPath<T> implements PathAwareVisitor.Path<T>, Iterable<Path
   public PathAwareVisitor.PathElement<T> pop() {
     return deque.pop();
   }
+
+  /**
+   * Copy of this path. Path elements are shared, further additions and removals are not.
+   */
+  public DequeBasedPath<T> copy() {
+    DequeBasedPath<T> res = new DequeBasedPath<>();
+    res.deque.addAll(deque);
+    return res;
+  }
 }
@@ -0,0 +1,34 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.component;
+
+/**
+ * Marker interface of the {@link ComponentVisitor} which support to visit sibling components of type
+ * {@link Component.Type#FILE} concurrently.
+ * <p>
+ * When files are visited concurrently (see {@link VisitorsCrawler}), the visitors implementing this interface may visit
+ * files of a same parent from several threads, and before the visitors declared ahead of them have visited the same
+ * files. Such a visitor must therefore not rely on what other visitors computed on a file, and any state shared between
+ * files, including the stack elements of the ancestors provided by {@link PathAwareVisitor.Path}, must be safely
+ * updated. The parent of the files is still visited in post-order once all its files have been visited.
+ * </p>
+ */
+public interface ThreadSafeVisitor extends ComponentVisitor {
+}
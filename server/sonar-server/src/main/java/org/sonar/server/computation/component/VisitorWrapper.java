@@ -27,4 +27,10 @@ public interface VisitorWrapper extends TypeAwareVisitor {
 
   void afterComponent(Component component);
 
+  /**
+   * Creates a wrapper of the same visitor which can visit children of the current component concurrently to this
+   * wrapper and to the other forks. The path to the current component, if any, is copied.
+   */
+  VisitorWrapper fork();
+
 }
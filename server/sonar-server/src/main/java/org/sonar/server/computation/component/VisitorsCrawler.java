@@ -23,31 +23,62 @@ import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.core.util.logs.Profiler;
 
+import static com.google.common.base.Predicates.not;
 import static com.google.common.collect.FluentIterable.from;
 import static com.google.common.collect.Iterables.concat;
 import static java.util.Objects.requireNonNull;
 
 /**
  * This crawler make any number of {@link TypeAwareVisitor} or {@link PathAwareVisitor} defined in a list visit a component tree, component per component, in the order of the list
+ * <p>
+ * When a {@link ForkJoinPool} is provided and some of the visitors which go down to files are {@link ThreadSafeVisitor},
+ * these visitors visit the files of a same parent concurrently in the pool, while the calling thread visits the files
+ * with the other visitors, in order. A file is visited by the other visitors declared after a thread safe visitor only
+ * once the thread safe visitors have visited it. Components other than files are visited by the calling thread only,
+ * parents being visited in post-order once all their files have been visited.
+ * </p>
  */
 public class VisitorsCrawler implements ComponentCrawler {
 
   private final Map<ComponentVisitor, VisitorDuration> visitorCumulativeDurations;
   private final List<VisitorWrapper> preOrderVisitorWrappers;
   private final List<VisitorWrapper> postOrderVisitorWrappers;
+  // thread safe visitors which visit files, empty if files are not visited concurrently
+  private final List<VisitorWrapper> threadSafeFileVisitorWrappers;
+  @CheckForNull
+  private final ForkJoinPool forkJoinPool;
 
   public VisitorsCrawler(Iterable<ComponentVisitor> visitors) {
-    List<VisitorWrapper> visitorWrappers = from(visitors).transform(ToVisitorWrapper.INSTANCE).toList();
+    this(visitors, null);
+  }
+
+  public VisitorsCrawler(Iterable<ComponentVisitor> visitors, @Nullable ForkJoinPool forkJoinPool) {
+    this(from(visitors).transform(ToVisitorWrapper.INSTANCE).toList(),
+      from(visitors).toMap(VisitorWrapperToInitialDuration.INSTANCE),
+      forkJoinPool);
+  }
+
+  private VisitorsCrawler(List<VisitorWrapper> visitorWrappers, Map<ComponentVisitor, VisitorDuration> visitorCumulativeDurations,
+    @Nullable ForkJoinPool forkJoinPool) {
     this.preOrderVisitorWrappers = from(visitorWrappers).filter(MathPreOrderVisitor.INSTANCE).toList();
     this.postOrderVisitorWrappers = from(visitorWrappers).filter(MatchPostOrderVisitor.INSTANCE).toList();
-    this.visitorCumulativeDurations = from(visitors).toMap(VisitorWrapperToInitialDuration.INSTANCE);
+    this.visitorCumulativeDurations = visitorCumulativeDurations;
+    this.threadSafeFileVisitorWrappers = forkJoinPool == null ? Collections.<VisitorWrapper>emptyList()
+      : from(visitorWrappers).filter(MatchVisitorMaxDepth.forType(Component.Type.FILE)).filter(MatchThreadSafeVisitor.INSTANCE).toList();
+    this.forkJoinPool = threadSafeFileVisitorWrappers.isEmpty() ? null : forkJoinPool;
   }
 
   public Map<ComponentVisitor, Long> getCumulativeDurations() {
@@ -96,8 +127,117 @@ public class VisitorsCrawler implements ComponentCrawler {
   }
 
   private void visitChildren(Component component) {
-    for (Component child : component.getChildren()) {
-      visit(child);
+    List<Component> children = component.getChildren();
+    if (forkJoinPool != null && areSiblingFiles(children)) {
+      visitFilesConcurrently(forkJoinPool, children);
+    } else {
+      for (Component child : children) {
+        visit(child);
+      }
+    }
+  }
+
+  private static boolean areSiblingFiles(List<Component> children) {
+    if (children.size() < 2) {
+      return false;
+    }
+    for (Component child : children) {
+      if (child.getType() != Component.Type.FILE) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Each file is visited by the thread safe visitors in a task of the pool, through a crawler of its own which wraps
+   * forks of their wrappers. Meanwhile, the calling thread visits the files with the other visitors. Returns once all
+   * the files have been visited.
+   */
+  private void visitFilesConcurrently(ForkJoinPool pool, List<Component> files) {
+    List<ForkJoinTask<?>> tasks = new ArrayList<>(files.size());
+    try {
+      for (Component file : files) {
+        tasks.add(pool.submit(new ForkedVisit(forkThreadSafeFileVisitors(), file)));
+      }
+      for (int i = 0; i < files.size(); i++) {
+        visitFile(files.get(i), tasks.get(i));
+      }
+      for (ForkJoinTask<?> task : tasks) {
+        task.join();
+      }
+    } catch (RuntimeException e) {
+      for (ForkJoinTask<?> task : tasks) {
+        task.cancel(false);
+      }
+      throw e;
+    }
+  }
+
+  private VisitorsCrawler forkThreadSafeFileVisitors() {
+    List<VisitorWrapper> forkedWrappers = new ArrayList<>(threadSafeFileVisitorWrappers.size());
+    for (VisitorWrapper visitorWrapper : threadSafeFileVisitorWrappers) {
+      forkedWrappers.add(visitorWrapper.fork());
+    }
+    return new VisitorsCrawler(forkedWrappers, visitorCumulativeDurations, null);
+  }
+
+  private void visitFile(Component file, ForkJoinTask<?> threadSafeVisit) {
+    try {
+      visitFileImpl(file, threadSafeVisit);
+    } catch (RuntimeException e) {
+      VisitException.rethrowOrWrap(
+        e,
+        "Visit of Component {key=%s,type=%s} failed",
+        file.getKey(), file.getType());
+    }
+  }
+
+  /**
+   * Same as {@link #visitImpl(Component)} for a file, except that the thread safe visitors are skipped as they visit
+   * the file in {@code threadSafeVisit}, which is waited for before calling the first visitor declared after them.
+   */
+  private void visitFileImpl(Component file, ForkJoinTask<?> threadSafeVisit) {
+    MatchVisitorMaxDepth visitorMaxDepth = MatchVisitorMaxDepth.forComponent(file);
+    List<VisitorWrapper> visitorWrappersToExecute = from(concat(preOrderVisitorWrappers, postOrderVisitorWrappers)).filter(visitorMaxDepth).toList();
+    if (visitorWrappersToExecute.isEmpty()) {
+      return;
+    }
+
+    for (VisitorWrapper visitorWrapper : from(concat(preOrderVisitorWrappers, postOrderVisitorWrappers)).filter(not(MatchThreadSafeVisitor.INSTANCE))) {
+      visitorWrapper.beforeComponent(file);
+    }
+
+    boolean threadSafeVisitorsPending = false;
+    for (VisitorWrapper visitorWrapper : visitorWrappersToExecute) {
+      if (MatchThreadSafeVisitor.INSTANCE.apply(visitorWrapper)) {
+        threadSafeVisitorsPending = true;
+      } else {
+        if (threadSafeVisitorsPending) {
+          threadSafeVisit.join();
+          threadSafeVisitorsPending = false;
+        }
+        visitNode(file, visitorWrapper);
+      }
+    }
+
+    for (VisitorWrapper visitorWrapper : from(visitorWrappersToExecute).filter(not(MatchThreadSafeVisitor.INSTANCE))) {
+      visitorWrapper.afterComponent(file);
+    }
+  }
+
+  private static final class ForkedVisit implements Runnable {
+    private final VisitorsCrawler crawler;
+    private final Component component;
+
+    private ForkedVisit(VisitorsCrawler crawler, Component component) {
+      this.crawler = crawler;
+      this.component = component;
+    }
+
+    @Override
+    public void run() {
+      crawler.visit(component);
     }
   }
 
@@ -171,7 +311,11 @@ public class VisitorsCrawler implements ComponentCrawler {
     }
 
     public static MatchVisitorMaxDepth forComponent(Component component) {
-      return INSTANCES.get(component.getType());
+      return forType(component.getType());
+    }
+
+    public static MatchVisitorMaxDepth forType(Component.Type type) {
+      return INSTANCES.get(type);
     }
 
     @Override
@@ -181,6 +325,15 @@ public class VisitorsCrawler implements ComponentCrawler {
     }
   }
 
+  private enum MatchThreadSafeVisitor implements Predicate<VisitorWrapper> {
+    INSTANCE;
+
+    @Override
+    public boolean apply(@Nonnull VisitorWrapper visitorWrapper) {
+      return visitorWrapper.getWrappedVisitor() instanceof ThreadSafeVisitor;
+    }
+  }
+
   private enum MathPreOrderVisitor implements Predicate<VisitorWrapper> {
     INSTANCE;
 
@@ -200,14 +353,15 @@ public class VisitorsCrawler implements ComponentCrawler {
   }
 
   private static final class VisitorDuration {
-    private long duration = 0;
+    // files may be visited concurrently
+    private final AtomicLong duration = new AtomicLong(0);
 
     public void increment(long duration) {
-      this.duration += duration;
+      this.duration.addAndGet(duration);
     }
 
     public long getDuration() {
-      return duration;
+      return duration.get();
     }
   }
 
@@ -66,6 +66,7 @@ import org.sonar.server.computation.issue.ScmAccountToUserLoader;
 import org.sonar.server.computation.issue.TrackerBaseInputFactory;
 import org.sonar.server.computation.issue.TrackerExecution;
 import org.sonar.server.computation.issue.TrackerRawInputFactory;
+import org.sonar.server.computation.issue.TrackingDataPrefetcher;
 import org.sonar.server.computation.issue.UpdateConflictResolver;
 import org.sonar.server.computation.issue.commonrule.BranchCoverageRule;
 import org.sonar.server.computation.issue.commonrule.CommentDensityRule;
@@ -176,6 +177,7 @@ public final class ReportComputeEngineContainerPopulator implements ContainerPop
       IssueVisitors.class,
       IssueLifecycle.class,
       ComponentsWithUnprocessedIssues.class,
+      TrackingDataPrefetcher.class,
       ComponentIssuesRepositoryImpl.class,
       IssueFilter.class,
 
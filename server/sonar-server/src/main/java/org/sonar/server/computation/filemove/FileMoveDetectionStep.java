@@ -199,9 +199,15 @@ public class FileMoveDetectionStep implements ComputationStep {
     return builder.build();
   }
 
+  /**
+   * Only the pairs of files selected by {@link LineHashesIndex} are scored, the other ones can not reach
+   * {@link #MIN_REQUIRED_SCORE} and have a score of 0 in the matrix.
+   */
   private ScoreMatrix computeScoreMatrix(Map<String, DbComponent> dtosByKey, Set<String> dbFileKeys, Map<String, File> reportFileSourcesByKey) {
     int[][] scoreMatrix = new int[dbFileKeys.size()][reportFileSourcesByKey.size()];
     int maxScore = 0;
+    LineHashesIndex lineHashesIndex = LineHashesIndex.create(
+      from(reportFileSourcesByKey.values()).transform(File::getLineHashes).toList(), MIN_REQUIRED_SCORE);
 
     try (DbSession dbSession = dbClient.openSession(false)) {
       int dbFileIndex = 0;
@@ -211,15 +217,13 @@ public class FileMoveDetectionStep implements ComputationStep {
           continue;
         }
 
-        int reportFileIndex = 0;
-        for (Map.Entry<String, File> reportFileSourceAndKey : reportFileSourcesByKey.entrySet()) {
-          File unmatchedFile = reportFileSourceAndKey.getValue();
-          int score = fileSimilarity.score(fileInDb, unmatchedFile);
+        int[] dbLineHashes = lineHashesIndex.intern(fileInDb.getLineHashes());
+        for (int reportFileIndex : lineHashesIndex.selectCandidates(dbLineHashes)) {
+          int score = fileSimilarity.score(dbLineHashes, lineHashesIndex.getLineHashes(reportFileIndex), MIN_REQUIRED_SCORE);
           scoreMatrix[dbFileIndex][reportFileIndex] = score;
           if (score > maxScore) {
             maxScore = score;
           }
-          reportFileIndex++;
         }
         dbFileIndex++;
       }
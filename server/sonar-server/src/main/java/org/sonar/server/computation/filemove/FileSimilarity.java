@@ -54,4 +54,12 @@ public interface FileSimilarity {
   }
 
   int score(File file1, File file2);
+
+  /**
+   * Score of files which line hashes are interned to ints, exact only if greater than or equal to {@code minScore},
+   * otherwise {@code 0}.
+   *
+   * @see SourceSimilarity#score(int[], int[], int)
+   */
+  int score(int[] lineHashes1, int[] lineHashes2, int minScore);
 }
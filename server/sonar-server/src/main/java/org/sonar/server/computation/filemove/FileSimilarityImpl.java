@@ -42,4 +42,9 @@ public class FileSimilarityImpl implements FileSimilarity {
     }
     return score;
   }
+
+  @Override
+  public int score(int[] lineHashes1, int[] lineHashes2, int minScore) {
+    return sourceSimilarity.score(lineHashes1, lineHashes2, minScore);
+  }
 }
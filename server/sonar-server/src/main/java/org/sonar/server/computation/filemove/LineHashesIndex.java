@@ -0,0 +1,262 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.filemove;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Inverted index from line hashes to the files containing them, used to select the pairs of files which
+ * can reach a given similarity score without computing their Levenshtein distance.
+ * <p>
+ * The Levenshtein distance of two lists is greater than or equal to the size of the longer one minus the number of
+ * elements they have in common. As the score is {@code 100 * (1 - distance / maxSize)}, two files with less than
+ * {@code minScore * maxSize / 100} lines in common can not reach {@code minScore}.
+ * <p>
+ * Line hashes shared by a lot of files (blank lines, braces, license headers, ...) are not indexed, to keep the cost
+ * of the lookup independent of the number of files. Their contribution to the number of lines in common is bounded
+ * by the number of such lines in each file, which keeps the selection exhaustive.
+ * <p>
+ * Line hashes are interned to ints, so that the selected pairs can then be scored with
+ * {@link SourceSimilarity#score(int[], int[], int)}.
+ */
+final class LineHashesIndex {
+  /**
+   * A line hash contained by more files than this value is not indexed
+   */
+  static final int MAX_INDEXED_FILES_PER_LINE_HASH = 20;
+  /**
+   * Id of the line hashes unknown in the index. They never match any line of the indexed files.
+   */
+  private static final int UNKNOWN_LINE_HASH = -1;
+
+  private final int minScore;
+  private final Map<String, Integer> idsByLineHash;
+  private final int[][] lineHashesByFile;
+  // number of lines of each file which hash is not indexed
+  private final int[] unindexedLinesByFile;
+  // files having enough unindexed lines to reach the min score without any indexed line in common
+  private final int[] unindexedFiles;
+  // postings of a line hash: files and occurrences in each file, null when the line hash is not indexed
+  private final int[][] filesById;
+  private final int[][] occurrencesById;
+  // buffers of selectCandidates(), reset after each call
+  private final int[] commonLines;
+  private final boolean[] touched;
+
+  private LineHashesIndex(int minScore, Map<String, Integer> idsByLineHash, int[][] lineHashesByFile, int[][] filesById, int[][] occurrencesById) {
+    this.minScore = minScore;
+    this.idsByLineHash = idsByLineHash;
+    this.lineHashesByFile = lineHashesByFile;
+    this.filesById = filesById;
+    this.occurrencesById = occurrencesById;
+    this.unindexedLinesByFile = new int[lineHashesByFile.length];
+    List<Integer> unindexed = new ArrayList<>();
+    for (int file = 0; file < lineHashesByFile.length; file++) {
+      for (int id : lineHashesByFile[file]) {
+        if (filesById[id] == null) {
+          unindexedLinesByFile[file]++;
+        }
+      }
+      if (canReachMinScore(unindexedLinesByFile[file], lineHashesByFile[file].length)) {
+        unindexed.add(file);
+      }
+    }
+    this.unindexedFiles = toArray(unindexed);
+    this.commonLines = new int[lineHashesByFile.length];
+    this.touched = new boolean[lineHashesByFile.length];
+  }
+
+  /**
+   * @param lineHashes line hashes of the indexed files. Files are then identified by their position in the collection.
+   */
+  static LineHashesIndex create(Collection<List<String>> lineHashes, int minScore) {
+    Map<String, Integer> idsByLineHash = new HashMap<>();
+    int[][] lineHashesByFile = new int[lineHashes.size()][];
+    int file = 0;
+    for (List<String> fileLineHashes : lineHashes) {
+      int[] ids = new int[fileLineHashes.size()];
+      for (int i = 0; i < ids.length; i++) {
+        String lineHash = fileLineHashes.get(i);
+        Integer id = idsByLineHash.get(lineHash);
+        if (id == null) {
+          id = idsByLineHash.size();
+          idsByLineHash.put(lineHash, id);
+        }
+        ids[i] = id;
+      }
+      lineHashesByFile[file] = ids;
+      file++;
+    }
+
+    int nbIds = idsByLineHash.size();
+    int[] filesPerId = new int[nbIds];
+    for (int[] ids : lineHashesByFile) {
+      Occurrences occurrences = Occurrences.of(ids);
+      for (int i = 0; i < occurrences.size; i++) {
+        filesPerId[occurrences.ids[i]]++;
+      }
+    }
+
+    int[][] filesById = new int[nbIds][];
+    int[][] occurrencesById = new int[nbIds][];
+    for (int id = 0; id < nbIds; id++) {
+      if (filesPerId[id] <= MAX_INDEXED_FILES_PER_LINE_HASH) {
+        filesById[id] = new int[filesPerId[id]];
+        occurrencesById[id] = new int[filesPerId[id]];
+      }
+    }
+    int[] postingSizes = new int[nbIds];
+    for (file = 0; file < lineHashesByFile.length; file++) {
+      Occurrences occurrences = Occurrences.of(lineHashesByFile[file]);
+      for (int i = 0; i < occurrences.size; i++) {
+        int id = occurrences.ids[i];
+        if (filesById[id] != null) {
+          filesById[id][postingSizes[id]] = file;
+          occurrencesById[id][postingSizes[id]] = occurrences.counts[i];
+          postingSizes[id]++;
+        }
+      }
+    }
+    return new LineHashesIndex(minScore, idsByLineHash, lineHashesByFile, filesById, occurrencesById);
+  }
+
+  int[] getLineHashes(int file) {
+    return lineHashesByFile[file];
+  }
+
+  /**
+   * Interns line hashes with the ids of the index. Line hashes which are not part of the index share the
+   * same id, which is never equal to the id of an indexed line.
+   */
+  int[] intern(List<String> lineHashes) {
+    int[] ids = new int[lineHashes.size()];
+    for (int i = 0; i < ids.length; i++) {
+      Integer id = idsByLineHash.get(lineHashes.get(i));
+      ids[i] = id == null ? UNKNOWN_LINE_HASH : id;
+    }
+    return ids;
+  }
+
+  /**
+   * Indexed files which can reach the min score with the specified file, in ascending order.
+   * This method is not thread-safe.
+   *
+   * @param lineHashes line hashes interned with {@link #intern(List)}
+   */
+  int[] selectCandidates(int[] lineHashes) {
+    if (lineHashes.length == 0) {
+      return new int[0];
+    }
+    List<Integer> touchedFiles = new ArrayList<>();
+    int unindexedLines = 0;
+
+    Occurrences occurrences = Occurrences.of(lineHashes);
+    for (int i = 0; i < occurrences.size; i++) {
+      int id = occurrences.ids[i];
+      if (id == UNKNOWN_LINE_HASH) {
+        continue;
+      }
+      int[] files = filesById[id];
+      if (files == null) {
+        unindexedLines += occurrences.counts[i];
+        continue;
+      }
+      for (int j = 0; j < files.length; j++) {
+        int file = files[j];
+        commonLines[file] += min(occurrences.counts[i], occurrencesById[id][j]);
+        if (!touched[file]) {
+          touched[file] = true;
+          touchedFiles.add(file);
+        }
+      }
+    }
+    if (canReachMinScore(unindexedLines, lineHashes.length)) {
+      for (int file : unindexedFiles) {
+        if (!touched[file]) {
+          touched[file] = true;
+          touchedFiles.add(file);
+        }
+      }
+    }
+
+    List<Integer> candidates = new ArrayList<>(touchedFiles.size());
+    for (Integer file : touchedFiles) {
+      int maxCommonLines = commonLines[file] + min(unindexedLines, unindexedLinesByFile[file]);
+      if (canReachMinScore(maxCommonLines, max(lineHashes.length, lineHashesByFile[file].length))) {
+        candidates.add(file);
+      }
+      commonLines[file] = 0;
+      touched[file] = false;
+    }
+    int[] res = toArray(candidates);
+    Arrays.sort(res);
+    return res;
+  }
+
+  private boolean canReachMinScore(int commonLines, int maxSize) {
+    return 100L * commonLines >= (long) minScore * maxSize;
+  }
+
+  private static int[] toArray(List<Integer> list) {
+    int[] res = new int[list.size()];
+    for (int i = 0; i < res.length; i++) {
+      res[i] = list.get(i);
+    }
+    return res;
+  }
+
+  /**
+   * Distinct ids of an array of interned line hashes and their number of occurrences
+   */
+  private static final class Occurrences {
+    private final int[] ids;
+    private final int[] counts;
+    private int size = 0;
+
+    private Occurrences(int length) {
+      this.ids = new int[length];
+      this.counts = new int[length];
+    }
+
+    private static Occurrences of(int[] lineHashes) {
+      int[] sorted = Arrays.copyOf(lineHashes, lineHashes.length);
+      Arrays.sort(sorted);
+      Occurrences res = new Occurrences(sorted.length);
+      for (int i = 0; i < sorted.length; i++) {
+        if (res.size > 0 && res.ids[res.size - 1] == sorted[i]) {
+          res.counts[res.size - 1]++;
+        } else {
+          res.ids[res.size] = sorted[i];
+          res.counts[res.size] = 1;
+          res.size++;
+        }
+      }
+      return res;
+    }
+  }
+}
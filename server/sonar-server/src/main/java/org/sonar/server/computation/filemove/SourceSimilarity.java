@@ -27,4 +27,10 @@ public interface SourceSimilarity {
   // the higher the more similar. Order is not important (TODO to be verified). 100% = same source.
   // Range: between 0 and 100 (TODO to be verified)
   <T extends Object> int score(List<T> left, List<T> right);
+
+  /**
+   * Same as {@link #score(List, List)} on line hashes interned to ints, but exact only when the score is greater
+   * than or equal to {@code minScore}. Otherwise {@code 0} is returned.
+   */
+  int score(int[] left, int[] right, int minScore);
 }
@@ -19,6 +19,7 @@
  */
 package org.sonar.server.computation.filemove;
 
+import java.util.Arrays;
 import java.util.List;
 
 import static java.lang.Math.max;
@@ -28,11 +29,96 @@ import static java.lang.Math.min;
 // TODO another possible algorithm : just take the intersection of line hashes. That would allow to support block moving.
 public class SourceSimilarityImpl implements SourceSimilarity {
 
+  private static final int INFINITE_COST = Integer.MAX_VALUE / 2;
+
   // TODO verify algorithm http://stackoverflow.com/questions/6087281/similarity-score-levenshtein
   @Override
   public <T extends Object> int score(List<T> left, List<T> right) {
     int distance = levenshteinDistance(left, right);
-    return (int) (100 * (1.0 - ((double) distance) / (max(left.size(), right.size()))));
+    return toScore(distance, max(left.size(), right.size()));
+  }
+
+  @Override
+  public int score(int[] left, int[] right, int minScore) {
+    int maxSize = max(left.length, right.length);
+    if (maxSize == 0) {
+      return 0;
+    }
+    // greatest distance for which the score is still greater than or equal to minScore
+    int threshold = maxSize * (100 - minScore) / 100;
+    int distance = boundedLevenshteinDistance(left, right, threshold);
+    if (distance < 0) {
+      return 0;
+    }
+    int score = toScore(distance, maxSize);
+    return score >= minScore ? score : 0;
+  }
+
+  private static int toScore(int distance, int maxSize) {
+    return (int) (100 * (1.0 - ((double) distance) / maxSize));
+  }
+
+  /**
+   * Levenshtein distance computed only in the diagonal band of width {@code 2 * threshold + 1} of the matrix
+   * of costs, which is O(threshold * size) instead of O(size&#xB2;).
+   *
+   * @return the distance if it is lower than or equal to {@code threshold}, otherwise {@code -1}
+   */
+  int boundedLevenshteinDistance(int[] left, int[] right, int threshold) {
+    int[] shorter = left.length <= right.length ? left : right;
+    int[] longer = left.length <= right.length ? right : left;
+    int n = shorter.length;
+    int m = longer.length;
+    if (m - n > threshold) {
+      return -1;
+    }
+    if (n == 0) {
+      return m;
+    }
+
+    int[] cost = new int[n + 1];
+    int[] newcost = new int[n + 1];
+    int boundary = min(n, threshold) + 1;
+    for (int i = 0; i < boundary; i++) {
+      cost[i] = i;
+    }
+    Arrays.fill(cost, boundary, cost.length, INFINITE_COST);
+    Arrays.fill(newcost, INFINITE_COST);
+
+    for (int j = 1; j <= m; j++) {
+      int longerJ = longer[j - 1];
+      newcost[0] = j;
+
+      // only the cells of the band can have a cost lower than threshold
+      int from = max(1, j - threshold);
+      int to = min(n, j + threshold);
+      if (from > 1) {
+        newcost[from - 1] = INFINITE_COST;
+      }
+      int rowMin = from > 1 ? INFINITE_COST : j;
+      for (int i = from; i <= to; i++) {
+        if (shorter[i - 1] == longerJ) {
+          newcost[i] = cost[i - 1];
+        } else {
+          newcost[i] = 1 + min(min(newcost[i - 1], cost[i]), cost[i - 1]);
+        }
+        rowMin = min(rowMin, newcost[i]);
+      }
+      if (to < n) {
+        newcost[to + 1] = INFINITE_COST;
+      }
+      if (rowMin > threshold) {
+        // costs never decrease from a row to the next one
+        return -1;
+      }
+
+      // swap cost/newcost arrays
+      int[] swap = cost;
+      cost = newcost;
+      newcost = swap;
+    }
+
+    return cost[n] <= threshold ? cost[n] : -1;
   }
 
   // TODO verify https://commons.apache.org/sandbox/commons-text/jacoco/org.apache.commons.text.similarity/LevenshteinDistance.java.html
@@ -40,6 +40,13 @@ public interface CounterInitializationContext {
    */
   Optional<Measure> getMeasure(String metricKey);
 
+  /**
+   * Retrieve the numeric value of the measure for the current component for the specified metric key, or
+   * {@link Double#NaN} if there is no such measure or if it has no numeric value. Unlike {@link #getMeasure(String)},
+   * no object is created.
+   */
+  double getValue(String metricKey);
+
   /**
    * Lists of Periods defined for the current project. They can be used to retrieve variations Measure.
    */
@@ -205,6 +205,11 @@ public class FormulaExecutorComponentVisitor extends PathAwareVisitorAdapter<For
       return measureRepository.getRawMeasure(file, metricRepository.getByKey(metricKey));
     }
 
+    @Override
+    public double getValue(String metricKey) {
+      return measureRepository.getRawValue(file, metricRepository.getByKey(metricKey));
+    }
+
     @Override
     public List<Period> getPeriods() {
       return periodsHolder.getPeriods();
@@ -23,7 +23,6 @@ import com.google.common.base.Optional;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.sonar.server.computation.formula.CounterInitializationContext;
-import org.sonar.server.computation.measure.Measure;
 
 import static java.util.Objects.requireNonNull;
 
@@ -57,9 +56,9 @@ public class IntSumCounter implements SumCounter<Integer, IntSumCounter> {
 
   @Override
   public void initialize(CounterInitializationContext context) {
-    Optional<Measure> measureOptional = context.getMeasure(metricKey);
-    if (measureOptional.isPresent()) {
-      addValue(measureOptional.get().getIntValue());
+    double measureValue = context.getValue(metricKey);
+    if (!Double.isNaN(measureValue)) {
+      addValue((int) measureValue);
     } else if (defaultInputValue != null) {
       addValue(defaultInputValue);
     }
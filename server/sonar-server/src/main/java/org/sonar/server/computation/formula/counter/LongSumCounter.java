@@ -23,7 +23,6 @@ import com.google.common.base.Optional;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.sonar.server.computation.formula.CounterInitializationContext;
-import org.sonar.server.computation.measure.Measure;
 
 import static java.util.Objects.requireNonNull;
 
@@ -57,9 +56,9 @@ public class LongSumCounter implements SumCounter<Long, LongSumCounter> {
 
   @Override
   public void initialize(CounterInitializationContext context) {
-    Optional<Measure> measureOptional = context.getMeasure(metricKey);
-    if (measureOptional.isPresent()) {
-      addValue(measureOptional.get().getLongValue());
+    double measureValue = context.getValue(metricKey);
+    if (!Double.isNaN(measureValue)) {
+      addValue((long) measureValue);
     } else if (defaultInputValue != null) {
       addValue(defaultInputValue);
     }
@@ -19,6 +19,7 @@
  */
 package org.sonar.server.computation.issue;
 
+import java.util.Set;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.CrawlerDepthLimit;
 import org.sonar.server.computation.component.TypeAwareVisitorAdapter;
@@ -26,21 +27,26 @@ import org.sonar.server.computation.component.TypeAwareVisitorAdapter;
 import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_ORDER;
 
 /**
- * Load all open components having open issues of the project
+ * Load all open components having open issues of the project, then prefetch the data required to track their issues
  */
 public class LoadComponentUuidsHavingOpenIssuesVisitor extends TypeAwareVisitorAdapter {
 
   private final BaseIssuesLoader baseIssuesLoader;
   private final ComponentsWithUnprocessedIssues componentsWithUnprocessedIssues;
+  private final TrackingDataPrefetcher trackingDataPrefetcher;
 
-  public LoadComponentUuidsHavingOpenIssuesVisitor(BaseIssuesLoader baseIssuesLoader, ComponentsWithUnprocessedIssues componentsWithUnprocessedIssues) {
+  public LoadComponentUuidsHavingOpenIssuesVisitor(BaseIssuesLoader baseIssuesLoader, ComponentsWithUnprocessedIssues componentsWithUnprocessedIssues,
+    TrackingDataPrefetcher trackingDataPrefetcher) {
     super(CrawlerDepthLimit.PROJECT, PRE_ORDER);
     this.baseIssuesLoader = baseIssuesLoader;
     this.componentsWithUnprocessedIssues = componentsWithUnprocessedIssues;
+    this.trackingDataPrefetcher = trackingDataPrefetcher;
   }
 
   @Override
   public void visitProject(Component project) {
-    componentsWithUnprocessedIssues.setUuids(baseIssuesLoader.loadUuidsOfComponentsWithOpenIssues());
+    Set<String> uuids = baseIssuesLoader.loadUuidsOfComponentsWithOpenIssues();
+    componentsWithUnprocessedIssues.setUuids(uuids);
+    trackingDataPrefetcher.prefetch(project, uuids);
   }
 }
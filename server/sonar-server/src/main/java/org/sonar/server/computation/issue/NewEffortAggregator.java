@@ -54,6 +54,7 @@ public class NewEffortAggregator extends IssueVisitor {
   private final PeriodsHolder periodsHolder;
   private final DbClient dbClient;
   private final MeasureRepository measureRepository;
+  private final TrackingDataPrefetcher trackingDataPrefetcher;
 
   private final Metric newMaintainabilityEffortMetric;
   private final Metric newReliabilityEffortMetric;
@@ -64,11 +65,12 @@ public class NewEffortAggregator extends IssueVisitor {
   private NewEffortCounter counter = null;
 
   public NewEffortAggregator(NewEffortCalculator calculator, PeriodsHolder periodsHolder, DbClient dbClient,
-    MetricRepository metricRepository, MeasureRepository measureRepository) {
+    MetricRepository metricRepository, MeasureRepository measureRepository, TrackingDataPrefetcher trackingDataPrefetcher) {
     this.calculator = calculator;
     this.periodsHolder = periodsHolder;
     this.dbClient = dbClient;
     this.measureRepository = measureRepository;
+    this.trackingDataPrefetcher = trackingDataPrefetcher;
 
     this.newMaintainabilityEffortMetric = metricRepository.getByKey(NEW_TECHNICAL_DEBT_KEY);
     this.newReliabilityEffortMetric = metricRepository.getByKey(NEW_RELIABILITY_REMEDIATION_EFFORT_KEY);
@@ -77,9 +79,11 @@ public class NewEffortAggregator extends IssueVisitor {
 
   @Override
   public void beforeComponent(Component component) {
-    List<IssueChangeDto> changes = dbClient.issueChangeDao().selectChangelogOfNonClosedIssuesByComponent(component.getUuid());
-    for (IssueChangeDto change : changes) {
-      changesByIssueUuid.put(change.getIssueKey(), change);
+    if (!trackingDataPrefetcher.isPrefetched()) {
+      List<IssueChangeDto> changes = dbClient.issueChangeDao().selectChangelogOfNonClosedIssuesByComponent(component.getUuid());
+      for (IssueChangeDto change : changes) {
+        changesByIssueUuid.put(change.getIssueKey(), change);
+      }
     }
 
     counter = new NewEffortCounter(calculator);
@@ -95,7 +99,7 @@ public class NewEffortAggregator extends IssueVisitor {
   @Override
   public void onIssue(Component component, DefaultIssue issue) {
     if (issue.resolution() == null && issue.effortInMinutes() != null && !periodsHolder.getPeriods().isEmpty()) {
-      List<IssueChangeDto> changelog = changesByIssueUuid.get(issue.key());
+      List<IssueChangeDto> changelog = trackingDataPrefetcher.takeChangelog(issue.key()).or(changesByIssueUuid.get(issue.key()));
       for (Period period : periodsHolder.getPeriods()) {
         counter.add(issue, period, changelog);
       }
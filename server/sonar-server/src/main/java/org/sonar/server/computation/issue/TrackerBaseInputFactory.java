@@ -19,6 +19,7 @@
  */
 package org.sonar.server.computation.issue;
 
+import com.google.common.base.Optional;
 import java.util.Collections;
 import java.util.List;
 import javax.annotation.CheckForNull;
@@ -43,11 +44,14 @@ public class TrackerBaseInputFactory {
   private final BaseIssuesLoader baseIssuesLoader;
   private final DbClient dbClient;
   private final MovedFilesRepository movedFilesRepository;
+  private final TrackingDataPrefetcher trackingDataPrefetcher;
 
-  public TrackerBaseInputFactory(BaseIssuesLoader baseIssuesLoader, DbClient dbClient, MovedFilesRepository movedFilesRepository) {
+  public TrackerBaseInputFactory(BaseIssuesLoader baseIssuesLoader, DbClient dbClient, MovedFilesRepository movedFilesRepository,
+    TrackingDataPrefetcher trackingDataPrefetcher) {
     this.baseIssuesLoader = baseIssuesLoader;
     this.dbClient = dbClient;
     this.movedFilesRepository = movedFilesRepository;
+    this.trackingDataPrefetcher = trackingDataPrefetcher;
   }
 
   public Input<DefaultIssue> create(Component component) {
@@ -69,14 +73,20 @@ public class TrackerBaseInputFactory {
       if (component.getType() != Component.Type.FILE) {
         return EMPTY_LINE_HASH_SEQUENCE;
       }
-      
+
+      Optional<List<String>> prefetchedHashes = trackingDataPrefetcher.takeLineHashes(effectiveUuid);
+      List<String> hashes = prefetchedHashes.isPresent() ? prefetchedHashes.get() : selectLineHashes();
+      if (hashes == null || hashes.isEmpty()) {
+        return EMPTY_LINE_HASH_SEQUENCE;
+      }
+      return new LineHashSequence(hashes);
+    }
+
+    @CheckForNull
+    private List<String> selectLineHashes() {
       DbSession session = dbClient.openSession(false);
       try {
-        List<String> hashes = dbClient.fileSourceDao().selectLineHashes(session, effectiveUuid);
-        if (hashes == null || hashes.isEmpty()) {
-          return EMPTY_LINE_HASH_SEQUENCE;
-        }
-        return new LineHashSequence(hashes);
+        return dbClient.fileSourceDao().selectLineHashes(session, effectiveUuid);
       } finally {
         MyBatis.closeQuietly(session);
       }
@@ -0,0 +1,433 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.issue;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.io.CharStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.picocontainer.Startable;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.TempFolder;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.issue.IssueChangeDto;
+import org.sonar.db.protobuf.DbFileSources;
+import org.sonar.db.source.FileSourceDao;
+import org.sonar.db.source.FileSourceDto;
+import org.sonar.scanner.protocol.output.ScannerReport;
+import org.sonar.server.computation.analysis.AnalysisMetadataHolder;
+import org.sonar.server.computation.batch.BatchReportReader;
+import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.CrawlerDepthLimit;
+import org.sonar.server.computation.component.DepthTraversalTypeAwareCrawler;
+import org.sonar.server.computation.component.TypeAwareVisitorAdapter;
+import org.sonar.server.util.cache.SpillableByteStore;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_ORDER;
+
+/**
+ * Loads in bulk the data of the project that issue tracking would otherwise read from db component by component:
+ * <ul>
+ *   <li>line hashes of the files having open issues, used by {@link TrackerBaseInputFactory}</li>
+ *   <li>SCM data of the unchanged files having open issues, used by {@link org.sonar.server.computation.scm.ScmInfoRepositoryImpl}</li>
+ *   <li>changelog of the non-closed issues of the project, used by {@link NewEffortAggregator}</li>
+ * </ul>
+ * Data are streamed with a few queries and kept on heap up to {@value #MAX_HEAP_SIZE_PROPERTY} bytes
+ * ({@value #DEFAULT_MAX_HEAP_SIZE} by default), then on disk. A value is dropped once it has been read. Consumers
+ * fall back to their own queries when data has not been prefetched.
+ */
+public class TrackingDataPrefetcher implements Startable {
+
+  static final String MAX_HEAP_SIZE_PROPERTY = "sonar.ce.issueTracking.prefetchMaxHeapSizeInBytes";
+  static final long DEFAULT_MAX_HEAP_SIZE = 64L * 1024 * 1024;
+
+  private static final Logger LOG = Loggers.get(TrackingDataPrefetcher.class);
+  private static final Splitter END_OF_LINE_SPLITTER = Splitter.on('\n');
+  private static final byte[] NO_DATA = new byte[0];
+  private static final byte HAS_DATA = 1;
+  private static final String LINE_HASHES_PREFIX = "h:";
+  private static final String SCM_PREFIX = "s:";
+  private static final String CHANGELOG_PREFIX = "c:";
+
+  private final DbClient dbClient;
+  private final BatchReportReader batchReportReader;
+  private final AnalysisMetadataHolder analysisMetadataHolder;
+  private final SpillableByteStore store;
+  private volatile boolean prefetched = false;
+
+  // this constructor is used by picocontainer
+  public TrackingDataPrefetcher(DbClient dbClient, BatchReportReader batchReportReader, AnalysisMetadataHolder analysisMetadataHolder,
+    TempFolder tempFolder, Settings settings) {
+    this(dbClient, batchReportReader, analysisMetadataHolder, new SpillableByteStore(tempFolder.newFile("tracking", ".dat"), getMaxHeapSize(settings)));
+  }
+
+  TrackingDataPrefetcher(DbClient dbClient, BatchReportReader batchReportReader, AnalysisMetadataHolder analysisMetadataHolder, SpillableByteStore store) {
+    this.dbClient = dbClient;
+    this.batchReportReader = batchReportReader;
+    this.analysisMetadataHolder = analysisMetadataHolder;
+    this.store = store;
+  }
+
+  private static long getMaxHeapSize(Settings settings) {
+    long bytes = settings.getLong(MAX_HEAP_SIZE_PROPERTY);
+    return bytes > 0 ? bytes : DEFAULT_MAX_HEAP_SIZE;
+  }
+
+  @Override
+  public void start() {
+    // nothing to do
+  }
+
+  @Override
+  public void stop() {
+    store.close();
+  }
+
+  /**
+   * Loads the data of the project, given the uuids of its components having open issues.
+   */
+  public void prefetch(Component project, Set<String> componentUuidsWithOpenIssues) {
+    checkState(!prefetched, "Data have already been prefetched");
+    DbSession dbSession = dbClient.openSession(false);
+    try {
+      prefetchLineHashes(dbSession, componentUuidsWithOpenIssues);
+      prefetchScm(dbSession, project, componentUuidsWithOpenIssues);
+      prefetchChangelogs(dbSession, project.getUuid());
+    } finally {
+      dbClient.closeSession(dbSession);
+    }
+    prefetched = true;
+    LOG.debug("Issue tracking data prefetched: {} entries, {} bytes on heap, {} bytes on disk", store.size(), store.heapSize(), store.spillSize());
+  }
+
+  public boolean isPrefetched() {
+    return prefetched;
+  }
+
+  /**
+   * Line hashes of the file, empty if it has no sources. Absent if they have not been prefetched.
+   */
+  public Optional<List<String>> takeLineHashes(String fileUuid) {
+    byte[] bytes = take(LINE_HASHES_PREFIX, fileUuid);
+    if (bytes == null) {
+      return Optional.absent();
+    }
+    if (bytes.length == 0) {
+      return Optional.of(Collections.<String>emptyList());
+    }
+    return Optional.of(END_OF_LINE_SPLITTER.splitToList(new String(bytes, 1, bytes.length - 1, UTF_8)));
+  }
+
+  /**
+   * SCM data of the lines of the file stored in db. Absent if they have not been prefetched.
+   */
+  public Optional<ScmLines> takeScmLines(String fileUuid) {
+    byte[] bytes = take(SCM_PREFIX, fileUuid);
+    if (bytes == null) {
+      return Optional.absent();
+    }
+    if (bytes.length == 0) {
+      return Optional.of(ScmLines.NONE);
+    }
+    try {
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+      String srcHash = input.readBoolean() ? input.readUTF() : null;
+      return Optional.of(new ScmLines(srcHash, DbFileSources.Data.parseFrom(input).getLinesList()));
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to decode SCM data of file " + fileUuid, e);
+    }
+  }
+
+  /**
+   * Changes of type {@link IssueChangeDto#TYPE_FIELD_CHANGE} of the issue, in no particular order. Absent if
+   * changelogs have not been prefetched.
+   */
+  public Optional<List<IssueChangeDto>> takeChangelog(String issueKey) {
+    if (!prefetched) {
+      return Optional.absent();
+    }
+    byte[] bytes = take(CHANGELOG_PREFIX, issueKey);
+    if (bytes == null) {
+      return Optional.of(Collections.<IssueChangeDto>emptyList());
+    }
+    try {
+      DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+      int size = input.readInt();
+      List<IssueChangeDto> changes = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        changes.add(readChange(input, issueKey));
+      }
+      return Optional.of(changes);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to decode changelog of issue " + issueKey, e);
+    }
+  }
+
+  @CheckForNull
+  private byte[] take(String prefix, String key) {
+    if (!prefetched) {
+      return null;
+    }
+    return store.take(prefix + key);
+  }
+
+  private void prefetchLineHashes(DbSession dbSession, Set<String> fileUuids) {
+    dbClient.fileSourceDao().readLineHashesStream(dbSession, fileUuids, new FileSourceDao.LineHashesHandler() {
+      @Override
+      public void handle(String fileUuid, @Nullable Reader lineHashes) {
+        store.put(LINE_HASHES_PREFIX + fileUuid, lineHashes == null ? NO_DATA : toBytes(fileUuid, lineHashes));
+      }
+    });
+    markMissing(LINE_HASHES_PREFIX, fileUuids);
+  }
+
+  /**
+   * Hashes are prefixed by a marker byte, so that an empty column is not confused with a file without sources
+   */
+  private static byte[] toBytes(String fileUuid, Reader lineHashes) {
+    try {
+      byte[] hashes = CharStreams.toString(lineHashes).getBytes(UTF_8);
+      byte[] bytes = new byte[hashes.length + 1];
+      bytes[0] = HAS_DATA;
+      System.arraycopy(hashes, 0, bytes, 1, hashes.length);
+      return bytes;
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to read line hashes of file " + fileUuid, e);
+    }
+  }
+
+  /**
+   * SCM data are read from db only for the files which changesets are marked as unchanged in the report
+   */
+  private void prefetchScm(DbSession dbSession, Component project, final Set<String> componentUuidsWithOpenIssues) {
+    if (analysisMetadataHolder.isFirstAnalysis()) {
+      return;
+    }
+    final Set<String> fileUuids = new HashSet<>();
+    new DepthTraversalTypeAwareCrawler(new TypeAwareVisitorAdapter(CrawlerDepthLimit.FILE, PRE_ORDER) {
+      @Override
+      public void visitFile(Component file) {
+        if (componentUuidsWithOpenIssues.contains(file.getUuid())) {
+          ScannerReport.Changesets changesets = batchReportReader.readChangesets(file.getReportAttributes().getRef());
+          if (changesets != null && changesets.getCopyFromPrevious()) {
+            fileUuids.add(file.getUuid());
+          }
+        }
+      }
+    }).visit(project);
+
+    dbClient.fileSourceDao().readSourcesStream(dbSession, fileUuids, new ResultHandler() {
+      @Override
+      public void handleResult(ResultContext context) {
+        FileSourceDto dto = (FileSourceDto) context.getResultObject();
+        store.put(SCM_PREFIX + dto.getFileUuid(), encodeScm(dto));
+      }
+    });
+    markMissing(SCM_PREFIX, fileUuids);
+  }
+
+  private static byte[] encodeScm(FileSourceDto dto) {
+    DbFileSources.Data.Builder scmData = DbFileSources.Data.newBuilder();
+    for (DbFileSources.Line line : dto.getSourceData().getLinesList()) {
+      DbFileSources.Line.Builder scmLine = scmData.addLinesBuilder().setLine(line.getLine());
+      if (line.hasScmRevision()) {
+        scmLine.setScmRevision(line.getScmRevision());
+      }
+      if (line.hasScmAuthor()) {
+        scmLine.setScmAuthor(line.getScmAuthor());
+      }
+      if (line.hasScmDate()) {
+        scmLine.setScmDate(line.getScmDate());
+      }
+    }
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream output = new DataOutputStream(bytes);
+      output.writeBoolean(dto.getSrcHash() != null);
+      if (dto.getSrcHash() != null) {
+        output.writeUTF(dto.getSrcHash());
+      }
+      scmData.build().writeTo(output);
+      output.flush();
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to encode SCM data of file " + dto.getFileUuid(), e);
+    }
+  }
+
+  private void prefetchChangelogs(DbSession dbSession, String projectUuid) {
+    ChangelogHandler handler = new ChangelogHandler();
+    dbClient.issueChangeDao().selectChangelogOfNonClosedIssuesByProject(dbSession, projectUuid, handler);
+    handler.flush();
+  }
+
+  /**
+   * Files requested but not returned by db are recorded as having no data, so that consumers do not query them again
+   */
+  private void markMissing(String prefix, Set<String> keys) {
+    for (String key : keys) {
+      if (!store.contains(prefix + key)) {
+        store.put(prefix + key, NO_DATA);
+      }
+    }
+  }
+
+  /**
+   * Rows are ordered by issue key, so the changes of an issue are stored as soon as the next issue is reached
+   */
+  private class ChangelogHandler implements ResultHandler {
+    private final List<IssueChangeDto> changes = new ArrayList<>();
+    @CheckForNull
+    private String issueKey;
+
+    @Override
+    public void handleResult(ResultContext context) {
+      IssueChangeDto dto = (IssueChangeDto) context.getResultObject();
+      if (!dto.getIssueKey().equals(issueKey)) {
+        flush();
+        issueKey = dto.getIssueKey();
+      }
+      changes.add(dto);
+    }
+
+    void flush() {
+      if (issueKey == null || changes.isEmpty()) {
+        return;
+      }
+      try {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(changes.size());
+        for (IssueChangeDto change : changes) {
+          writeChange(output, change);
+        }
+        output.flush();
+        store.put(CHANGELOG_PREFIX + issueKey, bytes.toByteArray());
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to encode changelog of issue " + issueKey, e);
+      }
+      changes.clear();
+    }
+  }
+
+  private static void writeChange(DataOutput output, IssueChangeDto change) throws IOException {
+    writeLong(output, change.getId());
+    writeString(output, change.getKey());
+    writeString(output, change.getUserLogin());
+    writeString(output, change.getChangeType());
+    writeString(output, change.getChangeData());
+    writeLong(output, change.getCreatedAt());
+    writeLong(output, change.getUpdatedAt());
+    writeLong(output, change.getIssueChangeCreationDate());
+  }
+
+  private static IssueChangeDto readChange(DataInput input, String issueKey) throws IOException {
+    return new IssueChangeDto()
+      .setIssueKey(issueKey)
+      .setId(readLong(input))
+      .setKey(readString(input))
+      .setUserLogin(readString(input))
+      .setChangeType(readString(input))
+      .setChangeData(readString(input))
+      .setCreatedAt(readLong(input))
+      .setUpdatedAt(readLong(input))
+      .setIssueChangeCreationDate(readLong(input));
+  }
+
+  private static void writeLong(DataOutput output, @Nullable Long value) throws IOException {
+    output.writeBoolean(value != null);
+    if (value != null) {
+      output.writeLong(value);
+    }
+  }
+
+  @CheckForNull
+  private static Long readLong(DataInput input) throws IOException {
+    return input.readBoolean() ? input.readLong() : null;
+  }
+
+  private static void writeString(DataOutput output, @Nullable String s) throws IOException {
+    output.writeBoolean(s != null);
+    if (s != null) {
+      byte[] bytes = s.getBytes(UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+  }
+
+  @CheckForNull
+  private static String readString(DataInput input) throws IOException {
+    if (!input.readBoolean()) {
+      return null;
+    }
+    byte[] bytes = new byte[input.readInt()];
+    input.readFully(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  /**
+   * SCM data of the lines of a file, as stored in db
+   */
+  public static final class ScmLines {
+    static final ScmLines NONE = new ScmLines(null, Collections.<DbFileSources.Line>emptyList());
+
+    @CheckForNull
+    private final String srcHash;
+    private final List<DbFileSources.Line> lines;
+
+    public ScmLines(@Nullable String srcHash, List<DbFileSources.Line> lines) {
+      this.srcHash = srcHash;
+      this.lines = lines;
+    }
+
+    /**
+     * Hash of the source of the file, or null if the file has no sources in db
+     */
+    @CheckForNull
+    public String getSrcHash() {
+      return srcHash;
+    }
+
+    public List<DbFileSources.Line> getLines() {
+      return lines;
+    }
+  }
+}
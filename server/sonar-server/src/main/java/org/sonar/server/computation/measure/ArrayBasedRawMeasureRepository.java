@@ -0,0 +1,410 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.measure;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.Developer;
+import org.sonar.server.computation.measure.MapBasedRawMeasureRepository.OverridePolicy;
+import org.sonar.server.computation.metric.Metric;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Implementation of MeasureRepository which supports only raw measures of components of the analysis report, and
+ * which is designed for a large number of measures:
+ * <ul>
+ *   <li>components are identified by their report ref, interned to a dense row index</li>
+ *   <li>measures of a metric are stored in a column indexed by row. Measures made only of a numeric value (most
+ *   of them) are stored as {@code double}, other measures (data, level, variations, ...) are stored as objects</li>
+ *   <li>the columns which have a measure on a row are flagged in a bit set of the row, so that all the measures of
+ *   a component are read without scanning all the columns</li>
+ *   <li>columns are resolved by metric id, the map by metric key being used only when ids are out of range or shared
+ *   by several metrics</li>
+ *   <li>measures associated to a developer, which are rare, are stored aside in maps</li>
+ * </ul>
+ * Lookups do not create key objects, and {@link #getRawValue(Component, Metric)} reads numeric values without creating
+ * any object.
+ *
+ * Intended to be used as a delegate of other MeasureRepository implementations (hence the final keyword).
+ */
+public final class ArrayBasedRawMeasureRepository implements MeasureRepository {
+  // ids of metrics are small integers, greater ids are resolved only through the map by key
+  private static final int MAX_INDEXED_METRIC_ID = 1 << 16;
+
+  private final DenseIntIndex rowsByRef = new DenseIntIndex();
+  private final Map<String, Column> columnsByMetricKey = new HashMap<>();
+  private Column[] columnsByMetricId = new Column[0];
+  private final List<Column> columns = new ArrayList<>();
+  // bit set of the indexes of the columns which have a measure, by row
+  private long[][] columnsByRow = new long[16][];
+  // developer measures, by row
+  private final Map<Integer, Map<MeasureKey, Measure>> developerMeasures = new HashMap<>();
+
+  /**
+   * @throws UnsupportedOperationException all the time, not supported
+   */
+  @Override
+  public Optional<Measure> getBaseMeasure(Component component, Metric metric) {
+    throw new UnsupportedOperationException("This implementation of MeasureRepository supports only raw measures");
+  }
+
+  @Override
+  public Optional<Measure> getRawMeasure(Component component, Metric metric) {
+    // fail fast
+    requireNonNull(component);
+    requireNonNull(metric);
+
+    return Optional.fromNullable(find(component, metric, null));
+  }
+
+  @Override
+  public double getRawValue(Component component, Metric metric) {
+    requireNonNull(metric);
+    int row = rowsByRef.indexOf(component.getReportAttributes().getRef());
+    Column column = row < 0 ? null : column(metric);
+    return column == null ? Double.NaN : column.getValue(row);
+  }
+
+  @Override
+  public void add(Component component, Metric metric, Measure measure) {
+    requireNonNull(component);
+    checkValueTypeConsistency(metric, measure);
+
+    if (find(component, metric, measure.getDeveloper()) != null) {
+      throw new UnsupportedOperationException(
+        format(
+          "a measure can be set only once for a specific Component (key=%s), Metric (key=%s). Use update method",
+          component.getKey(),
+          metric.getKey()));
+    }
+    add(component, metric, measure, OverridePolicy.OVERRIDE);
+  }
+
+  @Override
+  public void update(Component component, Metric metric, Measure measure) {
+    requireNonNull(component);
+    checkValueTypeConsistency(metric, measure);
+
+    if (find(component, metric, measure.getDeveloper()) == null) {
+      throw new UnsupportedOperationException(
+        format(
+          "a measure can be updated only if one already exists for a specific Component (key=%s), Metric (key=%s). Use add method",
+          component.getKey(),
+          metric.getKey()));
+    }
+    add(component, metric, measure, OverridePolicy.OVERRIDE);
+  }
+
+  private static void checkValueTypeConsistency(Metric metric, Measure measure) {
+    checkArgument(
+      measure.getValueType() == Measure.ValueType.NO_VALUE || measure.getValueType() == metric.getType().getValueType(),
+      format(
+        "Measure's ValueType (%s) is not consistent with the Metric's ValueType (%s)",
+        measure.getValueType(), metric.getType().getValueType()));
+  }
+
+  @Override
+  public Set<Measure> getRawMeasures(Component component, Metric metric) {
+    requireNonNull(metric);
+    requireNonNull(component);
+    int row = rowsByRef.indexOf(component.getReportAttributes().getRef());
+    Column column = column(metric);
+    if (row < 0 || column == null) {
+      return Collections.emptySet();
+    }
+
+    ImmutableSet.Builder<Measure> builder = ImmutableSet.builder();
+    Measure measure = column.get(row);
+    if (measure != null) {
+      builder.add(measure);
+    }
+    Map<MeasureKey, Measure> measuresOfDevelopers = developerMeasures.isEmpty() ? null : developerMeasures.get(row);
+    if (measuresOfDevelopers != null) {
+      for (Map.Entry<MeasureKey, Measure> entry : measuresOfDevelopers.entrySet()) {
+        if (entry.getKey().getMetricKey().equals(metric.getKey())) {
+          builder.add(entry.getValue());
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  @Override
+  public SetMultimap<String, Measure> getRawMeasures(Component component) {
+    int row = rowsByRef.indexOf(component.getReportAttributes().getRef());
+    if (row < 0) {
+      return ImmutableSetMultimap.of();
+    }
+
+    ImmutableSetMultimap.Builder<String, Measure> builder = ImmutableSetMultimap.builder();
+    long[] columnBits = row < columnsByRow.length ? columnsByRow[row] : null;
+    if (columnBits != null) {
+      for (int word = 0; word < columnBits.length; word++) {
+        long bits = columnBits[word];
+        while (bits != 0) {
+          Column column = columns.get((word << 6) + Long.numberOfTrailingZeros(bits));
+          builder.put(column.metricKey, column.get(row));
+          bits &= bits - 1;
+        }
+      }
+    }
+    Map<MeasureKey, Measure> measuresOfDevelopers = developerMeasures.isEmpty() ? null : developerMeasures.get(row);
+    if (measuresOfDevelopers != null) {
+      for (Map.Entry<MeasureKey, Measure> entry : measuresOfDevelopers.entrySet()) {
+        builder.put(entry.getKey().getMetricKey(), entry.getValue());
+      }
+    }
+    return builder.build();
+  }
+
+  @CheckForNull
+  private Measure find(Component component, Metric metric, @Nullable Developer developer) {
+    int row = rowsByRef.indexOf(component.getReportAttributes().getRef());
+    if (row < 0) {
+      return null;
+    }
+    if (developer != null) {
+      Map<MeasureKey, Measure> measuresOfDevelopers = developerMeasures.get(row);
+      return measuresOfDevelopers == null ? null : measuresOfDevelopers.get(new MeasureKey(metric.getKey(), developer));
+    }
+    Column column = column(metric);
+    return column == null ? null : column.get(row);
+  }
+
+  @CheckForNull
+  private Column column(Metric metric) {
+    int metricId = metric.getId();
+    if (metricId >= 0 && metricId < columnsByMetricId.length) {
+      Column column = columnsByMetricId[metricId];
+      if (column != null && column.metricKey.equals(metric.getKey())) {
+        return column;
+      }
+    }
+    return columnsByMetricKey.get(metric.getKey());
+  }
+
+  public void add(Component component, Metric metric, Measure measure, OverridePolicy overridePolicy) {
+    requireNonNull(component);
+    requireNonNull(measure);
+    requireNonNull(overridePolicy);
+
+    int row = rowsByRef.add(component.getReportAttributes().getRef());
+    Developer developer = measure.getDeveloper();
+    if (developer != null) {
+      addDeveloperMeasure(row, metric, measure, overridePolicy);
+      return;
+    }
+
+    Column column = column(metric);
+    if (column == null) {
+      column = addColumn(metric);
+    }
+    if (!column.contains(row)) {
+      column.set(row, measure);
+      flagColumn(row, column.index);
+    } else if (overridePolicy == OverridePolicy.OVERRIDE) {
+      column.set(row, measure);
+    }
+  }
+
+  private Column addColumn(Metric metric) {
+    Column column = new Column(columns.size(), metric.getKey());
+    columnsByMetricKey.put(metric.getKey(), column);
+    columns.add(column);
+    int metricId = metric.getId();
+    if (metricId >= 0 && metricId < MAX_INDEXED_METRIC_ID) {
+      if (metricId >= columnsByMetricId.length) {
+        columnsByMetricId = Arrays.copyOf(columnsByMetricId, Math.max(metricId + 1, columnsByMetricId.length * 2));
+      }
+      if (columnsByMetricId[metricId] == null) {
+        columnsByMetricId[metricId] = column;
+      }
+    }
+    return column;
+  }
+
+  private void flagColumn(int row, int columnIndex) {
+    if (row >= columnsByRow.length) {
+      columnsByRow = Arrays.copyOf(columnsByRow, Math.max(row + 1, columnsByRow.length * 2));
+    }
+    long[] columnBits = columnsByRow[row];
+    int word = columnIndex >>> 6;
+    if (columnBits == null || word >= columnBits.length) {
+      columnBits = columnBits == null ? new long[word + 1] : Arrays.copyOf(columnBits, word + 1);
+      columnsByRow[row] = columnBits;
+    }
+    columnBits[word] |= 1L << columnIndex;
+  }
+
+  private void addDeveloperMeasure(int row, Metric metric, Measure measure, OverridePolicy overridePolicy) {
+    Map<MeasureKey, Measure> measuresOfDevelopers = developerMeasures.get(row);
+    if (measuresOfDevelopers == null) {
+      measuresOfDevelopers = new HashMap<>();
+      developerMeasures.put(row, measuresOfDevelopers);
+    }
+    MeasureKey key = new MeasureKey(metric.getKey(), measure.getDeveloper());
+    if (!measuresOfDevelopers.containsKey(key) || overridePolicy == OverridePolicy.OVERRIDE) {
+      measuresOfDevelopers.put(key, measure);
+    }
+  }
+
+  /**
+   * Numeric value of the measure, or {@link Double#NaN} if there is no measure or if it has no numeric value
+   */
+  static double valueOf(@Nullable Measure measure) {
+    if (measure == null) {
+      return Double.NaN;
+    }
+    switch (measure.getValueType()) {
+      case BOOLEAN:
+      case INT:
+      case LONG:
+      case DOUBLE:
+        return numericValue(measure);
+      default:
+        return Double.NaN;
+    }
+  }
+
+  private static double numericValue(Measure measure) {
+    switch (measure.getValueType()) {
+      case BOOLEAN:
+        return measure.getBooleanValue() ? 1.0d : 0.0d;
+      case INT:
+        return measure.getIntValue();
+      case LONG:
+        return measure.getLongValue();
+      case DOUBLE:
+        return measure.getDoubleValue();
+      default:
+        throw new IllegalArgumentException(format("Measure of type %s has no numeric value", measure.getValueType()));
+    }
+  }
+
+  /**
+   * Measures of a metric, by row. A row holds either a numeric value (bit set in {@link #numericRows}), or an
+   * object in {@link #objects}, or nothing. All the numeric values of a column have the same value type, which is
+   * the one of the metric.
+   */
+  private static final class Column {
+    private static final double[] NO_VALUES = new double[0];
+    private static final long[] NO_ROWS = new long[0];
+
+    private final int index;
+    private final String metricKey;
+    private double[] values = NO_VALUES;
+    @CheckForNull
+    private Measure.ValueType numericValueType = null;
+    private long[] numericRows = NO_ROWS;
+    // allocated only when a measure is not numeric-only
+    @CheckForNull
+    private Measure[] objects = null;
+
+    private Column(int index, String metricKey) {
+      this.index = index;
+      this.metricKey = metricKey;
+    }
+
+    boolean contains(int row) {
+      return hasNumericValue(row) || getObject(row) != null;
+    }
+
+    boolean hasNumericValue(int row) {
+      int word = row >>> 6;
+      return word < numericRows.length && (numericRows[word] & (1L << row)) != 0;
+    }
+
+    @CheckForNull
+    Measure getObject(int row) {
+      return objects == null || row >= objects.length ? null : objects[row];
+    }
+
+    @CheckForNull
+    Measure get(int row) {
+      if (hasNumericValue(row)) {
+        return Measure.newNumericMeasure(numericValueType, values[row]);
+      }
+      return getObject(row);
+    }
+
+    double getValue(int row) {
+      if (hasNumericValue(row)) {
+        return values[row];
+      }
+      return valueOf(getObject(row));
+    }
+
+    void set(int row, Measure measure) {
+      if (measure.isNumericOnly() && (numericValueType == null || numericValueType == measure.getValueType())) {
+        numericValueType = measure.getValueType();
+        ensureNumericCapacity(row);
+        values[row] = numericValue(measure);
+        numericRows[row >>> 6] |= 1L << row;
+        if (objects != null && row < objects.length) {
+          objects[row] = null;
+        }
+      } else {
+        ensureObjectCapacity(row);
+        objects[row] = measure;
+        int word = row >>> 6;
+        if (word < numericRows.length) {
+          numericRows[word] &= ~(1L << row);
+        }
+      }
+    }
+
+    private void ensureNumericCapacity(int row) {
+      if (row >= values.length) {
+        values = Arrays.copyOf(values, newCapacity(values.length, row));
+      }
+      int words = (row >>> 6) + 1;
+      if (words > numericRows.length) {
+        numericRows = Arrays.copyOf(numericRows, Math.max(words, numericRows.length * 2));
+      }
+    }
+
+    private void ensureObjectCapacity(int row) {
+      if (objects == null) {
+        objects = new Measure[newCapacity(0, row)];
+      } else if (row >= objects.length) {
+        objects = Arrays.copyOf(objects, newCapacity(objects.length, row));
+      }
+    }
+
+    private static int newCapacity(int currentCapacity, int row) {
+      return Math.max(row + 1, Math.max(16, currentCapacity + (currentCapacity >> 1)));
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.measure;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Assigns dense indexes (0, 1, 2...) to arbitrary int keys, in order of insertion. Open addressing with linear
+ * probing: neither insertions nor lookups allocate objects, except when the table grows.
+ */
+final class DenseIntIndex {
+  private static final int FREE = 0;
+  private static final int MIN_CAPACITY = 16;
+
+  private int[] keys;
+  // index + 1 of the key in the same slot, FREE if the slot is not used
+  private int[] indexes;
+  private int size = 0;
+
+  DenseIntIndex() {
+    this(MIN_CAPACITY);
+  }
+
+  DenseIntIndex(int expectedSize) {
+    checkArgument(expectedSize >= 0, "Expected size can not be < 0");
+    int capacity = MIN_CAPACITY;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    this.keys = new int[capacity];
+    this.indexes = new int[capacity];
+  }
+
+  /**
+   * @return the index of the key, or -1 if the key has not been added
+   */
+  int indexOf(int key) {
+    int mask = keys.length - 1;
+    int slot = hash(key) & mask;
+    while (indexes[slot] != FREE) {
+      if (keys[slot] == key) {
+        return indexes[slot] - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * @return the index of the key, which is created if the key has not been added yet
+   */
+  int add(int key) {
+    int index = indexOf(key);
+    if (index >= 0) {
+      return index;
+    }
+    if ((size + 1) * 2 > keys.length) {
+      grow();
+    }
+    index = size;
+    insert(key, index + 1);
+    size++;
+    return index;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private void insert(int key, int indexPlusOne) {
+    int mask = keys.length - 1;
+    int slot = hash(key) & mask;
+    while (indexes[slot] != FREE) {
+      slot = (slot + 1) & mask;
+    }
+    keys[slot] = key;
+    indexes[slot] = indexPlusOne;
+  }
+
+  private void grow() {
+    int[] oldKeys = keys;
+    int[] oldIndexes = indexes;
+    keys = new int[oldKeys.length * 2];
+    indexes = new int[oldKeys.length * 2];
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldIndexes[i] != FREE) {
+        insert(oldKeys[i], oldIndexes[i]);
+      }
+    }
+  }
+
+  private static int hash(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -68,6 +68,11 @@ public final class MapBasedRawMeasureRepository<T> implements MeasureRepository
     return find(component, metric);
   }
 
+  @Override
+  public double getRawValue(Component component, Metric metric) {
+    return ArrayBasedRawMeasureRepository.valueOf(find(component, metric).orNull());
+  }
+
   @Override
   public void add(Component component, Metric metric, Measure measure) {
     requireNonNull(component);
@@ -103,6 +103,28 @@ public final class Measure {
     return new UpdateMeasureBuilder(measure);
   }
 
+  /**
+   * Measure with only a value, which is supposed to be already scaled, of one of the types {@link ValueType#BOOLEAN},
+   * {@link ValueType#INT}, {@link ValueType#LONG} or {@link ValueType#DOUBLE}.
+   */
+  static Measure newNumericMeasure(ValueType valueType, double value) {
+    checkArgument(isNumeric(valueType), "ValueType %s is not numeric", valueType);
+    return new Measure(valueType, null, value, null, null, null, null, null);
+  }
+
+  /**
+   * Whether this measure holds nothing else than a numeric value (no developer, data, description, quality gate
+   * status nor variations), so that it can be recreated with {@link #newNumericMeasure(ValueType, double)}.
+   */
+  boolean isNumericOnly() {
+    return isNumeric(valueType) && developer == null && data == null && description == null
+      && qualityGateStatus == null && variations == null;
+  }
+
+  private static boolean isNumeric(ValueType valueType) {
+    return valueType == ValueType.BOOLEAN || valueType == ValueType.INT || valueType == ValueType.LONG || valueType == ValueType.DOUBLE;
+  }
+
   public static final class NewMeasureBuilder {
     private Developer developer;
     private String description;
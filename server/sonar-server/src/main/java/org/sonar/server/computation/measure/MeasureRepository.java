@@ -47,6 +47,17 @@ public interface MeasureRepository {
    */
   Optional<Measure> getRawMeasure(Component component, Metric metric);
 
+  /**
+   * Numeric value of the measure returned by {@link #getRawMeasure(Component, Metric)}, or {@link Double#NaN} if there
+   * is no such measure or if it has no numeric value. Boolean values are returned as 1 or 0.
+   * <p>
+   * Unlike {@link #getRawMeasure(Component, Metric)}, no object is created to read the value.
+   * </p>
+   *
+   * @throws NullPointerException if either argument is {@code null}
+   */
+  double getRawValue(Component component, Metric metric);
+
   /**
    * Returns the {@link Measure}s for the specified {@link Component} and the specified {@link Metric}.
    * <p>
@@ -21,37 +21,51 @@ package org.sonar.server.computation.measure;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.SetMultimap;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.sonar.core.util.CloseableIterator;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.measure.MeasureDto;
-import org.sonar.db.measure.MeasureQuery;
 import org.sonar.scanner.protocol.output.ScannerReport;
 import org.sonar.server.computation.batch.BatchReportReader;
 import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.TreeRootHolder;
 import org.sonar.server.computation.measure.MapBasedRawMeasureRepository.OverridePolicy;
 import org.sonar.server.computation.metric.Metric;
 import org.sonar.server.computation.metric.MetricRepository;
 import org.sonar.server.computation.metric.ReportMetricValidator;
 
 import static java.util.Objects.requireNonNull;
-import static org.sonar.server.computation.component.ComponentFunctions.toReportRef;
 
+/**
+ * Base measures are loaded by metric: the first access to a metric loads its measures on all the components of the
+ * last analysis with a single query, so that the steps iterating on components do not execute one query per component.
+ * <p>
+ * Raw measures are accessed under the lock of the repository, as files may be visited concurrently (see
+ * {@link org.sonar.server.computation.component.ThreadSafeVisitor}).
+ * </p>
+ */
 public class MeasureRepositoryImpl implements MeasureRepository {
-  private final MapBasedRawMeasureRepository<Integer> delegate = new MapBasedRawMeasureRepository<>(toReportRef());
+  private final ArrayBasedRawMeasureRepository delegate = new ArrayBasedRawMeasureRepository();
   private final DbClient dbClient;
+  private final TreeRootHolder treeRootHolder;
   private final BatchReportReader reportReader;
   private final BatchMeasureToMeasure batchMeasureToMeasure;
   private final MetricRepository metricRepository;
   private final ReportMetricValidator reportMetricValidator;
 
   private MeasureDtoToMeasure underTest = new MeasureDtoToMeasure();
-  private final Set<Integer> loadedComponents = new HashSet<>();
+  private final DenseIntIndex loadedComponents = new DenseIntIndex();
+  private final ConcurrentMap<String, Map<String, MeasureDto>> baseMeasuresByMetricKey = new ConcurrentHashMap<>();
 
-  public MeasureRepositoryImpl(DbClient dbClient, BatchReportReader reportReader, MetricRepository metricRepository, ReportMetricValidator reportMetricValidator) {
+  public MeasureRepositoryImpl(DbClient dbClient, TreeRootHolder treeRootHolder, BatchReportReader reportReader, MetricRepository metricRepository,
+    ReportMetricValidator reportMetricValidator) {
     this.dbClient = dbClient;
+    this.treeRootHolder = treeRootHolder;
     this.reportReader = reportReader;
     this.reportMetricValidator = reportMetricValidator;
     this.batchMeasureToMeasure = new BatchMeasureToMeasure();
@@ -64,18 +78,40 @@ public class MeasureRepositoryImpl implements MeasureRepository {
     requireNonNull(component);
     requireNonNull(metric);
 
-    try (DbSession dbSession = dbClient.openSession(false)) {
-      MeasureQuery query = MeasureQuery.builder().setComponentUuid(component.getUuid()).setMetricKey(metric.getKey()).build();
-      java.util.Optional<MeasureDto> measureDto = dbClient.measureDao().selectSingle(dbSession, query);
-      if (measureDto.isPresent()) {
-        return underTest.toMeasure(measureDto.get(), metric);
-      }
+    MeasureDto measureDto = getBaseMeasuresByComponentUuid(metric.getKey()).get(component.getUuid());
+    if (measureDto == null) {
       return Optional.absent();
     }
+    return underTest.toMeasure(measureDto, metric);
+  }
+
+  private Map<String, MeasureDto> getBaseMeasuresByComponentUuid(String metricKey) {
+    Map<String, MeasureDto> measures = baseMeasuresByMetricKey.get(metricKey);
+    if (measures == null) {
+      measures = loadBaseMeasures(metricKey);
+    }
+    return measures;
+  }
+
+  private synchronized Map<String, MeasureDto> loadBaseMeasures(String metricKey) {
+    Map<String, MeasureDto> measures = baseMeasuresByMetricKey.get(metricKey);
+    if (measures != null) {
+      // loaded by another thread
+      return measures;
+    }
+    Map<String, MeasureDto> loaded = new HashMap<>();
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      dbClient.measureDao().selectLastByRootAndMetricKey(dbSession, treeRootHolder.getRoot().getUuid(), metricKey, context -> {
+        MeasureDto dto = (MeasureDto) context.getResultObject();
+        loaded.put(dto.getComponentUuid(), dto);
+      });
+    }
+    baseMeasuresByMetricKey.put(metricKey, loaded);
+    return loaded;
   }
 
   @Override
-  public Optional<Measure> getRawMeasure(Component component, Metric metric) {
+  public synchronized Optional<Measure> getRawMeasure(Component component, Metric metric) {
     Optional<Measure> local = delegate.getRawMeasure(component, metric);
     if (local.isPresent()) {
       return local;
@@ -87,29 +123,41 @@ public class MeasureRepositoryImpl implements MeasureRepository {
   }
 
   @Override
-  public void add(Component component, Metric metric, Measure measure) {
+  public synchronized double getRawValue(Component component, Metric metric) {
+    double local = delegate.getRawValue(component, metric);
+    if (!Double.isNaN(local)) {
+      return local;
+    }
+
+    // look up in batch after loading (if not yet loaded) measures from batch
+    loadBatchMeasuresForComponent(component);
+    return delegate.getRawValue(component, metric);
+  }
+
+  @Override
+  public synchronized void add(Component component, Metric metric, Measure measure) {
     delegate.add(component, metric, measure);
   }
 
   @Override
-  public void update(Component component, Metric metric, Measure measure) {
+  public synchronized void update(Component component, Metric metric, Measure measure) {
     delegate.update(component, metric, measure);
   }
 
   @Override
-  public Set<Measure> getRawMeasures(Component component, Metric metric) {
+  public synchronized Set<Measure> getRawMeasures(Component component, Metric metric) {
     loadBatchMeasuresForComponent(component);
     return delegate.getRawMeasures(component, metric);
   }
 
   @Override
-  public SetMultimap<String, Measure> getRawMeasures(Component component) {
+  public synchronized SetMultimap<String, Measure> getRawMeasures(Component component) {
     loadBatchMeasuresForComponent(component);
     return delegate.getRawMeasures(component);
   }
 
   private void loadBatchMeasuresForComponent(Component component) {
-    if (loadedComponents.contains(component.getReportAttributes().getRef())) {
+    if (loadedComponents.indexOf(component.getReportAttributes().getRef()) >= 0) {
       return;
     }
 
@@ -33,24 +33,41 @@ import static com.google.common.collect.FluentIterable.from;
 @Immutable
 public final class MeasureVariations {
   private static final String NAN_ERROR_MESSAGE = "NaN is not allowed in MeasureVariation";
+  /**
+   * Marker of missing variations. It can not be confused with a value as NaN is not allowed.
+   */
+  private static final double NO_VARIATION = Double.NaN;
 
-  private final Double[] variations = new Double[5];
+  private final double[] variations = newEmptyVariations();
 
   public MeasureVariations(Double... variations) {
     checkArgument(variations.length <= 5, "There can not be more than 5 variations");
     checkArgument(!from(Arrays.asList(variations)).filter(notNull()).isEmpty(), "There must be at least one variation");
-    for (Double variation : variations) {
+    for (int i = 0; i < variations.length; i++) {
+      Double variation = variations[i];
       checkArgument(variation == null || !Double.isNaN(variation), NAN_ERROR_MESSAGE);
+      if (variation != null) {
+        this.variations[i] = variation;
+      }
     }
+  }
+
+  private MeasureVariations(double[] variations) {
     System.arraycopy(variations, 0, this.variations, 0, variations.length);
   }
 
+  private static double[] newEmptyVariations() {
+    double[] variations = new double[5];
+    Arrays.fill(variations, NO_VARIATION);
+    return variations;
+  }
+
   public static Builder newMeasureVariationsBuilder() {
     return new Builder();
   }
 
   public static final class Builder {
-    private final Double[] variations = new Double[5];
+    private final double[] variations = newEmptyVariations();
 
     private Builder() {
       // prevents instantiation outside static method
@@ -58,7 +75,7 @@ public final class MeasureVariations {
 
     public Builder setVariation(Period period, double variation) {
       int arrayIndex = period.getIndex() - 1;
-      checkState(variations[arrayIndex] == null, String.format("Variation for Period %s has already been set", period.getIndex()));
+      checkState(Double.isNaN(variations[arrayIndex]), String.format("Variation for Period %s has already been set", period.getIndex()));
       checkArgument(!Double.isNaN(variation), NAN_ERROR_MESSAGE);
       variations[arrayIndex] = variation;
       return this;
@@ -71,8 +88,8 @@ public final class MeasureVariations {
      * value.
      */
     public boolean isEmpty() {
-      for (Double variation : variations) {
-        if (variation != null) {
+      for (double variation : variations) {
+        if (!Double.isNaN(variation)) {
           return false;
         }
       }
@@ -80,6 +97,7 @@ public final class MeasureVariations {
     }
 
     public MeasureVariations build() {
+      checkArgument(!isEmpty(), "There must be at least one variation");
       return new MeasureVariations(variations);
     }
   }
@@ -111,7 +129,7 @@ public final class MeasureVariations {
   }
 
   public boolean hasVariation(int periodIndex) {
-    return variations[periodIndex - 1] != null;
+    return !Double.isNaN(variations[periodIndex - 1]);
   }
 
   public double getVariation1() {
@@ -142,14 +160,20 @@ public final class MeasureVariations {
   @Override
   public String toString() {
     return MoreObjects.toStringHelper(this)
-      .add("1", variations[0])
-      .add("2", variations[1])
-      .add("3", variations[2])
-      .add("4", variations[3])
-      .add("5", variations[4])
+      .add("1", toStringValue(0))
+      .add("2", toStringValue(1))
+      .add("3", toStringValue(2))
+      .add("4", toStringValue(3))
+      .add("5", toStringValue(4))
       .toString();
   }
 
+  @Nullable
+  private Double toStringValue(int arrayIndex) {
+    double variation = variations[arrayIndex];
+    return Double.isNaN(variation) ? null : variation;
+  }
+
   @Override
   public boolean equals(@Nullable Object o) {
     if (this == o) {
@@ -34,6 +34,8 @@ public class CEQueueStatusImpl implements CEQueueStatus {
   private final AtomicLong error = new AtomicLong(0);
   private final AtomicLong success = new AtomicLong(0);
   private final AtomicLong processingTime = new AtomicLong(0);
+  private final AtomicLong queueLatency = new AtomicLong(0);
+  private final AtomicLong claimConflicts = new AtomicLong(0);
 
   public CEQueueStatusImpl(DbClient dbClient) {
     this.dbClient = dbClient;
@@ -63,6 +65,17 @@ public class CEQueueStatusImpl implements CEQueueStatus {
     processingTime.addAndGet(ms);
   }
 
+  @Override
+  public long addQueueLatency(long queueLatencyInMs) {
+    checkArgument(queueLatencyInMs >= 0, "Queue latency can not be < 0");
+    return queueLatency.addAndGet(queueLatencyInMs);
+  }
+
+  @Override
+  public long addClaimConflict() {
+    return claimConflicts.incrementAndGet();
+  }
+
   @Override
   public long getPendingCount() {
     try (DbSession dbSession = dbClient.openSession(false)) {
@@ -89,4 +102,14 @@ public class CEQueueStatusImpl implements CEQueueStatus {
   public long getProcessingTime() {
     return processingTime.get();
   }
+
+  @Override
+  public long getQueueLatency() {
+    return queueLatency.get();
+  }
+
+  @Override
+  public long getClaimConflictCount() {
+    return claimConflicts.get();
+  }
 }
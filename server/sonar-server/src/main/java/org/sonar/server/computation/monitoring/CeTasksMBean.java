@@ -48,6 +48,16 @@ public interface CeTasksMBean {
    */
   long getProcessingTime();
 
+  /**
+   * Time spent by tasks waiting in the queue before being processed since startup, in milliseconds.
+   */
+  long getQueueLatency();
+
+  /**
+   * Count of tasks which could not be claimed because another worker claimed them first, since startup.
+   */
+  long getClaimConflictCount();
+
   /**
    * Configured number of Workers.
    */
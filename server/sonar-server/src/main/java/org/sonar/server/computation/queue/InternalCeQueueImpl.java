@@ -20,7 +20,13 @@
 package org.sonar.server.computation.queue;
 
 import com.google.common.base.Optional;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 import org.sonar.api.ce.ComputeEngineSide;
 import org.sonar.api.utils.System2;
@@ -29,11 +35,14 @@ import org.sonar.ce.queue.CeQueueImpl;
 import org.sonar.ce.queue.CeQueueListener;
 import org.sonar.ce.queue.CeTask;
 import org.sonar.ce.queue.CeTaskResult;
+import org.sonar.ce.queue.CeTaskSubmit;
 import org.sonar.core.util.UuidFactory;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.ce.CeActivityDto;
+import org.sonar.db.ce.CeQueueDao;
 import org.sonar.db.ce.CeQueueDto;
+import org.sonar.server.computation.configuration.CeConfiguration;
 
 import static java.lang.String.format;
 
@@ -43,40 +52,128 @@ public class InternalCeQueueImpl extends CeQueueImpl implements InternalCeQueue
   private final System2 system2;
   private final DbClient dbClient;
   private final CEQueueStatus queueStatus;
+  private final CeConfiguration ceConfiguration;
+  private final CeQueueWakeUp queueWakeUp;
 
   // state
   private AtomicBoolean peekPaused = new AtomicBoolean(false);
+  // tasks claimed in db (status IN_PROGRESS) but not yet returned by peek()
+  private final Deque<CeTask> prefetchedTasks = new ArrayDeque<>();
+  // tasks returned by peek() and not removed yet
+  private final AtomicInteger executingTasks = new AtomicInteger(0);
 
   public InternalCeQueueImpl(System2 system2, DbClient dbClient, UuidFactory uuidFactory,
-    CEQueueStatus queueStatus, CeQueueListener[] listeners) {
+    CEQueueStatus queueStatus, CeConfiguration ceConfiguration, CeQueueWakeUp queueWakeUp, CeQueueListener[] listeners) {
     super(dbClient, uuidFactory, listeners);
     this.system2 = system2;
     this.dbClient = dbClient;
     this.queueStatus = queueStatus;
+    this.ceConfiguration = ceConfiguration;
+    this.queueWakeUp = queueWakeUp;
   }
 
+  @Override
+  public CeTask submit(CeTaskSubmit submission) {
+    CeTask task = super.submit(submission);
+    queueWakeUp.wakeUp();
+    return task;
+  }
+
+  @Override
+  public List<CeTask> massSubmit(Collection<CeTaskSubmit> submissions) {
+    List<CeTask> tasks = super.massSubmit(submissions);
+    if (!tasks.isEmpty()) {
+      queueWakeUp.wakeUp();
+    }
+    return tasks;
+  }
+
+  /**
+   * Tasks are claimed by batches: a single request selects as many eligible tasks as there are idle workers.
+   * The tasks which are not returned to the calling worker are kept in a local buffer and idle workers are
+   * woken up to process them.
+   */
   @Override
   public Optional<CeTask> peek() {
     if (peekPaused.get()) {
       return Optional.absent();
     }
+    CeTask task;
+    boolean remainingTasks;
+    synchronized (prefetchedTasks) {
+      if (prefetchedTasks.isEmpty()) {
+        prefetch();
+      }
+      task = prefetchedTasks.pollFirst();
+      remainingTasks = !prefetchedTasks.isEmpty();
+    }
+    if (task == null) {
+      return Optional.absent();
+    }
+    executingTasks.incrementAndGet();
+    queueStatus.addInProgress();
+    if (remainingTasks) {
+      queueWakeUp.wakeUp();
+    }
+    return Optional.of(task);
+  }
+
+  private void prefetch() {
+    // the calling worker is idle, so there is at least one task to claim
+    int workerCount = ceConfiguration.getWorkerCount();
+    int idleWorkers = Math.max(1, Math.min(workerCount, workerCount - executingTasks.get()));
     DbSession dbSession = dbClient.openSession(false);
     try {
-      Optional<CeQueueDto> dto = dbClient.ceQueueDao().peek(dbSession);
-      CeTask task = null;
-      if (dto.isPresent()) {
-        task = loadTask(dbSession, dto.get());
-        queueStatus.addInProgress();
+      CeQueueDao ceQueueDao = dbClient.ceQueueDao();
+      List<CeQueueDto> claimedDtos = new ArrayList<>();
+      for (CeQueueDto dto : ceQueueDao.selectEligibleForPeek(dbSession, idleWorkers)) {
+        if (ceQueueDao.tryToClaim(dbSession, dto)) {
+          claimedDtos.add(dto);
+          queueStatus.addQueueLatency(Math.max(0L, dto.getStartedAt() - dto.getCreatedAt()));
+        } else {
+          queueStatus.addClaimConflict();
+        }
       }
-      return Optional.fromNullable(task);
+      if (claimedDtos.isEmpty()) {
+        return;
+      }
+      dbSession.commit();
+      prefetchedTasks.addAll(loadTasks(dbSession, claimedDtos));
 
     } finally {
       dbClient.closeSession(dbSession);
     }
   }
 
+  /**
+   * Claimed tasks which have not been returned by {@link #peek()} are released, so that they can
+   * be peeked by other Compute Engine instances or when peek is resumed.
+   */
+  private void releasePrefetchedTasks() {
+    synchronized (prefetchedTasks) {
+      if (prefetchedTasks.isEmpty()) {
+        return;
+      }
+      DbSession dbSession = dbClient.openSession(false);
+      try {
+        for (CeTask task : prefetchedTasks) {
+          dbClient.ceQueueDao().resetToPendingStatus(dbSession, task.getUuid());
+        }
+        dbSession.commit();
+        prefetchedTasks.clear();
+
+      } finally {
+        dbClient.closeSession(dbSession);
+      }
+    }
+  }
+
   @Override
   public int clear() {
+    synchronized (prefetchedTasks) {
+      // tasks are canceled, whatever their status
+      prefetchedTasks.clear();
+    }
     return cancelAll(true);
   }
 
@@ -95,6 +192,7 @@ public class InternalCeQueueImpl extends CeQueueImpl implements InternalCeQueue
       remove(dbSession, task, queueDto.get(), activityDto);
 
     } finally {
+      executingTasks.decrementAndGet();
       dbClient.closeSession(dbSession);
     }
   }
@@ -131,6 +229,7 @@ public class InternalCeQueueImpl extends CeQueueImpl implements InternalCeQueue
   @Override
   public void pausePeek() {
     this.peekPaused.set(true);
+    releasePrefetchedTasks();
   }
 
   @Override
@@ -20,8 +20,8 @@
 package org.sonar.server.computation.scm;
 
 import com.google.common.base.Optional;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.db.DbClient;
@@ -31,6 +31,8 @@ import org.sonar.scanner.protocol.output.ScannerReport;
 import org.sonar.server.computation.analysis.AnalysisMetadataHolder;
 import org.sonar.server.computation.batch.BatchReportReader;
 import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.issue.TrackingDataPrefetcher;
+import org.sonar.server.computation.issue.TrackingDataPrefetcher.ScmLines;
 import org.sonar.server.computation.source.SourceHashRepository;
 
 import static java.util.Objects.requireNonNull;
@@ -43,14 +45,18 @@ public class ScmInfoRepositoryImpl implements ScmInfoRepository {
   private final AnalysisMetadataHolder analysisMetadataHolder;
   private final DbClient dbClient;
   private final SourceHashRepository sourceHashRepository;
+  private final TrackingDataPrefetcher trackingDataPrefetcher;
 
-  private final Map<Component, ScmInfo> scmInfoCache = new HashMap<>();
+  // files may be visited concurrently, see ThreadSafeVisitor
+  private final ConcurrentMap<Component, ScmInfo> scmInfoCache = new ConcurrentHashMap<>();
 
-  public ScmInfoRepositoryImpl(BatchReportReader batchReportReader, AnalysisMetadataHolder analysisMetadataHolder, DbClient dbClient, SourceHashRepository sourceHashRepository) {
+  public ScmInfoRepositoryImpl(BatchReportReader batchReportReader, AnalysisMetadataHolder analysisMetadataHolder, DbClient dbClient,
+    SourceHashRepository sourceHashRepository, TrackingDataPrefetcher trackingDataPrefetcher) {
     this.batchReportReader = batchReportReader;
     this.analysisMetadataHolder = analysisMetadataHolder;
     this.dbClient = dbClient;
     this.sourceHashRepository = sourceHashRepository;
+    this.trackingDataPrefetcher = trackingDataPrefetcher;
   }
 
   @Override
@@ -69,8 +75,8 @@ public class ScmInfoRepositoryImpl implements ScmInfoRepository {
     }
 
     scmInfo = getScmInfoForComponent(component);
-    scmInfoCache.put(component, scmInfo);
-    return optionalOf(scmInfo);
+    ScmInfo cached = scmInfoCache.putIfAbsent(component, scmInfo);
+    return optionalOf(cached == null ? scmInfo : cached);
   }
 
   private static Optional<ScmInfo> optionalOf(ScmInfo scmInfo) {
@@ -97,6 +103,15 @@ public class ScmInfoRepositoryImpl implements ScmInfoRepository {
       return NoScmInfo.INSTANCE;
     }
 
+    Optional<ScmLines> prefetchedLines = trackingDataPrefetcher.takeScmLines(file.getUuid());
+    if (prefetchedLines.isPresent()) {
+      ScmLines lines = prefetchedLines.get();
+      if (!sourceHashRepository.getRawSourceHash(file).equals(lines.getSrcHash())) {
+        return NoScmInfo.INSTANCE;
+      }
+      return DbScmInfo.create(file, lines.getLines()).or(NoScmInfo.INSTANCE);
+    }
+
     LOGGER.trace("Reading SCM info from db for file '{}'", file.getKey());
     DbSession dbSession = dbClient.openSession(false);
     try {
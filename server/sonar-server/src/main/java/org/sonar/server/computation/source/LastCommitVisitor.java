@@ -24,6 +24,7 @@ import org.sonar.api.measures.CoreMetrics;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.CrawlerDepthLimit;
 import org.sonar.server.computation.component.PathAwareVisitorAdapter;
+import org.sonar.server.computation.component.ThreadSafeVisitor;
 import org.sonar.server.computation.measure.Measure;
 import org.sonar.server.computation.measure.MeasureRepository;
 import org.sonar.server.computation.metric.Metric;
@@ -33,7 +34,11 @@ import org.sonar.server.computation.scm.ScmInfoRepository;
 
 import static org.sonar.server.computation.component.ComponentVisitor.Order.POST_ORDER;
 
-public class LastCommitVisitor extends PathAwareVisitorAdapter<LastCommitVisitor.LastCommit> {
+/**
+ * Files are processed independently of each other and of the other visitors, hence the visitor is thread safe as
+ * long as {@link LastCommit} is.
+ */
+public class LastCommitVisitor extends PathAwareVisitorAdapter<LastCommitVisitor.LastCommit> implements ThreadSafeVisitor {
 
   private final MeasureRepository measureRepository;
   private final ScmInfoRepository scmInfoRepository;
@@ -119,11 +124,12 @@ public class LastCommitVisitor extends PathAwareVisitorAdapter<LastCommitVisitor
   public static final class LastCommit {
     private long date = 0;
 
-    public void addDate(long l) {
+    // dates of sibling files are aggregated concurrently
+    public synchronized void addDate(long l) {
       this.date = Math.max(this.date, l);
     }
 
-    public long getDate() {
+    public synchronized long getDate() {
       return date;
     }
   }
@@ -22,14 +22,19 @@ package org.sonar.server.computation.step;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
-import java.util.Collection;
+import com.google.common.collect.ImmutableList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.sonar.api.resources.Scopes;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.measure.PastMeasureDto;
@@ -39,7 +44,6 @@ import org.sonar.server.computation.component.DepthTraversalTypeAwareCrawler;
 import org.sonar.server.computation.component.TreeRootHolder;
 import org.sonar.server.computation.component.TypeAwareVisitorAdapter;
 import org.sonar.server.computation.measure.Measure;
-import org.sonar.server.computation.measure.MeasureKey;
 import org.sonar.server.computation.measure.MeasureRepository;
 import org.sonar.server.computation.measure.MeasureVariations;
 import org.sonar.server.computation.metric.Metric;
@@ -47,7 +51,6 @@ import org.sonar.server.computation.metric.MetricRepository;
 import org.sonar.server.computation.period.Period;
 import org.sonar.server.computation.period.PeriodsHolder;
 
-import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.FluentIterable.from;
 import static java.lang.String.format;
 import static org.sonar.server.computation.component.Component.Type.DIRECTORY;
@@ -58,25 +61,23 @@ import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_
  * Set variations on all numeric measures found in the repository.
  * This step MUST be executed after all steps that create some measures
  * <p/>
+ * Past measures of each period are loaded with a single query for all the components of the tree.
+ * <p/>
  * Note that measures on developer are not handle yet.
  */
 public class ComputeMeasureVariationsStep implements ComputationStep {
 
+  // measures on files are currently purged, so past measures are not available on files
+  private static final CrawlerDepthLimit VISITED_DEPTH = CrawlerDepthLimit.reportMaxDepth(DIRECTORY).withViewsMaxDepth(SUBVIEW);
+  // scopes of the visited components in db. Views and sub-views have the scope of projects.
+  private static final List<String> VISITED_SCOPES = ImmutableList.of(Scopes.PROJECT, Scopes.DIRECTORY);
+
   private final DbClient dbClient;
   private final TreeRootHolder treeRootHolder;
   private final PeriodsHolder periodsHolder;
   private final MetricRepository metricRepository;
   private final MeasureRepository measureRepository;
 
-  private final Function<PastMeasureDto, MeasureKey> pastMeasureToMeasureKey = new Function<PastMeasureDto, MeasureKey>() {
-    @Nullable
-    @Override
-    public MeasureKey apply(@Nonnull PastMeasureDto input) {
-      Metric metric = metricRepository.getById((long)input.getMetricId());
-      return new MeasureKey(metric.getKey(), null);
-    }
-  };
-
   public ComputeMeasureVariationsStep(DbClient dbClient, TreeRootHolder treeRootHolder, PeriodsHolder periodsHolder, MetricRepository metricRepository,
     MeasureRepository measureRepository) {
     this.dbClient = dbClient;
@@ -91,131 +92,112 @@ public class ComputeMeasureVariationsStep implements ComputationStep {
     DbSession dbSession = dbClient.openSession(false);
     try {
       List<Metric> metrics = from(metricRepository.getAll()).filter(NumericMetric.INSTANCE).toList();
-      new DepthTraversalTypeAwareCrawler(new VariationMeasuresVisitor(dbSession, metrics))
+      ComponentUuidsCollector componentUuids = new ComponentUuidsCollector();
+      new DepthTraversalTypeAwareCrawler(componentUuids).visit(treeRootHolder.getRoot());
+      Map<Period, PastMeasures> pastMeasuresByPeriod = new LinkedHashMap<>();
+      for (Period period : periodsHolder.getPeriods()) {
+        pastMeasuresByPeriod.put(period, loadPastMeasures(dbSession, period, componentUuids.uuids, metrics));
+      }
+      new DepthTraversalTypeAwareCrawler(new VariationMeasuresVisitor(metrics, pastMeasuresByPeriod))
         .visit(treeRootHolder.getRoot());
     } finally {
       dbClient.closeSession(dbSession);
     }
   }
 
-  private class VariationMeasuresVisitor extends TypeAwareVisitorAdapter {
+  /**
+   * Loads with a single query the past measures of all the visited components in the analysis of the period
+   */
+  private PastMeasures loadPastMeasures(DbSession dbSession, Period period, final Set<String> componentUuids, List<Metric> metrics) {
+    Set<Integer> metricIds = from(metrics).transform(MetricDtoToMetricId.INSTANCE).toSet();
+    final PastMeasures pastMeasures = new PastMeasures();
+    dbClient.measureDao().selectPastMeasuresOfAnalysis(dbSession, period.getAnalysisUuid(), VISITED_SCOPES, metricIds, new ResultHandler() {
+      @Override
+      public void handleResult(ResultContext context) {
+        PastMeasureDto dto = (PastMeasureDto) context.getResultObject();
+        // components removed since the period are ignored
+        if (componentUuids.contains(dto.getComponentUuid())) {
+          pastMeasures.add(dto.getComponentUuid(), dto.getMetricId(), dto.hasValue() ? dto.getValue() : 0d);
+        }
+      }
+    });
+    return pastMeasures;
+  }
 
-    private final DbSession session;
-    private final Set<Integer> metricIds;
-    private final List<Metric> metrics;
+  private static class ComponentUuidsCollector extends TypeAwareVisitorAdapter {
+    private final Set<String> uuids = new HashSet<>();
 
-    VariationMeasuresVisitor(DbSession session, List<Metric> metrics) {
-      // measures on files are currently purged, so past measures are not available on files
-      super(CrawlerDepthLimit.reportMaxDepth(DIRECTORY).withViewsMaxDepth(SUBVIEW), PRE_ORDER);
-      this.session = session;
-      this.metricIds = from(metrics).transform(MetricDtoToMetricId.INSTANCE).toSet();
-      this.metrics = metrics;
+    ComponentUuidsCollector() {
+      super(VISITED_DEPTH, PRE_ORDER);
     }
 
     @Override
     public void visitAny(Component component) {
-      MeasuresWithVariationRepository measuresWithVariationRepository = computeMeasuresWithVariations(component);
-      processMeasuresWithVariation(component, measuresWithVariationRepository);
-    }
-
-    private MeasuresWithVariationRepository computeMeasuresWithVariations(Component component) {
-      MeasuresWithVariationRepository measuresWithVariationRepository = new MeasuresWithVariationRepository();
-      for (Period period : periodsHolder.getPeriods()) {
-        List<PastMeasureDto> pastMeasures = dbClient.measureDao()
-          .selectPastMeasures(session, component.getUuid(), period.getAnalysisUuid(), metricIds);
-        setVariationMeasures(component, pastMeasures, period.getIndex(), measuresWithVariationRepository);
+      if (pastMeasuresByPeriod.isEmpty()) {
+        return;
       }
-      return measuresWithVariationRepository;
-    }
-
-    private void setVariationMeasures(Component component, List<PastMeasureDto> pastMeasures, int period, MeasuresWithVariationRepository measuresWithVariationRepository) {
-      Map<MeasureKey, PastMeasureDto> pastMeasuresByMeasureKey = from(pastMeasures).uniqueIndex(pastMeasureToMeasureKey);
       for (Metric metric : metrics) {
-        Optional<Measure> measure = measureRepository.getRawMeasure(component, metric);
-        if (measure.isPresent() && !measure.get().hasVariations()) {
-          PastMeasureDto pastMeasure = pastMeasuresByMeasureKey.get(new MeasureKey(metric.getKey(), null));
-          double pastValue = (pastMeasure != null && pastMeasure.hasValue()) ? pastMeasure.getValue() : 0d;
-          measuresWithVariationRepository.add(metric, measure.get(), period, computeVariation(measure.get(), pastValue));
+        // the numeric value is read without creating a Measure, most components have no measure for most metrics
+        double value = measureRepository.getRawValue(component, metric);
+        if (!Double.isNaN(value)) {
+          setVariations(component, metric, value);
         }
       }
     }
 
-    private double computeVariation(Measure measure, double pastValue) {
-      switch (measure.getValueType()) {
-        case INT:
-          return measure.getIntValue() - pastValue;
-        case LONG:
-          return measure.getLongValue() - pastValue;
-        case DOUBLE:
-          return measure.getDoubleValue() - pastValue;
-        case BOOLEAN:
-          return (measure.getBooleanValue() ? 1d : 0d) - pastValue;
-        default:
-          throw new IllegalArgumentException(format("Unsupported Measure.ValueType on measure '%s'", measure));
+    private void setVariations(Component component, Metric metric, double value) {
+      Optional<Measure> measure = measureRepository.getRawMeasure(component, metric);
+      if (!measure.isPresent() || measure.get().hasVariations()) {
+        return;
       }
-    }
-
-    private void processMeasuresWithVariation(Component component, MeasuresWithVariationRepository measuresWithVariationRepository) {
-      for (MeasureWithVariations measureWithVariations : measuresWithVariationRepository.measures()) {
-        Metric metric = measureWithVariations.getMetric();
-        Measure measure = Measure.updatedMeasureBuilder(measureWithVariations.getMeasure())
-          .setVariations(new MeasureVariations(
-            measureWithVariations.getVariation(1),
-            measureWithVariations.getVariation(2),
-            measureWithVariations.getVariation(3),
-            measureWithVariations.getVariation(4),
-            measureWithVariations.getVariation(5)))
-          .create();
-        measureRepository.update(component, metric, measure);
+      MeasureVariations.Builder variations = MeasureVariations.newMeasureVariationsBuilder();
+      for (Map.Entry<Period, PastMeasures> entry : pastMeasuresByPeriod.entrySet()) {
+        variations.setVariation(entry.getKey(), value - entry.getValue().getValue(component.getUuid(), metric.getId()));
       }
+      measureRepository.update(component, metric, Measure.updatedMeasureBuilder(measure.get()).setVariations(variations.build()).create());
     }
   }
 
-  private static final class MeasuresWithVariationRepository {
-
-    private final Map<MeasureKey, MeasureWithVariations> measuresWithVariations = new HashMap<>();
-
-    public void add(Metric metric, final Measure measure, int variationIndex, double variationValue) {
-      checkArgument(measure.getDeveloper() == null, "%s does not support computing variations of Measures for Developer", getClass().getSimpleName());
-      MeasureKey measureKey = new MeasureKey(metric.getKey(), null);
-      MeasureWithVariations measureWithVariations = measuresWithVariations.get(measureKey);
-      if (measureWithVariations == null) {
-        measureWithVariations = new MeasureWithVariations(metric, measure);
-        measuresWithVariations.put(measureKey, measureWithVariations);
+  /**
+   * Values of the past measures of an analysis, stored by columns. As measures are read ordered by component
+   * then by metric, the rows of a component are contiguous and sorted by metric id.
+   */
+  private static final class PastMeasures {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Map<String, int[]> rowRangeByComponentUuid = new HashMap<>();
+    private int[] metricIds = new int[INITIAL_CAPACITY];
+    private double[] values = new double[INITIAL_CAPACITY];
+    private int size = 0;
+
+    void add(String componentUuid, int metricId, double value) {
+      int[] range = rowRangeByComponentUuid.get(componentUuid);
+      if (range == null) {
+        range = new int[] {size, size};
+        rowRangeByComponentUuid.put(componentUuid, range);
+      } else if (range[1] != size) {
+        throw new IllegalStateException(format("Past measures of component %s are not contiguous", componentUuid));
       }
-      measureWithVariations.setVariation(variationIndex, variationValue);
-    }
-
-    public Collection<MeasureWithVariations> measures() {
-      return measuresWithVariations.values();
-    }
-  }
-
-  private static final class MeasureWithVariations {
-    private final Metric metric;
-    private final Measure measure;
-    private final Double[] variations = new Double[5];
-
-    MeasureWithVariations(Metric metric, Measure measure) {
-      this.metric = metric;
-      this.measure = measure;
-    }
-
-    public Measure getMeasure() {
-      return measure;
-    }
-
-    public Metric getMetric() {
-      return metric;
-    }
-
-    public void setVariation(int index, @Nullable Double value) {
-      variations[index - 1] = value;
-    }
-
-    @CheckForNull
-    public Double getVariation(int index) {
-      return variations[index - 1];
+      if (size == metricIds.length) {
+        metricIds = Arrays.copyOf(metricIds, size * 2);
+        values = Arrays.copyOf(values, size * 2);
+      }
+      metricIds[size] = metricId;
+      values[size] = value;
+      size++;
+      range[1] = size;
+    }
+
+    /**
+     * Value of the past measure, or 0 if the component had no such measure
+     */
+    double getValue(String componentUuid, int metricId) {
+      int[] range = rowRangeByComponentUuid.get(componentUuid);
+      if (range == null) {
+        return 0d;
+      }
+      int row = Arrays.binarySearch(metricIds, range[0], range[1], metricId);
+      return row >= 0 ? values[row] : 0d;
     }
   }
 
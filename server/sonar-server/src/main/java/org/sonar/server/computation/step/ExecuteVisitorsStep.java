@@ -21,22 +21,33 @@ package org.sonar.server.computation.step;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.sonar.api.config.Settings;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.server.computation.component.ComponentVisitor;
 import org.sonar.server.computation.component.TreeRootHolder;
 import org.sonar.server.computation.component.VisitorsCrawler;
 
+/**
+ * When {@value #THREADS_PROPERTY} is greater than 1, the visitors of files which are
+ * {@link org.sonar.server.computation.component.ThreadSafeVisitor} visit files concurrently in a pool of that many
+ * threads, the other visitors being executed sequentially as usual.
+ */
 public class ExecuteVisitorsStep implements ComputationStep {
 
+  static final String THREADS_PROPERTY = "sonar.ce.visitors.threads";
+
   private static final Logger LOGGER = Loggers.get(ExecuteVisitorsStep.class);
 
   private final TreeRootHolder treeRootHolder;
   private final List<ComponentVisitor> visitors;
+  private final Settings settings;
 
-  public ExecuteVisitorsStep(TreeRootHolder treeRootHolder, List<ComponentVisitor> visitors) {
+  public ExecuteVisitorsStep(TreeRootHolder treeRootHolder, List<ComponentVisitor> visitors, Settings settings) {
     this.treeRootHolder = treeRootHolder;
     this.visitors = visitors;
+    this.settings = settings;
   }
 
   @Override
@@ -46,11 +57,30 @@ public class ExecuteVisitorsStep implements ComputationStep {
 
   @Override
   public void execute() {
-    VisitorsCrawler visitorsCrawler = new VisitorsCrawler(visitors);
+    int threads = getThreads();
+    if (threads == 1) {
+      visit(new VisitorsCrawler(visitors));
+      return;
+    }
+
+    ForkJoinPool forkJoinPool = new ForkJoinPool(threads);
+    try {
+      visit(new VisitorsCrawler(visitors, forkJoinPool));
+    } finally {
+      forkJoinPool.shutdownNow();
+    }
+  }
+
+  private void visit(VisitorsCrawler visitorsCrawler) {
     visitorsCrawler.visit(treeRootHolder.getRoot());
     logVisitorExecutionDurations(visitors, visitorsCrawler);
   }
 
+  private int getThreads() {
+    int threads = settings.getInt(THREADS_PROPERTY);
+    return threads > 0 ? threads : 1;
+  }
+
   private static void logVisitorExecutionDurations(List<ComponentVisitor> visitors, VisitorsCrawler visitorsCrawler) {
     LOGGER.info("  Execution time for each component visitor:");
     Map<ComponentVisitor, Long> cumulativeDurations = visitorsCrawler.getCumulativeDurations();
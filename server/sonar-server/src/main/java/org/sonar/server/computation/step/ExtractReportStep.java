@@ -28,11 +28,15 @@ import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.ce.queue.CeTask;
 import org.sonar.ce.queue.report.ReportFiles;
+import org.sonar.scanner.protocol.output.ReportArchive;
 import org.sonar.server.computation.batch.MutableBatchReportDirectoryHolder;
 
 /**
- * Extracts the content zip file of the {@link CeTask} to a temp directory and adds a {@link File}
- * representing that temp directory to the {@link MutableBatchReportDirectoryHolder}.
+ * Makes the report of the {@link CeTask} available to the {@link MutableBatchReportDirectoryHolder}.
+ * <p>
+ * A {@link ReportArchive} is read in place, without any copy. A zip file, as sent by previous versions of the scanner,
+ * is extracted to a temp directory.
+ * </p>
  */
 public class ExtractReportStep implements ComputationStep {
   private static final Logger LOG = Loggers.get(ExtractReportStep.class);
@@ -52,8 +56,17 @@ public class ExtractReportStep implements ComputationStep {
 
   @Override
   public void execute() {
+    File report = reportFiles.fileForUuid(task.getUuid());
+    if (ReportArchive.isArchive(report)) {
+      reportDirectoryHolder.setDirectory(report);
+      LOG.info("Analysis report is read from archive | size={}", FileUtils.byteCountToDisplaySize(FileUtils.sizeOf(report)));
+    } else {
+      unzip(report);
+    }
+  }
+
+  private void unzip(File zip) {
     File dir = tempFolder.newDir();
-    File zip = reportFiles.fileForUuid(task.getUuid());
     try {
       ZipUtils.unzip(zip, dir);
       reportDirectoryHolder.setDirectory(dir);
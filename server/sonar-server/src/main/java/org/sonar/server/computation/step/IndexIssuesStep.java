@@ -20,21 +20,25 @@
 package org.sonar.server.computation.step;
 
 import org.sonar.server.computation.component.TreeRootHolder;
-import org.sonar.server.issue.index.IssueIndexer;
+import org.sonar.server.es.IndexingQueue;
+
+import static org.sonar.server.issue.index.IssueIndexDefinition.INDEX;
 
 public class IndexIssuesStep implements ComputationStep {
 
-  private final IssueIndexer indexer;
+  private final IndexingQueue indexingQueue;
   private final TreeRootHolder treeRootHolder;
 
-  public IndexIssuesStep(IssueIndexer indexer, TreeRootHolder treeRootHolder) {
-    this.indexer = indexer;
+  public IndexIssuesStep(IndexingQueue indexingQueue, TreeRootHolder treeRootHolder) {
+    this.indexingQueue = indexingQueue;
     this.treeRootHolder = treeRootHolder;
   }
 
   @Override
   public void execute() {
-    indexer.index(treeRootHolder.getRoot().getUuid());
+    // does not wait for Elasticsearch. The request is persisted, so it is processed even if
+    // the Compute Engine is stopped in the meantime.
+    indexingQueue.enqueue(INDEX, treeRootHolder.getRoot().getUuid());
   }
 
   @Override
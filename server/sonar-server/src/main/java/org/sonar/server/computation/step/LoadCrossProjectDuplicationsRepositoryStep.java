@@ -20,9 +20,19 @@
 package org.sonar.server.computation.step;
 
 import com.google.common.base.Function;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import org.sonar.api.config.Settings;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.db.DbClient;
@@ -44,6 +54,8 @@ import org.sonar.server.computation.snapshot.Snapshot;
 
 import static com.google.common.collect.FluentIterable.from;
 import static com.google.common.collect.Lists.newArrayList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.sonar.db.DatabaseUtils.PARTITION_SIZE_FOR_ORACLE;
 import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_ORDER;
 
 /**
@@ -52,10 +64,20 @@ import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_
  * Blocks can be empty if :
  * - The file is excluded from the analysis using {@link org.sonar.api.CoreProperties#CPD_EXCLUSIONS}
  * - On Java, if the number of statements of the file is too small, nothing will be sent.
+ *
+ * Files are processed by batches of the same language, so that the candidate blocks of many files are loaded by a single
+ * request, within the limit of {@link org.sonar.db.DatabaseUtils#PARTITION_SIZE_FOR_ORACLE} hashes.
+ *
+ * When {@link #BLOOM_FILTER_PROPERTY} is enabled, the hashes of the blocks of other projects are first loaded into a bloom
+ * filter, for each language. Only the hashes that may exist in database are requested, and files with no such hash
+ * are skipped. Loading the filter requires to read all the blocks of the language, so it is worth only for large projects.
  */
 public class LoadCrossProjectDuplicationsRepositoryStep implements ComputationStep {
 
+  static final String BLOOM_FILTER_PROPERTY = "sonar.cpd.cross_project.bloom_filter";
+
   private static final Logger LOGGER = Loggers.get(LoadCrossProjectDuplicationsRepositoryStep.class);
+  private static final double BLOOM_FILTER_FALSE_POSITIVE_PROBABILITY = 0.01;
 
   private final TreeRootHolder treeRootHolder;
   private final BatchReportReader reportReader;
@@ -63,22 +85,28 @@ public class LoadCrossProjectDuplicationsRepositoryStep implements ComputationSt
   private final IntegrateCrossProjectDuplications integrateCrossProjectDuplications;
   private final CrossProjectDuplicationStatusHolder crossProjectDuplicationStatusHolder;
   private final DbClient dbClient;
+  private final Settings settings;
 
   public LoadCrossProjectDuplicationsRepositoryStep(TreeRootHolder treeRootHolder, BatchReportReader reportReader,
     AnalysisMetadataHolder analysisMetadataHolder, CrossProjectDuplicationStatusHolder crossProjectDuplicationStatusHolder,
-    IntegrateCrossProjectDuplications integrateCrossProjectDuplications, DbClient dbClient) {
+    IntegrateCrossProjectDuplications integrateCrossProjectDuplications, DbClient dbClient, Settings settings) {
     this.treeRootHolder = treeRootHolder;
     this.reportReader = reportReader;
     this.analysisMetadataHolder = analysisMetadataHolder;
     this.integrateCrossProjectDuplications = integrateCrossProjectDuplications;
     this.crossProjectDuplicationStatusHolder = crossProjectDuplicationStatusHolder;
     this.dbClient = dbClient;
+    this.settings = settings;
   }
 
   @Override
   public void execute() {
     if (crossProjectDuplicationStatusHolder.isEnabled()) {
-      new DepthTraversalTypeAwareCrawler(new CrossProjectDuplicationVisitor()).visit(treeRootHolder.getRoot());
+      try (DbSession dbSession = dbClient.openSession(false)) {
+        CrossProjectDuplicationVisitor visitor = new CrossProjectDuplicationVisitor(dbSession, settings.getBoolean(BLOOM_FILTER_PROPERTY));
+        new DepthTraversalTypeAwareCrawler(visitor).visit(treeRootHolder.getRoot());
+        visitor.flush();
+      }
     }
   }
 
@@ -88,9 +116,18 @@ public class LoadCrossProjectDuplicationsRepositoryStep implements ComputationSt
   }
 
   private class CrossProjectDuplicationVisitor extends TypeAwareVisitorAdapter {
+    private final DbSession dbSession;
+    private final boolean bloomFilterEnabled;
+    private final String analysisUuid;
+    private final Map<String, FilesBatch> batchesByLanguage = new LinkedHashMap<>();
+    private final Map<String, BloomFilter<CharSequence>> bloomFiltersByLanguage = new HashMap<>();
 
-    private CrossProjectDuplicationVisitor() {
+    private CrossProjectDuplicationVisitor(DbSession dbSession, boolean bloomFilterEnabled) {
       super(CrawlerDepthLimit.FILE, PRE_ORDER);
+      this.dbSession = dbSession;
+      this.bloomFilterEnabled = bloomFilterEnabled;
+      Snapshot projectSnapshot = analysisMetadataHolder.getBaseProjectSnapshot();
+      this.analysisUuid = projectSnapshot == null ? null : projectSnapshot.getUuid();
     }
 
     @Override
@@ -101,29 +138,132 @@ public class LoadCrossProjectDuplicationsRepositoryStep implements ComputationSt
         return;
       }
 
-      Collection<String> hashes = from(cpdTextBlocks).transform(CpdTextBlockToHash.INSTANCE).toList();
-      List<DuplicationUnitDto> dtos = selectDuplicates(file, hashes);
-      if (dtos.isEmpty()) {
+      String language = file.getFileAttributes().getLanguageKey();
+      Collection<String> hashes = from(cpdTextBlocks).transform(CpdTextBlockToHash.INSTANCE).toSet();
+      BloomFilter<CharSequence> bloomFilter = getBloomFilter(language);
+      if (bloomFilter != null) {
+        hashes = from(hashes).filter(bloomFilter::mightContain).toSet();
+        if (hashes.isEmpty()) {
+          LOGGER.trace("No cpd block of file {} is known by other projects", file.getKey());
+          return;
+        }
+      }
+
+      FilesBatch batch = batchesByLanguage.get(language);
+      if (batch == null) {
+        batch = new FilesBatch(language);
+        batchesByLanguage.put(language, batch);
+      }
+      batch.add(file, cpdTextBlocks, hashes);
+      if (batch.hashCount() >= PARTITION_SIZE_FOR_ORACLE) {
+        flush(batch);
+      }
+    }
+
+    private void flush() {
+      for (FilesBatch batch : batchesByLanguage.values()) {
+        flush(batch);
+      }
+    }
+
+    private void flush(FilesBatch batch) {
+      if (batch.isEmpty()) {
         return;
       }
+      dbClient.duplicationDao().selectCandidates(dbSession, analysisUuid, batch.language, batch.hashes(),
+        context -> batch.addDuplicatedBlock((DuplicationUnitDto) context.getResultObject()));
+
+      for (FileBlocks fileBlocks : batch.files) {
+        if (!fileBlocks.duplicatedBlocks.isEmpty()) {
+          Component file = fileBlocks.file;
+          Collection<Block> originBlocks = from(fileBlocks.cpdTextBlocks).transform(new CpdTextBlockToBlock(file.getKey())).toList();
+          LOGGER.trace("Found {} duplicated cpd blocks on file {}", fileBlocks.duplicatedBlocks.size(), file.getKey());
+          integrateCrossProjectDuplications.computeCpd(file, originBlocks, fileBlocks.duplicatedBlocks);
+        }
+      }
+      batch.clear();
+    }
+
+    @CheckForNull
+    private BloomFilter<CharSequence> getBloomFilter(String language) {
+      if (!bloomFilterEnabled) {
+        return null;
+      }
+      BloomFilter<CharSequence> bloomFilter = bloomFiltersByLanguage.get(language);
+      if (bloomFilter == null) {
+        int expectedHashes = dbClient.duplicationDao().countHashes(dbSession, analysisUuid, language);
+        BloomFilter<CharSequence> newBloomFilter = BloomFilter.create(Funnels.stringFunnel(UTF_8), Math.max(expectedHashes, 1), BLOOM_FILTER_FALSE_POSITIVE_PROBABILITY);
+        dbClient.duplicationDao().selectHashes(dbSession, analysisUuid, language, context -> newBloomFilter.put((String) context.getResultObject()));
+        LOGGER.debug("Loaded {} cpd blocks of language {} into bloom filter", expectedHashes, language);
+        bloomFiltersByLanguage.put(language, newBloomFilter);
+        bloomFilter = newBloomFilter;
+      }
+      return bloomFilter;
+    }
+  }
 
-      Collection<Block> duplicatedBlocks = from(dtos).transform(DtoToBlock.INSTANCE).toList();
-      Collection<Block> originBlocks = from(cpdTextBlocks).transform(new CpdTextBlockToBlock(file.getKey())).toList();
-      LOGGER.trace("Found {} duplicated cpd blocks on file {}", duplicatedBlocks.size(), file.getKey());
+  /**
+   * Files of the same language which candidate blocks are loaded by the same request
+   */
+  private static class FilesBatch {
+    private final String language;
+    private final List<FileBlocks> files = new ArrayList<>();
+    private final Map<String, List<FileBlocks>> filesByHash = new HashMap<>();
 
-      integrateCrossProjectDuplications.computeCpd(file, originBlocks, duplicatedBlocks);
+    private FilesBatch(String language) {
+      this.language = language;
     }
 
-    private List<DuplicationUnitDto> selectDuplicates(Component file, Collection<String> hashes) {
-      DbSession dbSession = dbClient.openSession(false);
-      try {
-        Snapshot projectSnapshot = analysisMetadataHolder.getBaseProjectSnapshot();
-        String analysisUuid = projectSnapshot == null ? null : projectSnapshot.getUuid();
-        return dbClient.duplicationDao().selectCandidates(dbSession, analysisUuid, file.getFileAttributes().getLanguageKey(), hashes);
-      } finally {
-        dbClient.closeSession(dbSession);
+    private void add(Component file, List<CpdTextBlock> cpdTextBlocks, Collection<String> hashes) {
+      FileBlocks fileBlocks = new FileBlocks(file, cpdTextBlocks);
+      files.add(fileBlocks);
+      for (String hash : hashes) {
+        List<FileBlocks> filesOfHash = filesByHash.get(hash);
+        if (filesOfHash == null) {
+          filesOfHash = new ArrayList<>(1);
+          filesByHash.put(hash, filesOfHash);
+        }
+        filesOfHash.add(fileBlocks);
       }
     }
+
+    private void addDuplicatedBlock(DuplicationUnitDto dto) {
+      List<FileBlocks> filesOfHash = filesByHash.get(dto.getHash());
+      if (filesOfHash != null) {
+        Block block = DtoToBlock.INSTANCE.apply(dto);
+        for (FileBlocks fileBlocks : filesOfHash) {
+          fileBlocks.duplicatedBlocks.add(block);
+        }
+      }
+    }
+
+    private Set<String> hashes() {
+      return new HashSet<>(filesByHash.keySet());
+    }
+
+    private int hashCount() {
+      return filesByHash.size();
+    }
+
+    private boolean isEmpty() {
+      return files.isEmpty();
+    }
+
+    private void clear() {
+      files.clear();
+      filesByHash.clear();
+    }
+  }
+
+  private static class FileBlocks {
+    private final Component file;
+    private final List<CpdTextBlock> cpdTextBlocks;
+    private final List<Block> duplicatedBlocks = new ArrayList<>();
+
+    private FileBlocks(Component file, List<CpdTextBlock> cpdTextBlocks) {
+      this.file = file;
+      this.cpdTextBlocks = cpdTextBlocks;
+    }
   }
 
   private enum CpdTextBlockToHash implements Function<CpdTextBlock, String> {
@@ -20,17 +20,27 @@
 package org.sonar.server.computation.step;
 
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.ibatis.session.ResultContext;
 import org.apache.ibatis.session.ResultHandler;
+import org.sonar.api.config.Settings;
 import org.sonar.api.utils.System2;
 import org.sonar.core.util.CloseableIterator;
 import org.sonar.db.DbClient;
@@ -62,8 +72,26 @@ import org.sonar.server.computation.source.SymbolsLineReader;
 
 import static org.sonar.server.computation.component.ComponentVisitor.Order.PRE_ORDER;
 
+/**
+ * Rows of FILE_SOURCES are written with JDBC batches, which are flushed as soon as the size of their data reaches
+ * {@value #BATCH_SIZE_IN_BYTES_PROPERTY} bytes ({@value #DEFAULT_BATCH_SIZE_IN_BYTES} by default) in order to keep
+ * memory under control when files are big.
+ * <p>
+ * When {@value #THREADS_PROPERTY} is greater than 1, serialization, compression and hashing of the sources of files are
+ * done by worker threads, while the thread executing the step keeps on reading report and writing to database.
+ * </p>
+ */
 public class PersistFileSourcesStep implements ComputationStep {
 
+  static final String BATCH_SIZE_IN_BYTES_PROPERTY = "sonar.ce.fileSources.batchSizeInBytes";
+  static final long DEFAULT_BATCH_SIZE_IN_BYTES = 8L * 1024 * 1024;
+  static final String THREADS_PROPERTY = "sonar.ce.fileSources.threads";
+  /**
+   * Maximum number of files being encoded per worker thread. It bounds the memory used by the sources waiting
+   * to be persisted.
+   */
+  private static final int PENDING_FILES_PER_THREAD = 2;
+
   private final DbClient dbClient;
   private final System2 system2;
   private final TreeRootHolder treeRootHolder;
@@ -71,9 +99,10 @@ public class PersistFileSourcesStep implements ComputationStep {
   private final SourceLinesRepository sourceLinesRepository;
   private final ScmInfoRepository scmInfoRepository;
   private final DuplicationRepository duplicationRepository;
+  private final Settings settings;
 
   public PersistFileSourcesStep(DbClient dbClient, System2 system2, TreeRootHolder treeRootHolder, BatchReportReader reportReader, SourceLinesRepository sourceLinesRepository,
-    ScmInfoRepository scmInfoRepository, DuplicationRepository duplicationRepository) {
+    ScmInfoRepository scmInfoRepository, DuplicationRepository duplicationRepository, Settings settings) {
     this.dbClient = dbClient;
     this.system2 = system2;
     this.treeRootHolder = treeRootHolder;
@@ -81,30 +110,62 @@ public class PersistFileSourcesStep implements ComputationStep {
     this.sourceLinesRepository = sourceLinesRepository;
     this.scmInfoRepository = scmInfoRepository;
     this.duplicationRepository = duplicationRepository;
+    this.settings = settings;
   }
 
   @Override
   public void execute() {
-    // Don't use batch insert for file_sources since keeping all data in memory can produce OOM for big files
-    DbSession session = dbClient.openSession(false);
+    int threads = getThreads();
+    ExecutorService encoders = null;
+    if (threads > 1) {
+      encoders = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+        .setNameFormat("FileSourcesEncoder-%d")
+        .setDaemon(true)
+        .build());
+    }
+    DbSession session = dbClient.openSession(true);
     try {
-      new DepthTraversalTypeAwareCrawler(new FileSourceVisitor(session))
+      FileSourceVisitor visitor = new FileSourceVisitor(session, getBatchSizeInBytes(), encoders, threads * PENDING_FILES_PER_THREAD);
+      new DepthTraversalTypeAwareCrawler(visitor)
         .visit(treeRootHolder.getRoot());
+      visitor.flush();
     } finally {
+      if (encoders != null) {
+        encoders.shutdownNow();
+      }
       MyBatis.closeQuietly(session);
     }
   }
 
+  private int getThreads() {
+    int threads = settings.getInt(THREADS_PROPERTY);
+    return threads > 0 ? threads : 1;
+  }
+
+  private long getBatchSizeInBytes() {
+    long bytes = settings.getLong(BATCH_SIZE_IN_BYTES_PROPERTY);
+    return bytes > 0 ? bytes : DEFAULT_BATCH_SIZE_IN_BYTES;
+  }
+
   private class FileSourceVisitor extends TypeAwareVisitorAdapter {
 
     private final DbSession session;
+    private final long batchSizeInBytes;
+    @CheckForNull
+    private final ExecutorService encoders;
+    private final int maxPendingFiles;
+    private final Deque<Future<EncodedFileSource>> pendingFiles = new ArrayDeque<>();
 
     private Map<String, FileSourceDto> previousFileSourcesByUuid = new HashMap<>();
     private String projectUuid;
+    private long batchedBytes = 0L;
 
-    private FileSourceVisitor(DbSession session) {
+    private FileSourceVisitor(DbSession session, long batchSizeInBytes, @Nullable ExecutorService encoders, int maxPendingFiles) {
       super(CrawlerDepthLimit.FILE, PRE_ORDER);
       this.session = session;
+      this.batchSizeInBytes = batchSizeInBytes;
+      this.encoders = encoders;
+      this.maxPendingFiles = maxPendingFiles;
     }
 
     @Override
@@ -126,63 +187,124 @@ public class PersistFileSourcesStep implements ComputationStep {
       ScannerReport.Component component = reportReader.readComponent(fileRef);
       CloseableIterator<String> linesIterator = sourceLinesRepository.readLines(file);
       LineReaders lineReaders = new LineReaders(reportReader, scmInfoRepository, duplicationRepository, file);
+      EncodeFileSource encodeTask;
       try {
         ComputeFileSourceData computeFileSourceData = new ComputeFileSourceData(linesIterator, lineReaders.readers(), component.getLines());
         ComputeFileSourceData.Data fileSourceData = computeFileSourceData.compute();
-        persistSource(fileSourceData, file.getUuid(), lineReaders.getLatestChange());
+        encodeTask = new EncodeFileSource(file, fileSourceData, lineReaders.getLatestChange());
       } catch (Exception e) {
         throw new IllegalStateException(String.format("Cannot persist sources of %s", file.getKey()), e);
       } finally {
         linesIterator.close();
         lineReaders.close();
       }
+
+      if (encoders == null) {
+        persistSource(encodeTask.call());
+      } else {
+        pendingFiles.add(encoders.submit(encodeTask));
+        if (pendingFiles.size() > maxPendingFiles) {
+          persistSource(waitFor(pendingFiles.remove()));
+        }
+      }
+    }
+
+    /**
+     * Persists the files being encoded and flushes the last batch
+     */
+    void flush() {
+      while (!pendingFiles.isEmpty()) {
+        persistSource(waitFor(pendingFiles.remove()));
+      }
+      session.commit();
     }
 
-    private void persistSource(ComputeFileSourceData.Data fileSourceData, String componentUuid, @Nullable Changeset latestChange) {
-      DbFileSources.Data fileData = fileSourceData.getFileSourceData();
+    private EncodedFileSource waitFor(Future<EncodedFileSource> future) {
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while encoding sources", e);
+      } catch (ExecutionException e) {
+        throw Throwables.propagate(e.getCause());
+      }
+    }
 
-      byte[] data = FileSourceDto.encodeSourceData(fileData);
-      String dataHash = DigestUtils.md5Hex(data);
-      String srcHash = fileSourceData.getSrcHash();
-      String lineHashes = fileSourceData.getLineHashes();
-      FileSourceDto previousDto = previousFileSourcesByUuid.get(componentUuid);
+    private void persistSource(EncodedFileSource source) {
+      // previous DTO is not needed anymore, once the file is persisted
+      FileSourceDto previousDto = previousFileSourcesByUuid.remove(source.fileUuid);
 
       if (previousDto == null) {
         FileSourceDto dto = new FileSourceDto()
           .setProjectUuid(projectUuid)
-          .setFileUuid(componentUuid)
+          .setFileUuid(source.fileUuid)
           .setDataType(Type.SOURCE)
-          .setBinaryData(data)
-          .setSrcHash(srcHash)
-          .setDataHash(dataHash)
-          .setLineHashes(lineHashes)
+          .setBinaryData(source.data)
+          .setSrcHash(source.srcHash)
+          .setDataHash(source.dataHash)
+          .setLineHashes(source.lineHashes)
           .setCreatedAt(system2.now())
           .setUpdatedAt(system2.now())
-          .setRevision(computeRevision(latestChange));
+          .setRevision(source.revision);
         dbClient.fileSourceDao().insert(session, dto);
-        session.commit();
+        addToBatch(source);
       } else {
         // Update only if data_hash has changed or if src_hash is missing or revision is missing (progressive migration)
-        boolean binaryDataUpdated = !dataHash.equals(previousDto.getDataHash());
-        boolean srcHashUpdated = !srcHash.equals(previousDto.getSrcHash());
-        String revision = computeRevision(latestChange);
-        boolean revisionUpdated = !ObjectUtils.equals(revision, previousDto.getRevision());
+        boolean binaryDataUpdated = !source.dataHash.equals(previousDto.getDataHash());
+        boolean srcHashUpdated = !source.srcHash.equals(previousDto.getSrcHash());
+        boolean revisionUpdated = !ObjectUtils.equals(source.revision, previousDto.getRevision());
         if (binaryDataUpdated || srcHashUpdated || revisionUpdated) {
           previousDto
-            .setBinaryData(data)
-            .setDataHash(dataHash)
-            .setSrcHash(srcHash)
-            .setLineHashes(lineHashes)
-            .setRevision(revision)
+            .setBinaryData(source.data)
+            .setDataHash(source.dataHash)
+            .setSrcHash(source.srcHash)
+            .setLineHashes(source.lineHashes)
+            .setRevision(source.revision)
             .setUpdatedAt(system2.now());
-          dbClient.fileSourceDao().update(previousDto);
-          session.commit();
+          dbClient.fileSourceDao().update(session, previousDto);
+          addToBatch(source);
         }
       }
     }
 
+    private void addToBatch(EncodedFileSource source) {
+      batchedBytes += source.sizeInBytes();
+      if (batchedBytes >= batchSizeInBytes) {
+        session.commit();
+        batchedBytes = 0L;
+      }
+    }
+  }
+
+  /**
+   * Serializes, compresses and hashes the sources of a file. It does not access the report nor the database, so
+   * that it can be executed by worker threads.
+   */
+  private static class EncodeFileSource implements Callable<EncodedFileSource> {
+    private final Component file;
+    private final ComputeFileSourceData.Data fileSourceData;
+    @Nullable
+    private final Changeset latestChange;
+
+    private EncodeFileSource(Component file, ComputeFileSourceData.Data fileSourceData, @Nullable Changeset latestChange) {
+      this.file = file;
+      this.fileSourceData = fileSourceData;
+      this.latestChange = latestChange;
+    }
+
+    @Override
+    public EncodedFileSource call() {
+      try {
+        byte[] data = FileSourceDto.encodeSourceData(fileSourceData.getFileSourceData());
+        return new EncodedFileSource(file.getUuid(), data, DigestUtils.md5Hex(data), fileSourceData.getSrcHash(), fileSourceData.getLineHashes(),
+          computeRevision(latestChange));
+      } catch (Exception e) {
+        throw new IllegalStateException(String.format("Cannot persist sources of %s", file.getKey()), e);
+      }
+    }
+
     @CheckForNull
-    private String computeRevision(@Nullable Changeset latestChange) {
+    private static String computeRevision(@Nullable Changeset latestChange) {
       if (latestChange == null) {
         return null;
       }
@@ -190,6 +312,30 @@ public class PersistFileSourcesStep implements ComputationStep {
     }
   }
 
+  private static class EncodedFileSource {
+    private final String fileUuid;
+    private final byte[] data;
+    private final String dataHash;
+    private final String srcHash;
+    private final String lineHashes;
+    @Nullable
+    private final String revision;
+
+    private EncodedFileSource(String fileUuid, byte[] data, String dataHash, String srcHash, String lineHashes, @Nullable String revision) {
+      this.fileUuid = fileUuid;
+      this.data = data;
+      this.dataHash = dataHash;
+      this.srcHash = srcHash;
+      this.lineHashes = lineHashes;
+      this.revision = revision;
+    }
+
+    long sizeInBytes() {
+      // characters of line hashes are hexadecimal, so they are encoded on a single byte
+      return (long) data.length + lineHashes.length();
+    }
+  }
+
   private static class LineReaders {
     private final List<LineReader> readers = new ArrayList<>();
     private final List<CloseableIterator<?>> closeables = new ArrayList<>();
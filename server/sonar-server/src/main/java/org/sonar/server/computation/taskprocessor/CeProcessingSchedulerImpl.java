@@ -22,7 +22,8 @@ package org.sonar.server.computation.taskprocessor;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListenableScheduledFuture;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.CheckForNull;
@@ -31,8 +32,8 @@ import org.picocontainer.Startable;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.server.computation.configuration.CeConfiguration;
+import org.sonar.server.computation.queue.CeQueueWakeUp;
 
-import static com.google.common.util.concurrent.Futures.addCallback;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 public class CeProcessingSchedulerImpl implements CeProcessingScheduler, Startable {
@@ -40,15 +41,18 @@ public class CeProcessingSchedulerImpl implements CeProcessingScheduler, Startab
 
   private final CeProcessingSchedulerExecutorService executorService;
   private final CeWorkerCallable workerRunnable;
+  private final CeQueueWakeUp queueWakeUp;
+  private final Runnable wakeUpListener = new WakeUpListener();
 
   private final long delayBetweenTasks;
   private final TimeUnit timeUnit;
   private final ChainingCallback[] chainingCallbacks;
 
   public CeProcessingSchedulerImpl(CeConfiguration ceConfiguration,
-    CeProcessingSchedulerExecutorService processingExecutorService, CeWorkerCallable workerRunnable) {
+    CeProcessingSchedulerExecutorService processingExecutorService, CeWorkerCallable workerRunnable, CeQueueWakeUp queueWakeUp) {
     this.executorService = processingExecutorService;
     this.workerRunnable = workerRunnable;
+    this.queueWakeUp = queueWakeUp;
 
     this.delayBetweenTasks = ceConfiguration.getQueuePollingDelay();
     this.timeUnit = MILLISECONDS;
@@ -68,22 +72,37 @@ public class CeProcessingSchedulerImpl implements CeProcessingScheduler, Startab
   @Override
   public void startScheduling() {
     for (ChainingCallback chainingCallback : chainingCallbacks) {
-      ListenableScheduledFuture<Boolean> future = executorService.schedule(workerRunnable, delayBetweenTasks, timeUnit);
-      addCallback(future, chainingCallback, executorService);
+      chainingCallback.chainWithDelay();
     }
+    queueWakeUp.addListener(wakeUpListener);
   }
 
   @Override
   public void stop() {
+    queueWakeUp.removeListener(wakeUpListener);
     for (ChainingCallback chainingCallback : chainingCallbacks) {
       chainingCallback.stop();
     }
   }
 
+  /**
+   * Workers waiting for the polling delay to expire are called immediately when new tasks are submitted.
+   */
+  private class WakeUpListener implements Runnable {
+    @Override
+    public void run() {
+      for (ChainingCallback chainingCallback : chainingCallbacks) {
+        chainingCallback.wakeUp();
+      }
+    }
+  }
+
   private class ChainingCallback implements FutureCallback<Boolean> {
     private final AtomicBoolean keepRunning = new AtomicBoolean(true);
     @CheckForNull
-    private ListenableFuture<Boolean> workerFuture;
+    private volatile ListenableFuture<Boolean> workerFuture;
+    @CheckForNull
+    private volatile DelayedWorker delayedWorker;
 
     @Override
     public void onSuccess(@Nullable Boolean result) {
@@ -105,6 +124,7 @@ public class CeProcessingSchedulerImpl implements CeProcessingScheduler, Startab
 
     private void chainWithoutDelay() {
       if (keepRunning()) {
+        delayedWorker = null;
         workerFuture = executorService.submit(workerRunnable);
       }
       addCallback();
@@ -112,7 +132,10 @@ public class CeProcessingSchedulerImpl implements CeProcessingScheduler, Startab
 
     private void chainWithDelay() {
       if (keepRunning()) {
-        workerFuture = executorService.schedule(workerRunnable, delayBetweenTasks, timeUnit);
+        DelayedWorker worker = new DelayedWorker(workerRunnable);
+        delayedWorker = worker;
+        workerFuture = executorService.schedule(worker, delayBetweenTasks, timeUnit);
+        worker.future = workerFuture;
       }
       addCallback();
     }
@@ -123,6 +146,20 @@ public class CeProcessingSchedulerImpl implements CeProcessingScheduler, Startab
       }
     }
 
+    /**
+     * Cancels the pending delayed call, if any and if it did not start yet. Cancellation is notified to
+     * {@link #onFailure(Throwable)} which chains a call without delay.
+     */
+    public void wakeUp() {
+      DelayedWorker worker = delayedWorker;
+      if (worker != null && keepRunning() && worker.wakeUp()) {
+        Future<Boolean> future = worker.future;
+        if (future != null) {
+          future.cancel(false);
+        }
+      }
+    }
+
     private boolean keepRunning() {
       return keepRunning.get();
     }
@@ -134,4 +171,38 @@ public class CeProcessingSchedulerImpl implements CeProcessingScheduler, Startab
       }
     }
   }
+
+  /**
+   * Delayed call of the worker, which can be woken up only as long as it did not start.
+   */
+  static class DelayedWorker implements Callable<Boolean> {
+    private final Callable<Boolean> worker;
+    private final AtomicBoolean pending = new AtomicBoolean(true);
+    @CheckForNull
+    private volatile Future<Boolean> future;
+
+    DelayedWorker(Callable<Boolean> worker) {
+      this.worker = worker;
+    }
+
+    Callable<Boolean> getWorker() {
+      return worker;
+    }
+
+    /**
+     * @return false if the call already started
+     */
+    private boolean wakeUp() {
+      return pending.compareAndSet(true, false);
+    }
+
+    @Override
+    public Boolean call() throws Exception {
+      if (!pending.compareAndSet(true, false)) {
+        // woken up before its future could be cancelled, polls again without delay
+        return true;
+      }
+      return worker.call();
+    }
+  }
 }
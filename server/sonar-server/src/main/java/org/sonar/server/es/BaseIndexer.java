@@ -29,6 +29,8 @@ import java.util.concurrent.TimeUnit;
 import org.picocontainer.Startable;
 import org.sonar.api.server.ServerSide;
 
+import static com.google.common.base.Preconditions.checkState;
+
 @ServerSide
 public abstract class BaseIndexer implements Startable {
 
@@ -48,7 +50,7 @@ public abstract class BaseIndexer implements Startable {
    * Indices are populated and refreshed when all startup components have been executed. See
    * {@link IndexerStartupTask}
    */
-  private boolean enabled = false;
+  private volatile boolean enabled = false;
 
   protected BaseIndexer(EsClient client, long threadKeepAliveSeconds, String indexName, String typeName,
     String dateFieldName) {
@@ -66,14 +68,7 @@ public abstract class BaseIndexer implements Startable {
       Future submit = executor.submit(new Runnable() {
         @Override
         public void run() {
-          if (lastUpdatedAt == -1L) {
-            lastUpdatedAt = esClient.getMaxFieldValue(indexName, typeName, dateFieldName);
-          }
-          if (requestedAt > lastUpdatedAt) {
-            long l = task.index(lastUpdatedAt);
-            // l can be 0 if no documents were indexed
-            lastUpdatedAt = Math.max(l, lastUpdatedAt);
-          }
+          execute(task, requestedAt);
         }
       });
       try {
@@ -84,6 +79,33 @@ public abstract class BaseIndexer implements Startable {
     }
   }
 
+  /**
+   * Same as {@link #index(IndexerTask)}, except that the task is executed by the calling thread
+   * instead of being handed over to the executor of the indexer.
+   *
+   * @throws IllegalStateException if the indexer is disabled, so that the caller does not consider
+   * the documents as being indexed
+   */
+  protected void indexInCallingThread(IndexerTask task) {
+    checkEnabled();
+    execute(task, System.currentTimeMillis());
+  }
+
+  protected void checkEnabled() {
+    checkState(enabled, "Indexer of %s/%s is disabled", indexName, typeName);
+  }
+
+  private synchronized void execute(IndexerTask task, long requestedAt) {
+    if (lastUpdatedAt == -1L) {
+      lastUpdatedAt = esClient.getMaxFieldValue(indexName, typeName, dateFieldName);
+    }
+    if (requestedAt > lastUpdatedAt) {
+      long l = task.index(lastUpdatedAt);
+      // l can be 0 if no documents were indexed
+      lastUpdatedAt = Math.max(l, lastUpdatedAt);
+    }
+  }
+
   public void index() {
     index(new IndexerTask() {
       @Override
@@ -39,6 +39,7 @@ public class IndexerStartupTask {
   private final UserIndexer userIndexer;
   private final ViewIndexer viewIndexer;
   private final ActivityIndexer activityIndexer;
+  private final IndexingQueue indexingQueue;
   private final Settings settings;
 
   /**
@@ -48,13 +49,14 @@ public class IndexerStartupTask {
    */
   public IndexerStartupTask(TestIndexer testIndexer, IssueAuthorizationIndexer issueAuthorizationIndexer, IssueIndexer issueIndexer,
     UserIndexer userIndexer, ViewIndexer viewIndexer, ActivityIndexer activityIndexer,
-    Settings settings) {
+    IndexingQueue indexingQueue, Settings settings) {
     this.testIndexer = testIndexer;
     this.issueAuthorizationIndexer = issueAuthorizationIndexer;
     this.issueIndexer = issueIndexer;
     this.userIndexer = userIndexer;
     this.viewIndexer = viewIndexer;
     this.activityIndexer = activityIndexer;
+    this.indexingQueue = indexingQueue;
     this.settings = settings;
   }
 
@@ -75,6 +77,9 @@ public class IndexerStartupTask {
 
       LOG.info("Index views");
       viewIndexer.setEnabled(true).index();
+
+      // requests that were not processed before the previous stop of server
+      indexingQueue.setEnabled(true);
     }
   }
 
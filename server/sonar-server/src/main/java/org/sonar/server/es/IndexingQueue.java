@@ -0,0 +1,291 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.CheckForNull;
+import org.picocontainer.Startable;
+import org.sonar.api.server.ServerSide;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.es.EsQueueDto;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.sonar.db.DatabaseUtils.isIntegrityConstraintViolation;
+
+/**
+ * Asynchronous indexing of projects. Requests are persisted in the table ES_QUEUE, so they survive
+ * restarts of the server, and are coalesced by project as long as they are pending. Each index
+ * type is drained by its own thread, so indexing of issues does not wait for indexing of tests.
+ * Projects are indexed by this thread, see {@link ProjectIndexer#index(String)}.
+ * <p/>
+ * Indexing is done only when the queue is enabled. Like {@link BaseIndexer}, it is disabled during
+ * startup. Enabling the queue also processes the requests left by the previous executions.
+ * <p/>
+ * Requests which fail to be indexed, for example because the indexer is disabled, stay in queue. They are processed again after a delay which
+ * doubles on each consecutive failure, up to {@link #MAX_RETRY_DELAY_MS}.
+ */
+@ServerSide
+public class IndexingQueue implements Startable {
+
+  private static final Logger LOG = Loggers.get(IndexingQueue.class);
+  private static final int BATCH_SIZE = 100;
+  private static final long THREAD_KEEP_ALIVE_SECONDS = 300L;
+  private static final long INITIAL_RETRY_DELAY_MS = 1_000L;
+  static final long MAX_RETRY_DELAY_MS = 5 * 60 * 1_000L;
+
+  private final DbClient dbClient;
+  private final long initialRetryDelayMs;
+  private final Map<String, Drainer> drainersByIndexType = new HashMap<>();
+  private volatile boolean enabled = false;
+
+  public IndexingQueue(DbClient dbClient, ProjectIndexer[] indexers) {
+    this(dbClient, indexers, INITIAL_RETRY_DELAY_MS);
+  }
+
+  @VisibleForTesting
+  IndexingQueue(DbClient dbClient, ProjectIndexer[] indexers, long initialRetryDelayMs) {
+    this.dbClient = dbClient;
+    this.initialRetryDelayMs = initialRetryDelayMs;
+    for (ProjectIndexer indexer : indexers) {
+      drainersByIndexType.put(indexer.getIndexType(), new Drainer(indexer));
+    }
+  }
+
+  /**
+   * Requests the indexing of a project. The method does not wait for Elasticsearch. Callers
+   * that need the documents to be visible once the method returns wait for the returned future.
+   * It completes when the project has been indexed, even if indexing has been done by another
+   * server process.
+   *
+   * @throws IllegalArgumentException if there is no indexer for the index type
+   */
+  public Future<Void> enqueue(String indexType, String projectUuid) {
+    Drainer drainer = drainersByIndexType.get(indexType);
+    checkArgument(drainer != null, "No indexer is registered for index type '%s'", indexType);
+    persist(indexType, projectUuid);
+    // the waiter is registered once the request is committed, see Drainer#drain()
+    Future<Void> waiter = drainer.waiterOf(projectUuid);
+    if (enabled) {
+      drainer.schedule();
+    }
+    return waiter;
+  }
+
+  public IndexingQueue setEnabled(boolean b) {
+    this.enabled = b;
+    if (b) {
+      for (Drainer drainer : drainersByIndexType.values()) {
+        drainer.schedule();
+      }
+    }
+    return this;
+  }
+
+  @Override
+  public void start() {
+    // requests are processed when the queue is enabled
+  }
+
+  @Override
+  public void stop() {
+    for (Drainer drainer : drainersByIndexType.values()) {
+      drainer.executor.shutdown();
+    }
+  }
+
+  private void persist(String indexType, String projectUuid) {
+    DbSession dbSession = dbClient.openSession(false);
+    try {
+      try {
+        dbClient.esQueueDao().enqueue(dbSession, indexType, projectUuid);
+        dbSession.commit();
+      } catch (RuntimeException e) {
+        if (!isIntegrityConstraintViolation(e)) {
+          throw e;
+        }
+        // the same project has been concurrently inserted by another server process. Request is
+        // coalesced into the new item.
+        dbSession.rollback();
+        dbClient.esQueueDao().enqueue(dbSession, indexType, projectUuid);
+        dbSession.commit();
+      }
+    } finally {
+      dbSession.close();
+    }
+  }
+
+  private class Drainer implements Runnable {
+    private final ProjectIndexer indexer;
+    private final ScheduledThreadPoolExecutor executor;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    // accessed only by the thread of executor
+    private int consecutiveFailures = 0;
+    // guarded by this
+    private final Map<String, SettableFuture<Void>> waitersByProjectUuid = new HashMap<>();
+
+    private Drainer(ProjectIndexer indexer) {
+      this.indexer = indexer;
+      this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactoryBuilder()
+        .setNameFormat("es-queue-" + indexer.getIndexType() + "-%d")
+        .setDaemon(true)
+        .build());
+      this.executor.setKeepAliveTime(THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+      this.executor.allowCoreThreadTimeOut(true);
+      this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    private void schedule() {
+      // at most one pending execution. A request done while the queue is being drained
+      // triggers a new execution, as it may have been committed after the last read of the table.
+      if (scheduled.compareAndSet(false, true)) {
+        executor.execute(this);
+      }
+    }
+
+    private void scheduleRetry() {
+      consecutiveFailures++;
+      long delayMs = Math.min(MAX_RETRY_DELAY_MS, initialRetryDelayMs << Math.min(consecutiveFailures - 1, 20));
+      // requests done during the delay are processed by the delayed execution. If an execution is
+      // already pending, then it is the retry.
+      if (!executor.isShutdown() && scheduled.compareAndSet(false, true)) {
+        LOG.info("Indexing of {} is retried in {} ms", indexer.getIndexType(), delayMs);
+        executor.schedule(this, delayMs, TimeUnit.MILLISECONDS);
+      }
+    }
+
+    private synchronized Future<Void> waiterOf(String projectUuid) {
+      SettableFuture<Void> waiter = waitersByProjectUuid.get(projectUuid);
+      if (waiter == null) {
+        waiter = SettableFuture.create();
+        waitersByProjectUuid.put(projectUuid, waiter);
+      }
+      return waiter;
+    }
+
+    @CheckForNull
+    private synchronized SettableFuture<Void> takeWaiter(String projectUuid) {
+      return waitersByProjectUuid.remove(projectUuid);
+    }
+
+    private synchronized Map<String, SettableFuture<Void>> copyWaiters() {
+      return new HashMap<>(waitersByProjectUuid);
+    }
+
+    private synchronized void release(Map<String, SettableFuture<Void>> waiters) {
+      for (Map.Entry<String, SettableFuture<Void>> entry : waiters.entrySet()) {
+        if (waitersByProjectUuid.remove(entry.getKey(), entry.getValue())) {
+          entry.getValue().set(null);
+        }
+      }
+    }
+
+    @Override
+    public void run() {
+      scheduled.set(false);
+      try {
+        drain();
+      } catch (RuntimeException e) {
+        LOG.error("Fail to process the indexing queue of " + indexer.getIndexType(), e);
+        scheduleRetry();
+      }
+    }
+
+    private void drain() {
+      while (true) {
+        // requests of these waiters are committed. If the table is empty, then they have been
+        // processed, possibly by another server process.
+        Map<String, SettableFuture<Void>> committedWaiters = copyWaiters();
+        List<EsQueueDto> items = selectOldest();
+        if (items.isEmpty()) {
+          release(committedWaiters);
+          consecutiveFailures = 0;
+          return;
+        }
+        if (!index(items)) {
+          // failed items stay in queue
+          scheduleRetry();
+          return;
+        }
+      }
+    }
+
+    /**
+     * @return false if at least one of the projects failed to be indexed
+     */
+    private boolean index(List<EsQueueDto> items) {
+      List<EsQueueDto> indexedItems = new ArrayList<>();
+      boolean success = true;
+      for (EsQueueDto item : items) {
+        // waiter is taken before indexing, so that the requests done in the meantime get a new
+        // waiter, which is released by the next drain of the item
+        SettableFuture<Void> waiter = takeWaiter(item.getProjectUuid());
+        try {
+          indexer.index(item.getProjectUuid());
+          indexedItems.add(item);
+          if (waiter != null) {
+            waiter.set(null);
+          }
+        } catch (RuntimeException e) {
+          LOG.error(String.format("Fail to index project %s in %s", item.getProjectUuid(), indexer.getIndexType()), e);
+          success = false;
+          if (waiter != null) {
+            waiter.setException(e);
+          }
+        }
+      }
+      delete(indexedItems);
+      return success;
+    }
+
+    private List<EsQueueDto> selectOldest() {
+      DbSession dbSession = dbClient.openSession(false);
+      try {
+        return dbClient.esQueueDao().selectOldest(dbSession, indexer.getIndexType(), BATCH_SIZE);
+      } finally {
+        dbSession.close();
+      }
+    }
+
+    private void delete(List<EsQueueDto> items) {
+      DbSession dbSession = dbClient.openSession(false);
+      try {
+        for (EsQueueDto item : items) {
+          dbClient.esQueueDao().delete(dbSession, item);
+        }
+        dbSession.commit();
+      } finally {
+        dbSession.close();
+      }
+    }
+  }
+}
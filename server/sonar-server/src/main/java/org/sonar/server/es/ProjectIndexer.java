@@ -0,0 +1,41 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+/**
+ * Indexer of the documents of a project. Indexing can be requested asynchronously
+ * through {@link IndexingQueue}.
+ */
+public interface ProjectIndexer {
+
+  /**
+   * Key of the queue of the indexer in {@link IndexingQueue}, for example the name of the index
+   */
+  String getIndexType();
+
+  /**
+   * Indexes the documents of the project in the calling thread.
+   *
+   * @throws IllegalStateException if the indexer is disabled. The request must then be kept to be
+   * processed later.
+   */
+  void index(String projectUuid);
+
+}
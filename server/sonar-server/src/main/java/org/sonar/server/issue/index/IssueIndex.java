@@ -688,9 +688,7 @@ public class IssueIndex extends BaseIndex {
    * Only fields needed for the batch are returned.
    */
   public Iterator<IssueDoc> selectIssuesForBatch(ComponentDto component) {
-    BoolQueryBuilder filter = boolQuery()
-      .must(createAuthorizationFilter(true, userSession.getLogin(), userSession.getUserGroups()))
-      .mustNot(termsQuery(IssueIndexDefinition.FIELD_ISSUE_STATUS, Issue.STATUS_CLOSED));
+    BoolQueryBuilder filter = createBatchFilter();
 
     switch (component.scope()) {
       case Scopes.PROJECT:
@@ -703,6 +701,26 @@ public class IssueIndex extends BaseIndex {
         throw new IllegalStateException(String.format("Component of scope '%s' is not allowed", component.scope()));
     }
 
+    return scrollIssuesForBatch(filter);
+  }
+
+  /**
+   * Return non closed issues of the given files in a single scroll. Only fields needed for the batch
+   * are returned, including the UUID of the file.
+   */
+  public Iterator<IssueDoc> selectIssuesForBatch(Collection<String> fileUuids) {
+    BoolQueryBuilder filter = createBatchFilter()
+      .must(termsQuery(IssueIndexDefinition.FIELD_ISSUE_COMPONENT_UUID, fileUuids));
+    return scrollIssuesForBatch(filter);
+  }
+
+  private BoolQueryBuilder createBatchFilter() {
+    return boolQuery()
+      .must(createAuthorizationFilter(true, userSession.getLogin(), userSession.getUserGroups()))
+      .mustNot(termsQuery(IssueIndexDefinition.FIELD_ISSUE_STATUS, Issue.STATUS_CLOSED));
+  }
+
+  private Iterator<IssueDoc> scrollIssuesForBatch(BoolQueryBuilder filter) {
     SearchRequestBuilder requestBuilder = getClient()
       .prepareSearch(IssueIndexDefinition.INDEX)
       .setTypes(IssueIndexDefinition.TYPE_ISSUE)
@@ -711,6 +729,7 @@ public class IssueIndex extends BaseIndex {
       .setSize(10_000)
       .setFetchSource(
         new String[] {IssueIndexDefinition.FIELD_ISSUE_KEY, IssueIndexDefinition.FIELD_ISSUE_RULE_KEY, IssueIndexDefinition.FIELD_ISSUE_MODULE_UUID,
+          IssueIndexDefinition.FIELD_ISSUE_COMPONENT_UUID,
           IssueIndexDefinition.FIELD_ISSUE_FILE_PATH, IssueIndexDefinition.FIELD_ISSUE_SEVERITY, IssueIndexDefinition.FIELD_ISSUE_MANUAL_SEVERITY,
           IssueIndexDefinition.FIELD_ISSUE_RESOLUTION, IssueIndexDefinition.FIELD_ISSUE_STATUS, IssueIndexDefinition.FIELD_ISSUE_ASSIGNEE,
           IssueIndexDefinition.FIELD_ISSUE_LINE, IssueIndexDefinition.FIELD_ISSUE_MESSAGE, IssueIndexDefinition.FIELD_ISSUE_CHECKSUM,
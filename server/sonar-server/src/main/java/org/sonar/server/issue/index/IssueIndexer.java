@@ -19,18 +19,32 @@
  */
 package org.sonar.server.issue.index;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nullable;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.core.util.ProgressLogger;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
+import org.sonar.db.es.EsQueueDto;
 import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsClient;
 import org.sonar.server.es.EsUtils;
+import org.sonar.server.es.ProjectIndexer;
 
 import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
 import static org.elasticsearch.index.query.QueryBuilders.termQuery;
@@ -40,29 +54,56 @@ import static org.sonar.server.issue.index.IssueIndexDefinition.INDEX;
 import static org.sonar.server.issue.index.IssueIndexDefinition.TYPE_AUTHORIZATION;
 import static org.sonar.server.issue.index.IssueIndexDefinition.TYPE_ISSUE;
 
-public class IssueIndexer extends BaseIndexer {
+public class IssueIndexer extends BaseIndexer implements ProjectIndexer {
 
+  /**
+   * Number of projects indexed concurrently when the index is populated from scratch
+   */
+  public static final String INDEXING_THREADS_PROPERTY = "sonar.search.issues.indexingThreads";
+  private static final int DEFAULT_INDEXING_THREADS = 4;
+
+  /**
+   * Key in table ES_QUEUE of the projects that remain to be indexed by the current full indexing
+   */
+  static final String FULL_INDEXING_QUEUE = INDEX + "_full";
+
+  private static final Logger LOG = Loggers.get(IssueIndexer.class);
   private static final String DELETE_ERROR_MESSAGE = "Fail to delete some issues of project [%s]";
   private static final int MAX_BATCH_SIZE = 1000;
 
   private final DbClient dbClient;
+  private final Settings settings;
 
-  public IssueIndexer(DbClient dbClient, EsClient esClient) {
+  public IssueIndexer(DbClient dbClient, EsClient esClient, Settings settings) {
     super(esClient, 300, INDEX, TYPE_ISSUE, FIELD_ISSUE_TECHNICAL_UPDATED_AT);
     this.dbClient = dbClient;
+    this.settings = settings;
   }
 
   @Override
   protected long doIndex(long lastUpdatedAt) {
-    return doIndex(createBulkIndexer(false), lastUpdatedAt, null);
+    if (lastUpdatedAt <= 0L) {
+      // index is empty, for example after an upgrade
+      return indexAllProjects();
+    }
+    // projects not processed by a full indexing that has been interrupted. Only the issues
+    // updated after the indexing of the other projects are then missing.
+    long maxDate = indexPendingProjects();
+    return Math.max(maxDate, doIndex(createBulkIndexer(false), lastUpdatedAt, null));
   }
 
   public void indexAll() {
-    doIndex(createBulkIndexer(true), 0L, null);
+    indexAllProjects();
+  }
+
+  @Override
+  public String getIndexType() {
+    return INDEX;
   }
 
+  @Override
   public void index(final String projectUuid) {
-    super.index(new IndexerTask() {
+    indexInCallingThread(new IndexerTask() {
       @Override
       public long index(long lastUpdatedAt) {
         return doIndex(createBulkIndexer(false), lastUpdatedAt, projectUuid);
@@ -77,6 +118,89 @@ public class IssueIndexer extends BaseIndexer {
     doIndex(createBulkIndexer(false), issues);
   }
 
+  private long indexAllProjects() {
+    DbSession dbSession = dbClient.openSession(false);
+    try {
+      for (String projectUuid : dbClient.issueDao().selectProjectUuids(dbSession)) {
+        dbClient.esQueueDao().enqueue(dbSession, FULL_INDEXING_QUEUE, projectUuid);
+      }
+      dbSession.commit();
+    } finally {
+      dbSession.close();
+    }
+    return indexPendingProjects();
+  }
+
+  /**
+   * Indexes the projects registered in table ES_QUEUE by {@link #indexAllProjects()}. Each project
+   * is read from DB and sent to Elasticsearch by one of the {@link #INDEXING_THREADS_PROPERTY} threads,
+   * then it is removed from table, so that the indexing is resumed at the next startup if the server is
+   * stopped in the meantime.
+   */
+  private long indexPendingProjects() {
+    List<EsQueueDto> projects;
+    DbSession dbSession = dbClient.openSession(false);
+    try {
+      projects = dbClient.esQueueDao().selectOldest(dbSession, FULL_INDEXING_QUEUE, Integer.MAX_VALUE);
+    } finally {
+      dbSession.close();
+    }
+    if (projects.isEmpty()) {
+      return 0L;
+    }
+
+    int threads = settings.getInt(INDEXING_THREADS_PROPERTY) > 0 ? settings.getInt(INDEXING_THREADS_PROPERTY) : DEFAULT_INDEXING_THREADS;
+    LOG.info("Index issues of {} projects with {} threads", projects.size(), threads);
+    AtomicLong indexedProjects = new AtomicLong();
+    ProgressLogger progress = ProgressLogger.create(IssueIndexer.class, indexedProjects).setPluralLabel("projects");
+    // replicas and automatic refresh are disabled until all the projects are indexed
+    BulkIndexer largeBulk = createBulkIndexer(true);
+    largeBulk.start();
+    progress.start();
+    ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+      .setNameFormat("IssueIndexer-%d")
+      .setDaemon(true)
+      .build());
+    try {
+      List<Future<Long>> futures = new ArrayList<>(projects.size());
+      for (EsQueueDto project : projects) {
+        futures.add(executor.submit(() -> indexPendingProject(project, indexedProjects)));
+      }
+      long maxDate = 0L;
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          maxDate = Math.max(maxDate, Uninterruptibles.getUninterruptibly(futures.get(i)));
+        } catch (ExecutionException e) {
+          // remaining projects are processed at next startup
+          throw new IllegalStateException("Fail to index issues of project " + projects.get(i).getProjectUuid(), e.getCause());
+        }
+      }
+      return maxDate;
+    } finally {
+      executor.shutdownNow();
+      progress.stop();
+      largeBulk.stop();
+    }
+  }
+
+  private long indexPendingProject(EsQueueDto project, AtomicLong indexedProjects) {
+    BulkIndexer bulk = new BulkIndexer(esClient, INDEX);
+    // index is refreshed once all the projects are indexed
+    bulk.setDisableRefresh(true);
+    long maxDate = doIndex(bulk, 0L, project.getProjectUuid());
+
+    DbSession dbSession = dbClient.openSession(false);
+    try {
+      dbClient.esQueueDao().delete(dbSession, project);
+      dbSession.commit();
+    } finally {
+      dbSession.close();
+    }
+    LOG.debug("Issues of project {} are indexed", project.getProjectUuid());
+    indexedProjects.incrementAndGet();
+    return maxDate;
+  }
+
   private long doIndex(BulkIndexer bulk, long lastUpdatedAt, @Nullable String projectUuid) {
     DbSession dbSession = dbClient.openSession(false);
     long maxDate;
@@ -90,7 +90,7 @@ class IssueResultSetIterator extends ResultSetIterator<IssueDoc> {
 
   private static final String SQL_AFTER_DATE = SQL_ALL + " where i.updated_at>?";
 
-  private static final String PROJECT_FILTER = " AND root.uuid=?";
+  private static final String PROJECT_FILTER = " AND i.project_uuid=?";
 
   private static final Splitter TAGS_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
 
@@ -0,0 +1,162 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.qualityprofile;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.db.qualityprofile.ActiveRuleDto;
+import org.sonar.db.qualityprofile.ActiveRuleKey;
+import org.sonar.db.qualityprofile.ActiveRuleParamDto;
+import org.sonar.db.qualityprofile.QualityProfileDto;
+import org.sonar.db.rule.RuleDto;
+import org.sonar.db.rule.RuleParamDto;
+import org.sonar.server.activity.Activity;
+import org.sonar.server.exceptions.BadRequestException;
+
+/**
+ * Profiles, rules and active rules involved in the activation of a set of rules on a profile and
+ * its descendants. They are loaded once by {@link RuleActivatorContextFactory#createBulk} and then
+ * kept up-to-date by {@link RuleActivator} while changes are persisted, so that each activation
+ * of the set does not reload them.
+ * <p/>
+ * Updates of profile dates and activities are delayed until {@link RuleActivator#finishBulk}.
+ */
+class BulkRuleActivationContext {
+
+  private final Date initDate = new Date();
+  private final QualityProfileDto profile;
+  private final Map<String, QualityProfileDto> profilesByKey = new HashMap<>();
+  private final ListMultimap<String, QualityProfileDto> childrenByKey = ArrayListMultimap.create();
+  private final Map<RuleKey, RuleDto> rulesByKey = new HashMap<>();
+  private final ListMultimap<Integer, RuleParamDto> ruleParamsByRuleId = ArrayListMultimap.create();
+  private final Map<ActiveRuleKey, ActiveRuleDto> activeRulesByKey = new HashMap<>();
+  private final ListMultimap<Integer, ActiveRuleParamDto> activeRuleParamsByActiveRuleId = ArrayListMultimap.create();
+  private final Map<String, QualityProfileDto> updatedProfilesByKey = new LinkedHashMap<>();
+  private final List<Activity> activities = new ArrayList<>();
+
+  /**
+   * @param profile the profile on which rules are activated
+   * @param descendants all the descendants of the profile
+   * @param activeRules the active rules of the profile, of its parent and of its descendants
+   */
+  BulkRuleActivationContext(QualityProfileDto profile, Collection<QualityProfileDto> descendants, Collection<RuleDto> rules,
+    Collection<RuleParamDto> ruleParams, Collection<ActiveRuleDto> activeRules, Collection<ActiveRuleParamDto> activeRuleParams) {
+    this.profile = profile;
+    profilesByKey.put(profile.getKey(), profile);
+    for (QualityProfileDto descendant : descendants) {
+      profilesByKey.put(descendant.getKey(), descendant);
+      childrenByKey.put(descendant.getParentKee(), descendant);
+    }
+    for (RuleDto rule : rules) {
+      rulesByKey.put(rule.getKey(), rule);
+    }
+    for (RuleParamDto ruleParam : ruleParams) {
+      ruleParamsByRuleId.put(ruleParam.getRuleId(), ruleParam);
+    }
+    for (ActiveRuleDto activeRule : activeRules) {
+      activeRulesByKey.put(activeRule.getKey(), activeRule);
+    }
+    for (ActiveRuleParamDto activeRuleParam : activeRuleParams) {
+      activeRuleParamsByActiveRuleId.put(activeRuleParam.getActiveRuleId(), activeRuleParam);
+    }
+  }
+
+  QualityProfileDto profile() {
+    return profile;
+  }
+
+  Date getInitDate() {
+    return initDate;
+  }
+
+  /**
+   * Same as {@link RuleActivatorContextFactory#create(String, RuleKey, org.sonar.db.DbSession)}, without db round trip
+   */
+  RuleActivatorContext create(String profileKey, RuleKey ruleKey) {
+    QualityProfileDto profileDto = profilesByKey.get(profileKey);
+    if (profileDto == null) {
+      throw new IllegalArgumentException("Quality profile is not part of the bulk activation: " + profileKey);
+    }
+    RuleDto rule = rulesByKey.get(ruleKey);
+    if (rule == null) {
+      throw new BadRequestException("Rule not found: " + ruleKey);
+    }
+    RuleActivatorContext context = new RuleActivatorContext()
+      .setProfile(profileDto)
+      .setRule(rule)
+      .setRuleParams(ruleParamsByRuleId.get(rule.getId()));
+    ActiveRuleDto activeRule = activeRulesByKey.get(ActiveRuleKey.of(profileKey, ruleKey));
+    context.setActiveRule(activeRule);
+    context.setActiveRuleParams(paramsOf(activeRule));
+    String parentKee = profileDto.getParentKee();
+    if (parentKee != null) {
+      ActiveRuleDto parentActiveRule = activeRulesByKey.get(ActiveRuleKey.of(parentKee, ruleKey));
+      context.setParentActiveRule(parentActiveRule);
+      context.setParentActiveRuleParams(paramsOf(parentActiveRule));
+    }
+    return context;
+  }
+
+  List<QualityProfileDto> children(String profileKey) {
+    return childrenByKey.get(profileKey);
+  }
+
+  /**
+   * Registers the state of an active rule after it has been persisted
+   */
+  void put(ActiveRuleDto activeRule, Collection<ActiveRuleParamDto> params) {
+    activeRulesByKey.put(activeRule.getKey(), activeRule);
+    activeRuleParamsByActiveRuleId.replaceValues(activeRule.getId(), new ArrayList<>(params));
+  }
+
+  void markAsUpdated(QualityProfileDto profileDto) {
+    updatedProfilesByKey.put(profileDto.getKey(), profileDto);
+  }
+
+  Collection<QualityProfileDto> updatedProfiles() {
+    return updatedProfilesByKey.values();
+  }
+
+  void addActivity(Activity activity) {
+    activities.add(activity);
+  }
+
+  List<Activity> activities() {
+    return activities;
+  }
+
+  @CheckForNull
+  private List<ActiveRuleParamDto> paramsOf(@Nullable ActiveRuleDto activeRule) {
+    if (activeRule == null) {
+      return null;
+    }
+    return activeRuleParamsByActiveRuleId.get(activeRule.getId());
+  }
+}
@@ -137,9 +137,14 @@ public class QProfileReset {
       }
     }
 
+    List<RuleKey> ruleKeys = new ArrayList<>();
+    for (RuleActivation activation : activations) {
+      ruleKeys.add(activation.getRuleKey());
+    }
+    BulkRuleActivationContext bulk = activator.startBulk(dbSession, profile, ruleKeys);
     for (RuleActivation activation : activations) {
       try {
-        List<ActiveRuleChange> changes = activator.activate(dbSession, activation, profile.getKey());
+        List<ActiveRuleChange> changes = activator.activate(dbSession, activation, bulk);
         ruleToBeDeactivated.remove(activation.getRuleKey());
         result.incrementSucceeded();
         result.addChanges(changes);
@@ -148,6 +153,7 @@ public class QProfileReset {
         result.getErrors().add(e.errors());
       }
     }
+    activator.finishBulk(dbSession, bulk);
 
     List<ActiveRuleChange> changes = new ArrayList<>();
     changes.addAll(result.getChanges());
@@ -22,7 +22,9 @@ package org.sonar.server.qualityprofile;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -81,20 +83,49 @@ public class RuleActivator {
 
   public List<ActiveRuleChange> activate(DbSession dbSession, RuleActivation activation, String profileKey) {
     RuleActivatorContext context = contextFactory.create(profileKey, activation.getRuleKey(), dbSession);
-    return doActivate(dbSession, activation, context);
+    return doActivate(dbSession, activation, context, null);
   }
 
   public List<ActiveRuleChange> activate(DbSession dbSession, RuleActivation activation, QProfileName profileName) {
     RuleActivatorContext context = contextFactory.create(profileName, activation.getRuleKey(), dbSession);
-    return doActivate(dbSession, activation, context);
+    return doActivate(dbSession, activation, context, null);
   }
 
   List<ActiveRuleChange> activate(DbSession dbSession, RuleActivation activation, QualityProfileDto profileDto) {
     RuleActivatorContext context = contextFactory.create(profileDto, activation.getRuleKey(), dbSession);
-    return doActivate(dbSession, activation, context);
+    return doActivate(dbSession, activation, context, null);
   }
 
-  private List<ActiveRuleChange> doActivate(DbSession dbSession, RuleActivation activation, RuleActivatorContext context) {
+  /**
+   * Loads at once the profile hierarchy, the rules and the active rules required to activate the given rules
+   * on a profile. Activations are then applied with {@link #activate(DbSession, RuleActivation, BulkRuleActivationContext)}
+   * and completed by {@link #finishBulk(DbSession, BulkRuleActivationContext)}.
+   */
+  BulkRuleActivationContext startBulk(DbSession dbSession, QualityProfileDto profile, Collection<RuleKey> ruleKeys) {
+    return contextFactory.createBulk(profile, ruleKeys, dbSession);
+  }
+
+  /**
+   * Activate one of the rules of a bulk WITHOUT committing db session. The rule must have been declared
+   * in {@link #startBulk(DbSession, QualityProfileDto, Collection)}.
+   */
+  List<ActiveRuleChange> activate(DbSession dbSession, RuleActivation activation, BulkRuleActivationContext bulk) {
+    RuleActivatorContext context = bulk.create(bulk.profile().getKey(), activation.getRuleKey());
+    return doActivate(dbSession, activation, context, bulk);
+  }
+
+  /**
+   * Update dates of the profiles changed by a bulk and save its activities, WITHOUT committing db session
+   */
+  void finishBulk(DbSession dbSession, BulkRuleActivationContext bulk) {
+    for (QualityProfileDto profile : bulk.updatedProfiles()) {
+      updateProfileDates(dbSession, profile, bulk.getInitDate());
+    }
+    activityService.save(bulk.activities());
+  }
+
+  private List<ActiveRuleChange> doActivate(DbSession dbSession, RuleActivation activation, RuleActivatorContext context,
+    @Nullable BulkRuleActivationContext bulk) {
     context.verifyForActivation();
     List<ActiveRuleChange> changes = Lists.newArrayList();
     ActiveRuleChange change;
@@ -139,24 +170,27 @@ public class RuleActivator {
 
     if (change != null) {
       changes.add(change);
-      persist(change, context, dbSession);
+      persist(change, context, dbSession, bulk);
     }
 
     if (!stopPropagation) {
-      changes.addAll(cascadeActivation(dbSession, activation, context.profile().getKey()));
+      changes.addAll(cascadeActivation(dbSession, activation, context.profile().getKey(), bulk));
     }
 
     if (!changes.isEmpty()) {
-      updateProfileDates(dbSession, context);
+      if (bulk == null) {
+        updateProfileDates(dbSession, context.profile(), context.getInitDate());
+      } else {
+        bulk.markAsUpdated(context.profile());
+      }
     }
     return changes;
   }
 
-  private void updateProfileDates(DbSession dbSession, RuleActivatorContext context) {
-    QualityProfileDto profile = context.profile();
-    profile.setRulesUpdatedAtAsDate(context.getInitDate());
+  private void updateProfileDates(DbSession dbSession, QualityProfileDto profile, Date date) {
+    profile.setRulesUpdatedAtAsDate(date);
     if (userSession.isLoggedIn()) {
-      profile.setUserUpdatedAt(context.getInitDate().getTime());
+      profile.setUserUpdatedAt(date.getTime());
     }
     db.qualityProfileDao().update(dbSession, profile);
   }
@@ -224,19 +258,24 @@ public class RuleActivator {
     return null;
   }
 
-  private List<ActiveRuleChange> cascadeActivation(DbSession session, RuleActivation activation, String profileKey) {
+  private List<ActiveRuleChange> cascadeActivation(DbSession session, RuleActivation activation, String profileKey,
+    @Nullable BulkRuleActivationContext bulk) {
     List<ActiveRuleChange> changes = Lists.newArrayList();
 
     // get all inherited profiles
-    List<QualityProfileDto> children = db.qualityProfileDao().selectChildren(session, profileKey);
+    List<QualityProfileDto> children = bulk == null ? db.qualityProfileDao().selectChildren(session, profileKey) : bulk.children(profileKey);
     for (QualityProfileDto child : children) {
       RuleActivation childActivation = new RuleActivation(activation).setCascade(true);
-      changes.addAll(activate(session, childActivation, child.getKey()));
+      if (bulk == null) {
+        changes.addAll(activate(session, childActivation, child.getKey()));
+      } else {
+        changes.addAll(doActivate(session, childActivation, bulk.create(child.getKey(), activation.getRuleKey()), bulk));
+      }
     }
     return changes;
   }
 
-  private ActiveRuleDto persist(ActiveRuleChange change, RuleActivatorContext context, DbSession dbSession) {
+  private ActiveRuleDto persist(ActiveRuleChange change, RuleActivatorContext context, DbSession dbSession, @Nullable BulkRuleActivationContext bulk) {
     ActiveRuleDto activeRule = null;
     if (change.getType() == ActiveRuleChange.Type.ACTIVATED) {
       activeRule = doInsert(change, context, dbSession);
@@ -248,7 +287,14 @@ public class RuleActivator {
       activeRule = doUpdate(change, context, dbSession);
     }
 
-    activityService.save(change.toActivity());
+    if (bulk == null) {
+      activityService.save(change.toActivity());
+    } else {
+      bulk.addActivity(change.toActivity());
+      if (activeRule != null) {
+        bulk.put(activeRule, context.activeRuleParamsAsMap().values());
+      }
+    }
     return activeRule;
   }
 
@@ -267,11 +313,13 @@ public class RuleActivator {
     activeRule.setUpdatedAt(system2.now());
     activeRule.setCreatedAt(system2.now());
     dao.insert(dbSession, activeRule);
+    context.setActiveRule(activeRule);
     for (Map.Entry<String, String> param : change.getParameters().entrySet()) {
       if (param.getValue() != null) {
         ActiveRuleParamDto paramDto = ActiveRuleParamDto.createFor(context.ruleParamsByKeys().get(param.getKey()));
         paramDto.setValue(param.getValue());
         dao.insertParam(dbSession, activeRule, paramDto);
+        context.activeRuleParamsAsMap().put(paramDto.getKey(), paramDto);
       }
     }
     return activeRule;
@@ -300,6 +348,7 @@ public class RuleActivator {
             activeRuleParamDto = ActiveRuleParamDto.createFor(context.ruleParamsByKeys().get(param.getKey()));
             activeRuleParamDto.setValue(param.getValue());
             dao.insertParam(dbSession, activeRule, activeRuleParamDto);
+            context.activeRuleParamsAsMap().put(activeRuleParamDto.getKey(), activeRuleParamDto);
           }
         } else {
           if (param.getValue() != null) {
@@ -307,6 +356,7 @@ public class RuleActivator {
             dao.updateParam(dbSession, activeRule, activeRuleParamDto);
           } else {
             dao.deleteParam(dbSession, activeRule, activeRuleParamDto);
+            context.activeRuleParamsAsMap().remove(param.getKey());
           }
         }
       }
@@ -369,7 +419,7 @@ public class RuleActivator {
     }
     change = ActiveRuleChange.createFor(ActiveRuleChange.Type.DEACTIVATED, key);
     changes.add(change);
-    persist(change, context, dbSession);
+    persist(change, context, dbSession, null);
 
     // get all inherited profiles
     List<QualityProfileDto> profiles = db.qualityProfileDao().selectChildren(dbSession, key.qProfile());
@@ -380,7 +430,7 @@ public class RuleActivator {
     }
 
     if (!changes.isEmpty()) {
-      updateProfileDates(dbSession, context);
+      updateProfileDates(dbSession, context.profile(), context.getInitDate());
     }
 
     return changes;
@@ -404,13 +454,17 @@ public class RuleActivator {
     DbSession dbSession = db.openSession(false);
     BulkChangeResult result = new BulkChangeResult();
     try {
-      Iterator<RuleKey> rules = ruleIndex.searchAll(ruleQuery);
-      while (rules.hasNext()) {
-        RuleKey ruleKey = rules.next();
+      QualityProfileDto profile = db.qualityProfileDao().selectByKey(dbSession, profileKey);
+      if (profile == null) {
+        throw new BadRequestException("Quality profile not found: " + profileKey);
+      }
+      List<RuleKey> ruleKeys = newArrayList(ruleIndex.searchAll(ruleQuery));
+      BulkRuleActivationContext bulk = startBulk(dbSession, profile, ruleKeys);
+      for (RuleKey ruleKey : ruleKeys) {
         try {
           RuleActivation activation = new RuleActivation(ruleKey);
           activation.setSeverity(severity);
-          List<ActiveRuleChange> changes = activate(dbSession, activation, profileKey);
+          List<ActiveRuleChange> changes = activate(dbSession, activation, bulk);
           result.addChanges(changes);
           if (!changes.isEmpty()) {
             result.incrementSucceeded();
@@ -422,6 +476,7 @@ public class RuleActivator {
           result.getErrors().add(e.errors());
         }
       }
+      finishBulk(dbSession, bulk);
       dbSession.commit();
       activeRuleIndexer.index(result.getChanges());
     } finally {
@@ -487,15 +542,20 @@ public class RuleActivator {
       // set new parent
       profile.setParentKee(parentKey);
       db.qualityProfileDao().update(dbSession, profile);
+      List<RuleKey> ruleKeys = new ArrayList<>();
       for (ActiveRuleDto parentActiveRule : db.activeRuleDao().selectByProfileKey(dbSession, parentKey)) {
+        ruleKeys.add(parentActiveRule.getKey().ruleKey());
+      }
+      BulkRuleActivationContext bulk = startBulk(dbSession, profile, ruleKeys);
+      for (RuleKey ruleKey : ruleKeys) {
         try {
-          RuleActivation activation = new RuleActivation(parentActiveRule.getKey().ruleKey());
-          changes.addAll(activate(dbSession, activation, profileKey));
+          changes.addAll(activate(dbSession, new RuleActivation(ruleKey), bulk));
         } catch (BadRequestException e) {
           // for example because rule status is REMOVED
           // TODO return errors
         }
       }
+      finishBulk(dbSession, bulk);
     }
     return changes;
   }
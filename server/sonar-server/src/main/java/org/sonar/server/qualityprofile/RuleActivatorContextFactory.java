@@ -20,7 +20,11 @@
 package org.sonar.server.qualityprofile;
 
 import com.google.common.base.Optional;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.server.ServerSide;
 import org.sonar.db.DbClient;
@@ -65,6 +69,40 @@ public class RuleActivatorContextFactory {
     return create(ruleKey, session, new RuleActivatorContext().setProfile(profile));
   }
 
+  /**
+   * Loads at once everything needed to activate the given rules on a profile and on its descendants
+   */
+  BulkRuleActivationContext createBulk(QualityProfileDto profile, Collection<RuleKey> ruleKeys, DbSession session) {
+    Set<RuleKey> keySet = new HashSet<>(ruleKeys);
+    List<RuleKey> keys = new ArrayList<>(keySet);
+    List<QualityProfileDto> descendants = db.qualityProfileDao().selectDescendants(session, profile.getKey());
+
+    List<String> profileKeys = new ArrayList<>();
+    profileKeys.add(profile.getKey());
+    if (profile.getParentKee() != null) {
+      profileKeys.add(profile.getParentKee());
+    }
+    for (QualityProfileDto descendant : descendants) {
+      profileKeys.add(descendant.getKey());
+    }
+    List<ActiveRuleDto> activeRules = new ArrayList<>();
+    List<Integer> activeRuleIds = new ArrayList<>();
+    for (String profileKey : profileKeys) {
+      for (ActiveRuleDto activeRule : db.activeRuleDao().selectByProfileKey(session, profileKey)) {
+        if (keySet.contains(activeRule.getKey().ruleKey())) {
+          activeRules.add(activeRule);
+          activeRuleIds.add(activeRule.getId());
+        }
+      }
+    }
+
+    return new BulkRuleActivationContext(profile, descendants,
+      db.ruleDao().selectByKeys(session, keys),
+      db.ruleDao().selectRuleParamsByRuleKeys(session, keys),
+      activeRules,
+      db.activeRuleDao().selectParamsByActiveRuleIds(session, activeRuleIds));
+  }
+
   private RuleActivatorContext create(RuleKey ruleKey, DbSession session, RuleActivatorContext context) {
     initRule(ruleKey, context, session);
     initActiveRules(context.profile().getKey(), ruleKey, context, session, false);
@@ -21,20 +21,27 @@ package org.sonar.server.rule;
 
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
 import org.picocontainer.Startable;
+import org.sonar.api.platform.Server;
 import org.sonar.api.resources.Languages;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.rule.RuleStatus;
@@ -62,7 +69,8 @@ import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Sets.intersection;
 
 /**
- * Register rules at server startup
+ * Register rules at server startup. Repositories whose definitions and rules in db did not change since
+ * the previous registration are skipped, see {@link RuleRepositoryFingerprints}.
  */
 public class RegisterRules implements Startable {
 
@@ -75,9 +83,10 @@ public class RegisterRules implements Startable {
   private final ActiveRuleIndexer activeRuleIndexer;
   private final Languages languages;
   private final System2 system2;
+  private final Server server;
 
   public RegisterRules(RuleDefinitionsLoader defLoader, RuleActivator ruleActivator, DbClient dbClient, RuleIndexer ruleIndexer,
-    ActiveRuleIndexer activeRuleIndexer, Languages languages, System2 system2) {
+    ActiveRuleIndexer activeRuleIndexer, Languages languages, System2 system2, Server server) {
     this.defLoader = defLoader;
     this.ruleActivator = ruleActivator;
     this.dbClient = dbClient;
@@ -85,6 +94,7 @@ public class RegisterRules implements Startable {
     this.activeRuleIndexer = activeRuleIndexer;
     this.languages = languages;
     this.system2 = system2;
+    this.server = server;
   }
 
   @Override
@@ -92,13 +102,30 @@ public class RegisterRules implements Startable {
     Profiler profiler = Profiler.create(LOG).startInfo("Register rules");
     DbSession session = dbClient.openSession(false);
     try {
-      Map<RuleKey, RuleDto> allRules = loadRules(session);
-
       RulesDefinition.Context context = defLoader.load();
-      for (RulesDefinition.ExtendedRepository repoDef : getRepositories(context)) {
-        if (languages.get(repoDef.language()) != null) {
+      RuleRepositoryFingerprints fingerprints = new RuleRepositoryFingerprints(dbClient, session, server.getVersion());
+      Set<String> unchangedRepositories = new HashSet<>();
+      Map<String, String> registeredHashes = new HashMap<>();
+      Map<String, List<RulesDefinition.ExtendedRepository>> repositoriesToRegister = new LinkedHashMap<>();
+      for (Map.Entry<String, List<RulesDefinition.ExtendedRepository>> entry : getRepositoriesByKey(context).entrySet()) {
+        String repositoryKey = entry.getKey();
+        List<RulesDefinition.ExtendedRepository> repoDefs = entry.getValue();
+        String hash = RuleRepositoryFingerprints.hash(repoDefs);
+        if (fingerprints.isUnchanged(repositoryKey, hash)) {
+          unchangedRepositories.add(repositoryKey);
+        } else {
+          registeredHashes.put(repositoryKey, hash);
+          repositoriesToRegister.put(repositoryKey, repoDefs);
+        }
+      }
+      LOG.debug("{} rule repositories are unchanged, {} to be registered", unchangedRepositories.size(), repositoriesToRegister.size());
+
+      Map<RuleKey, RuleDto> allRules = loadRules(session, Sets.difference(fingerprints.repositoriesInDb(), unchangedRepositories));
+      ListMultimap<Integer, RuleParamDto> paramsByRuleId = loadRuleParams(session, allRules.values());
+      for (List<RulesDefinition.ExtendedRepository> repoDefs : repositoriesToRegister.values()) {
+        for (RulesDefinition.ExtendedRepository repoDef : repoDefs) {
           for (RulesDefinition.Rule ruleDef : repoDef.rules()) {
-            registerRule(ruleDef, allRules, session);
+            registerRule(ruleDef, allRules, paramsByRuleId, session);
           }
           session.commit();
         }
@@ -106,6 +133,7 @@ public class RegisterRules implements Startable {
       List<RuleDto> activeRules = processRemainingDbRules(allRules.values(), session);
       List<ActiveRuleChange> changes = removeActiveRulesOnStillExistingRepositories(session, activeRules, context);
       session.commit();
+      fingerprints.save(session, registeredHashes, unchangedRepositories);
       ruleIndexer.setEnabled(true).index();
       activeRuleIndexer.setEnabled(true);
       activeRuleIndexer.index(changes);
@@ -120,7 +148,8 @@ public class RegisterRules implements Startable {
     // nothing
   }
 
-  private void registerRule(RulesDefinition.Rule ruleDef, Map<RuleKey, RuleDto> allRules, DbSession session) {
+  private void registerRule(RulesDefinition.Rule ruleDef, Map<RuleKey, RuleDto> allRules, ListMultimap<Integer, RuleParamDto> paramsByRuleId,
+    DbSession session) {
     RuleKey ruleKey = RuleKey.of(ruleDef.repository().key(), ruleDef.key());
 
     RuleDto rule = allRules.containsKey(ruleKey) ? allRules.remove(ruleKey) : createRuleDto(ruleDef, session);
@@ -142,32 +171,58 @@ public class RegisterRules implements Startable {
       update(session, rule);
     }
 
-    mergeParams(ruleDef, rule, session);
+    mergeParams(ruleDef, rule, paramsByRuleId.get(rule.getId()), session);
   }
 
-  private Map<RuleKey, RuleDto> loadRules(DbSession session) {
+  private Map<RuleKey, RuleDto> loadRules(DbSession session, Set<String> repositoryKeys) {
     Map<RuleKey, RuleDto> rules = new HashMap<>();
-    for (RuleDto rule : dbClient.ruleDao().selectAll(session)) {
+    for (RuleDto rule : dbClient.ruleDao().selectByRepositories(session, new ArrayList<>(repositoryKeys))) {
       rules.put(rule.getKey(), rule);
     }
     return rules;
   }
 
-  private List<RulesDefinition.ExtendedRepository> getRepositories(RulesDefinition.Context context) {
-    List<RulesDefinition.ExtendedRepository> repositories = new ArrayList<>();
+  private ListMultimap<Integer, RuleParamDto> loadRuleParams(DbSession session, Collection<RuleDto> rules) {
+    List<Integer> ruleIds = new ArrayList<>(rules.size());
+    for (RuleDto rule : rules) {
+      ruleIds.add(rule.getId());
+    }
+    ListMultimap<Integer, RuleParamDto> paramsByRuleId = ArrayListMultimap.create();
+    for (RuleParamDto param : dbClient.ruleDao().selectRuleParamsByRuleIds(session, ruleIds)) {
+      paramsByRuleId.put(param.getRuleId(), param);
+    }
+    return paramsByRuleId;
+  }
+
+  /**
+   * Repositories and their extensions grouped by repository key. Repositories whose language is not installed are ignored.
+   */
+  private Map<String, List<RulesDefinition.ExtendedRepository>> getRepositoriesByKey(RulesDefinition.Context context) {
+    Map<String, List<RulesDefinition.ExtendedRepository>> repositories = new LinkedHashMap<>();
     for (RulesDefinition.Repository repoDef : context.repositories()) {
-      repositories.add(repoDef);
+      addRepository(repositories, repoDef);
     }
     for (RulesDefinition.ExtendedRepository extendedRepoDef : context.extendedRepositories()) {
       if (context.repository(extendedRepoDef.key()) == null) {
         LOG.warn(String.format("Extension is ignored, repository %s does not exist", extendedRepoDef.key()));
       } else {
-        repositories.add(extendedRepoDef);
+        addRepository(repositories, extendedRepoDef);
       }
     }
     return repositories;
   }
 
+  private void addRepository(Map<String, List<RulesDefinition.ExtendedRepository>> repositories, RulesDefinition.ExtendedRepository repoDef) {
+    if (languages.get(repoDef.language()) != null) {
+      List<RulesDefinition.ExtendedRepository> repoDefs = repositories.get(repoDef.key());
+      if (repoDefs == null) {
+        repoDefs = new ArrayList<>();
+        repositories.put(repoDef.key(), repoDefs);
+      }
+      repoDefs.add(repoDef);
+    }
+  }
+
   private RuleDto createRuleDto(RulesDefinition.Rule ruleDef, DbSession session) {
     RuleDto ruleDto = RuleDto.createFor(RuleKey.of(ruleDef.repository().key(), ruleDef.key()))
       .setIsTemplate(ruleDef.template())
@@ -283,8 +338,7 @@ public class RegisterRules implements Startable {
     return changed;
   }
 
-  private void mergeParams(RulesDefinition.Rule ruleDef, RuleDto rule, DbSession session) {
-    List<RuleParamDto> paramDtos = dbClient.ruleDao().selectRuleParamsByRuleKey(session, rule.getKey());
+  private void mergeParams(RulesDefinition.Rule ruleDef, RuleDto rule, List<RuleParamDto> paramDtos, DbSession session) {
     Map<String, RuleParamDto> existingParamsByName = Maps.newHashMap();
 
     for (RuleParamDto paramDto : paramDtos) {
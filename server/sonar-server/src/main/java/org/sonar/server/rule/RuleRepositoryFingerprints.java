@@ -0,0 +1,190 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.rule;
+
+import com.google.common.base.Charsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.sonar.api.server.debt.DebtRemediationFunction;
+import org.sonar.api.server.rule.RulesDefinition;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.loadedtemplate.LoadedTemplateDto;
+import org.sonar.db.rule.RuleRepositoryStampDto;
+
+/**
+ * Fingerprints of the rule repositories registered by {@link RegisterRules}. The fingerprint of a repository
+ * covers the definitions of its rules, the state of these rules in db right after their registration
+ * (number of rules and date of last update) and the version of the server which registered them, as the way rules
+ * are registered may change between versions. A repository with the same fingerprint at next startup does not
+ * need to be registered again.
+ * <p/>
+ * Fingerprints are stored as loaded templates of type {@link LoadedTemplateDto#RULE_REPOSITORY_TYPE}, with
+ * keys {@code <repository key>:<fingerprint>}.
+ */
+class RuleRepositoryFingerprints {
+
+  private static final char SEPARATOR = ':';
+  private static final int MAX_KEY_LENGTH = 200;
+
+  private static final Comparator<RulesDefinition.Rule> RULE_KEY_COMPARATOR = new Comparator<RulesDefinition.Rule>() {
+    @Override
+    public int compare(RulesDefinition.Rule o1, RulesDefinition.Rule o2) {
+      return o1.key().compareTo(o2.key());
+    }
+  };
+
+  private static final Comparator<RulesDefinition.Param> PARAM_KEY_COMPARATOR = new Comparator<RulesDefinition.Param>() {
+    @Override
+    public int compare(RulesDefinition.Param o1, RulesDefinition.Param o2) {
+      return o1.key().compareTo(o2.key());
+    }
+  };
+
+  private final DbClient dbClient;
+  private final String serverVersion;
+  private final Map<String, LoadedTemplateDto> storedByRepository = new HashMap<>();
+  private final Map<String, RuleRepositoryStampDto> stampsByRepository = new HashMap<>();
+
+  RuleRepositoryFingerprints(DbClient dbClient, DbSession session, String serverVersion) {
+    this.dbClient = dbClient;
+    this.serverVersion = serverVersion;
+    for (LoadedTemplateDto template : dbClient.loadedTemplateDao().selectByType(session, LoadedTemplateDto.RULE_REPOSITORY_TYPE)) {
+      String key = template.getKey();
+      storedByRepository.put(key.substring(0, key.lastIndexOf(SEPARATOR)), template);
+    }
+    loadStamps(session);
+  }
+
+  /**
+   * Keys of the repositories having rules in db, whatever their status
+   */
+  Set<String> repositoriesInDb() {
+    return stampsByRepository.keySet();
+  }
+
+  boolean isUnchanged(String repositoryKey, String definitionHash) {
+    LoadedTemplateDto stored = storedByRepository.get(repositoryKey);
+    return stored != null && stored.getKey().equals(templateKey(repositoryKey, definitionHash));
+  }
+
+  /**
+   * Stores the fingerprints of the repositories which have just been registered and drops the fingerprints
+   * of the repositories which are neither registered nor unchanged. Must be called once the registration
+   * is committed.
+   *
+   * @param definitionHashesByRepository hashes of the registered repositories, as returned by {@link #hash(Collection)}
+   */
+  void save(DbSession session, Map<String, String> definitionHashesByRepository, Set<String> unchangedRepositories) {
+    loadStamps(session);
+    for (Map.Entry<String, LoadedTemplateDto> stored : storedByRepository.entrySet()) {
+      String repositoryKey = stored.getKey();
+      if (!definitionHashesByRepository.containsKey(repositoryKey) && !unchangedRepositories.contains(repositoryKey)) {
+        dbClient.loadedTemplateDao().delete(session, LoadedTemplateDto.RULE_REPOSITORY_TYPE, stored.getValue().getKey());
+      }
+    }
+    for (Map.Entry<String, String> entry : definitionHashesByRepository.entrySet()) {
+      String repositoryKey = entry.getKey();
+      String key = templateKey(repositoryKey, entry.getValue());
+      LoadedTemplateDto stored = storedByRepository.get(repositoryKey);
+      if (stored != null && !stored.getKey().equals(key)) {
+        dbClient.loadedTemplateDao().delete(session, LoadedTemplateDto.RULE_REPOSITORY_TYPE, stored.getKey());
+      }
+      if ((stored == null || !stored.getKey().equals(key)) && key.length() <= MAX_KEY_LENGTH) {
+        dbClient.loadedTemplateDao().insert(new LoadedTemplateDto(key, LoadedTemplateDto.RULE_REPOSITORY_TYPE), session);
+      }
+    }
+    session.commit();
+  }
+
+  private void loadStamps(DbSession session) {
+    stampsByRepository.clear();
+    for (RuleRepositoryStampDto stamp : dbClient.ruleDao().selectRepositoryStamps(session)) {
+      stampsByRepository.put(stamp.getRepositoryKey(), stamp);
+    }
+  }
+
+  private String templateKey(String repositoryKey, String definitionHash) {
+    RuleRepositoryStampDto stamp = stampsByRepository.get(repositoryKey);
+    MessageDigest digest = DigestUtils.getMd5Digest();
+    update(digest, serverVersion, definitionHash,
+      stamp == null ? "0" : String.valueOf(stamp.getRuleCount()),
+      stamp == null ? null : String.valueOf(stamp.getMaxUpdatedAt()));
+    return repositoryKey + SEPARATOR + Hex.encodeHexString(digest.digest());
+  }
+
+  /**
+   * Hash of the definitions of the rules of a repository and of its extensions, as merged into db
+   * by {@link RegisterRules}
+   */
+  static String hash(Collection<RulesDefinition.ExtendedRepository> repositories) {
+    List<RulesDefinition.Rule> rules = new ArrayList<>();
+    for (RulesDefinition.ExtendedRepository repository : repositories) {
+      rules.addAll(repository.rules());
+    }
+    Collections.sort(rules, RULE_KEY_COMPARATOR);
+
+    MessageDigest digest = DigestUtils.getMd5Digest();
+    for (RulesDefinition.Rule rule : rules) {
+      update(digest, rule.key(), rule.repository().language(), rule.name(), rule.htmlDescription(), rule.markdownDescription(),
+        rule.internalKey(), rule.severity(), String.valueOf(rule.template()), rule.status().name(), rule.type().name(), rule.gapDescription());
+      DebtRemediationFunction function = rule.debtRemediationFunction();
+      if (function == null) {
+        update(digest, (String) null);
+      } else {
+        update(digest, function.type().name(), function.gapMultiplier(), function.baseEffort());
+      }
+      update(digest, new TreeSet<>(rule.tags()).toString());
+      List<RulesDefinition.Param> params = new ArrayList<>(rule.params());
+      Collections.sort(params, PARAM_KEY_COMPARATOR);
+      for (RulesDefinition.Param param : params) {
+        update(digest, param.key(), param.type().toString(), param.defaultValue(), param.description());
+      }
+    }
+    return Hex.encodeHexString(digest.digest());
+  }
+
+  /**
+   * Values are prefixed by their length, so that consecutive values can not be confused
+   */
+  private static void update(MessageDigest digest, String... values) {
+    for (String value : values) {
+      if (value == null) {
+        digest.update((byte) 0);
+      } else {
+        byte[] bytes = value.getBytes(Charsets.UTF_8);
+        digest.update((byte) 1);
+        digest.update(String.valueOf(bytes.length).getBytes(Charsets.UTF_8));
+        digest.update((byte) SEPARATOR);
+        digest.update(bytes);
+      }
+    }
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.source;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import org.sonar.api.config.Settings;
+import org.sonar.api.server.ServerSide;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.protobuf.DbFileSources;
+import org.sonar.db.source.FileSourceDto;
+
+/**
+ * LRU cache of the decoded sources of files, so that the web services called when browsing
+ * a file or an issue do not decompress the same FILE_SOURCES row again and again.
+ * <p>
+ * Entries are keyed by file UUID and are valid as long as the data hash of the row does not change, so
+ * a cheap query on the hash is still executed when an entry is found. Size of cache is bounded by
+ * {@value #MAX_SIZE_IN_BYTES_PROPERTY} ({@value #DEFAULT_MAX_SIZE_IN_BYTES} bytes by default), the weight of an
+ * entry being the serialized size of its data. This size is read from the index of the blocks of lines before
+ * decoding, so that files too big for the cache are only decoded by range of lines, without being cached.
+ * </p>
+ */
+@ServerSide
+public class FileSourceCache {
+
+  static final String MAX_SIZE_IN_BYTES_PROPERTY = "sonar.web.fileSourceCache.maxSizeInBytes";
+  static final long DEFAULT_MAX_SIZE_IN_BYTES = 64L * 1024 * 1024;
+  /**
+   * An entry can not use more than this fraction of the cache
+   */
+  private static final int MAX_ENTRY_RATIO = 8;
+
+  private final DbClient dbClient;
+  private final long maxEntrySizeInBytes;
+  private final Cache<String, Entry> cache;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  public FileSourceCache(DbClient dbClient, Settings settings) {
+    this.dbClient = dbClient;
+    long maxSizeInBytes = settings.getLong(MAX_SIZE_IN_BYTES_PROPERTY);
+    if (maxSizeInBytes <= 0) {
+      maxSizeInBytes = DEFAULT_MAX_SIZE_IN_BYTES;
+    }
+    this.maxEntrySizeInBytes = maxSizeInBytes / MAX_ENTRY_RATIO;
+    this.cache = CacheBuilder.newBuilder()
+      .maximumWeight(maxSizeInBytes)
+      .weigher(EntryWeigher.INSTANCE)
+      .recordStats()
+      .build();
+  }
+
+  /**
+   * Lines of the range {@code [from, toInclusive]} of the file, plus possibly some lines around it,
+   * or null if the file has no sources.
+   */
+  @CheckForNull
+  public Iterable<DbFileSources.Line> getLines(DbSession dbSession, String fileUuid, int from, int toInclusive) {
+    Entry entry = cache.getIfPresent(fileUuid);
+    if (entry != null && entry.dataHash.equals(dbClient.fileSourceDao().selectSourceDataHash(dbSession, fileUuid))) {
+      hits.incrementAndGet();
+      return entry.data.getLinesList();
+    }
+    misses.incrementAndGet();
+    FileSourceDto dto = dbClient.fileSourceDao().selectSourceByFileUuid(dbSession, fileUuid);
+    if (dto == null) {
+      return null;
+    }
+    if (dto.getDataHash() == null || !fitsInCache(dto)) {
+      return dto.getSourceLines(from, toInclusive);
+    }
+    DbFileSources.Data data = dto.getSourceData();
+    if (data.getSerializedSize() <= maxEntrySizeInBytes) {
+      cache.put(fileUuid, new Entry(dto.getDataHash(), data));
+    }
+    return data.getLinesList();
+  }
+
+  /**
+   * Whether the decoded data are small enough to be cached. When the size of the decoded data is not known (data
+   * stored before it was indexed), the compressed size is the only hint.
+   */
+  private boolean fitsInCache(FileSourceDto dto) {
+    long dataSize = dto.getSourceDataSize();
+    if (dataSize < 0L) {
+      return dto.getBinaryData().length <= maxEntrySizeInBytes;
+    }
+    return dataSize <= maxEntrySizeInBytes;
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getEvictionCount() {
+    return cache.stats().evictionCount();
+  }
+
+  public long getSize() {
+    return cache.size();
+  }
+
+  public long getSizeInBytes() {
+    long bytes = 0L;
+    for (Entry entry : cache.asMap().values()) {
+      bytes += entry.sizeInBytes();
+    }
+    return bytes;
+  }
+
+  private static class Entry {
+    private final String dataHash;
+    private final DbFileSources.Data data;
+
+    private Entry(String dataHash, DbFileSources.Data data) {
+      this.dataHash = dataHash;
+      this.data = data;
+    }
+
+    private int sizeInBytes() {
+      return data.getSerializedSize();
+    }
+  }
+
+  private enum EntryWeigher implements Weigher<String, Entry> {
+    INSTANCE;
+
+    @Override
+    public int weigh(String fileUuid, @Nonnull Entry entry) {
+      return entry.sizeInBytes();
+    }
+  }
+}
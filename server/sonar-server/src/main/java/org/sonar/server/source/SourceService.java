@@ -26,19 +26,17 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.FluentIterable;
 import javax.annotation.Nonnull;
-import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.protobuf.DbFileSources;
-import org.sonar.db.source.FileSourceDto;
 
 public class SourceService {
 
-  private final DbClient dbClient;
   private final HtmlSourceDecorator htmlDecorator;
+  private final FileSourceCache fileSourceCache;
 
-  public SourceService(DbClient dbClient, HtmlSourceDecorator htmlDecorator) {
-    this.dbClient = dbClient;
+  public SourceService(HtmlSourceDecorator htmlDecorator, FileSourceCache fileSourceCache) {
     this.htmlDecorator = htmlDecorator;
+    this.fileSourceCache = fileSourceCache;
   }
 
   /**
@@ -65,12 +63,11 @@ public class SourceService {
   private <E> Optional<Iterable<E>> getLines(DbSession dbSession, String fileUuid, int from, int toInclusive, Function<DbFileSources.Line, E> function) {
     verifyLine(from);
     Preconditions.checkArgument(toInclusive >= from, String.format("Line number must greater than or equal to %d, got %d", from, toInclusive));
-    FileSourceDto dto = dbClient.fileSourceDao().selectSourceByFileUuid(dbSession, fileUuid);
-    if (dto == null) {
+    Iterable<DbFileSources.Line> lines = fileSourceCache.getLines(dbSession, fileUuid, from, toInclusive);
+    if (lines == null) {
       return Optional.absent();
     }
-    DbFileSources.Data data = dto.getSourceData();
-    return Optional.of(FluentIterable.from(data.getLinesList())
+    return Optional.of(FluentIterable.from(lines)
       .filter(new IsGreaterOrEqualThanLine(from))
       .limit(toInclusive - from + 1)
       .transform(function));
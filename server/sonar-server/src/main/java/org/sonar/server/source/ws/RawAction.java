@@ -22,7 +22,8 @@ package org.sonar.server.source.ws;
 import com.google.common.base.Optional;
 import com.google.common.io.Resources;
 import java.io.IOException;
-import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import org.sonar.api.server.ws.Request;
 import org.sonar.api.server.ws.Response;
@@ -75,11 +76,13 @@ public class RawAction implements SourcesWsAction {
       Optional<Iterable<String>> lines = sourceService.getLinesAsRawText(dbSession, file.uuid(), 1, Integer.MAX_VALUE);
       response.stream().setMediaType("text/plain");
       if (lines.isPresent()) {
-        OutputStream output = response.stream().output();
+        // lines are decompressed by blocks while being written
+        Writer writer = new OutputStreamWriter(response.stream().output(), StandardCharsets.UTF_8);
         for (String line : lines.get()) {
-          output.write(line.getBytes(StandardCharsets.UTF_8));
-          output.write("\n".getBytes(StandardCharsets.UTF_8));
+          writer.write(line);
+          writer.write('\n');
         }
+        writer.flush();
       }
     } catch (IOException e) {
       throw new IllegalStateException("Fail to write raw source of file " + fileKey, e);
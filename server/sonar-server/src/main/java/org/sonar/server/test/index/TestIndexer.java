@@ -33,13 +33,14 @@ import org.sonar.db.DbSession;
 import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsClient;
+import org.sonar.server.es.ProjectIndexer;
 import org.sonar.server.source.index.FileSourcesUpdaterHelper;
 
 /**
  * Add to Elasticsearch index {@link TestIndexDefinition} the rows of
  * db table FILE_SOURCES of type TEST that are not indexed yet
  */
-public class TestIndexer extends BaseIndexer {
+public class TestIndexer extends BaseIndexer implements ProjectIndexer {
 
   private final DbClient dbClient;
 
@@ -48,9 +49,16 @@ public class TestIndexer extends BaseIndexer {
     this.dbClient = dbClient;
   }
 
+  @Override
+  public String getIndexType() {
+    return INDEX;
+  }
+
+  @Override
   public void index(final String projectUuid) {
+    checkEnabled();
     deleteByProject(projectUuid);
-    super.index(lastUpdatedAt -> doIndex(lastUpdatedAt, projectUuid));
+    indexInCallingThread(lastUpdatedAt -> doIndex(lastUpdatedAt, projectUuid));
   }
 
   public long index(Iterator<FileSourcesUpdaterHelper.Row> dbRows) {
@@ -0,0 +1,154 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.util.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import javax.annotation.CheckForNull;
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.sonar.core.util.CloseableIterator;
+
+/**
+ * Records are encoded by a {@link RecordCodec} into buffered block I/O, optionally compressed with LZ4.
+ * <p>
+ * Each record is prefixed by a marker byte, which allows to detect the end of stream without
+ * framing the records by their length, so that codecs write and read directly from the file streams.
+ * When compression is enabled, each {@link RecordOutput} writes its own LZ4 stream, the file
+ * being the concatenation of these streams.
+ */
+public class CodecRecordStore<O> implements RecordStore<O> {
+
+  private static final int RECORD_MARKER = 1;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final RecordCodec<O> codec;
+  private final boolean compressed;
+
+  public CodecRecordStore(RecordCodec<O> codec, boolean compressed) {
+    this.codec = codec;
+    this.compressed = compressed;
+  }
+
+  @Override
+  public void create(File file) throws IOException {
+    new FileOutputStream(file).close();
+  }
+
+  @Override
+  public RecordOutput<O> openOutput(File file) throws IOException {
+    OutputStream output = new BufferedOutputStream(new FileOutputStream(file, true), BUFFER_SIZE);
+    if (compressed) {
+      output = new LZ4BlockOutputStream(output, BUFFER_SIZE);
+    }
+    return new CodecRecordOutput<>(codec, new DataOutputStream(output));
+  }
+
+  @Override
+  public CloseableIterator<O> openIterator(File file) throws IOException {
+    return new CodecRecordIterator<>(codec, new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE), compressed);
+  }
+
+  private static class CodecRecordOutput<O> implements RecordOutput<O> {
+    private final RecordCodec<O> codec;
+    private final DataOutputStream output;
+
+    private CodecRecordOutput(RecordCodec<O> codec, DataOutputStream output) {
+      this.codec = codec;
+      this.output = output;
+    }
+
+    @Override
+    public void write(O record) throws IOException {
+      output.writeByte(RECORD_MARKER);
+      codec.write(record, output);
+    }
+
+    @Override
+    public void close() throws IOException {
+      output.close();
+    }
+  }
+
+  private static class CodecRecordIterator<O> extends CloseableIterator<O> {
+    private final RecordCodec<O> codec;
+    private final BufferedInputStream fileInput;
+    private final boolean compressed;
+    private DataInputStream segment;
+
+    private CodecRecordIterator(RecordCodec<O> codec, BufferedInputStream fileInput, boolean compressed) {
+      this.codec = codec;
+      this.fileInput = fileInput;
+      this.compressed = compressed;
+      this.segment = new DataInputStream(compressed ? new LZ4BlockInputStream(fileInput) : fileInput);
+    }
+
+    @Override
+    @CheckForNull
+    protected O doNext() {
+      try {
+        int marker = segment.read();
+        while (marker == -1) {
+          if (!nextSegment()) {
+            return null;
+          }
+          marker = segment.read();
+        }
+        if (marker != RECORD_MARKER) {
+          throw new IllegalStateException("Invalid record marker: " + marker);
+        }
+        return codec.read(segment);
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to read record", e);
+      }
+    }
+
+    /**
+     * Moves to the next LZ4 stream, if any. Uncompressed files are made of a single segment.
+     */
+    private boolean nextSegment() throws IOException {
+      if (!compressed) {
+        return false;
+      }
+      fileInput.mark(1);
+      if (fileInput.read() == -1) {
+        return false;
+      }
+      fileInput.reset();
+      InputStream lz4Input = new LZ4BlockInputStream(fileInput);
+      segment = new DataInputStream(lz4Input);
+      return true;
+    }
+
+    @Override
+    protected void doClose() {
+      IOUtils.closeQuietly(fileInput);
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.util.cache;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.sonar.core.util.CloseableIterator;
+import org.sonar.server.util.ObjectInputStreamIterator;
+
+/**
+ * Records are written with Java serialization. Simple but slow and verbose, as the class descriptors
+ * are written again for each record.
+ */
+public class JavaSerializationRecordStore<O extends Serializable> implements RecordStore<O> {
+
+  @Override
+  public void create(File file) throws IOException {
+    // writes the serialization stream header required when calling "openIterator()"
+    // on empty stream. Moreover it allows to call multiple times "openOutput()"
+    ObjectOutputStream output = new ObjectOutputStream(new FileOutputStream(file));
+    boolean threw = true;
+    try {
+      output.flush();
+      threw = false;
+    } finally {
+      if (threw) {
+        // do not hide initial exception
+        IOUtils.closeQuietly(output);
+      } else {
+        output.close();
+      }
+    }
+  }
+
+  @Override
+  public RecordOutput<O> openOutput(File file) throws IOException {
+    final ObjectOutputStream output = new ObjectOutputStream(new FileOutputStream(file, true)) {
+      @Override
+      protected void writeStreamHeader() throws IOException {
+        // do not write stream headers as it's already done in create()
+      }
+    };
+    return new RecordOutput<O>() {
+      @Override
+      public void write(O record) throws IOException {
+        output.writeObject(record);
+        output.reset();
+      }
+
+      @Override
+      public void close() throws IOException {
+        output.close();
+      }
+    };
+  }
+
+  @Override
+  public CloseableIterator<O> openIterator(File file) throws IOException {
+    return new ObjectInputStreamIterator<>(FileUtils.openInputStream(file));
+  }
+}
@@ -0,0 +1,53 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.util.cache;
+
+import java.io.File;
+import java.io.IOException;
+import org.sonar.core.util.CloseableIterator;
+
+/**
+ * Storage format of the records of a {@link DiskCache}. Records are only appended, then read
+ * sequentially through a full scan.
+ */
+public interface RecordStore<O> {
+
+  /**
+   * Creates the empty file. Any existing content is dropped.
+   */
+  void create(File file) throws IOException;
+
+  /**
+   * Opens an output that appends records at the end of the file.
+   */
+  RecordOutput<O> openOutput(File file) throws IOException;
+
+  /**
+   * Streams all the records of the file, in the order they were appended.
+   */
+  CloseableIterator<O> openIterator(File file) throws IOException;
+
+  interface RecordOutput<O> extends AutoCloseable {
+    void write(O record) throws IOException;
+
+    @Override
+    void close() throws IOException;
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.util.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.CheckForNull;
+
+/**
+ * Byte arrays stored by key. Values are kept on heap as long as the heap budget is not exhausted,
+ * then they are appended to a file and read back with positional reads. Space of the values
+ * removed from the file is not reclaimed before {@link #close()}.
+ * <p/>
+ * Thread-safe.
+ */
+public class SpillableByteStore implements AutoCloseable {
+
+  private final File file;
+  private final long heapBudget;
+  private final AtomicLong heapSize = new AtomicLong();
+  private final ConcurrentMap<String, Object> handlesByKey = new ConcurrentHashMap<>();
+  private RandomAccessFile spill;
+  private long spillSize;
+
+  public SpillableByteStore(File file, long heapBudget) {
+    this.file = file;
+    this.heapBudget = heapBudget;
+  }
+
+  public void put(String key, byte[] value) {
+    Object handle;
+    if (heapSize.addAndGet(value.length) > heapBudget) {
+      heapSize.addAndGet(-value.length);
+      handle = spill(value);
+    } else {
+      handle = value;
+    }
+    release(handlesByKey.put(key, handle));
+  }
+
+  public boolean contains(String key) {
+    return handlesByKey.containsKey(key);
+  }
+
+  /**
+   * Removes the value from the store and returns it, or returns null if there is none.
+   */
+  @CheckForNull
+  public byte[] take(String key) {
+    Object handle = handlesByKey.remove(key);
+    if (handle == null) {
+      return null;
+    }
+    release(handle);
+    return load(handle);
+  }
+
+  public int size() {
+    return handlesByKey.size();
+  }
+
+  public long heapSize() {
+    return heapSize.get();
+  }
+
+  public synchronized long spillSize() {
+    return spillSize;
+  }
+
+  @Override
+  public synchronized void close() {
+    handlesByKey.clear();
+    heapSize.set(0L);
+    spillSize = 0L;
+    if (spill != null) {
+      try {
+        spill.close();
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to close file " + file, e);
+      } finally {
+        spill = null;
+        file.delete();
+      }
+    }
+  }
+
+  private synchronized SpilledValue spill(byte[] value) {
+    try {
+      if (spill == null) {
+        spill = new RandomAccessFile(file, "rw");
+        spill.setLength(0L);
+      }
+      spill.getChannel().write(ByteBuffer.wrap(value), spillSize);
+      SpilledValue handle = new SpilledValue(spillSize, value.length);
+      spillSize += value.length;
+      return handle;
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to write into file " + file, e);
+    }
+  }
+
+  private byte[] load(Object handle) {
+    if (handle instanceof byte[]) {
+      return (byte[]) handle;
+    }
+    SpilledValue value = (SpilledValue) handle;
+    ByteBuffer buffer = ByteBuffer.allocate(value.length);
+    try {
+      FileChannel channel = channel();
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, value.offset + buffer.position()) < 0) {
+          throw new IllegalStateException("Unexpected end of file " + file);
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to read file " + file, e);
+    }
+    return buffer.array();
+  }
+
+  private synchronized FileChannel channel() {
+    return spill.getChannel();
+  }
+
+  private void release(@CheckForNull Object handle) {
+    if (handle instanceof byte[]) {
+      heapSize.addAndGet(-((byte[]) handle).length);
+    }
+  }
+
+  private static class SpilledValue {
+    private final long offset;
+    private final int length;
+
+    private SpilledValue(long offset, int length) {
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+}
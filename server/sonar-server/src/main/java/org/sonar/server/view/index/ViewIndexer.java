@@ -29,10 +29,11 @@ import org.sonar.db.component.UuidWithProjectUuidDto;
 import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsClient;
+import org.sonar.server.es.ProjectIndexer;
 
 import static com.google.common.collect.Maps.newHashMap;
 
-public class ViewIndexer extends BaseIndexer {
+public class ViewIndexer extends BaseIndexer implements ProjectIndexer {
 
   private final DbClient dbClient;
 
@@ -67,13 +68,20 @@ public class ViewIndexer extends BaseIndexer {
     return 0L;
   }
 
+  @Override
+  public String getIndexType() {
+    return ViewIndexDefinition.INDEX;
+  }
+
   /**
    * Index a root view : it will load projects on each sub views and index it.
    * Used by the compute engine to reindex a root view.
    * <p/>
    * The views lookup cache will be cleared
    */
+  @Override
   public void index(String rootViewUuid) {
+    checkEnabled();
     DbSession dbSession = dbClient.openSession(false);
     try {
       Map<String, String> viewAndProjectViewUuidMap = newHashMap();
@@ -0,0 +1,209 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.batch;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.sonar.api.config.Settings;
+import org.sonar.api.platform.Server;
+import org.sonar.api.security.DefaultGroups;
+import org.sonar.api.utils.System2;
+import org.sonar.api.web.UserRole;
+import org.sonar.db.DbTester;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.component.ComponentTesting;
+import org.sonar.db.source.FileSourceDto;
+import org.sonar.scanner.protocol.input.ScannerInput.ServerFile;
+import org.sonar.server.es.EsTester;
+import org.sonar.server.exceptions.ForbiddenException;
+import org.sonar.server.issue.IssueTesting;
+import org.sonar.server.issue.index.IssueAuthorizationDao;
+import org.sonar.server.issue.index.IssueAuthorizationIndexer;
+import org.sonar.server.issue.index.IssueDoc;
+import org.sonar.server.issue.index.IssueIndex;
+import org.sonar.server.issue.index.IssueIndexDefinition;
+import org.sonar.server.issue.index.IssueIndexer;
+import org.sonar.server.tester.UserSessionRule;
+import org.sonar.server.ws.WsTester;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class FilesActionTest {
+
+  static final String PROJECT_UUID = "ABCD";
+  static final String MODULE_KEY = "struts-core";
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Rule
+  public DbTester db = DbTester.create(System2.INSTANCE);
+
+  @Rule
+  public EsTester es = new EsTester(new IssueIndexDefinition(new Settings()));
+
+  @Rule
+  public UserSessionRule userSessionRule = UserSessionRule.standalone();
+
+  IssueIndexer issueIndexer;
+  IssueAuthorizationIndexer issueAuthorizationIndexer;
+
+  WsTester tester;
+
+  ComponentDto project;
+  ComponentDto module;
+
+  @Before
+  public void before() {
+    IssueIndex issueIndex = new IssueIndex(es.client(), System2.INSTANCE, userSessionRule);
+    issueIndexer = new IssueIndexer(null, es.client(), new Settings());
+    issueAuthorizationIndexer = new IssueAuthorizationIndexer(null, es.client());
+    FilesAction filesAction = new FilesAction(db.getDbClient(), issueIndex, userSessionRule);
+    tester = new WsTester(new BatchWs(new BatchIndex(mock(Server.class)), filesAction));
+
+    project = ComponentTesting.newProjectDto(PROJECT_UUID).setKey("struts");
+    module = ComponentTesting.newModuleDto("BCDE", project).setKey(MODULE_KEY);
+    db.getDbClient().componentDao().insert(db.getSession(), project, module);
+    db.getSession().commit();
+  }
+
+  @Test
+  public void return_line_hashes_of_files() throws Exception {
+    insertFile("FILE1", "ABC\nDEF\nGHI");
+    insertFile("FILE2", "JKL");
+    userSessionRule.login("polop").addProjectUuidPermissions(UserRole.USER, PROJECT_UUID);
+
+    List<ServerFile> files = call("FILE1,FILE2,UNKNOWN,struts", false);
+
+    assertThat(files).hasSize(2);
+    assertThat(fileByKey(files, "FILE1").getLineHashList()).containsExactly("ABC", "DEF", "GHI");
+    assertThat(fileByKey(files, "FILE2").getLineHashList()).containsExactly("JKL");
+    assertThat(fileByKey(files, "FILE1").getIssueCount()).isZero();
+  }
+
+  @Test
+  public void return_files_without_sources() throws Exception {
+    ComponentDto file = ComponentTesting.newFileDto(module, "FILE1_UUID").setKey("FILE1");
+    db.getDbClient().componentDao().insert(db.getSession(), file);
+    db.getSession().commit();
+    userSessionRule.login("polop").addProjectUuidPermissions(UserRole.USER, PROJECT_UUID);
+
+    List<ServerFile> files = call("FILE1", false);
+
+    assertThat(files).hasSize(1);
+    assertThat(files.get(0).getKey()).isEqualTo("FILE1");
+    assertThat(files.get(0).getLineHashCount()).isZero();
+  }
+
+  @Test
+  public void return_open_issues_of_files() throws Exception {
+    ComponentDto file1 = insertFile("FILE1", "ABC");
+    ComponentDto file2 = insertFile("FILE2", "DEF");
+    indexIssues(
+      IssueTesting.newDoc("ISSUE1", file1).setRuleKey("squid:AvoidCycle").setSeverity("BLOCKER"),
+      IssueTesting.newDoc("ISSUE2", file1).setRuleKey("squid:AvoidCycle").setSeverity("MAJOR"),
+      IssueTesting.newDoc("ISSUE3", file2).setRuleKey("squid:AvoidCycle").setSeverity("MINOR"));
+    userSessionRule.login("polop").addProjectUuidPermissions(UserRole.USER, PROJECT_UUID);
+
+    List<ServerFile> files = call("FILE1,FILE2", true);
+
+    ServerFile serverFile1 = fileByKey(files, "FILE1");
+    assertThat(serverFile1.getLineHashList()).containsExactly("ABC");
+    assertThat(serverFile1.getIssueCount()).isEqualTo(2);
+    assertThat(serverFile1.getIssue(0).getModuleKey()).isEqualTo(MODULE_KEY);
+    assertThat(serverFile1.getIssue(0).getRuleKey()).isEqualTo("AvoidCycle");
+    assertThat(fileByKey(files, "FILE2").getIssueCount()).isEqualTo(1);
+    assertThat(fileByKey(files, "FILE2").getIssue(0).getKey()).isEqualTo("ISSUE3");
+  }
+
+  @Test
+  public void fail_without_browse_permission() throws Exception {
+    insertFile("FILE1", "ABC");
+    userSessionRule.login("polop");
+
+    thrown.expect(ForbiddenException.class);
+    call("FILE1", false);
+  }
+
+  @Test
+  public void fail_on_too_many_files() throws Exception {
+    List<String> keys = new ArrayList<>();
+    for (int i = 0; i <= FilesAction.MAX_FILES; i++) {
+      keys.add("FILE" + i);
+    }
+
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Too many files: 501. The maximum is 500.");
+    call(StringUtils.join(keys, ","), false);
+  }
+
+  private ComponentDto insertFile(String key, String lineHashes) {
+    ComponentDto file = ComponentTesting.newFileDto(module, key + "_UUID").setKey(key);
+    db.getDbClient().componentDao().insert(db.getSession(), file);
+    db.getDbClient().fileSourceDao().insert(db.getSession(), new FileSourceDto()
+      .setProjectUuid(PROJECT_UUID)
+      .setFileUuid(file.uuid())
+      .setDataType(FileSourceDto.Type.SOURCE)
+      .setLineHashes(lineHashes)
+      .setCreatedAt(1500000000000L)
+      .setUpdatedAt(1500000000000L));
+    db.getSession().commit();
+    return file;
+  }
+
+  private List<ServerFile> call(String keys, boolean issues) throws Exception {
+    WsTester.TestRequest request = tester.newPostRequest("batch", "files")
+      .setParam("keys", keys)
+      .setParam("issues", String.valueOf(issues));
+    InputStream input = new ByteArrayInputStream(request.execute().output());
+    List<ServerFile> files = new ArrayList<>();
+    ServerFile file;
+    while ((file = ServerFile.parseDelimitedFrom(input)) != null) {
+      files.add(file);
+    }
+    return files;
+  }
+
+  private static ServerFile fileByKey(List<ServerFile> files, String key) {
+    for (ServerFile file : files) {
+      if (file.getKey().equals(key)) {
+        return file;
+      }
+    }
+    throw new IllegalArgumentException("No file " + key);
+  }
+
+  private void indexIssues(IssueDoc... issues) {
+    issueIndexer.index(Arrays.asList(issues).iterator());
+    for (IssueDoc issue : issues) {
+      issueAuthorizationIndexer.index(newArrayList(new IssueAuthorizationDao.Dto(issue.projectUuid(), 1).addGroup(DefaultGroups.ANYONE)));
+    }
+  }
+}
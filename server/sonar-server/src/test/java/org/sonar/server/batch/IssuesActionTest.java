@@ -87,7 +87,7 @@ public class IssuesActionTest {
   @Before
   public void before() {
     issueIndex = new IssueIndex(es.client(), System2.INSTANCE, userSessionRule);
-    issueIndexer = new IssueIndexer(null, es.client());
+    issueIndexer = new IssueIndexer(null, es.client(), new Settings());
     issueAuthorizationIndexer = new IssueAuthorizationIndexer(null, es.client());
     issuesAction = new IssuesAction(db.getDbClient(), issueIndex, userSessionRule, new ComponentFinder(db.getDbClient()));
 
@@ -27,6 +27,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.sonar.api.utils.internal.JUnitTempFolder;
 import org.sonar.core.util.CloseableIterator;
+import org.sonar.scanner.protocol.output.ReportArchive;
 import org.sonar.scanner.protocol.output.ScannerReport;
 import org.sonar.scanner.protocol.output.ScannerReportWriter;
 
@@ -315,4 +316,25 @@ public class BatchReportReaderImplTest {
     assertThat(res).containsExactly(COVERAGE_DETAIL_1, COVERAGE_DETAIL_2);
     res.close();
   }
+
+  @Test
+  public void read_report_from_archive() throws IOException {
+    writer.writeComponentMeasures(COMPONENT_REF, of(MEASURE));
+    writer.writeTests(COMPONENT_REF, of(TEST_1, TEST_2));
+    FileUtils.write(writer.getSourceFile(COMPONENT_REF), "line1\nline2");
+    FileUtils.write(writer.getFileStructure().analysisLog(), "log1");
+    File archive = tempFolder.newFile();
+    ReportArchive.write(writer.getFileStructure().getDirectory(), archive);
+
+    BatchReportReaderImpl archiveReader = new BatchReportReaderImpl(new ImmutableBatchReportDirectoryHolder(archive));
+    try {
+      assertThat(archiveReader.readComponentMeasures(COMPONENT_REF)).containsExactly(MEASURE);
+      assertThat(archiveReader.readTests(COMPONENT_REF)).containsExactly(TEST_1, TEST_2);
+      assertThat(archiveReader.readFileSource(COMPONENT_REF).get()).containsExactly("line1", "line2");
+      assertThat(archiveReader.readScannerLogs()).containsExactly("log1");
+      assertThat(archiveReader.readCoverageDetails(COMPONENT_REF)).isEmpty();
+    } finally {
+      archiveReader.stop();
+    }
+  }
 }
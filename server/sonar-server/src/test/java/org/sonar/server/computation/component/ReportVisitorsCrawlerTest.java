@@ -19,12 +19,20 @@
  */
 package org.sonar.server.computation.component;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.mockito.InOrder;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.inOrder;
@@ -102,6 +110,63 @@ public class ReportVisitorsCrawlerTest {
     inOrder.verify(spyPostOrderTypeAwareVisitor).visitProject(COMPONENT_TREE);
   }
 
+  @Test
+  public void visit_sibling_files_concurrently_when_file_visitors_are_thread_safe() throws Exception {
+    Component tree = treeWithManyFiles(50);
+    ThreadSafeCountingVisitor visitor = new ThreadSafeCountingVisitor();
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      VisitorsCrawler underTest = new VisitorsCrawler(Arrays.<ComponentVisitor>asList(visitor), pool);
+      underTest.visit(tree);
+
+      assertThat(visitor.visitedFiles).hasSize(50);
+      // directory is visited once all its files have been visited
+      assertThat(visitor.fileCountByDirectory).isEqualTo(50);
+      assertThat(visitor.fileCountByProject).isEqualTo(50);
+      assertThat(underTest.getCumulativeDurations()).containsKey(visitor);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void visitors_which_are_not_thread_safe_visit_files_in_order_from_calling_thread() throws Exception {
+    Component tree = treeWithManyFiles(50);
+    ThreadRecordingVisitor before = new ThreadRecordingVisitor(null);
+    ThreadSafeCountingVisitor threadSafeVisitor = new ThreadSafeCountingVisitor();
+    ThreadRecordingVisitor after = new ThreadRecordingVisitor(threadSafeVisitor);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      VisitorsCrawler underTest = new VisitorsCrawler(Arrays.<ComponentVisitor>asList(before, threadSafeVisitor, after), pool);
+      underTest.visit(tree);
+
+      assertThat(threadSafeVisitor.fileCountByDirectory).isEqualTo(50);
+      assertThat(before.threads).containsOnly(Thread.currentThread());
+      assertThat(after.threads).containsOnly(Thread.currentThread());
+      assertThat(before.visitedFiles).isEqualTo(tree.getChildren().get(0).getChildren().get(0).getChildren());
+      assertThat(after.visitedFiles).isEqualTo(before.visitedFiles);
+      // each file is visited by the thread safe visitor before being visited by the visitors declared after it
+      assertThat(after.filesNotYetVisitedByThreadSafeVisitor).isEmpty();
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void files_are_visited_sequentially_without_thread_safe_visitor() throws Exception {
+    Component tree = treeWithManyFiles(50);
+    ThreadRecordingVisitor visitor = new ThreadRecordingVisitor(null);
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      new VisitorsCrawler(Arrays.<ComponentVisitor>asList(visitor), pool).visit(tree);
+
+      assertThat(visitor.threads).containsOnly(Thread.currentThread());
+      assertThat(visitor.visitedFiles).hasSize(50);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
   @Test
   public void fail_with_IAE_when_visitor_is_not_path_aware_or_type_aware() throws Exception {
     thrown.expect(IllegalArgumentException.class);
@@ -125,6 +190,73 @@ public class ReportVisitorsCrawlerTest {
     return ReportComponent.builder(type, ref).addChildren(children).build();
   }
 
+  private static Component treeWithManyFiles(int fileCount) {
+    List<Component> files = new ArrayList<>();
+    for (int i = 0; i < fileCount; i++) {
+      files.add(component(FILE, 100 + i));
+    }
+    Component directory = component(DIRECTORY, 3, files.toArray(new Component[fileCount]));
+    return component(PROJECT, 1, component(MODULE, 2, directory));
+  }
+
+  private static class ThreadSafeCountingVisitor extends PathAwareVisitorAdapter<AtomicInteger> implements ThreadSafeVisitor {
+    private final Set<Component> visitedFiles = ConcurrentHashMap.newKeySet();
+    private int fileCountByDirectory = -1;
+    private int fileCountByProject = -1;
+
+    public ThreadSafeCountingVisitor() {
+      super(CrawlerDepthLimit.FILE, POST_ORDER, new SimpleStackElementFactory<AtomicInteger>() {
+        @Override
+        public AtomicInteger createForAny(Component component) {
+          return new AtomicInteger();
+        }
+      });
+    }
+
+    @Override
+    public void visitFile(Component file, Path<AtomicInteger> path) {
+      visitedFiles.add(file);
+      path.parent().incrementAndGet();
+    }
+
+    @Override
+    public void visitDirectory(Component directory, Path<AtomicInteger> path) {
+      fileCountByDirectory = path.current().get();
+      path.parent().addAndGet(path.current().get());
+    }
+
+    @Override
+    public void visitModule(Component module, Path<AtomicInteger> path) {
+      path.parent().addAndGet(path.current().get());
+    }
+
+    @Override
+    public void visitProject(Component project, Path<AtomicInteger> path) {
+      fileCountByProject = path.current().get();
+    }
+  }
+
+  private static class ThreadRecordingVisitor extends TypeAwareVisitorAdapter {
+    private final ThreadSafeCountingVisitor previousVisitor;
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private final List<Component> visitedFiles = new ArrayList<>();
+    private final List<Component> filesNotYetVisitedByThreadSafeVisitor = new ArrayList<>();
+
+    public ThreadRecordingVisitor(@Nullable ThreadSafeCountingVisitor previousVisitor) {
+      super(CrawlerDepthLimit.FILE, POST_ORDER);
+      this.previousVisitor = previousVisitor;
+    }
+
+    @Override
+    public void visitFile(Component file) {
+      threads.add(Thread.currentThread());
+      visitedFiles.add(file);
+      if (previousVisitor != null && !previousVisitor.visitedFiles.contains(file)) {
+        filesNotYetVisitedByThreadSafeVisitor.add(file);
+      }
+    }
+  }
+
   private static class TestTypeAwareVisitor extends TypeAwareVisitorAdapter {
 
     public TestTypeAwareVisitor(CrawlerDepthLimit maxDepth, ComponentVisitor.Order order) {
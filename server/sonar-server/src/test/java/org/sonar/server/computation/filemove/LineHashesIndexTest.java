@@ -0,0 +1,83 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.filemove;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LineHashesIndexTest {
+
+  private static final int MIN_SCORE = 85;
+
+  @Test
+  public void select_files_having_enough_lines_in_common() {
+    LineHashesIndex underTest = LineHashesIndex.create(asList(
+      lines("a", 20),
+      lines("b", 20),
+      concat(lines("a", 18), lines("c", 2)),
+      concat(lines("a", 10), lines("d", 10))), MIN_SCORE);
+
+    assertThat(underTest.selectCandidates(underTest.intern(lines("a", 20)))).containsExactly(0, 2);
+    assertThat(underTest.selectCandidates(underTest.intern(lines("b", 19)))).containsExactly(1);
+    assertThat(underTest.selectCandidates(underTest.intern(lines("z", 20)))).isEmpty();
+    assertThat(underTest.selectCandidates(underTest.intern(new ArrayList<>()))).isEmpty();
+  }
+
+  @Test
+  public void files_made_of_frequent_lines_are_still_selected() {
+    List<List<String>> files = new ArrayList<>();
+    // a line hash shared by too many files is not indexed
+    for (int i = 0; i < LineHashesIndex.MAX_INDEXED_FILES_PER_LINE_HASH + 1; i++) {
+      files.add(asList("}", "}", "}", "}", "}", "}", "}", "}", "}", "file" + i));
+    }
+    LineHashesIndex underTest = LineHashesIndex.create(files, MIN_SCORE);
+
+    assertThat(underTest.selectCandidates(underTest.intern(asList("}", "}", "}", "}", "}", "}", "}", "}", "}", "file3")))).contains(3);
+    assertThat(underTest.selectCandidates(underTest.intern(asList("}", "}", "}", "}", "}", "}", "}", "}", "}", "other"))))
+      .hasSize(files.size());
+    assertThat(underTest.selectCandidates(underTest.intern(asList("}", "x", "y", "z")))).isEmpty();
+  }
+
+  @Test
+  public void interned_line_hashes_are_shared_with_indexed_files() {
+    LineHashesIndex underTest = LineHashesIndex.create(asList(asList("a", "b", "a")), MIN_SCORE);
+
+    assertThat(underTest.getLineHashes(0)).containsExactly(0, 1, 0);
+    assertThat(underTest.intern(asList("b", "a", "unknown", "other"))).containsExactly(1, 0, -1, -1);
+  }
+
+  private static List<String> lines(String prefix, int count) {
+    List<String> res = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      res.add(prefix + i);
+    }
+    return res;
+  }
+
+  private static List<String> concat(List<String> list1, List<String> list2) {
+    List<String> res = new ArrayList<>(list1);
+    res.addAll(list2);
+    return res;
+  }
+}
@@ -19,7 +19,9 @@
  */
 package org.sonar.server.computation.filemove;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -53,4 +55,67 @@ public class SourceSimilarityImplTest {
     assertThat(underTest.score(asList("a"), asList("a", "b", "c"))).isEqualTo(33);
     assertThat(underTest.score(asList("a", "b", "c"), asList("a"))).isEqualTo(33);
   }
+
+  @Test
+  public void score_of_interned_line_hashes_is_the_same_as_score_of_lists() {
+    assertThat(underTest.score(new int[] {1, 2, 3}, new int[] {1, 2, 3}, 0)).isEqualTo(100);
+    assertThat(underTest.score(new int[] {1, 2, 3, 4}, new int[] {1, 2, 5, 6}, 0)).isEqualTo(50);
+    assertThat(underTest.score(new int[] {1}, new int[] {1, 2, 3}, 0)).isEqualTo(33);
+    assertThat(underTest.score(new int[] {1, 2, 3}, new int[] {1}, 0)).isEqualTo(33);
+    assertThat(underTest.score(new int[] {1, 2, 3}, new int[] {4, 5}, 0)).isEqualTo(0);
+    assertThat(underTest.score(new int[0], new int[0], 0)).isEqualTo(0);
+  }
+
+  @Test
+  public void score_of_interned_line_hashes_is_zero_if_lower_than_min_score() {
+    int[] left = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+    int[] right = {1, 2, 3, 4, 5, 6, 7, 8, 11, 12};
+
+    assertThat(underTest.score(left, right, 80)).isEqualTo(80);
+    assertThat(underTest.score(left, right, 81)).isEqualTo(0);
+  }
+
+  @Test
+  public void bounded_levenshtein_distance() {
+    int[] left = {1, 2, 3, 4, 5, 6};
+    int[] right = {1, 3, 4, 5, 6, 7};
+
+    assertThat(underTest.boundedLevenshteinDistance(left, right, 6)).isEqualTo(2);
+    assertThat(underTest.boundedLevenshteinDistance(left, right, 2)).isEqualTo(2);
+    assertThat(underTest.boundedLevenshteinDistance(left, right, 1)).isEqualTo(-1);
+    assertThat(underTest.boundedLevenshteinDistance(new int[] {1}, new int[] {1, 2, 3}, 1)).isEqualTo(-1);
+    assertThat(underTest.boundedLevenshteinDistance(new int[0], new int[] {1, 2}, 2)).isEqualTo(2);
+  }
+
+  @Test
+  public void bounded_levenshtein_distance_is_the_same_as_levenshtein_distance_under_threshold() {
+    Random random = new Random(42);
+    for (int test = 0; test < 200; test++) {
+      int[] left = randomLines(random);
+      int[] right = randomLines(random);
+      int distance = underTest.levenshteinDistance(toList(left), toList(right));
+
+      assertThat(underTest.boundedLevenshteinDistance(left, right, distance)).isEqualTo(distance);
+      assertThat(underTest.boundedLevenshteinDistance(left, right, distance + 3)).isEqualTo(distance);
+      if (distance > 0) {
+        assertThat(underTest.boundedLevenshteinDistance(left, right, distance - 1)).isEqualTo(-1);
+      }
+    }
+  }
+
+  private static int[] randomLines(Random random) {
+    int[] res = new int[random.nextInt(30)];
+    for (int i = 0; i < res.length; i++) {
+      res[i] = random.nextInt(5);
+    }
+    return res;
+  }
+
+  private static List<Integer> toList(int[] array) {
+    List<Integer> res = new ArrayList<>(array.length);
+    for (int i : array) {
+      res.add(i);
+    }
+    return res;
+  }
 }
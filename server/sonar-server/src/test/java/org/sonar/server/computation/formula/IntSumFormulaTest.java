@@ -19,7 +19,6 @@
  */
 package org.sonar.server.computation.formula;
 
-import com.google.common.base.Optional;
 import javax.annotation.Nullable;
 import org.assertj.guava.api.Assertions;
 import org.junit.Rule;
@@ -29,7 +28,6 @@ import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.ReportComponent;
 import org.sonar.server.computation.formula.SumFormula.IntSumFormula;
 import org.sonar.server.computation.formula.counter.IntSumCounter;
-import org.sonar.server.computation.measure.Measure;
 import org.sonar.server.computation.metric.Metric;
 import org.sonar.server.computation.period.PeriodsHolder;
 
@@ -160,13 +158,13 @@ public class IntSumFormulaTest {
 
   private static CounterInitializationContext createMeasureInInitContext(int value) {
     CounterInitializationContext initContext = mock(CounterInitializationContext.class);
-    when(initContext.getMeasure(LINES_KEY)).thenReturn(Optional.of(Measure.newMeasureBuilder().create(value)));
+    when(initContext.getValue(LINES_KEY)).thenReturn((double) value);
     return initContext;
   }
 
   private static CounterInitializationContext createNoMeasureInInitContext() {
     CounterInitializationContext initContext = mock(CounterInitializationContext.class);
-    when(initContext.getMeasure(LINES_KEY)).thenReturn(Optional.<Measure>absent());
+    when(initContext.getValue(LINES_KEY)).thenReturn(Double.NaN);
     return initContext;
   }
 
@@ -19,10 +19,8 @@
  */
 package org.sonar.server.computation.formula.counter;
 
-import com.google.common.base.Optional;
 import org.junit.Test;
 import org.sonar.server.computation.formula.CounterInitializationContext;
-import org.sonar.server.computation.measure.Measure;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.guava.api.Assertions.assertThat;
@@ -45,7 +43,7 @@ public class IntSumCounterTest {
 
   @Test
   public void aggregate_from_context() {
-    when(counterInitializationContext.getMeasure(METRIC_KEY)).thenReturn(Optional.of(Measure.newMeasureBuilder().create(10)));
+    when(counterInitializationContext.getValue(METRIC_KEY)).thenReturn(10d);
 
     sumCounter.initialize(counterInitializationContext);
 
@@ -54,7 +52,7 @@ public class IntSumCounterTest {
 
   @Test
   public void no_value_when_aggregate_from_context_but_no_measure() {
-    when(counterInitializationContext.getMeasure(anyString())).thenReturn(Optional.<Measure>absent());
+    when(counterInitializationContext.getValue(anyString())).thenReturn(Double.NaN);
 
     sumCounter.initialize(counterInitializationContext);
 
@@ -63,7 +61,7 @@ public class IntSumCounterTest {
 
   @Test
   public void aggregate_from_counter() {
-    when(counterInitializationContext.getMeasure(METRIC_KEY)).thenReturn(Optional.of(Measure.newMeasureBuilder().create(10)));
+    when(counterInitializationContext.getValue(METRIC_KEY)).thenReturn(10d);
     SumCounter anotherCounter = new IntSumCounter(METRIC_KEY);
     anotherCounter.initialize(counterInitializationContext);
 
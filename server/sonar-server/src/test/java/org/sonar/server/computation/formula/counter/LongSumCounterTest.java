@@ -19,10 +19,8 @@
  */
 package org.sonar.server.computation.formula.counter;
 
-import com.google.common.base.Optional;
 import org.junit.Test;
 import org.sonar.server.computation.formula.CounterInitializationContext;
-import org.sonar.server.computation.measure.Measure;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.guava.api.Assertions.assertThat;
@@ -46,7 +44,7 @@ public class LongSumCounterTest {
 
   @Test
   public void aggregate_from_context() {
-    when(counterInitializationContext.getMeasure(METRIC_KEY)).thenReturn(Optional.of(Measure.newMeasureBuilder().create(MEASURE_VALUE)));
+    when(counterInitializationContext.getValue(METRIC_KEY)).thenReturn(10d);
 
     sumCounter.initialize(counterInitializationContext);
 
@@ -55,7 +53,7 @@ public class LongSumCounterTest {
 
   @Test
   public void no_value_when_aggregate_from_context_but_no_measure() {
-    when(counterInitializationContext.getMeasure(anyString())).thenReturn(Optional.<Measure>absent());
+    when(counterInitializationContext.getValue(anyString())).thenReturn(Double.NaN);
 
     sumCounter.initialize(counterInitializationContext);
 
@@ -64,7 +62,7 @@ public class LongSumCounterTest {
 
   @Test
   public void aggregate_from_counter() {
-    when(counterInitializationContext.getMeasure(METRIC_KEY)).thenReturn(Optional.of(Measure.newMeasureBuilder().create(MEASURE_VALUE)));
+    when(counterInitializationContext.getValue(METRIC_KEY)).thenReturn(10d);
     SumCounter anotherCounter = new LongSumCounter(METRIC_KEY);
     anotherCounter.initialize(counterInitializationContext);
 
@@ -153,6 +153,11 @@ public class CoverageUtilsTest {
       return Optional.fromNullable(measures.get(metricKey));
     }
 
+    @Override
+    public double getValue(String metricKey) {
+      throw new UnsupportedOperationException("getValue is not supported");
+    }
+
     @Override
     public List<Period> getPeriods() {
       throw new UnsupportedOperationException("getPeriods is not supported");
@@ -0,0 +1,222 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.issue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.util.Date;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.rules.RuleType;
+import org.sonar.api.utils.Duration;
+import org.sonar.api.utils.System2;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.core.issue.DefaultIssueComment;
+import org.sonar.core.issue.FieldDiffs;
+import org.sonar.core.issue.IssueChangeContext;
+import org.sonar.core.util.CloseableIterator;
+import org.sonar.db.protobuf.DbCommons;
+import org.sonar.db.protobuf.DbIssues;
+import org.sonar.server.util.cache.DiskCache;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DefaultIssueCodecTest {
+
+  private static final Date DATE = new Date(1_450_000_000_000L);
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  DefaultIssueCodec underTest = new DefaultIssueCodec();
+
+  @Test
+  public void encode_and_decode_all_fields() throws Exception {
+    DefaultIssue issue = newIssue("ISSUE_1");
+
+    DefaultIssue decoded = encodeAndDecode(issue);
+
+    assertThat(decoded.key()).isEqualTo("ISSUE_1");
+    assertThat(decoded.type()).isEqualTo(RuleType.BUG);
+    assertThat(decoded.componentUuid()).isEqualTo("FILE_UUID");
+    assertThat(decoded.componentKey()).isEqualTo("PROJECT:src/Foo.java");
+    assertThat(decoded.moduleUuid()).isEqualTo("MODULE_UUID");
+    assertThat(decoded.moduleUuidPath()).isEqualTo(".PROJECT_UUID.MODULE_UUID.");
+    assertThat(decoded.projectUuid()).isEqualTo("PROJECT_UUID");
+    assertThat(decoded.projectKey()).isEqualTo("PROJECT");
+    assertThat(decoded.ruleKey()).isEqualTo(RuleKey.of("squid", "S001"));
+    assertThat(decoded.language()).isEqualTo("java");
+    assertThat(decoded.severity()).isEqualTo(Severity.BLOCKER);
+    assertThat(decoded.manualSeverity()).isTrue();
+    assertThat(decoded.message()).isEqualTo("Fix me éè");
+    assertThat(decoded.line()).isEqualTo(12);
+    assertThat(decoded.gap()).isEqualTo(2.5);
+    assertThat(decoded.effort()).isEqualTo(Duration.create(30L));
+    assertThat(decoded.status()).isEqualTo(Issue.STATUS_RESOLVED);
+    assertThat(decoded.resolution()).isEqualTo(Issue.RESOLUTION_FIXED);
+    assertThat(decoded.assignee()).isEqualTo("john");
+    assertThat(decoded.checksum()).isEqualTo("c4ecksum");
+    assertThat(decoded.attributes()).containsEntry("JIRA", "FOO-123").hasSize(1);
+    assertThat(decoded.authorLogin()).isEqualTo("jane");
+    assertThat(decoded.tags()).containsExactly("security", "cwe");
+    assertThat((DbIssues.Locations) decoded.getLocations()).isEqualTo(issue.getLocations());
+    assertThat(decoded.creationDate()).isEqualTo(DATE);
+    assertThat(decoded.updateDate()).isEqualTo(DATE);
+    assertThat(decoded.closeDate()).isEqualTo(DATE);
+    assertThat(decoded.isNew()).isFalse();
+    assertThat(decoded.isBeingClosed()).isTrue();
+    assertThat(decoded.isOnDisabledRule()).isTrue();
+    assertThat(decoded.isChanged()).isTrue();
+    assertThat(decoded.mustSendNotifications()).isTrue();
+    assertThat(decoded.selectedAt()).isEqualTo(1_000L);
+
+    assertThat(decoded.comments()).hasSize(1);
+    DefaultIssueComment comment = (DefaultIssueComment) decoded.comments().get(0);
+    assertThat(comment.key()).isEqualTo("COMMENT_1");
+    assertThat(comment.issueKey()).isEqualTo("ISSUE_1");
+    assertThat(comment.userLogin()).isEqualTo("john");
+    assertThat(comment.markdownText()).isEqualTo("a comment");
+    assertThat(comment.createdAt()).isEqualTo(DATE);
+    assertThat(comment.isNew()).isTrue();
+
+    assertThat(decoded.changes()).hasSize(2);
+    assertThat(decoded.changes().get(0).toString()).isEqualTo("effort=10|20");
+    assertThat(decoded.changes().get(0).get("effort").oldValue()).isEqualTo(10L);
+    assertThat(decoded.currentChange().toString()).isEqualTo("severity=MINOR|BLOCKER");
+    assertThat(decoded.currentChange().userLogin()).isEqualTo("john");
+    assertThat(decoded.currentChange().creationDate()).isEqualTo(DATE);
+    // the current change is still part of the list of changes
+    assertThat(decoded.changes().get(1)).isSameAs(decoded.currentChange());
+  }
+
+  @Test
+  public void encode_and_decode_issue_with_only_mandatory_fields() throws Exception {
+    DefaultIssue issue = new DefaultIssue()
+      .setKey("ISSUE_1")
+      .setRuleKey(RuleKey.of("squid", "S001"))
+      .setComponentKey("PROJECT:src/Foo.java");
+
+    DefaultIssue decoded = encodeAndDecode(issue);
+
+    assertThat(decoded.key()).isEqualTo("ISSUE_1");
+    assertThat(decoded.type()).isNull();
+    assertThat(decoded.line()).isNull();
+    assertThat(decoded.gap()).isNull();
+    assertThat(decoded.effort()).isNull();
+    assertThat(decoded.status()).isNull();
+    assertThat(decoded.attributes()).isEmpty();
+    assertThat(decoded.tags()).isEmpty();
+    assertThat(decoded.comments()).isEmpty();
+    assertThat(decoded.changes()).isEmpty();
+    assertThat(decoded.currentChange()).isNull();
+    assertThat((Object) decoded.getLocations()).isNull();
+    assertThat(decoded.creationDate()).isNull();
+    assertThat(decoded.isNew()).isTrue();
+  }
+
+  @Test
+  public void encoded_issues_are_smaller_than_java_serialized_ones() throws Exception {
+    File serializationFile = temp.newFile();
+    File codecFile = temp.newFile();
+    writeAndCheckTraversal(new DiskCache<DefaultIssue>(serializationFile, System2.INSTANCE), 10);
+    writeAndCheckTraversal(new IssueCache(codecFile, System2.INSTANCE), 10);
+
+    assertThat(codecFile.length()).isLessThan(serializationFile.length());
+  }
+
+  private static void writeAndCheckTraversal(DiskCache<DefaultIssue> cache, int nbIssues) {
+    try (DiskCache<DefaultIssue>.DiskAppender appender = cache.newAppender()) {
+      for (int i = 0; i < nbIssues; i++) {
+        appender.append(newIssue("ISSUE_" + i));
+      }
+    }
+    int count = 0;
+    try (CloseableIterator<DefaultIssue> traverse = cache.traverse()) {
+      while (traverse.hasNext()) {
+        DefaultIssue issue = traverse.next();
+        assertThat(issue.key()).isEqualTo("ISSUE_" + count);
+        assertThat(issue.message()).isEqualTo("Fix me éè");
+        count++;
+      }
+    }
+    assertThat(count).isEqualTo(nbIssues);
+  }
+
+  private DefaultIssue encodeAndDecode(DefaultIssue issue) throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      underTest.write(issue, output);
+    }
+    try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      return underTest.read(input);
+    }
+  }
+
+  private static DefaultIssue newIssue(String key) {
+    DefaultIssue issue = new DefaultIssue()
+      .setKey(key)
+      .setType(RuleType.BUG)
+      .setComponentUuid("FILE_UUID")
+      .setComponentKey("PROJECT:src/Foo.java")
+      .setModuleUuid("MODULE_UUID")
+      .setModuleUuidPath(".PROJECT_UUID.MODULE_UUID.")
+      .setProjectUuid("PROJECT_UUID")
+      .setProjectKey("PROJECT")
+      .setRuleKey(RuleKey.of("squid", "S001"))
+      .setLanguage("java")
+      .setSeverity(Severity.BLOCKER)
+      .setManualSeverity(true)
+      .setMessage("Fix me éè")
+      .setLine(12)
+      .setGap(2.5)
+      .setEffort(Duration.create(30L))
+      .setStatus(Issue.STATUS_RESOLVED)
+      .setResolution(Issue.RESOLUTION_FIXED)
+      .setAssignee("john")
+      .setChecksum("c4ecksum")
+      .setAttribute("JIRA", "FOO-123")
+      .setAuthorLogin("jane")
+      .setTags(asList("security", "cwe"))
+      .setLocations(DbIssues.Locations.newBuilder()
+        .setTextRange(DbCommons.TextRange.newBuilder().setStartLine(12).setEndLine(13))
+        .build())
+      .setCreationDate(DATE)
+      .setUpdateDate(DATE)
+      .setCloseDate(DATE)
+      .setNew(false)
+      .setBeingClosed(true)
+      .setOnDisabledRule(true)
+      .setChanged(true)
+      .setSendNotifications(true)
+      .setSelectedAt(1_000L);
+    issue.addComment(DefaultIssueComment.create(key, "john", "a comment").setKey("COMMENT_1").setCreatedAt(DATE).setNew(true));
+    issue.addChange(new FieldDiffs().setDiff("effort", 10L, 20L).setCreationDate(DATE));
+    issue.setFieldChange(IssueChangeContext.createUser(DATE, "john"), "severity", Severity.MINOR, Severity.BLOCKER);
+    return issue;
+  }
+}
@@ -21,6 +21,7 @@ package org.sonar.server.computation.issue;
 
 import java.util.Arrays;
 import org.junit.Test;
+import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.ComponentVisitor;
 import org.sonar.server.computation.component.ReportComponent;
 import org.sonar.server.computation.component.VisitorsCrawler;
@@ -39,15 +40,19 @@ public class LoadComponentUuidsHavingOpenIssuesVisitorTest {
 
   BaseIssuesLoader baseIssuesLoader = mock(BaseIssuesLoader.class);
   ComponentsWithUnprocessedIssues componentsWithUnprocessedIssues = mock(ComponentsWithUnprocessedIssues.class);
-  VisitorsCrawler underTest = new VisitorsCrawler(Arrays.<ComponentVisitor>asList(new LoadComponentUuidsHavingOpenIssuesVisitor(baseIssuesLoader, componentsWithUnprocessedIssues)));
+  TrackingDataPrefetcher trackingDataPrefetcher = mock(TrackingDataPrefetcher.class);
+  VisitorsCrawler underTest = new VisitorsCrawler(Arrays.<ComponentVisitor>asList(
+    new LoadComponentUuidsHavingOpenIssuesVisitor(baseIssuesLoader, componentsWithUnprocessedIssues, trackingDataPrefetcher)));
 
   @Test
   public void set_issues_when_visiting_project() throws Exception {
     when(baseIssuesLoader.loadUuidsOfComponentsWithOpenIssues()).thenReturn(newHashSet("FILE1", "FILE2"));
 
-    underTest.visit(ReportComponent.builder(PROJECT, 1).build());
+    Component project = ReportComponent.builder(PROJECT, 1).build();
+    underTest.visit(project);
 
     verify(componentsWithUnprocessedIssues).setUuids(newHashSet("FILE1", "FILE2"));
+    verify(trackingDataPrefetcher).prefetch(project, newHashSet("FILE1", "FILE2"));
   }
 
   @Test
@@ -58,6 +63,6 @@ public class LoadComponentUuidsHavingOpenIssuesVisitorTest {
     underTest.visit(ReportComponent.builder(DIRECTORY, 1).build());
     underTest.visit(ReportComponent.builder(FILE, 1).build());
 
-    verifyZeroInteractions(componentsWithUnprocessedIssues);
+    verifyZeroInteractions(componentsWithUnprocessedIssues, trackingDataPrefetcher);
   }
 }
@@ -19,12 +19,17 @@
  */
 package org.sonar.server.computation.issue;
 
+import com.google.common.base.Optional;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.sonar.api.rules.RuleType;
 import org.sonar.api.utils.Duration;
 import org.sonar.core.issue.DefaultIssue;
 import org.sonar.db.DbClient;
+import org.sonar.db.issue.IssueChangeDto;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.ReportComponent;
 import org.sonar.server.computation.measure.Measure;
@@ -36,6 +41,7 @@ import org.sonar.server.computation.period.PeriodsHolderRule;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.guava.api.Assertions.assertThat;
 import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -76,7 +82,14 @@ public class NewEffortAggregatorTest {
 
   DbClient dbClient = mock(DbClient.class, Mockito.RETURNS_DEEP_STUBS);
 
-  NewEffortAggregator underTest = new NewEffortAggregator(calculator, periodsHolder, dbClient, metricRepository, measureRepository);
+  TrackingDataPrefetcher trackingDataPrefetcher = mock(TrackingDataPrefetcher.class);
+
+  NewEffortAggregator underTest = new NewEffortAggregator(calculator, periodsHolder, dbClient, metricRepository, measureRepository, trackingDataPrefetcher);
+
+  @Before
+  public void setUp() {
+    when(trackingDataPrefetcher.takeChangelog(anyString())).thenReturn(Optional.<List<IssueChangeDto>>absent());
+  }
 
   @Test
   public void sum_new_maintainability_effort_of_issues() {
@@ -244,6 +257,23 @@ public class NewEffortAggregatorTest {
     assertVariation(PROJECT, NEW_SECURITY_REMEDIATION_EFFORT_KEY, 6 + 4);
   }
 
+  @Test
+  public void use_prefetched_changelog() {
+    periodsHolder.setPeriods(PERIOD);
+    DefaultIssue unresolved = newCodeSmellIssue(10L).setKey("ISSUE");
+    List<IssueChangeDto> changelog = Collections.singletonList(new IssueChangeDto().setIssueKey("ISSUE").setChangeData("technicalDebt=1|2"));
+    when(trackingDataPrefetcher.isPrefetched()).thenReturn(true);
+    when(trackingDataPrefetcher.takeChangelog("ISSUE")).thenReturn(Optional.of(changelog));
+    when(calculator.calculate(same(unresolved), same(changelog), same(PERIOD))).thenReturn(4L);
+
+    underTest.beforeComponent(FILE);
+    underTest.onIssue(FILE, unresolved);
+    underTest.afterComponent(FILE);
+
+    assertVariation(FILE, NEW_TECHNICAL_DEBT_KEY, 4);
+    verifyZeroInteractions(dbClient);
+  }
+
   @Test
   public void no_measures_if_no_periods() {
     periodsHolder.setPeriods();
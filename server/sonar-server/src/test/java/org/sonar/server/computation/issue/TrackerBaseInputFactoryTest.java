@@ -20,6 +20,8 @@
 package org.sonar.server.computation.issue;
 
 import com.google.common.base.Optional;
+import java.util.Arrays;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.db.DbClient;
@@ -29,10 +31,13 @@ import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.ReportComponent;
 import org.sonar.server.computation.filemove.MovedFilesRepository;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class TrackerBaseInputFactoryTest {
@@ -45,8 +50,9 @@ public class TrackerBaseInputFactoryTest {
   private FileSourceDao fileSourceDao = mock(FileSourceDao.class);
 
   private MovedFilesRepository movedFilesRepository = mock(MovedFilesRepository.class);
+  private TrackingDataPrefetcher trackingDataPrefetcher = mock(TrackingDataPrefetcher.class);
 
-  private TrackerBaseInputFactory underTest = new TrackerBaseInputFactory(baseIssuesLoader, dbClient, movedFilesRepository);
+  private TrackerBaseInputFactory underTest = new TrackerBaseInputFactory(baseIssuesLoader, dbClient, movedFilesRepository, trackingDataPrefetcher);
 
   @Before
   public void setUp() throws Exception {
@@ -54,6 +60,7 @@ public class TrackerBaseInputFactoryTest {
     when(dbClient.fileSourceDao()).thenReturn(fileSourceDao);
     when(movedFilesRepository.getOriginalFile(any(Component.class)))
       .thenReturn(Optional.<MovedFilesRepository.OriginalFile>absent());
+    when(trackingDataPrefetcher.takeLineHashes(anyString())).thenReturn(Optional.<List<String>>absent());
   }
 
   @Test
@@ -77,6 +84,15 @@ public class TrackerBaseInputFactoryTest {
     verify(fileSourceDao, times(0)).selectLineHashes(dbSession, FILE_UUID);
   }
 
+  @Test
+  public void create_returns_Input_which_uses_prefetched_lines_hashes() {
+    when(trackingDataPrefetcher.takeLineHashes(FILE_UUID)).thenReturn(Optional.of(Arrays.asList("h1", "h2")));
+
+    assertThat(underTest.create(FILE).getLineHashSequence().length()).isEqualTo(2);
+
+    verifyZeroInteractions(fileSourceDao);
+  }
+
   @Test
   public void create_returns_Input_which_retrieves_issues_of_specified_file_component_when_it_has_no_original_file() {
     underTest.create(FILE).getIssues();
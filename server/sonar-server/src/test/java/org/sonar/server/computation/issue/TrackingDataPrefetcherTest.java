@@ -0,0 +1,220 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.issue;
+
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.utils.System2;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.DbTester;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.component.ComponentTesting;
+import org.sonar.db.issue.IssueChangeDto;
+import org.sonar.db.issue.IssueDto;
+import org.sonar.db.protobuf.DbFileSources;
+import org.sonar.db.rule.RuleDto;
+import org.sonar.db.rule.RuleTesting;
+import org.sonar.db.source.FileSourceDto;
+import org.sonar.scanner.protocol.output.ScannerReport;
+import org.sonar.server.computation.analysis.AnalysisMetadataHolderRule;
+import org.sonar.server.computation.batch.BatchReportReaderRule;
+import org.sonar.server.computation.component.Component;
+import org.sonar.server.computation.component.ReportComponent;
+import org.sonar.server.computation.issue.TrackingDataPrefetcher.ScmLines;
+import org.sonar.server.computation.snapshot.Snapshot;
+import org.sonar.server.issue.IssueTesting;
+import org.sonar.server.util.cache.SpillableByteStore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.guava.api.Assertions.assertThat;
+
+public class TrackingDataPrefetcherTest {
+
+  private static final int FILE_REF = 2;
+  private static final long DATE = 1_500_000_000L;
+
+  @Rule
+  public DbTester dbTester = DbTester.create(System2.INSTANCE);
+  @Rule
+  public BatchReportReaderRule reportReader = new BatchReportReaderRule();
+  @Rule
+  public AnalysisMetadataHolderRule analysisMetadataHolder = new AnalysisMetadataHolderRule();
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  DbClient dbClient = dbTester.getDbClient();
+  DbSession dbSession = dbTester.getSession();
+
+  ComponentDto projectDto = ComponentTesting.newProjectDto();
+  ComponentDto fileDto = ComponentTesting.newFileDto(projectDto);
+  Component file = ReportComponent.builder(Component.Type.FILE, FILE_REF).setUuid(fileDto.uuid()).build();
+  Component project = ReportComponent.builder(Component.Type.PROJECT, 1).setUuid(projectDto.uuid()).addChildren(file).build();
+
+  @Before
+  public void setUp() {
+    dbClient.componentDao().insert(dbSession, projectDto, fileDto);
+    dbClient.fileSourceDao().insert(dbSession, new FileSourceDto()
+      .setProjectUuid(projectDto.uuid())
+      .setFileUuid(fileDto.uuid())
+      .setDataType(FileSourceDto.Type.SOURCE)
+      .setLineHashes("h1\nh2")
+      .setSrcHash("SRC_HASH")
+      .setSourceData(DbFileSources.Data.newBuilder()
+        .addLines(DbFileSources.Line.newBuilder().setLine(1).setSource("foo").setScmAuthor("henry").setScmRevision("rev-1").setScmDate(DATE))
+        .addLines(DbFileSources.Line.newBuilder().setLine(2).setSource("bar").setScmAuthor("john").setScmRevision("rev-2").setScmDate(DATE))
+        .build())
+      .setCreatedAt(DATE)
+      .setUpdatedAt(DATE));
+    RuleDto rule = RuleTesting.newXooX1();
+    dbClient.ruleDao().insert(dbSession, rule);
+    IssueDto issue = IssueTesting.newDto(rule, fileDto, projectDto).setKee("ISSUE");
+    dbClient.issueDao().insert(dbSession, issue);
+    dbClient.issueChangeDao().insert(dbSession, new IssueChangeDto()
+      .setKey("CHANGE")
+      .setIssueKey("ISSUE")
+      .setChangeType(IssueChangeDto.TYPE_FIELD_CHANGE)
+      .setChangeData("technicalDebt=1|2")
+      .setUserLogin("henry")
+      .setCreatedAt(DATE)
+      .setUpdatedAt(DATE)
+      .setIssueChangeCreationDate(DATE));
+    dbSession.commit();
+
+    analysisMetadataHolder.setBaseProjectSnapshot(new Snapshot.Builder().setId(1).setUuid("U1").setCreatedAt(DATE).build());
+    reportReader.putChangesets(ScannerReport.Changesets.newBuilder().setComponentRef(FILE_REF).setCopyFromPrevious(true).build());
+  }
+
+  @Test
+  public void nothing_is_available_before_prefetch() throws Exception {
+    TrackingDataPrefetcher underTest = newPrefetcher(Long.MAX_VALUE);
+
+    assertThat(underTest.isPrefetched()).isFalse();
+    assertThat(underTest.takeLineHashes(fileDto.uuid())).isAbsent();
+    assertThat(underTest.takeScmLines(fileDto.uuid())).isAbsent();
+    assertThat(underTest.takeChangelog("ISSUE")).isAbsent();
+  }
+
+  @Test
+  public void prefetch_data_of_components_with_open_issues() throws Exception {
+    TrackingDataPrefetcher underTest = newPrefetcher(Long.MAX_VALUE);
+
+    underTest.prefetch(project, ImmutableSet.of(fileDto.uuid()));
+
+    verifyPrefetchedData(underTest);
+  }
+
+  @Test
+  public void prefetch_data_beyond_heap_budget() throws Exception {
+    TrackingDataPrefetcher underTest = newPrefetcher(1L);
+
+    underTest.prefetch(project, ImmutableSet.of(fileDto.uuid()));
+
+    verifyPrefetchedData(underTest);
+  }
+
+  @Test
+  public void data_are_taken_only_once() throws Exception {
+    TrackingDataPrefetcher underTest = newPrefetcher(Long.MAX_VALUE);
+    underTest.prefetch(project, ImmutableSet.of(fileDto.uuid()));
+
+    assertThat(underTest.takeLineHashes(fileDto.uuid())).isPresent();
+    assertThat(underTest.takeLineHashes(fileDto.uuid())).isAbsent();
+    assertThat(underTest.takeScmLines(fileDto.uuid())).isPresent();
+    assertThat(underTest.takeScmLines(fileDto.uuid())).isAbsent();
+  }
+
+  @Test
+  public void files_without_sources_have_no_data() throws Exception {
+    Component otherFile = ReportComponent.builder(Component.Type.FILE, 3).setUuid("OTHER").build();
+    Component otherProject = ReportComponent.builder(Component.Type.PROJECT, 1).setUuid(projectDto.uuid()).addChildren(otherFile).build();
+    reportReader.putChangesets(ScannerReport.Changesets.newBuilder().setComponentRef(3).setCopyFromPrevious(true).build());
+    TrackingDataPrefetcher underTest = newPrefetcher(Long.MAX_VALUE);
+
+    underTest.prefetch(otherProject, ImmutableSet.of("OTHER"));
+
+    assertThat(underTest.takeLineHashes("OTHER").get()).isEmpty();
+    ScmLines scmLines = underTest.takeScmLines("OTHER").get();
+    assertThat(scmLines.getSrcHash()).isNull();
+    assertThat(scmLines.getLines()).isEmpty();
+  }
+
+  @Test
+  public void do_not_prefetch_scm_of_files_changed_since_previous_analysis() throws Exception {
+    reportReader.putChangesets(ScannerReport.Changesets.newBuilder().setComponentRef(FILE_REF).setCopyFromPrevious(false).build());
+    TrackingDataPrefetcher underTest = newPrefetcher(Long.MAX_VALUE);
+
+    underTest.prefetch(project, ImmutableSet.of(fileDto.uuid()));
+
+    assertThat(underTest.takeScmLines(fileDto.uuid())).isAbsent();
+    assertThat(underTest.takeLineHashes(fileDto.uuid())).isPresent();
+  }
+
+  @Test
+  public void do_not_prefetch_scm_on_first_analysis() throws Exception {
+    analysisMetadataHolder.setBaseProjectSnapshot(null);
+    TrackingDataPrefetcher underTest = newPrefetcher(Long.MAX_VALUE);
+
+    underTest.prefetch(project, ImmutableSet.of(fileDto.uuid()));
+
+    assertThat(underTest.takeScmLines(fileDto.uuid())).isAbsent();
+  }
+
+  @Test
+  public void issues_without_changes_have_empty_changelog() throws Exception {
+    TrackingDataPrefetcher underTest = newPrefetcher(Long.MAX_VALUE);
+
+    underTest.prefetch(project, ImmutableSet.of(fileDto.uuid()));
+
+    assertThat(underTest.takeChangelog("UNKNOWN").get()).isEmpty();
+  }
+
+  private void verifyPrefetchedData(TrackingDataPrefetcher underTest) {
+    assertThat(underTest.isPrefetched()).isTrue();
+    assertThat(underTest.takeLineHashes(fileDto.uuid()).get()).containsExactly("h1", "h2");
+
+    ScmLines scmLines = underTest.takeScmLines(fileDto.uuid()).get();
+    assertThat(scmLines.getSrcHash()).isEqualTo("SRC_HASH");
+    assertThat(scmLines.getLines()).hasSize(2);
+    assertThat(scmLines.getLines().get(1).getLine()).isEqualTo(2);
+    assertThat(scmLines.getLines().get(1).getScmAuthor()).isEqualTo("john");
+    assertThat(scmLines.getLines().get(1).getScmRevision()).isEqualTo("rev-2");
+    assertThat(scmLines.getLines().get(1).getScmDate()).isEqualTo(DATE);
+    assertThat(scmLines.getLines().get(1).hasSource()).isFalse();
+
+    List<IssueChangeDto> changelog = underTest.takeChangelog("ISSUE").get();
+    assertThat(changelog).hasSize(1);
+    IssueChangeDto change = changelog.get(0);
+    assertThat(change.getKey()).isEqualTo("CHANGE");
+    assertThat(change.getIssueKey()).isEqualTo("ISSUE");
+    assertThat(change.getChangeData()).isEqualTo("technicalDebt=1|2");
+    assertThat(change.getUserLogin()).isEqualTo("henry");
+    assertThat(change.getIssueChangeCreationDate()).isEqualTo(DATE);
+  }
+
+  private TrackingDataPrefetcher newPrefetcher(long maxHeapSize) throws IOException {
+    return new TrackingDataPrefetcher(dbClient, reportReader, analysisMetadataHolder, new SpillableByteStore(temp.newFile(), maxHeapSize));
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.measure;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DenseIntIndexTest {
+
+  private DenseIntIndex underTest = new DenseIntIndex();
+
+  @Test
+  public void indexes_are_dense_and_in_order_of_insertion() {
+    assertThat(underTest.add(1_000)).isEqualTo(0);
+    assertThat(underTest.add(-5)).isEqualTo(1);
+    assertThat(underTest.add(0)).isEqualTo(2);
+    assertThat(underTest.add(1_000)).isEqualTo(0);
+
+    assertThat(underTest.size()).isEqualTo(3);
+    assertThat(underTest.indexOf(-5)).isEqualTo(1);
+    assertThat(underTest.indexOf(0)).isEqualTo(2);
+  }
+
+  @Test
+  public void indexOf_returns_minus_one_if_key_has_not_been_added() {
+    assertThat(underTest.indexOf(3)).isEqualTo(-1);
+
+    underTest.add(4);
+
+    assertThat(underTest.indexOf(3)).isEqualTo(-1);
+    assertThat(underTest.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void keep_indexes_when_growing() {
+    for (int i = 0; i < 100_000; i++) {
+      underTest.add(i * 31);
+    }
+
+    assertThat(underTest.size()).isEqualTo(100_000);
+    for (int i = 0; i < 100_000; i++) {
+      assertThat(underTest.indexOf(i * 31)).isEqualTo(i);
+    }
+    assertThat(underTest.indexOf(1)).isEqualTo(-1);
+  }
+}
@@ -40,9 +40,11 @@ import org.sonar.db.DbSession;
 import org.sonar.db.DbTester;
 import org.sonar.db.measure.MeasureDto;
 import org.sonar.scanner.protocol.output.ScannerReport;
+import org.sonar.scanner.protocol.output.ScannerReport.Measure.IntValue;
 import org.sonar.scanner.protocol.output.ScannerReport.Measure.StringValue;
 import org.sonar.server.computation.batch.BatchReportReader;
 import org.sonar.server.computation.batch.BatchReportReaderRule;
+import org.sonar.server.computation.batch.TreeRootHolderRule;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.ReportComponent;
 import org.sonar.server.computation.metric.Metric;
@@ -70,6 +72,8 @@ public class MeasureRepositoryImplTest {
   public DbTester dbTester = DbTester.create(System2.INSTANCE);
   @Rule
   public BatchReportReaderRule reportReader = new BatchReportReaderRule();
+  @Rule
+  public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
 
   private static final String FILE_COMPONENT_KEY = "file cpt key";
   private static final ReportComponent FILE_COMPONENT = ReportComponent.builder(Component.Type.FILE, 1).setKey(FILE_COMPONENT_KEY).build();
@@ -89,16 +93,18 @@ public class MeasureRepositoryImplTest {
 
   private DbClient dbClient = dbTester.getDbClient();
   private MetricRepository metricRepository = mock(MetricRepository.class);
-  private MeasureRepositoryImpl underTest = new MeasureRepositoryImpl(dbClient, reportReader, metricRepository, reportMetricValidator);
+  private MeasureRepositoryImpl underTest = new MeasureRepositoryImpl(dbClient, treeRootHolder, reportReader, metricRepository, reportMetricValidator);
 
   private DbClient mockedDbClient = mock(DbClient.class);
   private BatchReportReader mockBatchReportReader = mock(BatchReportReader.class);
-  private MeasureRepositoryImpl underTestWithMock = new MeasureRepositoryImpl(mockedDbClient, mockBatchReportReader, metricRepository, reportMetricValidator);
+  private MeasureRepositoryImpl underTestWithMock = new MeasureRepositoryImpl(mockedDbClient, treeRootHolder, mockBatchReportReader, metricRepository, reportMetricValidator);
 
   private DbSession dbSession = dbTester.getSession();
 
   @Before
   public void setUp() {
+    // the file is the root of the tree, in order to be analyzed by the last snapshot of shared.xml
+    treeRootHolder.setRoot(FILE_COMPONENT);
     when(metric1.getKey()).thenReturn(METRIC_KEY_1);
     when(metric1.getType()).thenReturn(Metric.MetricType.STRING);
     when(metric2.getKey()).thenReturn(METRIC_KEY_2);
@@ -155,6 +161,24 @@ public class MeasureRepositoryImplTest {
     assertThat(res).isAbsent();
   }
 
+  @Test
+  public void getBaseMeasure_loads_measures_of_all_components_once_per_metric() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+    dbClient.measureDao().insert(dbSession, createMeasureDto(METRIC_ID_1, FILE_COMPONENT.getUuid(), LAST_ANALYSIS_UUID));
+    dbClient.measureDao().insert(dbSession, createMeasureDto(METRIC_ID_1, OTHER_COMPONENT.getUuid(), LAST_ANALYSIS_UUID));
+    dbSession.commit();
+
+    assertThat(underTest.getBaseMeasure(FILE_COMPONENT, metric1)).isPresent();
+
+    // measures of metric 1 are not read again, measures of metric 2 are loaded on first access
+    dbTester.executeUpdateSql("delete from project_measures where metric_id=" + METRIC_ID_1);
+    dbClient.measureDao().insert(dbSession, createMeasureDto(METRIC_ID_2, OTHER_COMPONENT.getUuid(), LAST_ANALYSIS_UUID));
+    dbSession.commit();
+
+    assertThat(underTest.getBaseMeasure(OTHER_COMPONENT, metric1)).isPresent();
+    assertThat(underTest.getBaseMeasure(OTHER_COMPONENT, metric2)).isPresent();
+  }
+
   @Test
   public void add_throws_NPE_if_Component_argument_is_null() {
     expectedException.expect(NullPointerException.class);
@@ -380,6 +404,18 @@ public class MeasureRepositoryImplTest {
     underTest.update(FILE_COMPONENT, metric1, Measure.updatedMeasureBuilder(measure.get()).create());
   }
 
+  @Test
+  public void getRawValue_returns_value_from_batch_if_not_added_through_add_method() {
+    MetricImpl metric = new MetricImpl(METRIC_ID_1, "ncloc", "ncloc", Metric.MetricType.INT);
+    when(metricRepository.getByKey("ncloc")).thenReturn(metric);
+    when(reportMetricValidator.validate("ncloc")).thenReturn(true);
+    reportReader.putMeasures(FILE_COMPONENT.getReportAttributes().getRef(), ImmutableList.of(
+      ScannerReport.Measure.newBuilder().setMetricKey("ncloc").setIntValue(IntValue.newBuilder().setValue(10)).build()));
+
+    assertThat(underTest.getRawValue(FILE_COMPONENT, metric)).isEqualTo(10d);
+    assertThat(underTest.getRawValue(OTHER_COMPONENT, metric)).isNaN();
+  }
+
   @Test
   public void getRawMeasures_for_metric_throws_NPE_if_Component_arg_is_null() {
     expectedException.expect(NullPointerException.class);
@@ -192,6 +192,11 @@ public class MeasureRepositoryRule extends ExternalResource implements MeasureRe
     return Optional.fromNullable(rawMeasures.get(new InternalKey(component, metric)));
   }
 
+  @Override
+  public double getRawValue(Component component, Metric metric) {
+    return ArrayBasedRawMeasureRepository.valueOf(rawMeasures.get(new InternalKey(component, metric)));
+  }
+
   public Optional<Measure> getRawMeasure(Component component, Metric metric, DumbDeveloper developer) {
     return Optional.fromNullable(rawMeasures.get(new InternalKey(component, metric, developer)));
   }
@@ -50,6 +50,8 @@ public class CEQueueStatusImplTest {
     assertThat(underTest.getErrorCount()).isEqualTo(0);
     assertThat(underTest.getSuccessCount()).isEqualTo(0);
     assertThat(underTest.getProcessingTime()).isEqualTo(0);
+    assertThat(underTest.getQueueLatency()).isEqualTo(0);
+    assertThat(underTest.getClaimConflictCount()).isEqualTo(0);
   }
 
   @Test
@@ -133,6 +135,33 @@ public class CEQueueStatusImplTest {
     assertThat(underTest.getProcessingTime()).isEqualTo(calls);
   }
 
+  @Test
+  public void addQueueLatency_throws_IAE_if_time_is_less_than_0() {
+    expectedException.expect(IllegalArgumentException.class);
+    expectedException.expectMessage("Queue latency can not be < 0");
+
+    underTest.addQueueLatency(-1);
+  }
+
+  @Test
+  public void addQueueLatency_sums_latencies() {
+    underTest.addQueueLatency(10);
+    underTest.addQueueLatency(SOME_PROCESSING_TIME);
+
+    assertThat(underTest.getQueueLatency()).isEqualTo(10 + SOME_PROCESSING_TIME);
+    assertThat(underTest.getProcessingTime()).isEqualTo(0);
+  }
+
+  @Test
+  public void addClaimConflict_any_number_of_call_change_by_1_per_call() {
+    int calls = new Random().nextInt(SOME_RANDOM_MAX);
+    for (int i = 0; i < calls; i++) {
+      underTest.addClaimConflict();
+    }
+
+    assertThat(underTest.getClaimConflictCount()).isEqualTo(calls);
+  }
+
   @Test
   public void count_Pending_from_database() {
     when(dbClient.ceQueueDao().countByStatus(any(DbSession.class), eq(CeQueueDto.Status.PENDING))).thenReturn(42);
@@ -25,7 +25,6 @@ import javax.annotation.Nullable;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
-import org.sonar.api.utils.System2;
 import org.sonar.api.utils.internal.TestSystem2;
 import org.sonar.ce.monitoring.CEQueueStatus;
 import org.sonar.ce.queue.CeQueueListener;
@@ -41,6 +40,7 @@ import org.sonar.db.ce.CeQueueDto;
 import org.sonar.db.ce.CeTaskTypes;
 import org.sonar.db.component.ComponentDto;
 import org.sonar.db.component.ComponentTesting;
+import org.sonar.server.computation.configuration.CeConfigurationRule;
 import org.sonar.server.computation.monitoring.CEQueueStatusImpl;
 
 import static java.util.Arrays.asList;
@@ -50,6 +50,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -61,16 +62,20 @@ public class InternalCeQueueImplTest {
   @Rule
   public ExpectedException expectedException = ExpectedException.none();
 
-  System2 system2 = new TestSystem2().setNow(1_450_000_000_000L);
+  TestSystem2 system2 = new TestSystem2().setNow(1_450_000_000_000L);
 
   @Rule
   public DbTester dbTester = DbTester.create(system2);
+  @Rule
+  public CeConfigurationRule ceConfiguration = new CeConfigurationRule();
   DbSession session = dbTester.getSession();
 
   UuidFactory uuidFactory = UuidFactoryImpl.INSTANCE;
   CEQueueStatus queueStatus = new CEQueueStatusImpl(dbTester.getDbClient());
   CeQueueListener listener = mock(CeQueueListener.class);
-  InternalCeQueue underTest = new InternalCeQueueImpl(system2, dbTester.getDbClient(), uuidFactory, queueStatus, new CeQueueListener[] {listener});
+  CeQueueWakeUp queueWakeUp = mock(CeQueueWakeUp.class);
+  InternalCeQueue underTest = new InternalCeQueueImpl(system2, dbTester.getDbClient(), uuidFactory, queueStatus, ceConfiguration, queueWakeUp,
+    new CeQueueListener[] {listener});
 
   @Test
   public void submit_returns_task_populated_from_CeTaskSubmit_and_creates_CeQueue_row() {
@@ -110,6 +115,13 @@ public class InternalCeQueueImplTest {
     submit(CeTaskTypes.REPORT, "PROJECT_1");
   }
 
+  @Test
+  public void submit_wakes_up_workers() {
+    submit(CeTaskTypes.REPORT, "PROJECT_1");
+
+    verify(queueWakeUp).wakeUp();
+  }
+
   @Test
   public void massSubmit_returns_tasks_for_each_CeTaskSubmit_populated_from_CeTaskSubmit_and_creates_CeQueue_row_for_each() {
     CeTaskSubmit taskSubmit1 = createTaskSubmit(CeTaskTypes.REPORT, "PROJECT_1", "rob");
@@ -209,6 +221,71 @@ public class InternalCeQueueImplTest {
     verify(listener, never()).onRemoved(eq(task), any(CeActivityDto.Status.class));
   }
 
+  @Test
+  public void peek_claims_a_task_for_each_idle_worker() throws Exception {
+    ceConfiguration.setWorkerCount(2);
+    CeTask task1 = submit(CeTaskTypes.REPORT, "PROJECT_1");
+    CeTask task2 = submit(CeTaskTypes.REPORT, "PROJECT_2");
+    CeTask task3 = submit(CeTaskTypes.REPORT, "PROJECT_3");
+    reset(queueWakeUp);
+
+    Optional<CeTask> peek = underTest.peek();
+    assertThat(peek.get().getUuid()).isEqualTo(task1.getUuid());
+    // second task is claimed for the other worker, which is woken up
+    assertThat(selectStatus(task2)).isEqualTo(CeQueueDto.Status.IN_PROGRESS);
+    assertThat(selectStatus(task3)).isEqualTo(CeQueueDto.Status.PENDING);
+    verify(queueWakeUp).wakeUp();
+
+    peek = underTest.peek();
+    assertThat(peek.get().getUuid()).isEqualTo(task2.getUuid());
+
+    // both workers are busy, task 3 is claimed on next peek
+    peek = underTest.peek();
+    assertThat(peek.get().getUuid()).isEqualTo(task3.getUuid());
+    assertThat(underTest.peek().isPresent()).isFalse();
+    assertThat(queueStatus.getInProgressCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void peek_claims_a_single_task_if_other_workers_are_busy() throws Exception {
+    ceConfiguration.setWorkerCount(2);
+    submit(CeTaskTypes.REPORT, "PROJECT_1");
+    underTest.peek();
+    CeTask task2 = submit(CeTaskTypes.REPORT, "PROJECT_2");
+    CeTask task3 = submit(CeTaskTypes.REPORT, "PROJECT_3");
+
+    Optional<CeTask> peek = underTest.peek();
+
+    assertThat(peek.get().getUuid()).isEqualTo(task2.getUuid());
+    assertThat(selectStatus(task3)).isEqualTo(CeQueueDto.Status.PENDING);
+  }
+
+  @Test
+  public void peek_records_queue_latency() throws Exception {
+    submit(CeTaskTypes.REPORT, "PROJECT_1");
+    system2.setNow(1_450_000_000_000L + 3_000L);
+
+    underTest.peek();
+
+    assertThat(queueStatus.getQueueLatency()).isEqualTo(3_000L);
+    assertThat(queueStatus.getClaimConflictCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void pausePeek_releases_prefetched_tasks() throws Exception {
+    ceConfiguration.setWorkerCount(2);
+    submit(CeTaskTypes.REPORT, "PROJECT_1");
+    CeTask task2 = submit(CeTaskTypes.REPORT, "PROJECT_2");
+    underTest.peek();
+    assertThat(selectStatus(task2)).isEqualTo(CeQueueDto.Status.IN_PROGRESS);
+
+    underTest.pausePeek();
+
+    assertThat(selectStatus(task2)).isEqualTo(CeQueueDto.Status.PENDING);
+    underTest.resumePeek();
+    assertThat(underTest.peek().get().getUuid()).isEqualTo(task2.getUuid());
+  }
+
   @Test
   public void peek_nothing_if_paused() throws Exception {
     submit(CeTaskTypes.REPORT, "PROJECT_1");
@@ -308,6 +385,10 @@ public class InternalCeQueueImplTest {
     assertThat(queueDto.get().getCreatedAt()).isEqualTo(1_450_000_000_000L);
   }
 
+  private CeQueueDto.Status selectStatus(CeTask task) {
+    return dbTester.getDbClient().ceQueueDao().selectByUuid(dbTester.getSession(), task.getUuid()).get().getStatus();
+  }
+
   private static ComponentDto newComponentDto(String uuid) {
     return ComponentTesting.newProjectDto(uuid).setName("name_" + uuid).setKey("key_" + uuid);
   }
@@ -19,6 +19,7 @@
  */
 package org.sonar.server.computation.scm;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.tngtech.java.junit.dataprovider.DataProvider;
 import com.tngtech.java.junit.dataprovider.DataProviderRunner;
@@ -27,6 +28,7 @@ import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
 import javax.annotation.Nullable;
+import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -46,6 +48,8 @@ import org.sonar.server.computation.batch.BatchReportReaderRule;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.ReportComponent;
 import org.sonar.server.computation.component.ViewsComponent;
+import org.sonar.server.computation.issue.TrackingDataPrefetcher;
+import org.sonar.server.computation.issue.TrackingDataPrefetcher.ScmLines;
 import org.sonar.server.computation.snapshot.Snapshot;
 import org.sonar.server.computation.source.SourceHashRepository;
 import org.sonar.server.computation.source.SourceHashRepositoryImpl;
@@ -53,8 +57,10 @@ import org.sonar.server.computation.source.SourceLinesRepositoryImpl;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.guava.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 import static org.sonar.api.utils.log.LoggerLevel.TRACE;
 import static org.sonar.server.computation.component.ReportComponent.builder;
 
@@ -85,8 +91,15 @@ public class ScmInfoRepositoryImplTest {
 
   DbClient dbClient = dbTester.getDbClient();
 
+  TrackingDataPrefetcher trackingDataPrefetcher = mock(TrackingDataPrefetcher.class);
+
   ScmInfoRepositoryImpl underTest = new ScmInfoRepositoryImpl(reportReader, analysisMetadataHolder, dbClient,
-    new SourceHashRepositoryImpl(new SourceLinesRepositoryImpl(reportReader)));
+    new SourceHashRepositoryImpl(new SourceLinesRepositoryImpl(reportReader)), trackingDataPrefetcher);
+
+  @Before
+  public void setUp() {
+    when(trackingDataPrefetcher.takeScmLines(anyString())).thenReturn(Optional.<ScmLines>absent());
+  }
 
   @Test
   public void read_from_report() throws Exception {
@@ -122,6 +135,21 @@ public class ScmInfoRepositoryImplTest {
     assertThat(logTester.logs(TRACE)).containsOnly("Reading SCM info from db for file 'FILE_KEY'");
   }
 
+  @Test
+  public void getScmInfo_returns_ScmInfo_from_prefetched_lines_if_CopyFromPrevious_is_true_and_hashes_are_the_same() throws Exception {
+    analysisMetadataHolder.setBaseProjectSnapshot(BASE_PROJECT_SNAPSHOT);
+    addFileSourceInReport(1);
+    addCopyFromPreviousChangesetInReport();
+    DbFileSources.Line line = DbFileSources.Line.newBuilder().setLine(1).setScmAuthor("henry").setScmDate(DATE_1).setScmRevision("rev-1").build();
+    when(trackingDataPrefetcher.takeScmLines(FILE.getUuid())).thenReturn(Optional.of(new ScmLines(computeSourceHash(1), ImmutableList.of(line))));
+
+    ScmInfo scmInfo = underTest.getScmInfo(FILE).get();
+    assertThat(scmInfo.getAllChangesets()).hasSize(1);
+    assertThat(scmInfo.getChangesetForLine(1).getAuthor()).isEqualTo("henry");
+
+    assertThat(logTester.logs(TRACE)).isEmpty();
+  }
+
   @Test
   public void getScmInfo_returns_absent_when_CopyFromPrevious_is_true_but_hashes_are_not_the_same() throws Exception {
     analysisMetadataHolder.setBaseProjectSnapshot(BASE_PROJECT_SNAPSHOT);
@@ -210,7 +238,7 @@ public class ScmInfoRepositoryImplTest {
     AnalysisMetadataHolder analysisMetadataHolder = mock(AnalysisMetadataHolder.class);
     DbClient dbClient = mock(DbClient.class);
     SourceHashRepository sourceHashRepository = mock(SourceHashRepository.class);
-    ScmInfoRepositoryImpl underTest = new ScmInfoRepositoryImpl(batchReportReader, analysisMetadataHolder, dbClient, sourceHashRepository);
+    ScmInfoRepositoryImpl underTest = new ScmInfoRepositoryImpl(batchReportReader, analysisMetadataHolder, dbClient, sourceHashRepository, trackingDataPrefetcher);
 
     assertThat(underTest.getScmInfo(component)).isAbsent();
 
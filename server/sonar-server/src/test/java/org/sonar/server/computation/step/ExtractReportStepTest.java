@@ -35,6 +35,7 @@ import org.sonar.db.ce.CeTaskTypes;
 import org.sonar.server.computation.batch.MutableBatchReportDirectoryHolder;
 import org.sonar.ce.queue.CeTask;
 import org.sonar.ce.queue.report.ReportFiles;
+import org.sonar.scanner.protocol.output.ReportArchive;
 
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.mock;
@@ -101,4 +102,17 @@ public class ExtractReportStepTest {
       }
     }));
   }
+
+  @Test
+  public void report_archive_is_not_extracted() throws Exception {
+    File reportDir = tempFolder.newDir();
+    FileUtils.write(new File(reportDir, "metadata.pb"), "{report}");
+    File archive = tempFolder.newFile();
+    ReportArchive.write(reportDir, archive);
+    when(reportFiles.fileForUuid(TASK_UUID)).thenReturn(archive);
+
+    underTest.execute();
+
+    verify(reportDirectoryHolder).setDirectory(archive);
+  }
 }
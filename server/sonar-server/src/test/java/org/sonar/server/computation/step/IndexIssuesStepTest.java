@@ -24,7 +24,8 @@ import org.junit.Test;
 import org.sonar.server.computation.batch.TreeRootHolderRule;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.ReportComponent;
-import org.sonar.server.issue.index.IssueIndexer;
+import org.sonar.server.es.IndexingQueue;
+import org.sonar.server.issue.index.IssueIndexDefinition;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -40,12 +41,12 @@ public class IndexIssuesStepTest {
     .setRoot(builder(PROJECT, 1).setUuid(PROJECT_UUID).setKey("PROJECT_KEY").build());
 
   @Test
-  public void call_indexers() {
-    IssueIndexer issueIndexer = mock(IssueIndexer.class);
-    IndexIssuesStep underTest = new IndexIssuesStep(issueIndexer, treeRootHolder);
+  public void enqueue_indexing_of_project() {
+    IndexingQueue indexingQueue = mock(IndexingQueue.class);
+    IndexIssuesStep underTest = new IndexIssuesStep(indexingQueue, treeRootHolder);
 
     underTest.execute();
 
-    verify(issueIndexer).index(PROJECT_UUID);
+    verify(indexingQueue).enqueue(IssueIndexDefinition.INDEX, PROJECT_UUID);
   }
 }
@@ -20,7 +20,9 @@
 package org.sonar.server.computation.step;
 
 import java.util.List;
+import java.util.concurrent.Future;
 import org.elasticsearch.search.SearchHit;
+import org.junit.After;
 import org.junit.Rule;
 import org.junit.Test;
 import org.sonar.api.config.Settings;
@@ -31,6 +33,8 @@ import org.sonar.server.computation.batch.TreeRootHolderRule;
 import org.sonar.server.computation.component.Component;
 import org.sonar.server.computation.component.ReportComponent;
 import org.sonar.server.es.EsTester;
+import org.sonar.server.es.IndexingQueue;
+import org.sonar.server.es.ProjectIndexer;
 import org.sonar.server.test.db.TestTesting;
 import org.sonar.server.test.index.TestDoc;
 import org.sonar.server.test.index.TestIndexDefinition;
@@ -51,11 +55,21 @@ public class IndexTestsStepTest extends BaseStepTest {
 
   DbClient dbClient = dbTester.getDbClient();
 
+  IndexingQueue indexingQueue;
+
+  @After
+  public void tearDown() {
+    if (indexingQueue != null) {
+      indexingQueue.stop();
+    }
+  }
+
   @Override
   protected ComputationStep step() {
     TestIndexer testIndexer = new TestIndexer(dbClient, esTester.client());
     testIndexer.setEnabled(true);
-    return new IndexTestsStep(testIndexer, treeRootHolder);
+    indexingQueue = new IndexingQueue(dbClient, new ProjectIndexer[] {testIndexer});
+    return new IndexTestsStep(indexingQueue, treeRootHolder);
   }
 
   @Test
@@ -67,6 +81,15 @@ public class IndexTestsStepTest extends BaseStepTest {
 
     step().execute();
 
+    // indexing is asynchronous
+    assertThat(esTester.countDocuments(TestIndexDefinition.INDEX, TestIndexDefinition.TYPE)).isEqualTo(0);
+    assertThat(dbTester.countRowsOfTable("es_queue")).isEqualTo(1);
+
+    // wait for the pending request
+    Future<Void> indexed = indexingQueue.enqueue(TestIndexDefinition.INDEX, "ABCD");
+    indexingQueue.setEnabled(true);
+    indexed.get();
+
     List<SearchHit> docs = esTester.getDocuments(TestIndexDefinition.INDEX, TestIndexDefinition.TYPE);
     assertThat(docs).hasSize(1);
     TestDoc doc = new TestDoc(docs.get(0).sourceAsMap());
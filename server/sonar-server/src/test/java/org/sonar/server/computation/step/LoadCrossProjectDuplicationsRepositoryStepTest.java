@@ -30,6 +30,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.mockito.ArgumentCaptor;
+import org.sonar.api.config.Settings;
 import org.sonar.api.utils.System2;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
@@ -54,8 +55,10 @@ import org.sonar.server.computation.snapshot.Snapshot;
 
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyCollection;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -102,8 +105,10 @@ public class LoadCrossProjectDuplicationsRepositoryStepTest {
 
   Snapshot baseProjectSnapshot;
 
+  Settings settings = new Settings();
+
   ComputationStep underTest = new LoadCrossProjectDuplicationsRepositoryStep(treeRootHolder, batchReportReader, analysisMetadataHolder, crossProjectDuplicationStatusHolder,
-    integrateCrossProjectDuplications, dbClient);
+    integrateCrossProjectDuplications, dbClient, settings);
 
   @Before
   public void setUp() throws Exception {
@@ -258,6 +263,78 @@ public class LoadCrossProjectDuplicationsRepositoryStepTest {
         .build());
   }
 
+  @Test
+  public void load_duplicated_blocks_of_many_files_at_once() throws Exception {
+    when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(true);
+    analysisMetadataHolder.setBaseProjectSnapshot(baseProjectSnapshot);
+    Component otherCurrentFile = ReportComponent.builder(FILE, 3)
+      .setKey("OTHER_CURRENT_FILE_KEY")
+      .setFileAttributes(new FileAttributes(false, XOO_LANGUAGE))
+      .build();
+    treeRootHolder.setRoot(ReportComponent.builder(PROJECT, PROJECT_REF).addChildren(CURRENT_FILE, otherCurrentFile).build());
+
+    ComponentDto otherProject = createProject("OTHER_PROJECT_KEY");
+    SnapshotDto otherProjectSnapshot = createProjectSnapshot(otherProject);
+    ComponentDto otherFile = createFile("OTHER_FILE_KEY", otherProject);
+
+    String sharedHash = "a8998353e96320ec";
+    String otherHash = "b1234353e96320ff";
+    insertDuplicate(sharedHash, otherProjectSnapshot, otherFile);
+    insertDuplicate(otherHash, otherProjectSnapshot, otherFile);
+    batchReportReader.putDuplicationBlocks(FILE_REF, asList(newCpdTextBlock(sharedHash)));
+    batchReportReader.putDuplicationBlocks(3, asList(newCpdTextBlock(sharedHash), newCpdTextBlock(otherHash)));
+
+    underTest.execute();
+
+    Class<ArrayList<Block>> listClass = (Class<ArrayList<Block>>) (Class) ArrayList.class;
+    ArgumentCaptor<ArrayList<Block>> duplicationBlocks = ArgumentCaptor.forClass(listClass);
+    verify(integrateCrossProjectDuplications).computeCpd(eq(CURRENT_FILE), anyCollection(), duplicationBlocks.capture());
+    assertThat(duplicationBlocks.getValue()).extracting("blockHash").containsOnly(new ByteArray(sharedHash));
+    verify(integrateCrossProjectDuplications).computeCpd(eq(otherCurrentFile), anyCollection(), duplicationBlocks.capture());
+    assertThat(duplicationBlocks.getValue()).extracting("blockHash").containsOnly(new ByteArray(sharedHash), new ByteArray(otherHash));
+  }
+
+  @Test
+  public void call_compute_cpd_when_bloom_filter_is_enabled() throws Exception {
+    settings.setProperty("sonar.cpd.cross_project.bloom_filter", true);
+    when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(true);
+    analysisMetadataHolder.setBaseProjectSnapshot(baseProjectSnapshot);
+
+    ComponentDto otherProject = createProject("OTHER_PROJECT_KEY");
+    SnapshotDto otherProjectSnapshot = createProjectSnapshot(otherProject);
+    ComponentDto otherFile = createFile("OTHER_FILE_KEY", otherProject);
+    String hash = "a8998353e96320ec";
+    insertDuplicate(hash, otherProjectSnapshot, otherFile);
+    batchReportReader.putDuplicationBlocks(FILE_REF, asList(newCpdTextBlock(hash), newCpdTextBlock("b1234353e96320ff")));
+
+    underTest.execute();
+
+    Class<ArrayList<Block>> listClass = (Class<ArrayList<Block>>) (Class) ArrayList.class;
+    ArgumentCaptor<ArrayList<Block>> originBlocks = ArgumentCaptor.forClass(listClass);
+    ArgumentCaptor<ArrayList<Block>> duplicationBlocks = ArgumentCaptor.forClass(listClass);
+    verify(integrateCrossProjectDuplications).computeCpd(eq(CURRENT_FILE), originBlocks.capture(), duplicationBlocks.capture());
+    // all the blocks of the file are still used to detect duplications
+    assertThat(originBlocks.getValue()).hasSize(2);
+    assertThat(duplicationBlocks.getValue()).extracting("blockHash").containsOnly(new ByteArray(hash));
+  }
+
+  @Test
+  public void skip_files_without_known_blocks_when_bloom_filter_is_enabled() throws Exception {
+    settings.setProperty("sonar.cpd.cross_project.bloom_filter", true);
+    when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(true);
+    analysisMetadataHolder.setBaseProjectSnapshot(baseProjectSnapshot);
+
+    ComponentDto otherProject = createProject("OTHER_PROJECT_KEY");
+    SnapshotDto otherProjectSnapshot = createProjectSnapshot(otherProject);
+    ComponentDto otherFile = createFile("OTHER_FILE_KEY", otherProject);
+    insertDuplicate("a8998353e96320ec", otherProjectSnapshot, otherFile);
+    batchReportReader.putDuplicationBlocks(FILE_REF, asList(newCpdTextBlock("b1234353e96320ff")));
+
+    underTest.execute();
+
+    verify(integrateCrossProjectDuplications, never()).computeCpd(eq(CURRENT_FILE), anyCollection(), anyCollection());
+  }
+
   @Test
   public void nothing_to_do_when_cross_project_duplication_is_disabled() throws Exception {
     when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(false);
@@ -324,6 +401,27 @@ public class LoadCrossProjectDuplicationsRepositoryStepTest {
     verifyZeroInteractions(integrateCrossProjectDuplications);
   }
 
+  private void insertDuplicate(String hash, SnapshotDto snapshot, ComponentDto file) {
+    dbClient.duplicationDao().insert(dbSession, new DuplicationUnitDto()
+      .setHash(hash)
+      .setStartLine(40)
+      .setEndLine(55)
+      .setIndexInFile(0)
+      .setAnalysisUuid(snapshot.getUuid())
+      .setComponentUuid(file.uuid()));
+    dbSession.commit();
+  }
+
+  private static ScannerReport.CpdTextBlock newCpdTextBlock(String hash) {
+    return ScannerReport.CpdTextBlock.newBuilder()
+      .setHash(hash)
+      .setStartLine(30)
+      .setEndLine(45)
+      .setStartTokenIndex(0)
+      .setEndTokenIndex(10)
+      .build();
+  }
+
   private ComponentDto createProject(String projectKey) {
     ComponentDto project = ComponentTesting.newProjectDto().setKey(projectKey);
     dbClient.componentDao().insert(dbSession, project);
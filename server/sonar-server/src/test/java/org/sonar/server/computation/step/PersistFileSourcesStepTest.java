@@ -20,10 +20,12 @@
 package org.sonar.server.computation.step;
 
 import java.util.Arrays;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.sonar.api.config.Settings;
 import org.sonar.api.utils.System2;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
@@ -81,12 +83,14 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
   private DbClient dbClient = dbTester.getDbClient();
   private DbSession session = dbTester.getSession();
 
+  private Settings settings = new Settings();
+
   private PersistFileSourcesStep underTest;
 
   @Before
   public void setup() {
     when(system2.now()).thenReturn(NOW);
-    underTest = new PersistFileSourcesStep(dbClient, system2, treeRootHolder, reportReader, fileSourceRepository, scmInfoRepository, duplicationRepository);
+    underTest = new PersistFileSourcesStep(dbClient, system2, treeRootHolder, reportReader, fileSourceRepository, scmInfoRepository, duplicationRepository, settings);
   }
 
   @Override
@@ -288,7 +292,13 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     long past = 150000L;
     String srcHash = "137f72c3708c6bd0de00a0e5a69c699b";
     String lineHashes = "137f72c3708c6bd0de00a0e5a69c699b";
-    String dataHash = "29f25900140c94db38035128cb6de6a2";
+    DbFileSources.Data data = DbFileSources.Data.newBuilder()
+      .addLines(DbFileSources.Line.newBuilder()
+        .setLine(1)
+        .setSource("line1")
+        .build())
+      .build();
+    String dataHash = DigestUtils.md5Hex(FileSourceDto.encodeSourceData(data));
 
     dbClient.fileSourceDao().insert(dbTester.getSession(), new FileSourceDto()
       .setProjectUuid(PROJECT_UUID)
@@ -296,12 +306,7 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
       .setSrcHash(srcHash)
       .setLineHashes(lineHashes)
       .setDataHash(dataHash)
-      .setSourceData(DbFileSources.Data.newBuilder()
-        .addLines(DbFileSources.Line.newBuilder()
-          .setLine(1)
-          .setSource("line1")
-          .build())
-        .build())
+      .setSourceData(data)
       .setCreatedAt(past)
       .setUpdatedAt(past));
     dbTester.getSession().commit();
@@ -463,6 +468,51 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     assertThat(fileSourceDto.getRevision()).isNull();
   }
 
+  @Test
+  public void flush_batches_when_byte_size_is_reached() {
+    settings.setProperty(PersistFileSourcesStep.BATCH_SIZE_IN_BYTES_PROPERTY, "10");
+    initReportWithFiles(5);
+
+    underTest.execute();
+
+    verifySourcesOfFiles(5);
+  }
+
+  @Test
+  public void encode_sources_in_worker_threads() {
+    settings.setProperty(PersistFileSourcesStep.THREADS_PROPERTY, "3");
+    initReportWithFiles(20);
+
+    underTest.execute();
+
+    verifySourcesOfFiles(20);
+  }
+
+  private void initReportWithFiles(int numberOfFiles) {
+    ReportComponent.Builder module = ReportComponent.builder(Component.Type.MODULE, 2).setUuid("MODULE").setKey("MODULE_KEY");
+    ScannerReport.Component.Builder reportModule = ScannerReport.Component.newBuilder().setRef(2).setType(ComponentType.MODULE);
+    for (int i = 0; i < numberOfFiles; i++) {
+      int ref = 10 + i;
+      module.addChildren(ReportComponent.builder(Component.Type.FILE, ref).setUuid("FILE_" + i).setKey("MODULE_KEY:src/Foo" + i + ".java").build());
+      reportModule.addChildRef(ref);
+      reportReader.putComponent(ScannerReport.Component.newBuilder().setRef(ref).setType(ComponentType.FILE).setLines(2).build());
+      fileSourceRepository.addLine(ref, "file" + i + " line1");
+      fileSourceRepository.addLine(ref, "file" + i + " line2");
+    }
+    treeRootHolder.setRoot(ReportComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).addChildren(module.build()).build());
+    reportReader.putComponent(ScannerReport.Component.newBuilder().setRef(1).setType(ComponentType.PROJECT).addChildRef(2).build());
+    reportReader.putComponent(reportModule.build());
+  }
+
+  private void verifySourcesOfFiles(int numberOfFiles) {
+    assertThat(dbTester.countRowsOfTable("file_sources")).isEqualTo(numberOfFiles);
+    for (int i = 0; i < numberOfFiles; i++) {
+      DbFileSources.Data data = dbClient.fileSourceDao().selectSourceByFileUuid(session, "FILE_" + i).getSourceData();
+      assertThat(data.getLinesCount()).isEqualTo(2);
+      assertThat(data.getLines(1).getSource()).isEqualTo("file" + i + " line2");
+    }
+  }
+
   private void initBasicReport(int numberOfLines) {
     treeRootHolder.setRoot(ReportComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).addChildren(
       ReportComponent.builder(Component.Type.MODULE, 2).setUuid("MODULE").setKey("MODULE_KEY").addChildren(
@@ -0,0 +1,226 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.sonar.api.utils.System2;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.DbTester;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IndexingQueueTest {
+
+  @Rule
+  public DbTester db = DbTester.create(System2.INSTANCE);
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  DbClient dbClient = db.getDbClient();
+  RecordingIndexer issueIndexer = new RecordingIndexer("issues");
+  RecordingIndexer testIndexer = new RecordingIndexer("tests");
+  IndexingQueue underTest = new IndexingQueue(dbClient, new ProjectIndexer[] {issueIndexer, testIndexer});
+
+  @After
+  public void tearDown() {
+    underTest.stop();
+  }
+
+  @Test
+  public void requests_are_persisted_but_not_processed_if_queue_is_disabled() {
+    Future<Void> future = underTest.enqueue("issues", "P1");
+
+    assertThat(future.isDone()).isFalse();
+    assertThat(issueIndexer.indexedProjects).isEmpty();
+    assertThat(countPending("issues")).isEqualTo(1);
+  }
+
+  @Test
+  public void enabling_queue_processes_pending_requests() throws Exception {
+    underTest.enqueue("issues", "P1");
+    underTest.enqueue("tests", "P1");
+    Future<Void> future = underTest.enqueue("issues", "P2");
+
+    underTest.setEnabled(true);
+    future.get();
+
+    assertThat(issueIndexer.indexedProjects).containsExactly("P1", "P2");
+    assertThat(countPending("issues")).isEqualTo(0);
+  }
+
+  @Test
+  public void process_requests_left_by_another_server_process() throws Exception {
+    dbClient.esQueueDao().enqueue(db.getSession(), "issues", "P1");
+    db.commit();
+
+    underTest.setEnabled(true);
+    underTest.enqueue("issues", "P2").get();
+
+    assertThat(issueIndexer.indexedProjects).containsExactly("P1", "P2");
+    assertThat(countPending("issues")).isEqualTo(0);
+  }
+
+  @Test
+  public void requests_on_same_project_are_coalesced() throws Exception {
+    Future<Void> future1 = underTest.enqueue("issues", "P1");
+    Future<Void> future2 = underTest.enqueue("issues", "P1");
+    assertThat(countPending("issues")).isEqualTo(1);
+
+    underTest.setEnabled(true);
+    future1.get();
+    future2.get();
+
+    assertThat(issueIndexer.indexedProjects).containsExactly("P1");
+  }
+
+  @Test
+  public void index_types_are_processed_independently() throws Exception {
+    underTest.setEnabled(true);
+
+    underTest.enqueue("tests", "P1").get();
+    underTest.enqueue("issues", "P2").get();
+
+    assertThat(testIndexer.indexedProjects).containsExactly("P1");
+    assertThat(issueIndexer.indexedProjects).containsExactly("P2");
+    assertThat(countPending("issues")).isEqualTo(0);
+    assertThat(countPending("tests")).isEqualTo(0);
+  }
+
+  @Test
+  public void projects_are_indexed_by_the_thread_of_index_type() throws Exception {
+    underTest.setEnabled(true);
+
+    underTest.enqueue("issues", "P1").get();
+
+    assertThat(issueIndexer.threadNames).hasSize(1);
+    assertThat(issueIndexer.threadNames.get(0)).startsWith("es-queue-issues-");
+  }
+
+  @Test
+  public void failed_request_stays_in_queue() throws Exception {
+    issueIndexer.failure = new IllegalStateException("ES is down");
+    underTest.setEnabled(true);
+
+    Future<Void> future = underTest.enqueue("issues", "P1");
+    try {
+      future.get();
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).hasMessage("ES is down");
+    }
+    assertThat(countPending("issues")).isEqualTo(1);
+
+    // processed again when retried, with the new request
+    issueIndexer.failure = null;
+    underTest.enqueue("issues", "P2").get();
+    assertThat(issueIndexer.indexedProjects).containsExactly("P1", "P2");
+    assertThat(countPending("issues")).isEqualTo(0);
+  }
+
+  @Test
+  public void failed_request_is_retried_after_a_delay() throws Exception {
+    underTest = new IndexingQueue(dbClient, new ProjectIndexer[] {issueIndexer}, 10L);
+    issueIndexer.failure = new IllegalStateException("ES is down");
+    issueIndexer.remainingFailures = 2;
+    underTest.setEnabled(true);
+
+    underTest.enqueue("issues", "P1");
+
+    long timeout = System.currentTimeMillis() + 10_000L;
+    while (countPending("issues") > 0 && System.currentTimeMillis() < timeout) {
+      Thread.sleep(10L);
+    }
+    assertThat(countPending("issues")).isEqualTo(0);
+    assertThat(issueIndexer.indexedProjects).containsExactly("P1");
+  }
+
+  @Test
+  public void fail_if_request_can_not_be_persisted() {
+    DbClient dbClient = mock(DbClient.class, RETURNS_DEEP_STUBS);
+    IllegalStateException failure = new IllegalStateException("DB is down");
+    when(dbClient.esQueueDao().enqueue(any(DbSession.class), eq("issues"), eq("P1"))).thenThrow(failure);
+    underTest = new IndexingQueue(dbClient, new ProjectIndexer[] {issueIndexer});
+
+    try {
+      underTest.enqueue("issues", "P1");
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).isSameAs(failure);
+    }
+    // not retried as a concurrent insertion
+    verify(dbClient.esQueueDao()).enqueue(any(DbSession.class), eq("issues"), eq("P1"));
+  }
+
+  @Test
+  public void fail_if_no_indexer_for_index_type() {
+    expectedException.expect(IllegalArgumentException.class);
+    expectedException.expectMessage("No indexer is registered for index type 'views'");
+
+    underTest.enqueue("views", "P1");
+  }
+
+  private int countPending(String indexType) {
+    return db.countSql("select count(1) from es_queue where index_type='" + indexType + "'");
+  }
+
+  private static class RecordingIndexer implements ProjectIndexer {
+    private final String indexType;
+    private final List<String> indexedProjects = new CopyOnWriteArrayList<>();
+    private final List<String> threadNames = new CopyOnWriteArrayList<>();
+    private volatile RuntimeException failure;
+    // number of calls which fail, if failure is set
+    private volatile int remainingFailures = Integer.MAX_VALUE;
+
+    private RecordingIndexer(String indexType) {
+      this.indexType = indexType;
+    }
+
+    @Override
+    public String getIndexType() {
+      return indexType;
+    }
+
+    @Override
+    public void index(String projectUuid) {
+      threadNames.add(Thread.currentThread().getName());
+      if (failure != null && remainingFailures > 0) {
+        remainingFailures--;
+        throw failure;
+      }
+      indexedProjects.add(projectUuid);
+    }
+  }
+}
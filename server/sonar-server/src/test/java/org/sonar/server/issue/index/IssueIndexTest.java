@@ -24,6 +24,7 @@ import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TimeZone;
@@ -83,7 +84,7 @@ public class IssueIndexTest {
 
   @Before
   public void setUp() {
-    issueIndexer = new IssueIndexer(null, tester.client());
+    issueIndexer = new IssueIndexer(null, tester.client(), new Settings());
     issueAuthorizationIndexer = new IssueAuthorizationIndexer(null, tester.client());
     viewIndexer = new ViewIndexer(null, tester.client());
     System2 system = mock(System2.class);
@@ -1246,6 +1247,30 @@ public class IssueIndexTest {
     assertThat(Lists.newArrayList(underTest.selectIssuesForBatch(ComponentTesting.newProjectDto()))).isEmpty();
   }
 
+  @Test
+  public void search_issues_for_batch_by_files() {
+    ComponentDto project = ComponentTesting.newProjectDto();
+    ComponentDto file1 = ComponentTesting.newFileDto(project);
+    ComponentDto file2 = ComponentTesting.newFileDto(project);
+    ComponentDto file3 = ComponentTesting.newFileDto(project);
+
+    indexIssues(
+      IssueTesting.newDoc("ISSUE1", project),
+      IssueTesting.newDoc("ISSUE2", file1),
+      IssueTesting.newDoc("ISSUE3", file2),
+      IssueTesting.newDoc("ISSUE4", file3),
+      IssueTesting.newDoc("CLOSE_ISSUE", file1).setStatus(Issue.STATUS_CLOSED).setResolution(Issue.RESOLUTION_FIXED));
+
+    List<IssueDoc> issues = Lists.newArrayList(underTest.selectIssuesForBatch(Arrays.asList(file1.uuid(), file2.uuid())));
+    assertThat(issues).hasSize(2);
+    Map<String, String> componentUuidsByKey = new HashMap<>();
+    for (IssueDoc issue : issues) {
+      componentUuidsByKey.put(issue.key(), issue.componentUuid());
+    }
+    assertThat(componentUuidsByKey).containsOnly(entry("ISSUE2", file1.uuid()), entry("ISSUE3", file2.uuid()));
+    assertThat(Lists.newArrayList(underTest.selectIssuesForBatch(Arrays.asList("unknown")))).isEmpty();
+  }
+
   @Test
   public void fail_to_search_issues_for_batch_on_not_allowed_scope() {
     try {
@@ -32,12 +32,12 @@ import org.junit.Test;
 import org.sonar.api.config.Settings;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.utils.System2;
-import org.sonar.db.DbClient;
 import org.sonar.db.DbTester;
 import org.sonar.server.es.EsTester;
 
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 import static org.sonar.server.issue.IssueTesting.newDoc;
 
 public class IssueIndexerTest {
@@ -117,6 +117,56 @@ public class IssueIndexerTest {
     verifyIssueKeys("ABCDE");
   }
 
+  @Test
+  public void fail_to_index_project_if_disabled() {
+    dbTester.prepareDbUnit(getClass(), "index_project.xml");
+    IssueIndexer indexer = createIndexer();
+    indexer.setEnabled(false);
+
+    try {
+      indexer.index("THE_PROJECT_1");
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Indexer of issues/issue is disabled");
+    }
+    assertThat(esTester.countDocuments("issues", "issue")).isEqualTo(0);
+  }
+
+  @Test
+  public void index_all_projects() {
+    dbTester.prepareDbUnit(getClass(), "index_project.xml");
+
+    createIndexer().indexAll();
+
+    verifyIssueKeys("ABCDE", "EDCBA");
+    assertThat(dbTester.countRowsOfTable("es_queue")).isEqualTo(0);
+  }
+
+  @Test
+  public void index_all_projects_if_index_is_empty() {
+    dbTester.prepareDbUnit(getClass(), "index_project.xml");
+
+    createIndexer().index();
+
+    verifyIssueKeys("ABCDE", "EDCBA");
+    assertThat(dbTester.countRowsOfTable("es_queue")).isEqualTo(0);
+  }
+
+  @Test
+  public void resume_interrupted_indexing_of_all_projects() {
+    dbTester.prepareDbUnit(getClass(), "index_project.xml");
+    // indexing was interrupted after THE_PROJECT_1
+    createIndexer().index("THE_PROJECT_1");
+    dbTester.getDbClient().esQueueDao().enqueue(dbTester.getSession(), IssueIndexer.FULL_INDEXING_QUEUE, "THE_PROJECT_2");
+    dbTester.commit();
+
+    // at next startup
+    createIndexer().index();
+
+    verifyIssueKeys("ABCDE", "EDCBA");
+    assertThat(dbTester.countRowsOfTable("es_queue")).isEqualTo(0);
+  }
+
   @Test
   public void delete_issues_by_keys() throws Exception {
     addIssue("P1", "Issue1");
@@ -165,7 +215,7 @@ public class IssueIndexerTest {
   }
 
   private IssueIndexer createIndexer() {
-    IssueIndexer indexer = new IssueIndexer(new DbClient(dbTester.database(), dbTester.myBatis()), esTester.client());
+    IssueIndexer indexer = new IssueIndexer(dbTester.getDbClient(), esTester.client(), new Settings());
     indexer.setEnabled(true);
     return indexer;
   }
@@ -0,0 +1,52 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.platform.monitoring;
+
+import java.util.Map;
+import org.junit.Test;
+import org.sonar.server.source.FileSourceCache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FileSourceCacheMonitorTest {
+
+  FileSourceCache cache = mock(FileSourceCache.class);
+  FileSourceCacheMonitor underTest = new FileSourceCacheMonitor(cache);
+
+  @Test
+  public void name_is_not_empty() {
+    assertThat(underTest.name()).isNotEmpty();
+  }
+
+  @Test
+  public void cache_statistics() {
+    when(cache.getHitCount()).thenReturn(12L);
+    when(cache.getMissCount()).thenReturn(3L);
+    when(cache.getSize()).thenReturn(2L);
+    when(cache.getSizeInBytes()).thenReturn(2048L);
+
+    Map<String, Object> attributes = underTest.attributes();
+
+    assertThat(attributes).containsEntry("Hits", 12L).containsEntry("Misses", 3L).containsEntry("Files", 2L).containsEntry("Size", "2 KB");
+    assertThat(underTest.getHitCount()).isEqualTo(12L);
+  }
+}
@@ -99,7 +99,7 @@ public class BulkDeleteActionTest {
       new BulkDeleteAction(
         new ComponentCleanerService(dbClient,
           new IssueAuthorizationIndexer(dbClient, es.client()),
-          new IssueIndexer(dbClient, es.client()),
+          new IssueIndexer(dbClient, es.client(), new Settings()),
           new TestIndexer(dbClient, es.client()), mockResourceTypes, new ComponentFinder(dbClient)),
         dbClient,
         userSessionRule)));
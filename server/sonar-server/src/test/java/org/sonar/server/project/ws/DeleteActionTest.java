@@ -100,7 +100,7 @@ public class DeleteActionTest {
         new ComponentCleanerService(
           dbClient,
           new IssueAuthorizationIndexer(dbClient, es.client()),
-          new IssueIndexer(dbClient, es.client()),
+          new IssueIndexer(dbClient, es.client(), new Settings()),
           new TestIndexer(dbClient, es.client()),
           mockResourceTypes,
           new ComponentFinder(dbClient)),
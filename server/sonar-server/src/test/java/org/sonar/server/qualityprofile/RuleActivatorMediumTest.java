@@ -919,6 +919,33 @@ public class RuleActivatorMediumTest {
     assertThat(result.countFailed()).isGreaterThan(0);
   }
 
+  @Test
+  public void bulk_activation_propagates_on_child_profiles() {
+    createChildProfiles();
+    // x2 is already overridden on the grand-child
+    activate(new RuleActivation(XOO_X2).setSeverity(CRITICAL), XOO_P3_KEY);
+
+    BulkRuleActivationContext bulk = ruleActivator.startBulk(dbSession, profileDto, Arrays.asList(XOO_X1, XOO_X2));
+    List<ActiveRuleChange> changes = newArrayList();
+    changes.addAll(ruleActivator.activate(dbSession, new RuleActivation(XOO_X1).setSeverity(BLOCKER).setParameter("max", "7"), bulk));
+    changes.addAll(ruleActivator.activate(dbSession, new RuleActivation(XOO_X2).setSeverity(CRITICAL), bulk));
+    // same rule twice in the bulk -> values of the first activation are visible
+    changes.addAll(ruleActivator.activate(dbSession, new RuleActivation(XOO_X1).setParameter("max", "8"), bulk));
+    ruleActivator.finishBulk(dbSession, bulk);
+    dbSession.commit();
+    dbSession.clearCache();
+    activeRuleIndexer.index(changes);
+
+    verifyHasActiveRuleInDbAndIndex(ActiveRuleKey.of(XOO_P1_KEY, XOO_X1), BLOCKER, null, ImmutableMap.of("max", "8"));
+    verifyHasActiveRuleInDbAndIndex(ActiveRuleKey.of(XOO_P2_KEY, XOO_X1), BLOCKER, INHERITED, ImmutableMap.of("max", "8"));
+    verifyHasActiveRuleInDbAndIndex(ActiveRuleKey.of(XOO_P3_KEY, XOO_X1), BLOCKER, INHERITED, ImmutableMap.of("max", "8"));
+    verifyHasActiveRuleInDbAndIndex(ActiveRuleKey.of(XOO_P1_KEY, XOO_X2), CRITICAL, null, Collections.<String, String>emptyMap());
+    verifyHasActiveRuleInDbAndIndex(ActiveRuleKey.of(XOO_P2_KEY, XOO_X2), CRITICAL, INHERITED, Collections.<String, String>emptyMap());
+    verifyHasActiveRuleInDbAndIndex(ActiveRuleKey.of(XOO_P3_KEY, XOO_X2), CRITICAL, OVERRIDES, Collections.<String, String>emptyMap());
+    assertProfileHasBeenUpdatedAutomatically(XOO_P2_KEY);
+    assertProfileHasBeenUpdatedAutomatically(XOO_P3_KEY);
+  }
+
   @Test
   public void set_and_unset_parent_profile() {
     // x1 is activated on the "future parent" P1
@@ -24,6 +24,7 @@ import java.util.List;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.api.config.Settings;
+import org.sonar.api.platform.Server;
 import org.sonar.api.resources.Language;
 import org.sonar.api.resources.Languages;
 import org.sonar.api.rule.RuleKey;
@@ -35,6 +36,7 @@ import org.sonar.api.utils.DateUtils;
 import org.sonar.api.utils.System2;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbTester;
+import org.sonar.db.loadedtemplate.LoadedTemplateDto;
 import org.sonar.db.rule.RuleDto;
 import org.sonar.db.rule.RuleParamDto;
 import org.sonar.server.es.EsTester;
@@ -72,6 +74,7 @@ public class RegisterRulesTest {
   public EsTester esTester = new EsTester(new RuleIndexDefinition(new Settings()));
 
   RuleActivator ruleActivator = mock(RuleActivator.class);
+  Server server = mock(Server.class);
 
   DbClient dbClient = dbTester.getDbClient();
 
@@ -83,6 +86,7 @@ public class RegisterRulesTest {
   @Before
   public void before() {
     when(system.now()).thenReturn(DATE1.getTime());
+    when(server.getVersion()).thenReturn("6.0");
     ruleIndexer = new RuleIndexer(dbClient, esTester.client());
     ruleIndexer.setEnabled(true);
     ruleIndex = new RuleIndex(esTester.client());
@@ -312,6 +316,65 @@ public class RegisterRulesTest {
     assertThat(rule1.getUpdatedAt()).isEqualTo(DATE1.getTime());
   }
 
+  @Test
+  public void skip_repositories_when_definitions_and_db_did_not_change() {
+    execute(new FakeRepositoryV1());
+
+    // change in db that does not touch the date of update -> not detected as long as the server is not upgraded
+    RuleDto rule1 = dbClient.ruleDao().selectOrFailByKey(dbTester.getSession(), RULE_KEY1);
+    dbClient.ruleDao().update(dbTester.getSession(), rule1.setName("Changed"));
+    dbTester.getSession().commit();
+
+    when(system.now()).thenReturn(DATE2.getTime());
+    execute(new FakeRepositoryV1());
+    rule1 = dbClient.ruleDao().selectOrFailByKey(dbTester.getSession(), RULE_KEY1);
+    assertThat(rule1.getName()).isEqualTo("Changed");
+    assertThat(rule1.getUpdatedAt()).isEqualTo(DATE1.getTime());
+
+    // same change, but the date of update is changed too -> repository is registered again
+    dbClient.ruleDao().update(dbTester.getSession(), rule1.setUpdatedAt(DATE2.getTime()));
+    dbTester.getSession().commit();
+
+    when(system.now()).thenReturn(DATE3.getTime());
+    execute(new FakeRepositoryV1());
+    rule1 = dbClient.ruleDao().selectOrFailByKey(dbTester.getSession(), RULE_KEY1);
+    assertThat(rule1.getName()).isEqualTo("One");
+    assertThat(rule1.getUpdatedAt()).isEqualTo(DATE3.getTime());
+  }
+
+  @Test
+  public void register_repository_again_when_server_is_upgraded() {
+    execute(new FakeRepositoryV1());
+
+    // change in db that does not touch the date of update
+    RuleDto rule1 = dbClient.ruleDao().selectOrFailByKey(dbTester.getSession(), RULE_KEY1);
+    dbClient.ruleDao().update(dbTester.getSession(), rule1.setName("Changed"));
+    dbTester.getSession().commit();
+
+    when(server.getVersion()).thenReturn("6.1");
+    when(system.now()).thenReturn(DATE2.getTime());
+    execute(new FakeRepositoryV1());
+    rule1 = dbClient.ruleDao().selectOrFailByKey(dbTester.getSession(), RULE_KEY1);
+    assertThat(rule1.getName()).isEqualTo("One");
+    assertThat(rule1.getUpdatedAt()).isEqualTo(DATE2.getTime());
+    assertThat(dbClient.loadedTemplateDao().selectByType(dbTester.getSession(), LoadedTemplateDto.RULE_REPOSITORY_TYPE)).hasSize(1);
+  }
+
+  @Test
+  public void register_repository_again_when_definitions_change() {
+    execute(new FakeRepositoryV1());
+    assertThat(dbClient.loadedTemplateDao().selectByType(dbTester.getSession(), LoadedTemplateDto.RULE_REPOSITORY_TYPE)).hasSize(1);
+
+    when(system.now()).thenReturn(DATE2.getTime());
+    execute(new FakeRepositoryV2());
+    assertThat(dbClient.ruleDao().selectOrFailByKey(dbTester.getSession(), RULE_KEY1).getName()).isEqualTo("One v2");
+    assertThat(dbClient.loadedTemplateDao().selectByType(dbTester.getSession(), LoadedTemplateDto.RULE_REPOSITORY_TYPE)).hasSize(1);
+
+    // repository is uninstalled -> fingerprint is dropped
+    execute();
+    assertThat(dbClient.loadedTemplateDao().selectByType(dbTester.getSession(), LoadedTemplateDto.RULE_REPOSITORY_TYPE)).isEmpty();
+  }
+
   @Test
   public void do_not_update_already_removed_rules() {
     execute(new FakeRepositoryV1());
@@ -392,7 +455,7 @@ public class RegisterRulesTest {
     Languages languages = mock(Languages.class);
     when(languages.get("java")).thenReturn(mock(Language.class));
 
-    RegisterRules task = new RegisterRules(loader, ruleActivator, dbClient, ruleIndexer, activeRuleIndexer, languages, system);
+    RegisterRules task = new RegisterRules(loader, ruleActivator, dbClient, ruleIndexer, activeRuleIndexer, languages, system, server);
     task.start();
     // Execute a commit to refresh session state as the task is using its own session
     dbTester.getSession().commit();
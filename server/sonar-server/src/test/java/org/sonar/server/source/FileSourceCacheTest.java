@@ -0,0 +1,123 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.source;
+
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.System2;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.DbTester;
+import org.sonar.db.protobuf.DbFileSources;
+import org.sonar.db.source.FileSourceDto;
+import org.sonar.server.source.index.FileSourceTesting;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileSourceCacheTest {
+
+  private static final String FILE_UUID = "FILE_UUID";
+
+  @Rule
+  public DbTester dbTester = DbTester.create(System2.INSTANCE);
+
+  DbClient dbClient = dbTester.getDbClient();
+  DbSession session = dbTester.getSession();
+  FileSourceDto dto;
+
+  FileSourceCache underTest = new FileSourceCache(dbClient, new Settings());
+
+  @Before
+  public void insertSources() throws IOException {
+    dto = new FileSourceDto()
+      .setFileUuid(FILE_UUID)
+      .setProjectUuid("PROJECT_UUID")
+      .setSourceData(FileSourceTesting.newFakeData(10).build())
+      .setDataHash("HASH1");
+    dbClient.fileSourceDao().insert(session, dto);
+    session.commit();
+  }
+
+  @Test
+  public void load_lines_once() {
+    assertThat(underTest.getLines(session, FILE_UUID, 1, 10)).hasSize(10);
+    assertThat(underTest.getLines(session, FILE_UUID, 3, 4)).hasSize(10);
+
+    assertThat(underTest.getMissCount()).isEqualTo(1);
+    assertThat(underTest.getHitCount()).isEqualTo(1);
+    assertThat(underTest.getSize()).isEqualTo(1);
+    assertThat(underTest.getSizeInBytes()).isGreaterThan(0L);
+  }
+
+  @Test
+  public void reload_lines_when_data_hash_changes() throws IOException {
+    underTest.getLines(session, FILE_UUID, 1, 10);
+
+    dto.setSourceData(FileSourceTesting.newFakeData(3).build()).setDataHash("HASH2");
+    dbClient.fileSourceDao().update(session, dto);
+    session.commit();
+
+    assertThat(underTest.getLines(session, FILE_UUID, 1, 10)).hasSize(3);
+    assertThat(underTest.getMissCount()).isEqualTo(2);
+    assertThat(underTest.getHitCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void do_not_cache_files_bigger_than_an_eighth_of_cache() {
+    Settings settings = new Settings().setProperty(FileSourceCache.MAX_SIZE_IN_BYTES_PROPERTY, 16);
+    underTest = new FileSourceCache(dbClient, settings);
+
+    Iterable<DbFileSources.Line> lines = underTest.getLines(session, FILE_UUID, 2, 3);
+
+    assertThat(newArrayList(lines)).hasSize(10);
+    assertThat(underTest.getSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void decode_only_requested_lines_of_files_too_big_for_cache_once_decoded() {
+    DbFileSources.Data.Builder data = DbFileSources.Data.newBuilder();
+    for (int line = 1; line <= 1_000; line++) {
+      data.addLinesBuilder().setLine(line).setSource("return;");
+    }
+    dto.setSourceData(data.build()).setDataHash("HASH2");
+    dbClient.fileSourceDao().update(session, dto);
+    session.commit();
+    long maxEntrySizeInBytes = data.build().getSerializedSize() / 2;
+    // the compressed data fit in the cache, not the decoded ones
+    assertThat((long) dto.getBinaryData().length).isLessThan(maxEntrySizeInBytes);
+    underTest = new FileSourceCache(dbClient, new Settings().setProperty(FileSourceCache.MAX_SIZE_IN_BYTES_PROPERTY, maxEntrySizeInBytes * 8));
+
+    Iterable<DbFileSources.Line> lines = underTest.getLines(session, FILE_UUID, 2, 3);
+
+    // only the first block of lines is decoded
+    assertThat(newArrayList(lines)).hasSize(500);
+    assertThat(underTest.getSize()).isEqualTo(0);
+  }
+
+  @Test
+  public void return_null_if_file_has_no_sources() {
+    assertThat(underTest.getLines(session, "UNKNOWN", 1, 10)).isNull();
+    assertThat(underTest.getSize()).isEqualTo(0);
+  }
+}
@@ -44,6 +44,7 @@ import org.sonar.test.TestUtils;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.entry;
+import static org.junit.Assert.fail;
 import static org.sonar.server.test.index.TestIndexDefinition.FIELD_DURATION_IN_MS;
 import static org.sonar.server.test.index.TestIndexDefinition.FIELD_FILE_UUID;
 import static org.sonar.server.test.index.TestIndexDefinition.FIELD_MESSAGE;
@@ -172,6 +173,21 @@ public class TestIndexerTest {
     assertThat(document.get(FIELD_PROJECT_UUID)).isEqualTo("P2");
   }
 
+  @Test
+  public void fail_to_index_project_if_disabled() throws Exception {
+    indexTest("P1", "F1", "T1", "U111");
+    underTest.setEnabled(false);
+
+    try {
+      underTest.index("P1");
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Indexer of tests/test is disabled");
+    }
+    // documents of project are not dropped
+    assertThat(countDocuments()).isEqualTo(1);
+  }
+
   private void indexTest(String projectUuid, String fileUuid, String testName, String uuid) throws IOException {
     es.client().prepareIndex(INDEX, TYPE)
       .setId(uuid)
@@ -0,0 +1,105 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.util.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.utils.System2;
+import org.sonar.core.util.CloseableIterator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CodecRecordStoreTest {
+
+  private static final RecordCodec<String> STRING_CODEC = new RecordCodec<String>() {
+    @Override
+    public void write(String record, DataOutput output) throws IOException {
+      output.writeUTF(record);
+    }
+
+    @Override
+    public String read(DataInput input) throws IOException {
+      return input.readUTF();
+    }
+  };
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void write_and_read_uncompressed() throws Exception {
+    verifyWriteAndRead(new CodecRecordStore<>(STRING_CODEC, false));
+  }
+
+  @Test
+  public void write_and_read_compressed() throws Exception {
+    verifyWriteAndRead(new CodecRecordStore<>(STRING_CODEC, true));
+  }
+
+  @Test
+  public void read_large_number_of_compressed_records() throws Exception {
+    DiskCache<String> cache = new DiskCache<>(temp.newFile(), System2.INSTANCE, new CodecRecordStore<>(STRING_CODEC, true));
+    try (DiskCache<String>.DiskAppender appender = cache.newAppender()) {
+      for (int i = 0; i < 100_000; i++) {
+        appender.append("record " + i);
+      }
+    }
+
+    int count = 0;
+    try (CloseableIterator<String> traverse = cache.traverse()) {
+      while (traverse.hasNext()) {
+        assertThat(traverse.next()).isEqualTo("record " + count);
+        count++;
+      }
+    }
+    assertThat(count).isEqualTo(100_000);
+  }
+
+  private void verifyWriteAndRead(RecordStore<String> store) throws IOException {
+    DiskCache<String> cache = new DiskCache<>(temp.newFile(), System2.INSTANCE, store);
+    try (CloseableIterator<String> traverse = cache.traverse()) {
+      assertThat(traverse).isEmpty();
+    }
+
+    cache.newAppender()
+      .append("foo")
+      .append("bar")
+      .close();
+    // empty appender
+    cache.newAppender().close();
+    cache.newAppender()
+      .append("baz")
+      .close();
+
+    List<String> records = new ArrayList<>();
+    try (CloseableIterator<String> traverse = cache.traverse()) {
+      while (traverse.hasNext()) {
+        records.add(traverse.next());
+      }
+    }
+    assertThat(records).containsExactly("foo", "bar", "baz");
+  }
+}
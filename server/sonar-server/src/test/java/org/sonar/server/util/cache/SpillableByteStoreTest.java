@@ -0,0 +1,97 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.util.cache;
+
+import java.io.File;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpillableByteStoreTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void keep_values_on_heap_within_budget() throws Exception {
+    SpillableByteStore underTest = new SpillableByteStore(temp.newFile(), 10L);
+
+    underTest.put("a", new byte[] {1, 2, 3});
+    underTest.put("b", new byte[] {4, 5});
+
+    assertThat(underTest.heapSize()).isEqualTo(5L);
+    assertThat(underTest.spillSize()).isEqualTo(0L);
+    assertThat(underTest.take("a")).containsExactly(new byte[] {1, 2, 3});
+    assertThat(underTest.heapSize()).isEqualTo(2L);
+  }
+
+  @Test
+  public void spill_values_to_disk_when_budget_is_exhausted() throws Exception {
+    SpillableByteStore underTest = new SpillableByteStore(temp.newFile(), 4L);
+
+    underTest.put("a", new byte[] {1, 2, 3});
+    underTest.put("b", new byte[] {4, 5});
+    underTest.put("c", new byte[] {6, 7, 8});
+
+    assertThat(underTest.heapSize()).isEqualTo(3L);
+    assertThat(underTest.spillSize()).isEqualTo(5L);
+    assertThat(underTest.size()).isEqualTo(3);
+    assertThat(underTest.take("c")).containsExactly(new byte[] {6, 7, 8});
+    assertThat(underTest.take("b")).containsExactly(new byte[] {4, 5});
+    assertThat(underTest.take("a")).containsExactly(new byte[] {1, 2, 3});
+    assertThat(underTest.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void take_removes_value() throws Exception {
+    SpillableByteStore underTest = new SpillableByteStore(temp.newFile(), 0L);
+    underTest.put("a", new byte[] {1});
+
+    assertThat(underTest.contains("a")).isTrue();
+    assertThat(underTest.take("a")).containsExactly(new byte[] {1});
+    assertThat(underTest.contains("a")).isFalse();
+    assertThat(underTest.take("a")).isNull();
+  }
+
+  @Test
+  public void replace_value() throws Exception {
+    SpillableByteStore underTest = new SpillableByteStore(temp.newFile(), 10L);
+    underTest.put("a", new byte[] {1, 2, 3});
+    underTest.put("a", new byte[] {4});
+
+    assertThat(underTest.heapSize()).isEqualTo(1L);
+    assertThat(underTest.take("a")).containsExactly(new byte[] {4});
+  }
+
+  @Test
+  public void close_deletes_spill_file() throws Exception {
+    File file = temp.newFile();
+    SpillableByteStore underTest = new SpillableByteStore(file, 0L);
+    underTest.put("a", new byte[] {1, 2});
+
+    underTest.close();
+
+    assertThat(file).doesNotExist();
+    assertThat(underTest.size()).isEqualTo(0);
+    assertThat(underTest.spillSize()).isEqualTo(0L);
+  }
+}
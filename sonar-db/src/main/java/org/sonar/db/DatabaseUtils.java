@@ -27,6 +27,7 @@ import com.google.common.collect.Sets;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
@@ -197,6 +198,28 @@ public class DatabaseUtils {
     }
   }
 
+  /**
+   * Whether {@code e} or one of its causes is the violation of an integrity constraint, for example
+   * the insertion of a row which already exists in a unique index.
+   */
+  public static boolean isIntegrityConstraintViolation(Throwable e) {
+    Throwable cause = e;
+    while (cause != null) {
+      if (cause instanceof SQLIntegrityConstraintViolationException) {
+        return true;
+      }
+      if (cause instanceof SQLException) {
+        // class 23 of SQL standard is "integrity constraint violation"
+        String sqlState = ((SQLException) cause).getSQLState();
+        if (sqlState != null && sqlState.startsWith("23")) {
+          return true;
+        }
+      }
+      cause = cause.getCause();
+    }
+    return false;
+  }
+
   @CheckForNull
   public static Long getLong(ResultSet rs, String columnName) throws SQLException {
     long l = rs.getLong(columnName);
@@ -118,6 +118,42 @@ public class CeQueueDao implements Dao {
     return tryToPeek(session, taskUuid);
   }
 
+  /**
+   * Selects at most {@code maxTasks} tasks which can be peeked, with a single request. Only the oldest
+   * pending task of each component is returned, so that claiming all the returned tasks does not break
+   * the rule of a single task in progress per component.
+   * Ordered by ascending date: oldest to newest
+   */
+  public List<CeQueueDto> selectEligibleForPeek(DbSession session, int maxTasks) {
+    return mapper(session).selectOldestEligibleForPeek(new RowBounds(0, maxTasks));
+  }
+
+  /**
+   * Switches the specified task to status {@link CeQueueDto.Status#IN_PROGRESS} if it is still
+   * {@link CeQueueDto.Status#PENDING}. Fields of {@code dto} are updated accordingly. Session is not committed.
+   *
+   * @return {@code false} if the task has been claimed by another worker in the meantime
+   */
+  public boolean tryToClaim(DbSession session, CeQueueDto dto) {
+    long now = system2.now();
+    int touchedRows = mapper(session).updateIfStatus(dto.getUuid(), IN_PROGRESS, now, now, PENDING);
+    if (touchedRows != 1) {
+      return false;
+    }
+    dto.setStatus(IN_PROGRESS);
+    dto.setStartedAt(now);
+    dto.setUpdatedAt(now);
+    return true;
+  }
+
+  /**
+   * Switches back to status {@link CeQueueDto.Status#PENDING} a task which has been claimed but is not
+   * processed. Session is not committed.
+   */
+  public void resetToPendingStatus(DbSession session, String uuid) {
+    mapper(session).updateIfStatus(uuid, PENDING, null, system2.now(), IN_PROGRESS);
+  }
+
   private Optional<CeQueueDto> tryToPeek(DbSession session, String taskUuid) {
     int touchedRows = mapper(session).updateIfStatus(taskUuid, IN_PROGRESS, system2.now(), system2.now(), PENDING);
     if (touchedRows != 1) {
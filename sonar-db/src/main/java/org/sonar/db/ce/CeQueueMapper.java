@@ -37,6 +37,8 @@ public interface CeQueueMapper {
 
   List<String> selectEligibleForPeek(RowBounds rowBounds);
 
+  List<CeQueueDto> selectOldestEligibleForPeek(RowBounds rowBounds);
+
   @CheckForNull
   CeQueueDto selectByUuid(@Param("uuid") String uuid);
 
@@ -22,10 +22,13 @@ package org.sonar.db.duplication;
 import java.util.Collection;
 import java.util.List;
 import javax.annotation.Nullable;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.db.Dao;
 import org.sonar.db.DbSession;
 
 import static org.sonar.db.DatabaseUtils.executeLargeInputs;
+import static org.sonar.db.DatabaseUtils.executeLargeInputsWithoutOutput;
+import static org.sonar.db.DatabaseUtils.toUniqueAndSortedList;
 
 public class DuplicationDao implements Dao {
 
@@ -38,6 +41,35 @@ public class DuplicationDao implements Dao {
       partition -> session.getMapper(DuplicationMapper.class).selectCandidates(analysisUuid, language, partition));
   }
 
+  /**
+   * Same as {@link #selectCandidates(DbSession, String, String, Collection)}, but the rows are not kept in memory.
+   * Each row is a {@link DuplicationUnitDto} given to {@code resultHandler}.
+   */
+  public void selectCandidates(DbSession session, @Nullable String analysisUuid, String language, Collection<String> hashes, ResultHandler resultHandler) {
+    DuplicationMapper mapper = session.getMapper(DuplicationMapper.class);
+    executeLargeInputsWithoutOutput(
+      toUniqueAndSortedList(hashes),
+      partition -> {
+        mapper.selectCandidates(analysisUuid, language, partition, resultHandler);
+        return null;
+      });
+  }
+
+  /**
+   * Number of blocks of the given language in the last analyses of projects, excluding the specified analysis.
+   */
+  public int countHashes(DbSession session, @Nullable String analysisUuid, String language) {
+    return session.getMapper(DuplicationMapper.class).countHashes(analysisUuid, language);
+  }
+
+  /**
+   * Hashes of the blocks of the given language in the last analyses of projects, excluding the specified analysis.
+   * Each row is a {@link String}, given to {@code resultHandler}. The same hash can be returned multiple times.
+   */
+  public void selectHashes(DbSession session, @Nullable String analysisUuid, String language, ResultHandler resultHandler) {
+    session.getMapper(DuplicationMapper.class).selectHashes(analysisUuid, language, resultHandler);
+  }
+
   /**
    * Insert rows in the table DUPLICATIONS_INDEX.
    * Note that generated ids are not returned.
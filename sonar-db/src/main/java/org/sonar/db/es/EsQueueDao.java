@@ -0,0 +1,83 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.es;
+
+import java.util.List;
+import org.apache.ibatis.session.RowBounds;
+import org.sonar.api.utils.System2;
+import org.sonar.db.Dao;
+import org.sonar.db.DbSession;
+
+/**
+ * Durable queue of the projects to be indexed in Elasticsearch. There is at most one pending item
+ * per index type and project: requests made while an item is pending are coalesced into it.
+ */
+public class EsQueueDao implements Dao {
+
+  private final System2 system2;
+
+  public EsQueueDao(System2 system2) {
+    this.system2 = system2;
+  }
+
+  /**
+   * Requests the indexing of a project. If the project is already pending in the queue of the index
+   * type, then the existing item is marked as updated instead of inserting a new one.
+   *
+   * @return {@code true} if an item has been inserted, {@code false} if the request has been coalesced
+   */
+  public boolean enqueue(DbSession session, String indexType, String projectUuid) {
+    long now = system2.now();
+    if (mapper(session).touch(indexType, projectUuid, now) > 0) {
+      return false;
+    }
+    mapper(session).insert(new EsQueueDto()
+      .setIndexType(indexType)
+      .setProjectUuid(projectUuid)
+      .setCreatedAt(now)
+      .setUpdatedAt(now));
+    return true;
+  }
+
+  /**
+   * Ordered by ascending creation date: oldest to newest
+   */
+  public List<EsQueueDto> selectOldest(DbSession session, String indexType, int limit) {
+    return mapper(session).selectOldestByIndexType(indexType, new RowBounds(0, limit));
+  }
+
+  public int countByIndexType(DbSession session, String indexType) {
+    return mapper(session).countByIndexType(indexType);
+  }
+
+  /**
+   * Removes the item once its project is indexed, unless it has been requested again since it
+   * was selected. In this case the item stays in queue so that the new request is not lost.
+   *
+   * @return {@code true} if the item has been deleted
+   */
+  public boolean delete(DbSession session, EsQueueDto dto) {
+    return mapper(session).deleteIfNotUpdated(dto.getId(), dto.getUpdatedAt()) > 0;
+  }
+
+  private static EsQueueMapper mapper(DbSession session) {
+    return session.getMapper(EsQueueMapper.class);
+  }
+}
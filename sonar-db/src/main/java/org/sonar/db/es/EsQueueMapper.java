@@ -0,0 +1,37 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.es;
+
+import java.util.List;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.RowBounds;
+
+public interface EsQueueMapper {
+
+  void insert(EsQueueDto dto);
+
+  int touch(@Param("indexType") String indexType, @Param("projectUuid") String projectUuid, @Param("now") long now);
+
+  List<EsQueueDto> selectOldestByIndexType(@Param("indexType") String indexType, RowBounds rowBounds);
+
+  int countByIndexType(@Param("indexType") String indexType);
+
+  int deleteIfNotUpdated(@Param("id") long id, @Param("updatedAt") long updatedAt);
+}
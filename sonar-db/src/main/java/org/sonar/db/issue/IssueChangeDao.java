@@ -23,6 +23,7 @@ import com.google.common.collect.Lists;
 import java.util.Collection;
 import java.util.List;
 import javax.annotation.CheckForNull;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.core.issue.DefaultIssueComment;
 import org.sonar.core.issue.FieldDiffs;
 import org.sonar.db.Dao;
@@ -72,6 +73,15 @@ public class IssueChangeDao implements Dao {
     }
   }
 
+  /**
+   * Same as {@link #selectChangelogOfNonClosedIssuesByComponent(String)} for all the components of a project, but the
+   * rows are not kept in memory. Each row is a {@link IssueChangeDto} given to {@code resultHandler}. Rows are ordered by
+   * issue key, so that the changes of an issue are contiguous.
+   */
+  public void selectChangelogOfNonClosedIssuesByProject(DbSession session, String projectUuid, ResultHandler resultHandler) {
+    mapper(session).selectChangelogOfNonClosedIssuesByProject(projectUuid, IssueChangeDto.TYPE_FIELD_CHANGE, resultHandler);
+  }
+
   @CheckForNull
   public DefaultIssueComment selectCommentByKey(String commentKey) {
     DbSession session = mybatis.openSession(false);
@@ -22,6 +22,7 @@ package org.sonar.db.issue;
 import java.util.List;
 import javax.annotation.CheckForNull;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 public interface IssueChangeMapper {
 
@@ -41,4 +42,6 @@ public interface IssueChangeMapper {
     @Param("changeType") String changeType);
 
   List<IssueChangeDto> selectChangelogOfNonClosedIssuesByComponent(@Param("componentUuid") String componentUuid, @Param("changeType") String changeType);
+
+  void selectChangelogOfNonClosedIssuesByProject(@Param("projectUuid") String projectUuid, @Param("changeType") String changeType, ResultHandler resultHandler);
 }
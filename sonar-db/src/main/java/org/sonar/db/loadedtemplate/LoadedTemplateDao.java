@@ -19,6 +19,7 @@
  */
 package org.sonar.db.loadedtemplate;
 
+import java.util.List;
 import org.apache.ibatis.session.SqlSession;
 import org.sonar.db.Dao;
 import org.sonar.db.DbSession;
@@ -45,6 +46,10 @@ public class LoadedTemplateDao implements Dao {
     return session.getMapper(LoadedTemplateMapper.class).countByTypeAndKey(type, key);
   }
 
+  public List<LoadedTemplateDto> selectByType(DbSession session, String type) {
+    return session.getMapper(LoadedTemplateMapper.class).selectByType(type);
+  }
+
   public void insert(LoadedTemplateDto loadedTemplateDto) {
     SqlSession session = mybatis.openSession(false);
     try {
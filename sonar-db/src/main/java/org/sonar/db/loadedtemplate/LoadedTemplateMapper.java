@@ -19,12 +19,15 @@
  */
 package org.sonar.db.loadedtemplate;
 
+import java.util.List;
 import org.apache.ibatis.annotations.Param;
 
 public interface LoadedTemplateMapper {
 
   int countByTypeAndKey(@Param("type") String type, @Param("key") String key);
 
+  List<LoadedTemplateDto> selectByType(@Param("type") String type);
+
   void insert(LoadedTemplateDto template);
 
   void delete(@Param("type") String type, @Param("key") String key);
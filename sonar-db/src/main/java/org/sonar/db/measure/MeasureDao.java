@@ -25,9 +25,12 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.db.Dao;
 import org.sonar.db.DbSession;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.sonar.db.DatabaseUtils.PARTITION_SIZE_FOR_ORACLE;
 import static org.sonar.db.DatabaseUtils.executeLargeInputs;
 
 public class MeasureDao implements Dao {
@@ -50,13 +53,30 @@ public class MeasureDao implements Dao {
     });
   }
 
-  public List<PastMeasureDto> selectPastMeasures(DbSession dbSession,
-    String componentUuid,
-    String analysisUuid,
-    Collection<Integer> metricIds) {
-    return executeLargeInputs(
-      metricIds,
-      ids -> mapper(dbSession).selectPastMeasures(componentUuid, analysisUuid, ids));
+  /**
+   * Measures of the given metric on all the components of the last analysis of a project or view,
+   * excluding the measures of developers. The rows are not kept in memory: each one is a {@link MeasureDto}
+   * given to {@code resultHandler}.
+   */
+  public void selectLastByRootAndMetricKey(DbSession dbSession, String rootComponentUuid, String metricKey, ResultHandler resultHandler) {
+    mapper(dbSession).selectLastByRootAndMetricKey(rootComponentUuid, metricKey, resultHandler);
+  }
+
+  /**
+   * Measures of the given metrics on the components of an analysis which have one of the given scopes, excluding
+   * the measures of developers, ordered by component then by metric. Only the fields metricId, componentUuid and
+   * value are loaded. The rows are not kept in memory: each one is a {@link PastMeasureDto} given to {@code resultHandler}.
+   *
+   * @throws IllegalArgumentException if there are too many metrics to be selected in a single query (more than 1000)
+   */
+  public void selectPastMeasuresOfAnalysis(DbSession dbSession, String analysisUuid, Collection<String> scopes, Collection<Integer> metricIds,
+    ResultHandler resultHandler) {
+    // metrics are not partitioned, as rows of a component must be contiguous
+    checkArgument(metricIds.size() <= PARTITION_SIZE_FOR_ORACLE, "Past measures can not be selected on more than %s metrics", PARTITION_SIZE_FOR_ORACLE);
+    if (scopes.isEmpty() || metricIds.isEmpty()) {
+      return;
+    }
+    mapper(dbSession).selectPastMeasuresOfAnalysis(analysisUuid, scopes, metricIds, resultHandler);
   }
 
   public void insert(DbSession session, MeasureDto measureDto) {
@@ -19,14 +19,19 @@
  */
 package org.sonar.db.measure;
 
+import java.util.Collection;
 import java.util.List;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 public interface MeasureMapper {
 
   List<MeasureDto> selectByQuery(@Param("query") MeasureQuery query);
 
-  List<PastMeasureDto> selectPastMeasures(@Param("componentUuid") String componentUuid, @Param("analysisUuid") String analysisUuid, @Param("metricIds") List<Integer> metricIds);
+  void selectLastByRootAndMetricKey(@Param("rootComponentUuid") String rootComponentUuid, @Param("metricKey") String metricKey, ResultHandler resultHandler);
+
+  void selectPastMeasuresOfAnalysis(@Param("analysisUuid") String analysisUuid, @Param("scopes") Collection<String> scopes,
+    @Param("metricIds") Collection<Integer> metricIds, ResultHandler resultHandler);
 
   void insert(MeasureDto measureDto);
 
@@ -66,6 +66,20 @@ public class RuleDao implements Dao {
     return executeLargeInputs(keys, mapper(session)::selectByKeys);
   }
 
+  /**
+   * Select rules of the given repositories, whatever their status
+   */
+  public List<RuleDto> selectByRepositories(DbSession session, List<String> repositoryKeys) {
+    return executeLargeInputs(repositoryKeys, mapper(session)::selectByRepositories);
+  }
+
+  /**
+   * Number of rules and date of last update of each repository, whatever the status of rules
+   */
+  public List<RuleRepositoryStampDto> selectRepositoryStamps(DbSession session) {
+    return mapper(session).selectRepositoryStamps();
+  }
+
   public List<RuleDto> selectEnabled(DbSession session) {
     return mapper(session).selectEnabled();
   }
@@ -43,6 +43,10 @@ public interface RuleMapper {
 
   List<RuleDto> selectByKeys(@Param("ruleKeys") List<RuleKey> keys);
 
+  List<RuleDto> selectByRepositories(@Param("repositories") List<String> repositoryKeys);
+
+  List<RuleRepositoryStampDto> selectRepositoryStamps();
+
   RuleDto selectByName(String name);
 
   List<RuleDto> selectByQuery(@Param("query") RuleQuery ruleQuery);
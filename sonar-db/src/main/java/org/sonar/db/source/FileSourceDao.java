@@ -26,11 +26,16 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.apache.commons.dbutils.DbUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.db.Dao;
+import org.sonar.db.DatabaseUtils;
 import org.sonar.db.DbSession;
 import org.sonar.db.MyBatis;
 import org.sonar.db.source.FileSourceDto.Type;
@@ -49,6 +54,28 @@ public class FileSourceDao implements Dao {
     return mapper(session).select(fileUuid, Type.SOURCE);
   }
 
+  /**
+   * MD5 of the source data of the file, without loading the data itself. Returns null if the file
+   * has no sources or if the hash is missing.
+   */
+  @CheckForNull
+  public String selectSourceDataHash(DbSession session, String fileUuid) {
+    return mapper(session).selectDataHash(fileUuid, Type.SOURCE);
+  }
+
+  /**
+   * Streams the sources of many files with one query per partition of {@link DatabaseUtils#PARTITION_SIZE_FOR_ORACLE}
+   * files. Each row is a {@link FileSourceDto} given to {@code resultHandler}, with only the file uuid, the binary data
+   * and the source hash. Files without sources are ignored.
+   */
+  public void readSourcesStream(DbSession session, Collection<String> fileUuids, ResultHandler resultHandler) {
+    FileSourceMapper mapper = mapper(session);
+    DatabaseUtils.executeLargeInputsWithoutOutput(fileUuids, partition -> {
+      mapper.selectSourcesByFileUuids(partition, Type.SOURCE, resultHandler);
+      return null;
+    });
+  }
+
   @CheckForNull
   public FileSourceDto selectTest(String fileUuid) {
     DbSession session = mybatis.openSession(false);
@@ -102,6 +129,57 @@ public class FileSourceDao implements Dao {
     }
   }
 
+  /**
+   * Streams the line hashes of many files with one query per partition of
+   * {@link DatabaseUtils#PARTITION_SIZE_FOR_ORACLE} files. Files without sources are ignored.
+   * The reader given to the handler must not be used after the handler returns.
+   */
+  public void readLineHashesStream(DbSession dbSession, Collection<String> fileUuids, final LineHashesHandler handler) {
+    final Connection connection = dbSession.getConnection();
+    DatabaseUtils.executeLargeInputsWithoutOutput(fileUuids, new Function<List<String>, Void>() {
+      @Override
+      public Void apply(@Nonnull List<String> partition) {
+        readLineHashesStream(connection, partition, handler);
+        return null;
+      }
+    });
+  }
+
+  private static void readLineHashesStream(Connection connection, List<String> fileUuids, LineHashesHandler handler) {
+    PreparedStatement pstmt = null;
+    ResultSet rs = null;
+    try {
+      pstmt = connection.prepareStatement("SELECT file_uuid, line_hashes FROM file_sources WHERE data_type=? AND file_uuid IN ("
+        + DatabaseUtils.repeatCondition("?", fileUuids.size(), ",") + ")");
+      pstmt.setString(1, Type.SOURCE);
+      for (int i = 0; i < fileUuids.size(); i++) {
+        pstmt.setString(i + 2, fileUuids.get(i));
+      }
+      rs = pstmt.executeQuery();
+      while (rs.next()) {
+        Reader reader = rs.getCharacterStream(2);
+        try {
+          handler.handle(rs.getString(1), reader);
+        } finally {
+          IOUtils.closeQuietly(reader);
+        }
+      }
+    } catch (SQLException e) {
+      throw new IllegalStateException("Fail to read FILE_SOURCES.LINE_HASHES of " + fileUuids.size() + " files", e);
+    } finally {
+      // the connection is owned by the session
+      DbUtils.closeQuietly(rs);
+      DbUtils.closeQuietly(pstmt);
+    }
+  }
+
+  public interface LineHashesHandler {
+    /**
+     * @param lineHashes the line hashes separated by {@code '\n'}, or null if the column is empty
+     */
+    void handle(String fileUuid, @Nullable Reader lineHashes);
+  }
+
   public void insert(FileSourceDto dto) {
     DbSession session = mybatis.openSession(false);
     try {
@@ -95,14 +95,37 @@ public class FileSourceDto {
 
   public DbFileSources.Data decodeSourceData(byte[] binaryData) {
     try {
+      if (SourceLineBlocks.isChunked(binaryData)) {
+        return SourceLineBlocks.decode(binaryData);
+      }
       return decodeRegularSourceData(binaryData);
     } catch (IOException e) {
-      throw new IllegalStateException(
-        format("Fail to decompress and deserialize source data [id=%s,fileUuid=%s,projectUuid=%s]", id, fileUuid, projectUuid),
-        e);
+      throw failToDecode(e);
     }
   }
 
+  /**
+   * Lines of the range {@code [from, toInclusive]}, plus possibly some lines around it. Only the blocks
+   * of lines overlapping the range are decompressed, lazily while iterating. Data stored before
+   * the chunked format is entirely decompressed.
+   */
+  public Iterable<DbFileSources.Line> decodeSourceLines(byte[] binaryData, int from, int toInclusive) {
+    try {
+      if (SourceLineBlocks.isChunked(binaryData)) {
+        return SourceLineBlocks.decodeLines(binaryData, from, toInclusive);
+      }
+      return decodeRegularSourceData(binaryData).getLinesList();
+    } catch (IOException e) {
+      throw failToDecode(e);
+    }
+  }
+
+  private IllegalStateException failToDecode(IOException e) {
+    return new IllegalStateException(
+      format("Fail to decompress and deserialize source data [id=%s,fileUuid=%s,projectUuid=%s]", id, fileUuid, projectUuid),
+      e);
+  }
+
   private static DbFileSources.Data decodeRegularSourceData(byte[] binaryData) throws IOException {
     try (LZ4BlockInputStream lz4Input = new LZ4BlockInputStream(new ByteArrayInputStream(binaryData))) {
       return DbFileSources.Data.parseFrom(lz4Input);
@@ -124,19 +147,14 @@ public class FileSourceDto {
 
   /**
    * Serialize and compress protobuf message {@link org.sonar.db.protobuf.DbFileSources.Data}
-   * in the column BINARY_DATA.
+   * in the column BINARY_DATA, by blocks of lines.
+   * @see SourceLineBlocks
    */
   public static byte[] encodeSourceData(DbFileSources.Data data) {
-    ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
-    LZ4BlockOutputStream compressedOutput = new LZ4BlockOutputStream(byteOutput);
     try {
-      data.writeTo(compressedOutput);
-      compressedOutput.close();
-      return byteOutput.toByteArray();
+      return SourceLineBlocks.encode(data);
     } catch (IOException e) {
       throw new IllegalStateException("Fail to serialize and compress source data", e);
-    } finally {
-      IOUtils.closeQuietly(compressedOutput);
     }
   }
 
@@ -212,6 +230,28 @@ public class FileSourceDto {
     return decodeSourceData(binaryData);
   }
 
+  /**
+   * @see #decodeSourceLines(byte[], int, int)
+   */
+  public Iterable<DbFileSources.Line> getSourceLines(int from, int toInclusive) {
+    return decodeSourceLines(binaryData, from, toInclusive);
+  }
+
+  /**
+   * Serialized size of {@link #getSourceData()}, known without decompressing the data, or -1 if it can not
+   * be known without decompressing it (data stored before the index of blocks of lines provides it).
+   */
+  public long getSourceDataSize() {
+    if (!SourceLineBlocks.isChunked(binaryData)) {
+      return -1L;
+    }
+    try {
+      return SourceLineBlocks.serializedSize(binaryData);
+    } catch (IOException e) {
+      throw failToDecode(e);
+    }
+  }
+
   public FileSourceDto setSourceData(DbFileSources.Data data) {
     this.dataType = Type.SOURCE;
     this.binaryData = encodeSourceData(data);
@@ -0,0 +1,224 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.source;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.protobuf.CodedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import org.sonar.db.protobuf.DbFileSources;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Chunked format of column FILE_SOURCES.BINARY_DATA for data of type {@link FileSourceDto.Type#SOURCE}.
+ * Lines are grouped into blocks of {@link #LINES_PER_BLOCK} lines, each block being a
+ * {@link DbFileSources.Data} message compressed independently with LZ4. The blocks are preceded
+ * by an index giving the range of lines, the compressed size and the serialized size of each block, so that
+ * a range of lines can be read, and the size of the whole decoded data known, without decompressing the whole file:
+ * <pre>
+ *   magic (8 bytes)
+ *   number of blocks (int)
+ *   for each block: first line (int), last line (int), compressed size (int), serialized size (int)
+ *   compressed blocks
+ * </pre>
+ * The magic differs from the one of {@link LZ4BlockOutputStream}, so that data written before
+ * 6.0 as a single LZ4 stream is still detected and read. The first version of the format, which has no
+ * serialized size in the index, is still read too.
+ */
+class SourceLineBlocks {
+
+  static final int LINES_PER_BLOCK = 500;
+
+  private static final byte[] MAGIC = "SQLines2".getBytes(UTF_8);
+  private static final byte[] MAGIC_WITHOUT_SERIALIZED_SIZE = "SQLines1".getBytes(UTF_8);
+  private static final int INDEX_ENTRY_SIZE = 4 * 4;
+  private static final int INDEX_ENTRY_SIZE_WITHOUT_SERIALIZED_SIZE = 3 * 4;
+  private static final int UNKNOWN_SIZE = -1;
+
+  private SourceLineBlocks() {
+    // only static methods
+  }
+
+  static boolean isChunked(byte[] binaryData) {
+    return startsWith(binaryData, MAGIC) || startsWith(binaryData, MAGIC_WITHOUT_SERIALIZED_SIZE);
+  }
+
+  private static boolean startsWith(byte[] binaryData, byte[] magic) {
+    return binaryData.length >= magic.length && Arrays.equals(magic, Arrays.copyOf(binaryData, magic.length));
+  }
+
+  /**
+   * Serialized size of the decoded {@link DbFileSources.Data}, read from the index, or -1 if the index does not
+   * provide it.
+   */
+  static long serializedSize(byte[] binaryData) throws IOException {
+    long size = 0L;
+    for (Block block : readIndex(binaryData)) {
+      if (block.serializedSize == UNKNOWN_SIZE) {
+        return UNKNOWN_SIZE;
+      }
+      size += block.serializedSize;
+    }
+    return size;
+  }
+
+  static byte[] encode(DbFileSources.Data data) throws IOException {
+    List<DbFileSources.Line> lines = data.getLinesList();
+    List<byte[]> blocks = new ArrayList<>();
+    ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(byteOutput);
+    output.write(MAGIC);
+    output.writeInt((lines.size() + LINES_PER_BLOCK - 1) / LINES_PER_BLOCK);
+    for (int start = 0; start < lines.size(); start += LINES_PER_BLOCK) {
+      List<DbFileSources.Line> blockLines = lines.subList(start, Math.min(start + LINES_PER_BLOCK, lines.size()));
+      DbFileSources.Data blockData = DbFileSources.Data.newBuilder().addAllLines(blockLines).build();
+      byte[] block = compress(blockData);
+      output.writeInt(blockLines.get(0).getLine());
+      output.writeInt(blockLines.get(blockLines.size() - 1).getLine());
+      output.writeInt(block.length);
+      output.writeInt(blockData.getSerializedSize());
+      blocks.add(block);
+    }
+    for (byte[] block : blocks) {
+      output.write(block);
+    }
+    output.close();
+    return byteOutput.toByteArray();
+  }
+
+  static DbFileSources.Data decode(byte[] binaryData) throws IOException {
+    DbFileSources.Data.Builder data = DbFileSources.Data.newBuilder();
+    for (Block block : readIndex(binaryData)) {
+      data.addAllLines(decompress(binaryData, block).getLinesList());
+    }
+    return data.build();
+  }
+
+  /**
+   * Lines of the blocks overlapping the range {@code [from, toInclusive]}. The index is read immediately
+   * but blocks are decompressed one at a time, while iterating. Lines of the returned blocks that are
+   * out of range are not filtered.
+   */
+  static Iterable<DbFileSources.Line> decodeLines(final byte[] binaryData, int from, int toInclusive) throws IOException {
+    final List<Block> blocks = new ArrayList<>();
+    for (Block block : readIndex(binaryData)) {
+      if (block.lastLine >= from && block.firstLine <= toInclusive) {
+        blocks.add(block);
+      }
+    }
+    return new Iterable<DbFileSources.Line>() {
+      @Override
+      public Iterator<DbFileSources.Line> iterator() {
+        return new BlockLinesIterator(binaryData, blocks.iterator());
+      }
+    };
+  }
+
+  private static List<Block> readIndex(byte[] binaryData) throws IOException {
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(binaryData, MAGIC.length, binaryData.length - MAGIC.length));
+    int blockCount = input.readInt();
+    if (blockCount < 0) {
+      throw new IOException("Invalid number of blocks: " + blockCount);
+    }
+    boolean hasSerializedSize = startsWith(binaryData, MAGIC);
+    List<Block> blocks = new ArrayList<>(blockCount);
+    int offset = MAGIC.length + 4 + blockCount * (hasSerializedSize ? INDEX_ENTRY_SIZE : INDEX_ENTRY_SIZE_WITHOUT_SERIALIZED_SIZE);
+    for (int i = 0; i < blockCount; i++) {
+      Block block = new Block(input.readInt(), input.readInt(), offset, input.readInt(), hasSerializedSize ? input.readInt() : UNKNOWN_SIZE);
+      if (block.length < 0 || block.offset + block.length > binaryData.length) {
+        throw new IOException("Invalid block of lines " + block.firstLine + " to " + block.lastLine);
+      }
+      offset += block.length;
+      blocks.add(block);
+    }
+    return blocks;
+  }
+
+  private static byte[] compress(DbFileSources.Data data) throws IOException {
+    ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+    try (LZ4BlockOutputStream compressedOutput = new LZ4BlockOutputStream(byteOutput)) {
+      data.writeTo(compressedOutput);
+    }
+    return byteOutput.toByteArray();
+  }
+
+  private static DbFileSources.Data decompress(byte[] binaryData, Block block) throws IOException {
+    try (LZ4BlockInputStream lz4Input = new LZ4BlockInputStream(new ByteArrayInputStream(binaryData, block.offset, block.length))) {
+      CodedInputStream input = CodedInputStream.newInstance(lz4Input);
+      // a block is small by construction, except if it contains huge lines
+      input.setSizeLimit(Integer.MAX_VALUE);
+      return DbFileSources.Data.parseFrom(input);
+    }
+  }
+
+  private static class Block {
+    private final int firstLine;
+    private final int lastLine;
+    private final int offset;
+    private final int length;
+    private final int serializedSize;
+
+    private Block(int firstLine, int lastLine, int offset, int length, int serializedSize) {
+      this.firstLine = firstLine;
+      this.lastLine = lastLine;
+      this.offset = offset;
+      this.length = length;
+      this.serializedSize = serializedSize;
+    }
+  }
+
+  private static class BlockLinesIterator extends AbstractIterator<DbFileSources.Line> {
+    private final byte[] binaryData;
+    private final Iterator<Block> blocks;
+    private Iterator<DbFileSources.Line> lines = Collections.emptyIterator();
+
+    private BlockLinesIterator(byte[] binaryData, Iterator<Block> blocks) {
+      this.binaryData = binaryData;
+      this.blocks = blocks;
+    }
+
+    @Override
+    protected DbFileSources.Line computeNext() {
+      while (!lines.hasNext()) {
+        if (!blocks.hasNext()) {
+          return endOfData();
+        }
+        Block block = blocks.next();
+        try {
+          lines = decompress(binaryData, block).getLinesList().iterator();
+        } catch (IOException e) {
+          throw new IllegalStateException("Fail to decompress block of lines " + block.firstLine + " to " + block.lastLine, e);
+        }
+      }
+      return lines.next();
+    }
+  }
+}
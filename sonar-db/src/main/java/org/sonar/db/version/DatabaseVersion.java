@@ -30,7 +30,7 @@ import org.sonar.db.MyBatis;
 
 public class DatabaseVersion {
 
-  public static final int LAST_VERSION = 1_274;
+  public static final int LAST_VERSION = 1_275;
 
   /**
    * The minimum supported version which can be upgraded. Lower
@@ -54,6 +54,7 @@ public class DatabaseVersion {
     "ce_queue",
     "dashboards",
     "duplications_index",
+    "es_queue",
     "events",
     "file_sources",
     "groups",
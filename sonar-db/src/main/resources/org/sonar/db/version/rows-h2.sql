@@ -481,6 +481,7 @@ INSERT INTO SCHEMA_MIGRATIONS(VERSION) VALUES ('1271');
 INSERT INTO SCHEMA_MIGRATIONS(VERSION) VALUES ('1272');
 INSERT INTO SCHEMA_MIGRATIONS(VERSION) VALUES ('1273');
 INSERT INTO SCHEMA_MIGRATIONS(VERSION) VALUES ('1274');
+INSERT INTO SCHEMA_MIGRATIONS(VERSION) VALUES ('1275');
 
 INSERT INTO USERS(ID, LOGIN, NAME, EMAIL, EXTERNAL_IDENTITY, EXTERNAL_IDENTITY_PROVIDER, USER_LOCAL, CRYPTED_PASSWORD, SALT, CREATED_AT, UPDATED_AT) VALUES (1, 'admin', 'Administrator', '', 'admin', 'sonarqube', true, 'a373a0e667abb2604c1fd571eb4ad47fe8cc0878', '48bc4b0d93179b5103fd3885ea9119498e9d161b', '1418215735482', '1418215735482');
 ALTER TABLE USERS ALTER COLUMN ID RESTART WITH 2;
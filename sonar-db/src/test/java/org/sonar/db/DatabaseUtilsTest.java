@@ -25,6 +25,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
 import java.sql.Statement;
 import java.util.Collections;
 import java.util.HashSet;
@@ -305,6 +306,29 @@ public class DatabaseUtilsTest {
     assertThat(logTester.logs(LoggerLevel.ERROR)).contains("SQL error: 456. Message: this is next");
   }
 
+  @Test
+  public void isIntegrityConstraintViolation_searches_causes() {
+    assertThat(DatabaseUtils.isIntegrityConstraintViolation(new SQLIntegrityConstraintViolationException())).isTrue();
+    assertThat(DatabaseUtils.isIntegrityConstraintViolation(new IllegalStateException(new SQLException("duplicate key", "23505")))).isTrue();
+    assertThat(DatabaseUtils.isIntegrityConstraintViolation(new IllegalStateException(new SQLException("connection failure", "08006")))).isFalse();
+    assertThat(DatabaseUtils.isIntegrityConstraintViolation(new IllegalStateException("not SQL"))).isFalse();
+  }
+
+  @Test
+  public void isIntegrityConstraintViolation_on_duplicated_row() {
+    Connection connection = dbTester.openConnection();
+    try {
+      Statement stmt = connection.createStatement();
+      stmt.execute("insert into es_queue (index_type, project_uuid, created_at, updated_at) values ('issues', 'P1', 1, 1)");
+      stmt.execute("insert into es_queue (index_type, project_uuid, created_at, updated_at) values ('issues', 'P1', 2, 2)");
+      fail("Duplicated row must fail");
+    } catch (SQLException e) {
+      assertThat(DatabaseUtils.isIntegrityConstraintViolation(e)).isTrue();
+    } finally {
+      DatabaseUtils.closeQuietly(connection);
+    }
+  }
+
   @Test
   public void buildLikeValue_with_special_characters() {
     String escapedValue = "like-\\/_/%//-value";
@@ -182,6 +182,62 @@ public class CeQueueDaoTest {
     assertThat(peek.get().getUuid()).isEqualTo(TASK_UUID_2);
   }
 
+  @Test
+  public void selectEligibleForPeek_returns_oldest_pending_task_of_each_component() throws Exception {
+    insert(TASK_UUID_1, COMPONENT_UUID_1, PENDING);
+    system2.setNow(INIT_TIME + 1_000);
+    insert(TASK_UUID_2, COMPONENT_UUID_1, PENDING);
+    system2.setNow(INIT_TIME + 2_000);
+    insert("TASK_3", COMPONENT_UUID_2, PENDING);
+    system2.setNow(INIT_TIME + 3_000);
+    insert("TASK_4", "PROJECT_3", IN_PROGRESS);
+    insert("TASK_5", "PROJECT_3", PENDING);
+
+    List<CeQueueDto> eligible = underTest.selectEligibleForPeek(db.getSession(), 10);
+    assertThat(eligible).extracting("uuid").containsExactly(TASK_UUID_1, "TASK_3");
+
+    assertThat(underTest.selectEligibleForPeek(db.getSession(), 1)).extracting("uuid").containsExactly(TASK_UUID_1);
+  }
+
+  @Test
+  public void tryToClaim_switches_pending_task_to_in_progress() throws Exception {
+    insert(TASK_UUID_1, COMPONENT_UUID_1, PENDING);
+    CeQueueDto dto = underTest.selectEligibleForPeek(db.getSession(), 1).get(0);
+    system2.setNow(INIT_TIME + 5_000);
+
+    assertThat(underTest.tryToClaim(db.getSession(), dto)).isTrue();
+    db.commit();
+
+    assertThat(dto.getStatus()).isEqualTo(IN_PROGRESS);
+    assertThat(dto.getStartedAt()).isEqualTo(INIT_TIME + 5_000);
+    CeQueueDto reloaded = underTest.selectByUuid(db.getSession(), TASK_UUID_1).get();
+    assertThat(reloaded.getStatus()).isEqualTo(IN_PROGRESS);
+    assertThat(reloaded.getStartedAt()).isEqualTo(INIT_TIME + 5_000);
+  }
+
+  @Test
+  public void tryToClaim_fails_if_task_is_already_claimed() throws Exception {
+    insert(TASK_UUID_1, COMPONENT_UUID_1, PENDING);
+    CeQueueDto dto = underTest.selectEligibleForPeek(db.getSession(), 1).get(0);
+    underTest.peek(db.getSession());
+
+    assertThat(underTest.tryToClaim(db.getSession(), dto)).isFalse();
+    assertThat(dto.getStatus()).isEqualTo(PENDING);
+  }
+
+  @Test
+  public void resetToPendingStatus_releases_claimed_task() throws Exception {
+    insert(TASK_UUID_1, COMPONENT_UUID_1, PENDING);
+    underTest.peek(db.getSession());
+
+    underTest.resetToPendingStatus(db.getSession(), TASK_UUID_1);
+    db.commit();
+
+    CeQueueDto reloaded = underTest.selectByUuid(db.getSession(), TASK_UUID_1).get();
+    assertThat(reloaded.getStatus()).isEqualTo(PENDING);
+    assertThat(reloaded.getStartedAt()).isNull();
+  }
+
   @Test
   public void select_by_query() {
     // task status not in query
@@ -25,8 +25,10 @@ import org.sonar.api.utils.System2;
 import org.sonar.db.DbSession;
 import org.sonar.db.DbTester;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -61,6 +63,33 @@ public class DuplicationDaoTest {
     assertThat(blocks).hasSize(2);
   }
 
+  @Test
+  public void select_candidates_with_result_handler() {
+    db.prepareDbUnit(getClass(), "select_candidates.xml");
+    dbSession.commit();
+
+    List<DuplicationUnitDto> blocks = new ArrayList<>();
+    dao.selectCandidates(dbSession, "u7", "java", asList("aa", "bb", "aa"), context -> blocks.add((DuplicationUnitDto) context.getResultObject()));
+
+    assertThat(blocks).hasSize(1);
+    assertThat(blocks.get(0).getComponentKey()).isEqualTo("bar-last");
+    assertThat(blocks.get(0).getHash()).isEqualTo("aa");
+  }
+
+  @Test
+  public void count_and_select_hashes() {
+    db.prepareDbUnit(getClass(), "select_candidates.xml");
+    dbSession.commit();
+
+    assertThat(dao.countHashes(dbSession, "u7", "java")).isEqualTo(1);
+    assertThat(dao.countHashes(dbSession, null, "java")).isEqualTo(2);
+    assertThat(dao.countHashes(dbSession, null, "grvy")).isEqualTo(0);
+
+    List<String> hashes = new ArrayList<>();
+    dao.selectHashes(dbSession, null, "java", context -> hashes.add((String) context.getResultObject()));
+    assertThat(hashes).containsOnly("aa").hasSize(2);
+  }
+
   @Test
   public void insert() {
     db.prepareDbUnit(getClass(), "insert.xml");
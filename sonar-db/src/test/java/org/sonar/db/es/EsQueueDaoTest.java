@@ -0,0 +1,124 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.es;
+
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.utils.internal.TestSystem2;
+import org.sonar.db.DbTester;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EsQueueDaoTest {
+
+  private static final long INIT_TIME = 1_450_000_000_000L;
+
+  private TestSystem2 system2 = new TestSystem2().setNow(INIT_TIME);
+
+  @Rule
+  public DbTester db = DbTester.create(system2);
+
+  private EsQueueDao underTest = new EsQueueDao(system2);
+
+  @Test
+  public void enqueue_inserts_one_item_per_index_type_and_project() {
+    assertThat(underTest.enqueue(db.getSession(), "issues", "P1")).isTrue();
+    assertThat(underTest.enqueue(db.getSession(), "issues", "P2")).isTrue();
+    assertThat(underTest.enqueue(db.getSession(), "tests", "P1")).isTrue();
+    db.commit();
+
+    assertThat(underTest.countByIndexType(db.getSession(), "issues")).isEqualTo(2);
+    assertThat(underTest.countByIndexType(db.getSession(), "tests")).isEqualTo(1);
+    assertThat(underTest.countByIndexType(db.getSession(), "views")).isEqualTo(0);
+
+    EsQueueDto dto = underTest.selectOldest(db.getSession(), "tests", 10).get(0);
+    assertThat(dto.getId()).isNotNull();
+    assertThat(dto.getIndexType()).isEqualTo("tests");
+    assertThat(dto.getProjectUuid()).isEqualTo("P1");
+    assertThat(dto.getCreatedAt()).isEqualTo(INIT_TIME);
+    assertThat(dto.getUpdatedAt()).isEqualTo(INIT_TIME);
+  }
+
+  @Test
+  public void enqueue_coalesces_requests_on_pending_project() {
+    underTest.enqueue(db.getSession(), "issues", "P1");
+    system2.setNow(INIT_TIME + 10L);
+
+    assertThat(underTest.enqueue(db.getSession(), "issues", "P1")).isFalse();
+    db.commit();
+
+    List<EsQueueDto> dtos = underTest.selectOldest(db.getSession(), "issues", 10);
+    assertThat(dtos).hasSize(1);
+    assertThat(dtos.get(0).getCreatedAt()).isEqualTo(INIT_TIME);
+    assertThat(dtos.get(0).getUpdatedAt()).isEqualTo(INIT_TIME + 10L);
+  }
+
+  @Test
+  public void enqueue_increases_update_date_of_requests_done_in_the_same_millisecond() {
+    underTest.enqueue(db.getSession(), "issues", "P1");
+    underTest.enqueue(db.getSession(), "issues", "P1");
+    db.commit();
+
+    assertThat(underTest.selectOldest(db.getSession(), "issues", 10).get(0).getUpdatedAt()).isEqualTo(INIT_TIME + 1L);
+  }
+
+  @Test
+  public void selectOldest_is_ordered_by_creation_date_and_limited() {
+    underTest.enqueue(db.getSession(), "issues", "P1");
+    system2.setNow(INIT_TIME + 10L);
+    underTest.enqueue(db.getSession(), "issues", "P2");
+    system2.setNow(INIT_TIME + 20L);
+    underTest.enqueue(db.getSession(), "issues", "P3");
+    // coalesced request does not change the position in queue
+    underTest.enqueue(db.getSession(), "issues", "P1");
+    db.commit();
+
+    assertThat(underTest.selectOldest(db.getSession(), "issues", 2)).extracting("projectUuid").containsExactly("P1", "P2");
+    assertThat(underTest.selectOldest(db.getSession(), "issues", 10)).extracting("projectUuid").containsExactly("P1", "P2", "P3");
+  }
+
+  @Test
+  public void delete_item() {
+    underTest.enqueue(db.getSession(), "issues", "P1");
+    db.commit();
+    EsQueueDto dto = underTest.selectOldest(db.getSession(), "issues", 10).get(0);
+
+    assertThat(underTest.delete(db.getSession(), dto)).isTrue();
+    db.commit();
+
+    assertThat(underTest.countByIndexType(db.getSession(), "issues")).isEqualTo(0);
+  }
+
+  @Test
+  public void do_not_delete_item_requested_again_since_selection() {
+    underTest.enqueue(db.getSession(), "issues", "P1");
+    db.commit();
+    EsQueueDto dto = underTest.selectOldest(db.getSession(), "issues", 10).get(0);
+    system2.setNow(INIT_TIME + 10L);
+    underTest.enqueue(db.getSession(), "issues", "P1");
+    db.commit();
+
+    assertThat(underTest.delete(db.getSession(), dto)).isFalse();
+    db.commit();
+
+    assertThat(underTest.countByIndexType(db.getSession(), "issues")).isEqualTo(1);
+  }
+}
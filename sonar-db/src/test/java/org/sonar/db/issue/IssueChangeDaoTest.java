@@ -19,6 +19,7 @@
  */
 package org.sonar.db.issue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -107,6 +108,17 @@ public class IssueChangeDaoTest {
     assertThat(dtos).extracting("id").containsOnly(100L, 103L);
   }
 
+  @Test
+  public void selectChangelogOfNonClosedIssuesByProject() {
+    dbTester.prepareDbUnit(getClass(), "selectChangelogOfNonClosedIssuesByComponent.xml");
+
+    List<IssueChangeDto> dtos = new ArrayList<>();
+    dao.selectChangelogOfNonClosedIssuesByProject(dbTester.getSession(), "PROJECT_1", context -> dtos.add((IssueChangeDto) context.getResultObject()));
+
+    // ordered by issue key
+    assertThat(dtos).extracting("id").containsExactly(103L, 100L, 105L);
+  }
+
   @Test
   public void select_comments_by_issues_empty_input() {
     // no need to connect to db
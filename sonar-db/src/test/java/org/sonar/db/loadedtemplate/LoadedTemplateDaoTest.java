@@ -24,6 +24,8 @@ import org.junit.Test;
 import org.sonar.api.utils.System2;
 import org.sonar.db.DbTester;
 
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
@@ -43,6 +45,14 @@ public class LoadedTemplateDaoTest {
     assertThat(dao.countByTypeAndKey("PROFILE", "HOTSPOTS"), is(0));
   }
 
+  @Test
+  public void shouldSelectByType() {
+    dbTester.prepareDbUnit(getClass(), "shouldCountByTypeAndKey.xml");
+
+    assertThat(dao.selectByType(dbTester.getSession(), "DASHBOARD"), contains(new LoadedTemplateDto("HOTSPOTS", "DASHBOARD").setId(1L)));
+    assertThat(dao.selectByType(dbTester.getSession(), "PROFILE"), is(empty()));
+  }
+
   @Test
   public void shouldInsert() {
     dbTester.prepareDbUnit(getClass(), "shouldInsert.xml");
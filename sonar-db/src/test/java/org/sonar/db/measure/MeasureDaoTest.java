@@ -19,14 +19,20 @@
  */
 package org.sonar.db.measure;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.sonar.api.resources.Scopes;
 import org.sonar.api.utils.System2;
 import org.sonar.db.DbTester;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.component.ComponentTesting;
 import org.sonar.db.component.SnapshotTesting;
+import org.sonar.db.metric.MetricDto;
+import org.sonar.db.metric.MetricTesting;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
@@ -145,6 +151,68 @@ public class MeasureDaoTest {
     selectSingle(MeasureQuery.builder().setComponentUuid("C1"));
   }
 
+  @Test
+  public void selectLastByRootAndMetricKey() {
+    MetricDto ncloc = db.getDbClient().metricDao().insert(db.getSession(), MetricTesting.newMetricDto().setKey("ncloc"));
+    MetricDto coverage = db.getDbClient().metricDao().insert(db.getSession(), MetricTesting.newMetricDto().setKey("coverage"));
+    insertAnalysis("A1", "P1", false);
+    insertAnalysis("A2", "P1", true);
+    insertAnalysis("A3", "P2", true);
+    insertMeasure("M1", "A1", "C1", ncloc.getId());
+    insertMeasure("M2", "A2", "C1", ncloc.getId());
+    insertMeasure("M3", "A2", "C2", ncloc.getId());
+    insertMeasure("M4", "A2", "C1", coverage.getId());
+    insertMeasureOnPerson("M5", "A2", "C1", ncloc.getId(), A_PERSON_ID);
+    insertMeasure("M6", "A3", "C3", ncloc.getId());
+    db.commit();
+
+    List<MeasureDto> measures = new ArrayList<>();
+    underTest.selectLastByRootAndMetricKey(db.getSession(), "P1", "ncloc", context -> measures.add((MeasureDto) context.getResultObject()));
+
+    assertThat(measures).extracting(MeasureDto::getData).containsOnly("M2", "M3");
+    assertThat(measures).extracting(MeasureDto::getComponentUuid).containsOnly("C1", "C2");
+  }
+
+  @Test
+  public void selectPastMeasuresOfAnalysis() {
+    ComponentDto project = ComponentTesting.newProjectDto("P1");
+    ComponentDto directory = ComponentTesting.newDirectory(project, "D1", "src");
+    ComponentDto file = ComponentTesting.newFileDto(project, "F1");
+    db.components().insertComponents(project, directory, file);
+    insertAnalysis("A1", false);
+    insertAnalysis("A2", true);
+    insertMeasure("M1", "A1", "P1", NCLOC_METRIC_ID);
+    insertMeasure("M2", "A1", "D1", NCLOC_METRIC_ID);
+    insertMeasure("M3", "A1", "D1", COVERAGE_METRIC_ID);
+    insertMeasure("M4", "A1", "D1", COMPLEXITY_METRIC_ID);
+    insertMeasure("M5", "A1", "F1", NCLOC_METRIC_ID);
+    insertMeasureOnPerson("M6", "A1", "D1", NCLOC_METRIC_ID, A_PERSON_ID);
+    insertMeasure("M7", "A2", "D1", NCLOC_METRIC_ID);
+    db.commit();
+
+    List<PastMeasureDto> measures = new ArrayList<>();
+    underTest.selectPastMeasuresOfAnalysis(db.getSession(), "A1", asList(Scopes.PROJECT, Scopes.DIRECTORY), asList(NCLOC_METRIC_ID, COVERAGE_METRIC_ID),
+      context -> measures.add((PastMeasureDto) context.getResultObject()));
+
+    assertThat(measures).extracting(PastMeasureDto::getComponentUuid).containsExactly("D1", "D1", "P1");
+    assertThat(measures).extracting(PastMeasureDto::getMetricId).containsExactly(COVERAGE_METRIC_ID, NCLOC_METRIC_ID, NCLOC_METRIC_ID);
+    assertThat(measures).extracting(PastMeasureDto::getPersonId).containsOnly((Long) null);
+  }
+
+  @Test
+  public void selectPastMeasuresOfAnalysis_fails_if_too_many_metrics() {
+    List<Integer> metricIds = new ArrayList<>();
+    for (int i = 0; i <= 1_000; i++) {
+      metricIds.add(i);
+    }
+
+    expectedException.expect(IllegalArgumentException.class);
+    expectedException.expectMessage("Past measures can not be selected on more than 1000 metrics");
+
+    underTest.selectPastMeasuresOfAnalysis(db.getSession(), "A1", asList(Scopes.PROJECT), metricIds, context -> {
+    });
+  }
+
   private Optional<MeasureDto> selectSingle(MeasureQuery.Builder query) {
     return underTest.selectSingle(db.getSession(), query.build());
   }
@@ -187,6 +255,11 @@ public class MeasureDaoTest {
       .setLast(isLast));
   }
 
-  // TODO test selectPastMeasures
+  private void insertAnalysis(String uuid, String componentUuid, boolean isLast) {
+    db.getDbClient().snapshotDao().insert(db.getSession(), SnapshotTesting.newSnapshot()
+      .setUuid(uuid)
+      .setComponentUuid(componentUuid)
+      .setLast(isLast));
+  }
 
 }
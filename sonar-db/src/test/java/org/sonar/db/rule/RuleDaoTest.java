@@ -120,6 +120,26 @@ public class RuleDaoTest {
     assertThat(rules.get(0).getId()).isEqualTo(1);
   }
 
+  @Test
+  public void selectByRepositories() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+
+    assertThat(underTest.selectByRepositories(dbTester.getSession(), Collections.<String>emptyList())).isEmpty();
+    assertThat(underTest.selectByRepositories(dbTester.getSession(), asList("other"))).isEmpty();
+    assertThat(underTest.selectByRepositories(dbTester.getSession(), asList("java", "other"))).extracting("id").containsOnly(1, 2, 10);
+  }
+
+  @Test
+  public void selectRepositoryStamps() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+
+    List<RuleRepositoryStampDto> stamps = underTest.selectRepositoryStamps(dbTester.getSession());
+    assertThat(stamps).hasSize(1);
+    assertThat(stamps.get(0).getRepositoryKey()).isEqualTo("java");
+    assertThat(stamps.get(0).getRuleCount()).isEqualTo(3);
+    assertThat(stamps.get(0).getMaxUpdatedAt()).isEqualTo(1_600_000_000_000L);
+  }
+
   @Test
   public void selectEnabled() {
     dbTester.prepareDbUnit(getClass(), "selectEnabled.xml");
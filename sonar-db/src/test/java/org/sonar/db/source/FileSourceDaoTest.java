@@ -22,6 +22,12 @@ package org.sonar.db.source;
 import com.google.common.base.Function;
 import java.io.IOException;
 import java.io.Reader;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
 import org.apache.commons.io.IOUtils;
 import org.junit.Rule;
 import org.junit.Test;
@@ -31,6 +37,9 @@ import org.sonar.db.DbTester;
 import org.sonar.db.source.FileSourceDto.Type;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
 
 
 public class FileSourceDaoTest {
@@ -58,6 +67,14 @@ public class FileSourceDaoTest {
     assertThat(fileSourceDto.getRevision()).isEqualTo("123456789");
   }
 
+  @Test
+  public void select_source_data_hash() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+
+    assertThat(underTest.selectSourceDataHash(session, "FILE1_UUID")).isEqualTo("hash");
+    assertThat(underTest.selectSourceDataHash(session, "UNKNOWN")).isNull();
+  }
+
   @Test
   public void select_line_hashes() {
     dbTester.prepareDbUnit(getClass(), "shared.xml");
@@ -88,6 +105,58 @@ public class FileSourceDaoTest {
     assertThat(fn.result).isNull();
   }
 
+  @Test
+  public void select_line_hashes_of_many_files() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+
+    final Map<String, String> result = new HashMap<>();
+    underTest.readLineHashesStream(dbTester.getSession(), Arrays.asList("FILE1_UUID", "unknown"), new FileSourceDao.LineHashesHandler() {
+      @Override
+      public void handle(String fileUuid, @Nullable Reader lineHashes) {
+        try {
+          result.put(fileUuid, IOUtils.toString(lineHashes));
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    });
+
+    assertThat(result).containsOnly(entry("FILE1_UUID", "ABC\\nDEF\\nGHI"));
+  }
+
+  @Test
+  public void no_line_hashes_of_many_files_when_only_test_data() {
+    dbTester.prepareDbUnit(getClass(), "no_line_hashes_when_only_test_data.xml");
+
+    FileSourceDao.LineHashesHandler handler = mock(FileSourceDao.LineHashesHandler.class);
+    underTest.readLineHashesStream(dbTester.getSession(), Arrays.asList("FILE1_UUID"), handler);
+
+    verifyZeroInteractions(handler);
+  }
+
+  @Test
+  public void select_sources_of_many_files() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+
+    List<FileSourceDto> dtos = new ArrayList<>();
+    underTest.readSourcesStream(session, Arrays.asList("FILE1_UUID", "unknown"), context -> dtos.add((FileSourceDto) context.getResultObject()));
+
+    assertThat(dtos).hasSize(1);
+    assertThat(dtos.get(0).getFileUuid()).isEqualTo("FILE1_UUID");
+    assertThat(dtos.get(0).getSrcHash()).isEqualTo("FILE_HASH");
+    assertThat(dtos.get(0).getBinaryData()).isNotEmpty();
+  }
+
+  @Test
+  public void no_sources_of_many_files_when_only_test_data() {
+    dbTester.prepareDbUnit(getClass(), "no_line_hashes_when_only_test_data.xml");
+
+    List<FileSourceDto> dtos = new ArrayList<>();
+    underTest.readSourcesStream(session, Arrays.asList("FILE1_UUID"), context -> dtos.add((FileSourceDto) context.getResultObject()));
+
+    assertThat(dtos).isEmpty();
+  }
+
   @Test
   public void insert() {
     dbTester.prepareDbUnit(getClass(), "shared.xml");
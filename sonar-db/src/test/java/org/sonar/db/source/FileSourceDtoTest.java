@@ -19,13 +19,19 @@
  */
 package org.sonar.db.source;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
+import net.jpountz.lz4.LZ4BlockOutputStream;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.sonar.db.protobuf.DbFileSources;
 
+import static com.google.common.collect.Lists.newArrayList;
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class FileSourceDtoTest {
@@ -80,6 +86,121 @@ public class FileSourceDtoTest {
     assertThat(data.getLinesCount()).isEqualTo(build.getLinesCount());
   }
 
+  @Test
+  public void encode_and_decode_source_data_by_blocks_of_lines() {
+    DbFileSources.Data data = createData(SourceLineBlocks.LINES_PER_BLOCK * 2 + 10);
+
+    byte[] bytes = FileSourceDto.encodeSourceData(data);
+
+    assertThat(SourceLineBlocks.isChunked(bytes)).isTrue();
+    assertThat(new FileSourceDto().decodeSourceData(bytes)).isEqualTo(data);
+  }
+
+  @Test
+  public void encode_and_decode_source_data_without_lines() {
+    DbFileSources.Data data = DbFileSources.Data.newBuilder().build();
+
+    byte[] bytes = FileSourceDto.encodeSourceData(data);
+
+    assertThat(new FileSourceDto().decodeSourceData(bytes).getLinesCount()).isEqualTo(0);
+    assertThat(new FileSourceDto().decodeSourceLines(bytes, 1, 10)).isEmpty();
+  }
+
+  @Test
+  public void getSourceLines_decodes_only_blocks_overlapping_range() {
+    int blockSize = SourceLineBlocks.LINES_PER_BLOCK;
+    FileSourceDto underTest = new FileSourceDto().setSourceData(createData(blockSize * 3));
+
+    List<DbFileSources.Line> lines = newArrayList(underTest.getSourceLines(blockSize + 10, blockSize + 20));
+
+    // second block
+    assertThat(lines).hasSize(blockSize);
+    assertThat(lines.get(0).getLine()).isEqualTo(blockSize + 1);
+    assertThat(lines.get(blockSize - 1).getLine()).isEqualTo(blockSize * 2);
+
+    lines = newArrayList(underTest.getSourceLines(blockSize, blockSize * 2 + 1));
+    assertThat(lines).hasSize(blockSize * 3);
+
+    assertThat(underTest.getSourceLines(blockSize * 3 + 1, Integer.MAX_VALUE)).isEmpty();
+  }
+
+  @Test
+  public void decode_source_data_stored_as_single_lz4_stream() throws IOException {
+    DbFileSources.Data data = createData(SourceLineBlocks.LINES_PER_BLOCK + 1);
+    ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+    try (LZ4BlockOutputStream compressedOutput = new LZ4BlockOutputStream(byteOutput)) {
+      data.writeTo(compressedOutput);
+    }
+    byte[] bytes = byteOutput.toByteArray();
+
+    assertThat(SourceLineBlocks.isChunked(bytes)).isFalse();
+    assertThat(new FileSourceDto().decodeSourceData(bytes)).isEqualTo(data);
+    assertThat(new FileSourceDto().decodeSourceLines(bytes, 2, 3)).hasSize(data.getLinesCount());
+  }
+
+  @Test
+  public void getSourceDataSize_is_read_from_index_of_blocks() {
+    DbFileSources.Data data = createData(SourceLineBlocks.LINES_PER_BLOCK * 2 + 10);
+
+    FileSourceDto underTest = new FileSourceDto().setSourceData(data);
+
+    assertThat(underTest.getSourceDataSize()).isEqualTo(data.getSerializedSize());
+    assertThat(new FileSourceDto().setSourceData(DbFileSources.Data.newBuilder().build()).getSourceDataSize()).isEqualTo(0L);
+  }
+
+  @Test
+  public void getSourceDataSize_is_unknown_for_data_stored_as_single_lz4_stream() throws IOException {
+    FileSourceDto underTest = new FileSourceDto().setBinaryData(compress(createData(10)));
+
+    assertThat(underTest.getSourceDataSize()).isEqualTo(-1L);
+  }
+
+  @Test
+  public void decode_source_data_stored_by_blocks_without_serialized_size() throws IOException {
+    DbFileSources.Data firstBlock = createData(2);
+    DbFileSources.Data secondBlock = DbFileSources.Data.newBuilder()
+      .addLines(DbFileSources.Line.newBuilder().setLine(3).setSource("line 3"))
+      .build();
+    byte[] compressedFirstBlock = compress(firstBlock);
+    byte[] compressedSecondBlock = compress(secondBlock);
+    ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(byteOutput);
+    output.write("SQLines1".getBytes(StandardCharsets.UTF_8));
+    output.writeInt(2);
+    output.writeInt(1);
+    output.writeInt(2);
+    output.writeInt(compressedFirstBlock.length);
+    output.writeInt(3);
+    output.writeInt(3);
+    output.writeInt(compressedSecondBlock.length);
+    output.write(compressedFirstBlock);
+    output.write(compressedSecondBlock);
+    FileSourceDto underTest = new FileSourceDto().setBinaryData(byteOutput.toByteArray());
+
+    assertThat(underTest.getSourceData().getLinesCount()).isEqualTo(3);
+    assertThat(underTest.getSourceLines(3, 3)).extracting("source").containsExactly("line 3");
+    assertThat(underTest.getSourceDataSize()).isEqualTo(-1L);
+  }
+
+  private static byte[] compress(DbFileSources.Data data) throws IOException {
+    ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+    try (LZ4BlockOutputStream compressedOutput = new LZ4BlockOutputStream(byteOutput)) {
+      data.writeTo(compressedOutput);
+    }
+    return byteOutput.toByteArray();
+  }
+
+  private static DbFileSources.Data createData(int lines) {
+    DbFileSources.Data.Builder dataBuilder = DbFileSources.Data.newBuilder();
+    for (int i = 1; i <= lines; i++) {
+      dataBuilder.addLinesBuilder()
+        .setLine(i)
+        .setSource("line " + i)
+        .setScmAuthor("author" + (i % 7));
+    }
+    return dataBuilder.build();
+  }
+
   private static DbFileSources.Data createOver64MBDataStructure() {
     DbFileSources.Data.Builder dataBuilder = DbFileSources.Data.newBuilder();
     DbFileSources.Line.Builder lineBuilder = DbFileSources.Line.newBuilder();
@@ -50,6 +50,7 @@ public class DefaultInputFile extends DefaultInputComponent implements InputFile
   private String hash;
   private int nonBlankLines;
   private int[] originalLineOffsets;
+  private FileContentCache contentCache;
 
   public DefaultInputFile(String moduleKey, String relativePath) {
     this.moduleKey = moduleKey;
@@ -157,6 +158,28 @@ public class DefaultInputFile extends DefaultInputComponent implements InputFile
     return this;
   }
 
+  /**
+   * Cache of decoded contents used by {@link #contents()}. Set by {@link FileMetadata#readMetadata(DefaultInputFile)}.
+   * @since 6.0
+   */
+  public DefaultInputFile setContentCache(@Nullable FileContentCache contentCache) {
+    this.contentCache = contentCache;
+    return this;
+  }
+
+  /**
+   * Decoded content of the file, without the Byte Order Mark if any. The content decoded when computing
+   * the metadata of the file is reused as long as it is kept in the cache, so that consumers of the content
+   * do not read and decode the file again.
+   * @since 6.0
+   */
+  public String contents() {
+    if (contentCache != null) {
+      return contentCache.getOrRead(file(), charset);
+    }
+    return FileMetadata.readContent(file(), charset);
+  }
+
   public int lastValidOffset() {
     Preconditions.checkState(lastValidOffset >= 0, "InputFile is not properly initialized. Please set 'lastValidOffset' property.");
     return lastValidOffset;
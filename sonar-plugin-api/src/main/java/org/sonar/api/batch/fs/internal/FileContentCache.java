@@ -0,0 +1,120 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.api.batch.fs.internal;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import org.sonar.api.batch.ScannerSide;
+import org.sonar.api.config.Settings;
+
+/**
+ * Decoded content of the files of the project, so that a file is read and decoded only once
+ * when its metadata are computed, and then shared by the sensors (CPD, highlighting, ...),
+ * the issue tracking and the report. The cache is bounded by the total number of chars,
+ * the least recently used files being evicted first. Files bigger than an eighth of the
+ * cache are never cached.
+ * <p/>
+ * Thread-safe.
+ *
+ * @since 6.0
+ */
+@ScannerSide
+public class FileContentCache {
+
+  static final String SIZE_PROPERTY = "sonar.scanner.fileContentCacheSize";
+  private static final int DEFAULT_SIZE_IN_MB = 64;
+
+  private final long maxChars;
+  private final LinkedHashMap<String, String> contents = new LinkedHashMap<>(16, 0.75f, true);
+  private long chars = 0L;
+
+  public FileContentCache(Settings settings) {
+    this(maxCharsOf(settings));
+  }
+
+  @VisibleForTesting
+  FileContentCache(long maxChars) {
+    this.maxChars = maxChars;
+  }
+
+  private static long maxCharsOf(Settings settings) {
+    int sizeInMb = settings.hasKey(SIZE_PROPERTY) ? settings.getInt(SIZE_PROPERTY) : DEFAULT_SIZE_IN_MB;
+    // a char takes two bytes on heap
+    return Math.max(0, sizeInMb) * 1024L * 1024L / 2;
+  }
+
+  /**
+   * Whether a file of the given size in bytes can be cached
+   */
+  public boolean accepts(long fileLength) {
+    return fileLength <= maxChars / 8;
+  }
+
+  @CheckForNull
+  public synchronized String get(File file, Charset encoding) {
+    return contents.get(key(file, encoding));
+  }
+
+  public synchronized void put(File file, Charset encoding, String content) {
+    if (content.length() > maxChars / 8) {
+      return;
+    }
+    String previous = contents.put(key(file, encoding), content);
+    if (previous != null) {
+      chars -= previous.length();
+    }
+    chars += content.length();
+    evict();
+  }
+
+  /**
+   * Content of the file, read and decoded if it is not in the cache yet. The Byte Order Mark, if any, is removed.
+   */
+  public String getOrRead(File file, Charset encoding) {
+    String content = get(file, encoding);
+    if (content == null) {
+      content = FileMetadata.readContent(file, encoding);
+      put(file, encoding, content);
+    }
+    return content;
+  }
+
+  @VisibleForTesting
+  synchronized long chars() {
+    return chars;
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<String, String>> it = contents.entrySet().iterator();
+    while (chars > maxChars && it.hasNext()) {
+      chars -= it.next().getValue().length();
+      it.remove();
+    }
+  }
+
+  private static String key(File file, Charset encoding) {
+    return file.getAbsolutePath() + '|' + encoding.name();
+  }
+}
@@ -20,7 +20,6 @@
 package org.sonar.api.batch.fs.internal;
 
 import com.google.common.primitives.Ints;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -262,6 +261,22 @@ public class FileMetadata {
 
   }
 
+  private static final int BUFFER_SIZE = 8192;
+
+  @Nullable
+  private final FileContentCache contentCache;
+
+  public FileMetadata() {
+    this(null);
+  }
+
+  /**
+   * @since 6.0
+   */
+  public FileMetadata(@Nullable FileContentCache contentCache) {
+    this.contentCache = contentCache;
+  }
+
   /**
    * Compute hash of a file ignoring line ends differences.
    * Maximum performance is needed.
@@ -270,11 +285,29 @@ public class FileMetadata {
     LineCounter lineCounter = new LineCounter(file, encoding);
     FileHashComputer fileHashComputer = new FileHashComputer(file);
     LineOffsetCounter lineOffsetCounter = new LineOffsetCounter();
-    readFile(file, encoding, lineCounter, fileHashComputer, lineOffsetCounter);
+    CharHandler[] handlers = {lineCounter, fileHashComputer, lineOffsetCounter};
+    if (contentCache != null && contentCache.accepts(file.length())) {
+      // decoded once, then shared with the next readers of the file
+      String content = readContent(file, encoding);
+      contentCache.put(file, encoding, content);
+      read(content, handlers);
+    } else {
+      readFile(file, encoding, handlers);
+    }
     return new Metadata(lineCounter.lines(), lineCounter.nonBlankLines(), fileHashComputer.getHash(), lineOffsetCounter.getOriginalLineOffsets(),
       lineOffsetCounter.getLastValidOffset());
   }
 
+  /**
+   * Computes the metadata of the file and gives it access to the cache of decoded contents,
+   * see {@link DefaultInputFile#contents()}.
+   * @since 6.0
+   */
+  public Metadata readMetadata(DefaultInputFile inputFile) {
+    inputFile.setContentCache(contentCache);
+    return readMetadata(inputFile.file(), inputFile.charset());
+  }
+
   /**
    * For testing purpose
    */
@@ -292,21 +325,64 @@ public class FileMetadata {
   }
 
   public static void readFile(File file, Charset encoding, CharHandler... handlers) {
-    try (BOMInputStream bomIn = new BOMInputStream(new FileInputStream(file),
-      ByteOrderMark.UTF_8, ByteOrderMark.UTF_16LE, ByteOrderMark.UTF_16BE, ByteOrderMark.UTF_32LE, ByteOrderMark.UTF_32BE);
-      Reader reader = new BufferedReader(new InputStreamReader(bomIn, encoding))) {
+    try (Reader reader = newReader(file, encoding)) {
       read(reader, handlers);
     } catch (IOException e) {
       throw new IllegalStateException(String.format("Fail to read file '%s' with encoding '%s'", file.getAbsolutePath(), encoding), e);
     }
   }
 
+  /**
+   * Decoded content of the file, without the Byte Order Mark if any.
+   * @since 6.0
+   */
+  public static String readContent(File file, Charset encoding) {
+    // decoded content has at most as many chars as the file has bytes
+    StringBuilder sb = new StringBuilder((int) Math.min(file.length(), Integer.MAX_VALUE - 8));
+    try (Reader reader = newReader(file, encoding)) {
+      char[] buffer = new char[BUFFER_SIZE];
+      int read = reader.read(buffer);
+      while (read != -1) {
+        sb.append(buffer, 0, read);
+        read = reader.read(buffer);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Fail to read file '%s' with encoding '%s'", file.getAbsolutePath(), encoding), e);
+    }
+    return sb.toString();
+  }
+
+  private static Reader newReader(File file, Charset encoding) throws IOException {
+    BOMInputStream bomIn = new BOMInputStream(new FileInputStream(file),
+      ByteOrderMark.UTF_8, ByteOrderMark.UTF_16LE, ByteOrderMark.UTF_16BE, ByteOrderMark.UTF_32LE, ByteOrderMark.UTF_32BE);
+    return new InputStreamReader(bomIn, encoding);
+  }
+
   private static void read(Reader reader, CharHandler... handlers) throws IOException {
-    char c;
-    int i = reader.read();
+    CharBuffer buffer = CharBuffer.allocate(BUFFER_SIZE);
     boolean afterCR = false;
-    while (i != -1) {
-      c = (char) i;
+    while (reader.read(buffer) != -1) {
+      buffer.flip();
+      afterCR = handle(buffer, afterCR, handlers);
+      buffer.clear();
+    }
+    end(afterCR, handlers);
+  }
+
+  private static void read(CharSequence content, CharHandler... handlers) {
+    end(handle(CharBuffer.wrap(content), false, handlers), handlers);
+  }
+
+  /**
+   * Feeds the handlers with the chars of the buffer. A CR at the end of the buffer is completed
+   * by the next buffer, if any.
+   *
+   * @return whether the last char was a CR
+   */
+  private static boolean handle(CharBuffer chars, boolean startAfterCR, CharHandler[] handlers) {
+    boolean afterCR = startAfterCR;
+    while (chars.hasRemaining()) {
+      char c = chars.get();
       if (afterCR) {
         for (CharHandler handler : handlers) {
           if (c == CARRIAGE_RETURN) {
@@ -338,8 +414,11 @@ public class FileMetadata {
           handler.handleAll(c);
         }
       }
-      i = reader.read();
     }
+    return afterCR;
+  }
+
+  private static void end(boolean afterCR, CharHandler[] handlers) {
     for (CharHandler handler : handlers) {
       if (afterCR) {
         handler.newLine();
@@ -374,6 +453,6 @@ public class FileMetadata {
    * Compute a MD5 hash of each line of the file after removing of all blank chars
    */
   public static void computeLineHashesForIssueTracking(DefaultInputFile f, LineHashConsumer consumer) {
-    readFile(f.file(), f.charset(), new LineHashComputer(consumer, f.file()));
+    read(f.contents(), new LineHashComputer(consumer, f.file()));
   }
 }
@@ -79,4 +79,15 @@ public interface SensorDescriptor {
    */
   SensorDescriptor requireProperties(String... propertyKeys);
 
+  /**
+   * Declares that the data saved by this {@link Sensor} on a file (issues, measures, highlighting, symbols and CPD tokens) only
+   * depend on the content of this file, on the active rules and on the configuration. Then the platform may reuse the data
+   * saved on a file during a previous analysis when neither the file, the plugin, the active rules nor the configuration changed.
+   * Such files are not visible in {@link SensorContext#fileSystem()}, so the {@link Sensor} must not get the files to analyze
+   * from another {@link org.sonar.api.batch.fs.FileSystem}, and must not save data computed from several files.
+   * Default is to analyze all the files at each analysis.
+   * @since 6.0
+   */
+  SensorDescriptor incremental();
+
 }
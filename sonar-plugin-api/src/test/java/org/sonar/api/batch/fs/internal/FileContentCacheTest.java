@@ -0,0 +1,97 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.api.batch.fs.internal;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileContentCacheTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void evict_least_recently_used_contents() {
+    FileContentCache cache = new FileContentCache(80L);
+    cache.put(new File("a"), StandardCharsets.UTF_8, "0123456789");
+    cache.put(new File("b"), StandardCharsets.UTF_8, "0123456789");
+    assertThat(cache.chars()).isEqualTo(20L);
+
+    // touch "a", so that "b" is the least recently used
+    assertThat(cache.get(new File("a"), StandardCharsets.UTF_8)).isEqualTo("0123456789");
+    cache.put(new File("c"), StandardCharsets.UTF_8, StringUtils.repeat("x", 10));
+    cache.put(new File("d"), StandardCharsets.UTF_8, StringUtils.repeat("x", 10));
+    cache.put(new File("e"), StandardCharsets.UTF_8, StringUtils.repeat("x", 10));
+    cache.put(new File("f"), StandardCharsets.UTF_8, StringUtils.repeat("x", 10));
+    cache.put(new File("g"), StandardCharsets.UTF_8, StringUtils.repeat("x", 10));
+    cache.put(new File("h"), StandardCharsets.UTF_8, StringUtils.repeat("x", 10));
+    cache.put(new File("i"), StandardCharsets.UTF_8, StringUtils.repeat("x", 10));
+
+    assertThat(cache.chars()).isEqualTo(80L);
+    assertThat(cache.get(new File("a"), StandardCharsets.UTF_8)).isNotNull();
+    assertThat(cache.get(new File("b"), StandardCharsets.UTF_8)).isNull();
+  }
+
+  @Test
+  public void do_not_cache_big_contents() {
+    FileContentCache cache = new FileContentCache(80L);
+    assertThat(cache.accepts(10L)).isTrue();
+    assertThat(cache.accepts(11L)).isFalse();
+
+    cache.put(new File("a"), StandardCharsets.UTF_8, "01234567890");
+    assertThat(cache.get(new File("a"), StandardCharsets.UTF_8)).isNull();
+    assertThat(cache.chars()).isEqualTo(0L);
+  }
+
+  @Test
+  public void content_depends_on_encoding() {
+    FileContentCache cache = new FileContentCache(80L);
+    cache.put(new File("a"), StandardCharsets.UTF_8, "foo");
+    assertThat(cache.get(new File("a"), StandardCharsets.ISO_8859_1)).isNull();
+  }
+
+  @Test
+  public void read_missing_content_without_bom() throws Exception {
+    File file = temp.newFile();
+    FileUtils.write(file, "\uFEFFfoo\nbar", StandardCharsets.UTF_8);
+    FileContentCache cache = new FileContentCache(80L);
+
+    assertThat(cache.getOrRead(file, StandardCharsets.UTF_8)).isEqualTo("foo\nbar");
+    assertThat(cache.get(file, StandardCharsets.UTF_8)).isEqualTo("foo\nbar");
+  }
+
+  @Test
+  public void size_is_configurable() {
+    Settings settings = new Settings();
+    settings.setProperty(FileContentCache.SIZE_PROPERTY, 0);
+    FileContentCache cache = new FileContentCache(settings);
+
+    assertThat(cache.accepts(1L)).isFalse();
+    assertThat(new FileContentCache(new Settings()).accepts(1024L * 1024L)).isTrue();
+  }
+}
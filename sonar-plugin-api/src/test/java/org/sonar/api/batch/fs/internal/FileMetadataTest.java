@@ -22,9 +22,12 @@ package org.sonar.api.batch.fs.internal;
 import java.io.File;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
 import javax.annotation.Nullable;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -35,6 +38,7 @@ import org.sonar.api.utils.log.LoggerLevel;
 
 import static org.apache.commons.codec.digest.DigestUtils.md5Hex;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 import static org.assertj.core.api.Assertions.fail;
 
 public class FileMetadataTest {
@@ -272,6 +276,43 @@ public class FileMetadataTest {
     });
   }
 
+  @Test
+  public void crlf_split_between_two_read_buffers() throws Exception {
+    File tempFile = temp.newFile();
+    String firstLine = StringUtils.repeat("a", 8191);
+    FileUtils.write(tempFile, firstLine + "\r\nb", StandardCharsets.UTF_8, true);
+
+    FileMetadata.Metadata metadata = new FileMetadata().readMetadata(tempFile, StandardCharsets.UTF_8);
+    assertThat(metadata.lines).isEqualTo(2);
+    assertThat(metadata.hash).isEqualTo(md5Hex(firstLine + "\nb"));
+    assertThat(metadata.originalLineOffsets).containsOnly(0, 8193);
+    assertThat(metadata.lastValidOffset).isEqualTo(8194);
+  }
+
+  @Test
+  public void compute_line_hashes_from_decoded_content() throws Exception {
+    File tempFile = temp.newFile();
+    FileUtils.write(tempFile, "foo\r\nb ar", StandardCharsets.UTF_8, true);
+    DefaultInputFile f = new DefaultInputFile("foo", tempFile.getName())
+      .setModuleBaseDir(tempFile.getParentFile().toPath())
+      .setCharset(StandardCharsets.UTF_8);
+
+    FileMetadata.Metadata metadata = new FileMetadata(new FileContentCache(1024L)).readMetadata(f);
+    assertThat(metadata.lines).isEqualTo(2);
+
+    // content is not read again
+    FileUtils.forceDelete(tempFile);
+    assertThat(f.contents()).isEqualTo("foo\r\nb ar");
+    final Map<Integer, String> hashes = new HashMap<>();
+    FileMetadata.computeLineHashesForIssueTracking(f, new LineHashConsumer() {
+      @Override
+      public void consume(int lineIdx, @Nullable byte[] hash) {
+        hashes.put(lineIdx, Hex.encodeHexString(hash));
+      }
+    });
+    assertThat(hashes).containsOnly(entry(1, md5Hex("foo")), entry(2, md5Hex("bar")));
+  }
+
   @Test
   public void should_throw_if_file_does_not_exist() throws Exception {
     File tempFolder = temp.newFolder();
@@ -49,6 +49,7 @@ import org.sonar.scanner.postjob.PostJobWrapper;
 import org.sonar.scanner.sensor.DefaultSensorContext;
 import org.sonar.scanner.sensor.SensorOptimizer;
 import org.sonar.scanner.sensor.SensorWrapper;
+import org.sonar.scanner.sensor.cache.IncrementalSensorExecutor;
 
 /**
  * @since 2.6
@@ -60,14 +61,21 @@ public class BatchExtensionDictionnary {
   private final SensorOptimizer sensorOptimizer;
   private final PostJobContext postJobContext;
   private final PostJobOptimizer postJobOptimizer;
+  private final IncrementalSensorExecutor incrementalSensorExecutor;
 
   public BatchExtensionDictionnary(ComponentContainer componentContainer, DefaultSensorContext sensorContext, SensorOptimizer sensorOptimizer, PostJobContext postJobContext,
     PostJobOptimizer postJobOptimizer) {
+    this(componentContainer, sensorContext, sensorOptimizer, postJobContext, postJobOptimizer, null);
+  }
+
+  public BatchExtensionDictionnary(ComponentContainer componentContainer, DefaultSensorContext sensorContext, SensorOptimizer sensorOptimizer, PostJobContext postJobContext,
+    PostJobOptimizer postJobOptimizer, @Nullable IncrementalSensorExecutor incrementalSensorExecutor) {
     this.componentContainer = componentContainer;
     this.sensorContext = sensorContext;
     this.sensorOptimizer = sensorOptimizer;
     this.postJobContext = postJobContext;
     this.postJobOptimizer = postJobOptimizer;
+    this.incrementalSensorExecutor = incrementalSensorExecutor;
   }
 
   public <T> Collection<T> select(Class<T> type, @Nullable Project project, boolean sort, @Nullable ExtensionMatcher matcher) {
@@ -96,7 +104,7 @@ public class BatchExtensionDictionnary {
     List<T> result = Lists.newArrayList();
     for (Object extension : getExtensions(type)) {
       if (org.sonar.api.batch.Sensor.class.equals(type) && extension instanceof Sensor) {
-        extension = new SensorWrapper((Sensor) extension, sensorContext, sensorOptimizer);
+        extension = new SensorWrapper((Sensor) extension, sensorContext, sensorOptimizer, incrementalSensorExecutor);
       }
       if (shouldKeep(type, extension, project, matcher)) {
         result.add((T) extension);
@@ -105,7 +113,7 @@ public class BatchExtensionDictionnary {
     if (org.sonar.api.batch.Sensor.class.equals(type)) {
       // Retrieve new Sensors and wrap then in SensorWrapper
       for (Object extension : getExtensions(Sensor.class)) {
-        extension = new SensorWrapper((Sensor) extension, sensorContext, sensorOptimizer);
+        extension = new SensorWrapper((Sensor) extension, sensorContext, sensorOptimizer, incrementalSensorExecutor);
         if (shouldKeep(type, extension, project, matcher)) {
           result.add((T) extension);
         }
@@ -39,7 +39,9 @@ import org.sonar.scanner.protocol.output.ScannerReport.Duplicate;
 import org.sonar.scanner.protocol.output.ScannerReport.Duplication;
 import org.sonar.scanner.report.ReportPublisher;
 import org.sonar.scanner.util.ProgressReport;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -48,6 +50,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import javax.annotation.CheckForNull;
 
 import static com.google.common.collect.FluentIterable.from;
 
@@ -55,6 +58,10 @@ import static com.google.common.collect.FluentIterable.from;
  * Runs on the root module, at the end of the project analysis.
  * It executes copy paste detection involving all files of all modules, which were indexed during sensors execution for each module
  * by {@link CpdSensor). The sensor is responsible for handling exclusions and block sizes.
+ * <p>
+ * Detection of the files is dispatched to a pool of {@value #THREADS_PROPERTY} workers (1 by default). Results are
+ * consumed in the order of the index, so that duplications are always written to the report in the same order
+ * whatever the number of workers.
  */
 public class CpdExecutor {
   private static final Logger LOG = Loggers.get(CpdExecutor.class);
@@ -62,12 +69,12 @@ public class CpdExecutor {
   private static final int TIMEOUT = 5 * 60;
   static final int MAX_CLONE_GROUP_PER_FILE = 100;
   static final int MAX_CLONE_PART_PER_GROUP = 100;
+  static final String THREADS_PROPERTY = "sonar.cpd.threads";
 
   private final SonarCpdBlockIndex index;
   private final ReportPublisher publisher;
   private final BatchComponentCache batchComponentCache;
   private final Settings settings;
-  private final ExecutorService executorService;
   private final ProgressReport progressReport;
   private int count;
   private int total;
@@ -77,55 +84,83 @@ public class CpdExecutor {
     this.index = index;
     this.publisher = publisher;
     this.batchComponentCache = batchComponentCache;
-    this.executorService = Executors.newSingleThreadExecutor();
     this.progressReport = new ProgressReport("CPD computation", TimeUnit.SECONDS.toMillis(10));
   }
 
   public void execute() {
+    execute(TIMEOUT);
+  }
+
+  @VisibleForTesting
+  void execute(long timeout) {
     total = index.noResources();
+    int threads = getThreads();
     progressReport.start(String.format("Calculating CPD for %d files", total));
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
     try {
+      // at most one pending file per worker, so that the timeout of a file starts approximately when its detection starts
+      Deque<FileDetection> pending = new ArrayDeque<>(threads);
       Iterator<ResourceBlocks> it = index.iterator();
 
       while (it.hasNext()) {
-        ResourceBlocks resourceBlocks = it.next();
-        runCpdAnalysis(resourceBlocks.resourceId(), resourceBlocks.blocks());
-        count++;
+        FileDetection detection = submit(executorService, it.next());
+        if (detection != null) {
+          pending.add(detection);
+        }
+        if (pending.size() >= threads) {
+          complete(pending.poll(), timeout);
+        }
+      }
+      while (!pending.isEmpty()) {
+        complete(pending.poll(), timeout);
       }
       progressReport.stop("CPD calculation finished");
     } catch (Exception e) {
       progressReport.stop("");
       throw e;
+    } finally {
+      executorService.shutdownNow();
     }
   }
 
-  private void runCpdAnalysis(String resource, final Collection<Block> fileBlocks) {
-    LOG.debug("Detection of duplications for {}", resource);
+  @VisibleForTesting
+  int getThreads() {
+    int threads = settings.getInt(THREADS_PROPERTY);
+    return threads > 0 ? threads : 1;
+  }
 
+  @CheckForNull
+  private FileDetection submit(ExecutorService executorService, ResourceBlocks resourceBlocks) {
+    String resource = resourceBlocks.resourceId();
     BatchComponent component = batchComponentCache.get(resource);
     if (component == null) {
       LOG.error("Resource not found in component cache: {}. Skipping CPD computation for it", resource);
-      return;
+      count++;
+      return null;
     }
 
-    InputFile inputFile = (InputFile) component.inputComponent();
+    final Collection<Block> fileBlocks = resourceBlocks.blocks();
+    Future<List<CloneGroup>> futureResult = executorService.submit(new Callable<List<CloneGroup>>() {
+      @Override
+      public List<CloneGroup> call() throws Exception {
+        return SuffixTreeCloneDetectionAlgorithm.detect(index, fileBlocks);
+      }
+    });
+    return new FileDetection(component, futureResult);
+  }
+
+  private void complete(FileDetection detection, long timeout) {
+    InputFile inputFile = (InputFile) detection.component.inputComponent();
+    LOG.debug("Detection of duplications for {}", inputFile.absolutePath());
     progressReport.message(String.format("%d/%d - current file: %s", count, total, inputFile.absolutePath()));
+    count++;
 
     List<CloneGroup> duplications;
-    Future<List<CloneGroup>> futureResult = null;
     try {
-      futureResult = executorService.submit(new Callable<List<CloneGroup>>() {
-        @Override
-        public List<CloneGroup> call() throws Exception {
-          return SuffixTreeCloneDetectionAlgorithm.detect(index, fileBlocks);
-        }
-      });
-      duplications = futureResult.get(TIMEOUT, TimeUnit.SECONDS);
+      duplications = detection.result.get(timeout, TimeUnit.SECONDS);
     } catch (TimeoutException e) {
       LOG.warn("Timeout during detection of duplications for " + inputFile.absolutePath());
-      if (futureResult != null) {
-        futureResult.cancel(true);
-      }
+      detection.result.cancel(true);
       return;
     } catch (Exception e) {
       throw new IllegalStateException("Fail during detection of duplication for " + inputFile.absolutePath(), e);
@@ -139,7 +174,17 @@ public class CpdExecutor {
       filtered = duplications;
     }
 
-    saveDuplications(component, filtered);
+    saveDuplications(detection.component, filtered);
+  }
+
+  private static class FileDetection {
+    private final BatchComponent component;
+    private final Future<List<CloneGroup>> result;
+
+    private FileDetection(BatchComponent component, Future<List<CloneGroup>> result) {
+      this.component = component;
+      this.result = result;
+    }
   }
 
   @VisibleForTesting
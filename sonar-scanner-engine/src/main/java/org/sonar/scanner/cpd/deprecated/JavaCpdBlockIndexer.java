@@ -20,11 +20,6 @@
 package org.sonar.scanner.cpd.deprecated;
 
 import com.google.common.collect.Lists;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -86,17 +81,11 @@ public class JavaCpdBlockIndexer extends CpdBlockIndexer {
 
     for (InputFile inputFile : sourceFiles) {
       LOG.debug("Populating index from {}", inputFile);
-      String resourceEffectiveKey = ((DefaultInputFile) inputFile).key();
+      DefaultInputFile defaultInputFile = (DefaultInputFile) inputFile;
+      String resourceEffectiveKey = defaultInputFile.key();
 
-      List<Statement> statements;
-
-      try(Reader reader = new InputStreamReader(new FileInputStream(inputFile.file()), fs.encoding())) {
-        statements = statementChunker.chunk(tokenChunker.chunk(reader));
-      } catch (FileNotFoundException e) {
-        throw new IllegalStateException("Cannot find file " + inputFile.file(), e);
-      } catch (IOException e ) {
-        throw new IllegalStateException("Exception hnadling file: " + inputFile.file(), e);
-      }
+      // content is usually still in cache since the computation of file metadata
+      List<Statement> statements = statementChunker.chunk(tokenChunker.chunk(defaultInputFile.contents()));
 
       List<Block> blocks = blockChunker.chunk(resourceEffectiveKey, statements);
       index.insert(inputFile, blocks);
@@ -40,6 +40,11 @@ import org.sonar.scanner.protocol.output.FileStructure;
 import org.sonar.scanner.protocol.output.ScannerReport;
 import org.sonar.scanner.report.ReportPublisher;
 
+/**
+ * Block index shared by all modules. Once the sensors are done, it can be queried concurrently
+ * by the workers of {@link org.sonar.scanner.cpd.CpdExecutor}: the underlying {@link PackedMemoryCloneIndex}
+ * is not thread-safe (it re-uses internal buffers on reads), so every access to it is guarded by this instance.
+ */
 public class SonarCpdBlockIndex extends AbstractCloneIndex {
 
   private final CloneIndex mem = new PackedMemoryCloneIndex();
@@ -75,13 +80,15 @@ public class SonarCpdBlockIndex extends AbstractCloneIndex {
         }
       }));
     }
-    for (Block block : blocks) {
-      mem.insert(block);
+    synchronized (this) {
+      for (Block block : blocks) {
+        mem.insert(block);
+      }
+      indexedFiles.add(inputFile);
     }
-    indexedFiles.add(inputFile);
   }
 
-  public boolean isIndexed(InputFile inputFile) {
+  public synchronized boolean isIndexed(InputFile inputFile) {
     return indexedFiles.contains(inputFile);
   }
 
@@ -91,12 +98,12 @@ public class SonarCpdBlockIndex extends AbstractCloneIndex {
       && StringUtils.isBlank(settings.getString(CoreProperties.PROJECT_BRANCH_PROPERTY));
   }
 
-  public Collection<Block> getByInputFile(String resourceKey) {
+  public synchronized Collection<Block> getByInputFile(String resourceKey) {
     return mem.getByResourceId(resourceKey);
   }
 
   @Override
-  public Collection<Block> getBySequenceHash(ByteArray hash) {
+  public synchronized Collection<Block> getBySequenceHash(ByteArray hash) {
     return mem.getBySequenceHash(hash);
   }
 
@@ -111,13 +118,40 @@ public class SonarCpdBlockIndex extends AbstractCloneIndex {
   }
 
   @Override
-  public Iterator<ResourceBlocks> iterator() {
-    return mem.iterator();
+  public synchronized Iterator<ResourceBlocks> iterator() {
+    return new SynchronizedIterator(mem.iterator());
   }
 
   @Override
-  public int noResources() {
+  public synchronized int noResources() {
     return mem.noResources();
   }
 
+  private class SynchronizedIterator implements Iterator<ResourceBlocks> {
+    private final Iterator<ResourceBlocks> delegate;
+
+    private SynchronizedIterator(Iterator<ResourceBlocks> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public boolean hasNext() {
+      synchronized (SonarCpdBlockIndex.this) {
+        return delegate.hasNext();
+      }
+    }
+
+    @Override
+    public ResourceBlocks next() {
+      synchronized (SonarCpdBlockIndex.this) {
+        return delegate.next();
+      }
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
 }
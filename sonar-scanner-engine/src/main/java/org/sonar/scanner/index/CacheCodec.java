@@ -0,0 +1,113 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.index;
+
+import com.persistit.Key;
+import com.persistit.Persistit;
+import com.persistit.Value;
+import java.util.Arrays;
+
+/**
+ * Encodes keys and values of caches with the Persistit formats, so that the value coders
+ * registered in {@link Caches} apply to all the storage engines. Encoded keys
+ * are ordered like their parts when compared as unsigned bytes, and the encoding of a
+ * prefix is a prefix of the encoding of the complete key.
+ * <p/>
+ * Thread-safe, each thread using its own buffers.
+ */
+class CacheCodec {
+
+  private final ThreadLocal<Key> keys;
+  private final ThreadLocal<Value> values;
+
+  CacheCodec(final Persistit persistit) {
+    this.keys = new ThreadLocal<Key>() {
+      @Override
+      protected Key initialValue() {
+        return new Key(persistit);
+      }
+    };
+    this.values = new ThreadLocal<Value>() {
+      @Override
+      protected Value initialValue() {
+        Value value = new Value(persistit);
+        value.setMaximumSize(Value.MAXIMUM_SIZE);
+        return value;
+      }
+    };
+  }
+
+  byte[] encodeKey(Object[] parts) {
+    Key key = keys.get();
+    key.clear();
+    for (Object part : parts) {
+      key.append(part);
+    }
+    return Arrays.copyOf(key.getEncodedBytes(), key.getEncodedSize());
+  }
+
+  /**
+   * Encoded key made of the given prefix followed by one more part
+   */
+  byte[] encodeKey(Object[] prefix, Object last) {
+    Object[] parts = Arrays.copyOf(prefix, prefix.length + 1);
+    parts[prefix.length] = last;
+    return encodeKey(parts);
+  }
+
+  Object[] decodeKey(byte[] encoded) {
+    Key key = load(encoded);
+    int depth = key.getDepth();
+    Object[] parts = new Object[depth];
+    for (int i = 0; i < depth; i++) {
+      parts[i] = key.indexTo(i).decode();
+    }
+    return parts;
+  }
+
+  /**
+   * Decodes the part at the given index of an encoded key
+   */
+  Object decodeKeyPart(byte[] encoded, int index) {
+    return load(encoded).indexTo(index).decode();
+  }
+
+  byte[] encodeValue(Object o) {
+    Value value = values.get();
+    value.clear();
+    value.put(o);
+    return Arrays.copyOf(value.getEncodedBytes(), value.getEncodedSize());
+  }
+
+  Object decodeValue(byte[] encoded) {
+    Value value = values.get();
+    value.clear();
+    value.putEncodedBytes(encoded, 0, encoded.length);
+    return value.get();
+  }
+
+  private Key load(byte[] encoded) {
+    Key key = keys.get();
+    key.clear();
+    System.arraycopy(encoded, 0, key.getEncodedBytes(), 0, encoded.length);
+    key.setEncodedSize(encoded.length);
+    return key;
+  }
+}
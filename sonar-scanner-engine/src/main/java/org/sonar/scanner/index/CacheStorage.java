@@ -0,0 +1,67 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.index;
+
+import java.util.Iterator;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+
+/**
+ * Storage backing a {@link Cache}. Keys are made of one or more parts, a prefix being
+ * the first parts of a key. An empty prefix designates the whole cache.
+ *
+ * @since 6.0
+ */
+interface CacheStorage {
+
+  void put(Object[] key, Object value);
+
+  @CheckForNull
+  Object get(Object[] key);
+
+  boolean containsKey(Object[] key);
+
+  boolean remove(Object[] key);
+
+  /**
+   * Removes all the entries whose key starts with the given prefix
+   */
+  void clear(Object[] prefix);
+
+  /**
+   * Distinct key parts following the given prefix, in key order
+   */
+  Set<Object> keySet(Object[] prefix);
+
+  /**
+   * Lazy iterator on the values whose key starts with the given prefix, in key order
+   */
+  Iterator<Object> values(Object[] prefix);
+
+  /**
+   * Lazy iterator on the entries whose key starts with the given prefix, in key order
+   */
+  Iterator<Cache.Entry<Object>> entries(Object[] prefix);
+
+  /**
+   * Releases resources. The storage can not be used anymore.
+   */
+  void close();
+}
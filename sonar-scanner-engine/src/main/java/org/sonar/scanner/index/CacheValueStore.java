@@ -0,0 +1,169 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the encoded values of the in-memory caches. Values are kept as byte arrays on heap
+ * as long as the heap budget is not exhausted. Then they overflow into an append-only
+ * arena of fixed-size segments, allocated either as direct buffers or as memory-mapped temporary
+ * files. Space of removed off-heap values is not reclaimed before {@link #close()}.
+ * <p/>
+ * Shared by all the caches of a {@link Caches}. Thread-safe.
+ */
+class CacheValueStore {
+
+  enum Overflow {
+    MMAP, DIRECT
+  }
+
+  static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private final long heapBudget;
+  private final AtomicLong heapSize = new AtomicLong();
+  private final Overflow overflow;
+  private final File dir;
+  private final int segmentSize;
+  private final List<ByteBuffer> segments = new ArrayList<>();
+  private final List<File> segmentFiles = new ArrayList<>();
+  private int writePosition;
+  private long offHeapSize;
+
+  CacheValueStore(long heapBudget, Overflow overflow, File dir) {
+    this(heapBudget, overflow, dir, DEFAULT_SEGMENT_SIZE);
+  }
+
+  CacheValueStore(long heapBudget, Overflow overflow, File dir, int segmentSize) {
+    this.heapBudget = heapBudget;
+    this.overflow = overflow;
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+  }
+
+  /**
+   * Returns the handle to be given to {@link #load(Object)}
+   */
+  Object store(byte[] bytes) {
+    long size = heapSize.addAndGet(bytes.length);
+    if (size > heapBudget && bytes.length <= segmentSize) {
+      heapSize.addAndGet(-bytes.length);
+      return storeOffHeap(bytes);
+    }
+    // values bigger than a segment are kept on heap
+    return bytes;
+  }
+
+  byte[] load(Object handle) {
+    if (handle instanceof byte[]) {
+      return (byte[]) handle;
+    }
+    OffHeapValue value = (OffHeapValue) handle;
+    ByteBuffer buffer = segment(value.segment).duplicate();
+    buffer.position(value.offset);
+    byte[] bytes = new byte[value.length];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  void release(Object handle) {
+    if (handle instanceof byte[]) {
+      heapSize.addAndGet(-((byte[]) handle).length);
+    }
+  }
+
+  long heapSize() {
+    return heapSize.get();
+  }
+
+  synchronized long offHeapSize() {
+    return offHeapSize;
+  }
+
+  synchronized int segmentCount() {
+    return segments.size();
+  }
+
+  synchronized void close() {
+    segments.clear();
+    for (File file : segmentFiles) {
+      // mapped files can not be deleted on Windows until the buffers are garbage collected.
+      // They are eventually removed with the temp directory of caches.
+      file.delete();
+    }
+    segmentFiles.clear();
+    heapSize.set(0L);
+    offHeapSize = 0L;
+  }
+
+  private synchronized OffHeapValue storeOffHeap(byte[] bytes) {
+    if (segments.isEmpty() || writePosition + bytes.length > segmentSize) {
+      segments.add(allocateSegment());
+      writePosition = 0;
+    }
+    int segment = segments.size() - 1;
+    ByteBuffer buffer = segments.get(segment).duplicate();
+    buffer.position(writePosition);
+    buffer.put(bytes);
+    OffHeapValue value = new OffHeapValue(segment, writePosition, bytes.length);
+    writePosition += bytes.length;
+    offHeapSize += bytes.length;
+    return value;
+  }
+
+  private synchronized ByteBuffer segment(int index) {
+    return segments.get(index);
+  }
+
+  private ByteBuffer allocateSegment() {
+    if (overflow == Overflow.DIRECT) {
+      return ByteBuffer.allocateDirect(segmentSize);
+    }
+    try {
+      File file = File.createTempFile("cache", ".seg", dir);
+      segmentFiles.add(file);
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.setLength(segmentSize);
+        return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to allocate cache segment in " + dir, e);
+    }
+  }
+
+  private static class OffHeapValue {
+    private final int segment;
+    private final int offset;
+    private final int length;
+
+    private OffHeapValue(int segment, int offset, int length) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+}
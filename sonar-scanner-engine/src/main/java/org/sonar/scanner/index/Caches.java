@@ -19,29 +19,32 @@
  */
 package org.sonar.scanner.index;
 
-import com.google.common.collect.Maps;
-
-import java.util.Map;
-import java.util.Map.Entry;
-
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
 import com.persistit.Exchange;
+import com.persistit.Persistit;
 import com.persistit.Value;
+import com.persistit.Volume;
 import com.persistit.encoding.CoderManager;
-import com.persistit.Persistit;
 import com.persistit.encoding.ValueCoder;
 import com.persistit.exception.PersistitException;
-import com.persistit.Volume;
+import java.util.Map;
+import javax.annotation.CheckForNull;
 import org.picocontainer.Startable;
 import org.sonar.api.batch.ScannerSide;
 
 @ScannerSide
 public class Caches implements Startable {
-  private final Map<String, Exchange> cacheMap = Maps.newHashMap();
-  private Persistit persistit;
+  private final Map<String, CacheStorage> cacheMap = Maps.newHashMap();
+  private final CachesManager manager;
+  private final Persistit persistit;
   private Volume volume;
+  private CacheCodec codec;
+  private CacheValueStore valueStore;
+  private boolean started = false;
 
   public Caches(CachesManager caches) {
+    manager = caches;
     persistit = caches.persistit();
     doStart();
   }
@@ -52,12 +55,18 @@ public class Caches implements Startable {
   }
 
   private void doStart() {
-    try {
-      persistit.flush();
-      volume = persistit.createTemporaryVolume();
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to create a cache volume", e);
+    if (manager.engine() == CachesManager.Engine.MEMORY) {
+      codec = new CacheCodec(persistit);
+      valueStore = new CacheValueStore(manager.heapBudget(), manager.overflow(), manager.tempDir());
+    } else {
+      try {
+        persistit.flush();
+        volume = persistit.createTemporaryVolume();
+      } catch (Exception e) {
+        throw new IllegalStateException("Fail to create a cache volume", e);
+      }
     }
+    started = true;
   }
 
   public void registerValueCoder(Class<?> clazz, ValueCoder coder) {
@@ -65,28 +74,49 @@ public class Caches implements Startable {
     cm.registerValueCoder(clazz, coder);
   }
 
-  public <V> Cache<V> createCache(String cacheName) {
-    Preconditions.checkState(volume != null && volume.isOpened(), "Caches are not initialized");
+  public synchronized <V> Cache<V> createCache(String cacheName) {
+    Preconditions.checkState(started && (volume == null || volume.isOpened()), "Caches are not initialized");
     Preconditions.checkState(!cacheMap.containsKey(cacheName), "Cache is already created: " + cacheName);
-    try {
-      Exchange exchange = persistit.getExchange(volume, cacheName, true);
-      exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
-      Cache<V> cache = new Cache<>(cacheName, exchange);
-      cacheMap.put(cacheName, exchange);
-      return cache;
-    } catch (Exception e) {
-      throw new IllegalStateException("Fail to create cache: " + cacheName, e);
+    CacheStorage storage;
+    if (valueStore != null) {
+      storage = new MemoryCacheStorage(cacheName, codec, valueStore);
+    } else {
+      try {
+        Exchange exchange = persistit.getExchange(volume, cacheName, true);
+        exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
+        storage = new PersistitCacheStorage(cacheName, exchange);
+      } catch (Exception e) {
+        throw new IllegalStateException("Fail to create cache: " + cacheName, e);
+      }
     }
+    cacheMap.put(cacheName, storage);
+    return new Cache<>(storage);
+  }
+
+  /**
+   * Store of values of the in-memory engine, null if Persistit engine is used
+   */
+  @CheckForNull
+  CacheValueStore valueStore() {
+    return valueStore;
   }
 
   @Override
   public void stop() {
-    for (Entry<String, Exchange> e : cacheMap.entrySet()) {
-      persistit.releaseExchange(e.getValue());
+    for (CacheStorage storage : cacheMap.values()) {
+      storage.close();
+      if (storage instanceof PersistitCacheStorage) {
+        persistit.releaseExchange(((PersistitCacheStorage) storage).exchange());
+      }
     }
 
     cacheMap.clear();
 
+    if (valueStore != null) {
+      valueStore.close();
+      valueStore = null;
+    }
+
     if (volume != null) {
       try {
         volume.close();
@@ -96,5 +126,6 @@ public class Caches implements Startable {
       }
       volume = null;
     }
+    started = false;
   }
 }
@@ -23,30 +23,103 @@ import com.persistit.Persistit;
 import com.persistit.exception.PersistitException;
 import com.persistit.logging.Slf4jAdapter;
 import java.io.File;
+import java.util.Locale;
 import java.util.Properties;
+import org.apache.commons.lang.StringUtils;
 import org.picocontainer.Startable;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.ScannerSide;
 import org.sonar.api.utils.TempFolder;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.scanner.bootstrap.GlobalProperties;
 
 import static org.sonar.core.util.FileUtils.deleteQuietly;
 
 /**
- * Factory of caches
+ * Factory of caches. Two storage engines are available:
+ * <ul>
+ *   <li>{@code memory} (default): concurrent sorted maps. Values are kept on heap up to
+ *   {@link #HEAP_SIZE_PROPERTY}, then in memory-mapped temporary files or direct buffers
+ *   depending on {@link #OVERFLOW_PROPERTY}</li>
+ *   <li>{@code persistit}: a Persistit temporary volume whose buffer pool is sized
+ *   by {@link #HEAP_SIZE_PROPERTY}</li>
+ * </ul>
+ * In both cases keys and values are encoded by Persistit.
  *
  * @since 3.6
  */
 @ScannerSide
 public class CachesManager implements Startable {
+
+  public static final String ENGINE_PROPERTY = "sonar.scanner.cache.engine";
+  public static final String HEAP_SIZE_PROPERTY = "sonar.scanner.cache.heapSizeInMb";
+  public static final String OVERFLOW_PROPERTY = "sonar.scanner.cache.overflow";
+
+  enum Engine {
+    MEMORY, PERSISTIT
+  }
+
+  private static final Logger LOG = Loggers.get(CachesManager.class);
+  private static final int PAGE_SIZE = 8192;
+  private static final int MIN_BUFFER_COUNT = 10;
+  private static final int MAX_BUFFER_COUNT = 64 * 1024;
+
   private File tempDir;
   private Persistit persistit;
   private final TempFolder tempFolder;
+  private final Engine engine;
+  private final long heapBudget;
+  private final CacheValueStore.Overflow overflow;
 
-  public CachesManager(TempFolder tempFolder) {
+  public CachesManager(TempFolder tempFolder, GlobalProperties properties) {
     this.tempFolder = tempFolder;
+    this.engine = parse(Engine.class, properties, ENGINE_PROPERTY, Engine.MEMORY);
+    this.overflow = parse(CacheValueStore.Overflow.class, properties, OVERFLOW_PROPERTY, CacheValueStore.Overflow.MMAP);
+    this.heapBudget = heapBudget(properties);
+    LOG.debug("Scanner caches: engine={}, heap budget={} MB, overflow={}", engine, heapBudget / 1024 / 1024, overflow);
     initPersistit();
   }
 
+  private static <E extends Enum<E>> E parse(Class<E> enumClass, GlobalProperties properties, String key, E defaultValue) {
+    String value = properties.property(key);
+    if (StringUtils.isBlank(value)) {
+      return defaultValue;
+    }
+    try {
+      return Enum.valueOf(enumClass, value.trim().toUpperCase(Locale.ENGLISH));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid value of property " + key + ": " + value, e);
+    }
+  }
+
+  /**
+   * Configured budget, by default a fifth of the maximum heap size
+   */
+  private static long heapBudget(GlobalProperties properties) {
+    String value = properties.property(HEAP_SIZE_PROPERTY);
+    if (StringUtils.isBlank(value)) {
+      return Runtime.getRuntime().maxMemory() / 5;
+    }
+    try {
+      long megabytes = Long.parseLong(value.trim());
+      if (megabytes < 0) {
+        throw new IllegalArgumentException("Property " + HEAP_SIZE_PROPERTY + " must be positive: " + value);
+      }
+      return megabytes * 1024 * 1024;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid value of property " + HEAP_SIZE_PROPERTY + ": " + value, e);
+    }
+  }
+
+  private int bufferCount() {
+    if (engine == Engine.MEMORY) {
+      // Persistit only encodes keys and values
+      return MIN_BUFFER_COUNT;
+    }
+    return (int) Math.max(MIN_BUFFER_COUNT, Math.min(MAX_BUFFER_COUNT, heapBudget / PAGE_SIZE));
+  }
+
   private void initPersistit() {
     try {
       tempDir = tempFolder.newDir("caches");
@@ -56,7 +129,7 @@ public class CachesManager implements Startable {
       props.setProperty("datapath", tempDir.getAbsolutePath());
       props.setProperty("logpath", "${datapath}/log");
       props.setProperty("logfile", "${logpath}/persistit_${timestamp}.log");
-      props.setProperty("buffer.count.8192", "10");
+      props.setProperty("buffer.count.8192", String.valueOf(bufferCount()));
       props.setProperty("journalpath", "${datapath}/journal");
       props.setProperty("tmpvoldir", "${datapath}");
       props.setProperty("volume.1", "${datapath}/persistit,create,pageSize:8192,initialPages:10,extensionPages:100,maximumPages:25000");
@@ -95,4 +168,16 @@ public class CachesManager implements Startable {
   Persistit persistit() {
     return persistit;
   }
+
+  Engine engine() {
+    return engine;
+  }
+
+  long heapBudget() {
+    return heapBudget;
+  }
+
+  CacheValueStore.Overflow overflow() {
+    return overflow;
+  }
 }
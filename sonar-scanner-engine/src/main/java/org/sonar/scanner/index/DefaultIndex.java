@@ -24,7 +24,7 @@ import com.google.common.collect.Maps;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -50,6 +50,7 @@ import org.sonar.core.component.ComponentKeys;
 import org.sonar.scanner.DefaultProjectTree;
 import org.sonar.scanner.scan.measure.MeasureCache;
 import org.sonar.scanner.sensor.DefaultSensorStorage;
+import org.sonar.scanner.sensor.coverage.LineCoverageCache;
 
 public class DefaultIndex {
 
@@ -57,16 +58,23 @@ public class DefaultIndex {
 
   private final BatchComponentCache componentCache;
   private final MeasureCache measureCache;
+  private final LineCoverageCache lineCoverageCache;
   private final DefaultProjectTree projectTree;
   // caches
-  private DefaultSensorStorage sensorStorage;
-  private Project currentProject;
-  private Map<Resource, Bucket> buckets = Maps.newLinkedHashMap();
-
-  public DefaultIndex(BatchComponentCache componentCache, DefaultProjectTree projectTree, MeasureCache measureCache) {
+  private volatile DefaultSensorStorage sensorStorage;
+  private volatile Project currentProject;
+  // module being analyzed by the current thread, when modules are analyzed in parallel
+  private final ThreadLocal<ModuleContext> threadModule = new ThreadLocal<>();
+  // projects and modules
+  private final Map<Resource, Bucket> buckets = Maps.newLinkedHashMap();
+  // other resources by module. Their keys are relative to the module, so they can't be shared.
+  private final Map<Project, Map<Resource, Bucket>> bucketsByModule = Maps.newHashMap();
+
+  public DefaultIndex(BatchComponentCache componentCache, DefaultProjectTree projectTree, MeasureCache measureCache, LineCoverageCache lineCoverageCache) {
     this.componentCache = componentCache;
     this.projectTree = projectTree;
     this.measureCache = measureCache;
+    this.lineCoverageCache = lineCoverageCache;
   }
 
   public void start() {
@@ -88,8 +96,22 @@ public class DefaultIndex {
     }
   }
 
-  private void addBucket(Resource resource, Bucket bucket) {
-    buckets.put(resource, bucket);
+  private synchronized void addBucket(Resource resource, Bucket bucket) {
+    if (ResourceUtils.isSet(resource)) {
+      buckets.put(resource, bucket);
+    } else {
+      moduleBuckets(getProject(), true).put(resource, bucket);
+    }
+  }
+
+  @CheckForNull
+  private Map<Resource, Bucket> moduleBuckets(Project module, boolean create) {
+    Map<Resource, Bucket> result = bucketsByModule.get(module);
+    if (result == null && create) {
+      result = Maps.newLinkedHashMap();
+      bucketsByModule.put(module, result);
+    }
+    return result;
   }
 
   private void addModule(Project parent, Project module) {
@@ -104,8 +126,13 @@ public class DefaultIndex {
     }
   }
 
+  /**
+   * The module analyzed by the current thread if modules are analyzed in parallel, else the last module
+   * given to {@link #setCurrentProject(Project, DefaultSensorStorage)}.
+   */
   public Project getProject() {
-    return currentProject;
+    ModuleContext context = threadModule.get();
+    return context != null ? context.module : currentProject;
   }
 
   public void setCurrentProject(Project project, DefaultSensorStorage sensorStorage) {
@@ -116,19 +143,33 @@ public class DefaultIndex {
   }
 
   /**
-   * Keep only project stuff
+   * Same as {@link #setCurrentProject(Project, DefaultSensorStorage)}, but visible only from the current thread.
+   * Other threads keep on seeing the last module set by {@link #setCurrentProject(Project, DefaultSensorStorage)}.
+   */
+  public void setThreadProject(Project project, DefaultSensorStorage sensorStorage) {
+    threadModule.set(new ModuleContext(project, sensorStorage));
+    setCurrentProject(project, sensorStorage);
+  }
+
+  private DefaultSensorStorage sensorStorage() {
+    ModuleContext context = threadModule.get();
+    return context != null ? context.sensorStorage : sensorStorage;
+  }
+
+  /**
+   * Keep only project stuff. Resources of the other modules being analyzed are kept.
    */
   public void clear() {
-    Iterator<Map.Entry<Resource, Bucket>> it = buckets.entrySet().iterator();
-    while (it.hasNext()) {
-      Map.Entry<Resource, Bucket> entry = it.next();
-      Resource resource = entry.getKey();
-      if (!ResourceUtils.isSet(resource)) {
-        entry.getValue().clear();
-        it.remove();
+    Project module = getProject();
+    synchronized (this) {
+      Map<Resource, Bucket> moduleBuckets = bucketsByModule.remove(module);
+      if (moduleBuckets != null) {
+        for (Bucket bucket : moduleBuckets.values()) {
+          bucket.clear();
+        }
       }
-
     }
+    threadModule.remove();
   }
 
   @CheckForNull
@@ -146,7 +187,12 @@ public class DefaultIndex {
     Collection<Measure> unfiltered = new ArrayList<>();
     if (filter instanceof MeasuresFilters.MetricFilter) {
       // optimization
-      Measure byMetric = measureCache.byMetric(indexedResource, ((MeasuresFilters.MetricFilter<M>) filter).filterOnMetricKey());
+      String metricKey = ((MeasuresFilters.MetricFilter<M>) filter).filterOnMetricKey();
+      Measure byMetric = measureCache.byMetric(indexedResource, metricKey);
+      if (byMetric == null) {
+        // coverage by line is only kept in the line coverage cache
+        byMetric = lineCoverageCache.measureOf(indexedResource.getEffectiveKey(), metricKey);
+      }
       if (byMetric != null) {
         unfiltered.add(byMetric);
       }
@@ -154,6 +200,7 @@ public class DefaultIndex {
       for (Measure measure : measureCache.byResource(indexedResource)) {
         unfiltered.add(measure);
       }
+      unfiltered.addAll(lineCoverageCache.measuresOf(indexedResource.getEffectiveKey()));
     }
     return filter.filter(unfiltered);
   }
@@ -161,7 +208,7 @@ public class DefaultIndex {
   public Measure addMeasure(Resource resource, Measure measure) {
     Bucket bucket = getBucket(resource);
     if (bucket != null) {
-      return sensorStorage.saveMeasure(resource, measure);
+      return sensorStorage().saveMeasure(resource, measure);
     }
     return measure;
   }
@@ -170,15 +217,20 @@ public class DefaultIndex {
     return dependency;
   }
 
-  public Set<Resource> getResources() {
-    return buckets.keySet();
+  public synchronized Set<Resource> getResources() {
+    Set<Resource> resources = new LinkedHashSet<>(buckets.keySet());
+    Map<Resource, Bucket> moduleBuckets = moduleBuckets(getProject(), false);
+    if (moduleBuckets != null) {
+      resources.addAll(moduleBuckets.keySet());
+    }
+    return resources;
   }
 
   public String getSource(Resource reference) {
     Resource resource = getResource(reference);
     if (resource instanceof File) {
       File file = (File) resource;
-      Project module = currentProject;
+      Project module = getProject();
       ProjectDefinition def = projectTree.getProjectDefinition(module);
       try {
         return FileUtils.readFileToString(new java.io.File(def.getBaseDir(), file.getPath()));
@@ -206,7 +258,7 @@ public class DefaultIndex {
     return null;
   }
 
-  public List<Resource> getChildren(Resource resource) {
+  public synchronized List<Resource> getChildren(Resource resource) {
     List<Resource> children = Lists.newLinkedList();
     Bucket bucket = getBucket(resource);
     if (bucket != null) {
@@ -217,7 +269,7 @@ public class DefaultIndex {
     return children;
   }
 
-  public Resource getParent(Resource resource) {
+  public synchronized Resource getParent(Resource resource) {
     Bucket bucket = getBucket(resource);
     if (bucket != null && bucket.getParent() != null) {
       return bucket.getParent().getResource();
@@ -242,7 +294,8 @@ public class DefaultIndex {
     return bucket != null;
   }
 
-  private Bucket doIndex(Resource resource, @Nullable Resource parentReference) {
+  private synchronized Bucket doIndex(Resource resource, @Nullable Resource parentReference) {
+    Project module = getProject();
     Bucket bucket = getBucket(resource);
     if (bucket != null) {
       return bucket;
@@ -253,7 +306,7 @@ public class DefaultIndex {
       return null;
     }
 
-    Resource parent = (Resource) ObjectUtils.defaultIfNull(parentReference, currentProject);
+    Resource parent = (Resource) ObjectUtils.defaultIfNull(parentReference, module);
 
     Bucket parentBucket = getBucket(parent);
     if (parentBucket == null && parent != null) {
@@ -264,7 +317,7 @@ public class DefaultIndex {
     if (ResourceUtils.isProject(resource) || /* For technical projects */ResourceUtils.isRootProject(resource)) {
       resource.setEffectiveKey(resource.getKey());
     } else {
-      resource.setEffectiveKey(ComponentKeys.createEffectiveKey(currentProject, resource));
+      resource.setEffectiveKey(ComponentKeys.createEffectiveKey(module, resource));
     }
     bucket = new Bucket(resource).setParent(parentBucket);
     addBucket(resource, bucket);
@@ -286,14 +339,28 @@ public class DefaultIndex {
     return getBucket(reference) != null;
   }
 
-  private Bucket getBucket(@Nullable Resource reference) {
+  private synchronized Bucket getBucket(@Nullable Resource reference) {
     if (reference == null) {
       return null;
     }
     if (StringUtils.isNotBlank(reference.getKey())) {
-      return buckets.get(reference);
+      if (ResourceUtils.isSet(reference)) {
+        return buckets.get(reference);
+      }
+      Map<Resource, Bucket> moduleBuckets = moduleBuckets(getProject(), false);
+      return moduleBuckets != null ? moduleBuckets.get(reference) : null;
     }
     return null;
   }
 
+  private static class ModuleContext {
+    private final Project module;
+    private final DefaultSensorStorage sensorStorage;
+
+    private ModuleContext(Project module, DefaultSensorStorage sensorStorage) {
+      this.module = module;
+      this.sensorStorage = sensorStorage;
+    }
+  }
+
 }
@@ -0,0 +1,179 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.index;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.UnsignedBytes;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Storage in a concurrent sorted map of encoded keys. Values are encoded by {@link CacheCodec}
+ * and held by the {@link CacheValueStore} shared by all the caches, either on heap or off heap.
+ * <p/>
+ * Thread-safe. Iterators are lazy and weakly consistent: they never fail on concurrent
+ * modifications and may or may not reflect the changes made after their creation.
+ */
+class MemoryCacheStorage implements CacheStorage {
+
+  private final String name;
+  private final CacheCodec codec;
+  private final CacheValueStore store;
+  private final ConcurrentSkipListMap<byte[], Object> map = new ConcurrentSkipListMap<>(UnsignedBytes.lexicographicalComparator());
+
+  MemoryCacheStorage(String name, CacheCodec codec, CacheValueStore store) {
+    this.name = name;
+    this.codec = codec;
+    this.store = store;
+  }
+
+  @Override
+  public void put(Object[] key, Object value) {
+    byte[] encodedKey;
+    byte[] encodedValue;
+    try {
+      encodedKey = codec.encodeKey(key);
+      encodedValue = codec.encodeValue(value);
+    } catch (RuntimeException e) {
+      throw new IllegalStateException("Fail to put element in the cache " + name, e);
+    }
+    Object previous = map.put(encodedKey, store.store(encodedValue));
+    if (previous != null) {
+      store.release(previous);
+    }
+  }
+
+  @Override
+  @CheckForNull
+  public Object get(Object[] key) {
+    try {
+      Object handle = map.get(codec.encodeKey(key));
+      return handle == null ? null : codec.decodeValue(store.load(handle));
+    } catch (RuntimeException e) {
+      throw new IllegalStateException("Fail to get element from cache " + name, e);
+    }
+  }
+
+  @Override
+  public boolean containsKey(Object[] key) {
+    return map.containsKey(codec.encodeKey(key));
+  }
+
+  @Override
+  public boolean remove(Object[] key) {
+    Object previous = map.remove(codec.encodeKey(key));
+    if (previous != null) {
+      store.release(previous);
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public void clear(Object[] prefix) {
+    for (Map.Entry<byte[], Object> entry : range(prefix).entrySet()) {
+      if (map.remove(entry.getKey(), entry.getValue())) {
+        store.release(entry.getValue());
+      }
+    }
+  }
+
+  @Override
+  public Set<Object> keySet(Object[] prefix) {
+    Set<Object> keys = Sets.newLinkedHashSet();
+    NavigableMap<byte[], Object> range = range(prefix);
+    byte[] encodedPrefix = codec.encodeKey(prefix);
+    // the entry of the prefix itself, if any, has no part to return
+    Map.Entry<byte[], Object> entry = range.higherEntry(encodedPrefix);
+    while (entry != null) {
+      Object part = codec.decodeKeyPart(entry.getKey(), prefix.length);
+      keys.add(part);
+      // jump over the other keys starting with the same part
+      byte[] next = successor(codec.encodeKey(prefix, part));
+      entry = next == null ? null : range.ceilingEntry(next);
+    }
+    return keys;
+  }
+
+  @Override
+  public Iterator<Object> values(Object[] prefix) {
+    return Iterators.unmodifiableIterator(Iterators.transform(range(prefix).entrySet().iterator(), new Function<Map.Entry<byte[], Object>, Object>() {
+      @Override
+      public Object apply(@Nonnull Map.Entry<byte[], Object> entry) {
+        return codec.decodeValue(store.load(entry.getValue()));
+      }
+    }));
+  }
+
+  @Override
+  public Iterator<Cache.Entry<Object>> entries(Object[] prefix) {
+    return Iterators.unmodifiableIterator(Iterators.transform(range(prefix).entrySet().iterator(), new Function<Map.Entry<byte[], Object>, Cache.Entry<Object>>() {
+      @Override
+      public Cache.Entry<Object> apply(@Nonnull Map.Entry<byte[], Object> entry) {
+        return new Cache.Entry<>(codec.decodeKey(entry.getKey()), codec.decodeValue(store.load(entry.getValue())));
+      }
+    }));
+  }
+
+  @Override
+  public void close() {
+    map.clear();
+  }
+
+  int size() {
+    return map.size();
+  }
+
+  /**
+   * View of the entries whose encoded key starts with the encoded prefix
+   */
+  private NavigableMap<byte[], Object> range(Object[] prefix) {
+    if (prefix.length == 0) {
+      return map;
+    }
+    byte[] from = codec.encodeKey(prefix);
+    byte[] to = successor(from);
+    return to == null ? map.tailMap(from, true) : map.subMap(from, true, to, false);
+  }
+
+  /**
+   * Smallest array greater than all the arrays starting with the given bytes, or null if
+   * there is none.
+   */
+  @CheckForNull
+  static byte[] successor(byte[] bytes) {
+    for (int i = bytes.length - 1; i >= 0; i--) {
+      if (bytes[i] != (byte) 0xFF) {
+        byte[] result = Arrays.copyOf(bytes, i + 1);
+        result[i]++;
+        return result;
+      }
+    }
+    return null;
+  }
+}
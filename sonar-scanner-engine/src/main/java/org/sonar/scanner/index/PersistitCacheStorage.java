@@ -0,0 +1,236 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.index;
+
+import com.google.common.collect.Sets;
+import com.persistit.Exchange;
+import com.persistit.Key;
+import com.persistit.KeyFilter;
+import com.persistit.exception.PersistitException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+
+/**
+ * Storage in a Persistit tree. Accesses are serialized as a single {@link Exchange}
+ * is shared by all the operations of the cache.
+ */
+class PersistitCacheStorage implements CacheStorage {
+
+  private final String name;
+  private final Exchange exchange;
+
+  PersistitCacheStorage(String name, Exchange exchange) {
+    this.name = name;
+    this.exchange = exchange;
+  }
+
+  Exchange exchange() {
+    return exchange;
+  }
+
+  @Override
+  public synchronized void put(Object[] key, Object value) {
+    resetKey(key);
+    try {
+      exchange.getValue().put(value);
+      exchange.store();
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to put element in the cache " + name, e);
+    }
+  }
+
+  @Override
+  @CheckForNull
+  public synchronized Object get(Object[] key) {
+    resetKey(key);
+    try {
+      exchange.fetch();
+      if (!exchange.getValue().isDefined()) {
+        return null;
+      }
+      return exchange.getValue().get();
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to get element from cache " + name, e);
+    }
+  }
+
+  @Override
+  public synchronized boolean containsKey(Object[] key) {
+    resetKey(key);
+    try {
+      exchange.fetch();
+      return exchange.isValueDefined();
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to check if element is in cache " + name, e);
+    }
+  }
+
+  @Override
+  public synchronized boolean remove(Object[] key) {
+    resetKey(key);
+    try {
+      return exchange.remove();
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to get element from cache " + name, e);
+    }
+  }
+
+  @Override
+  public synchronized void clear(Object[] prefix) {
+    try {
+      if (prefix.length == 0) {
+        exchange.clear();
+        exchange.removeAll();
+        return;
+      }
+      resetKey(prefix);
+      Key to = new Key(exchange.getKey());
+      to.append(Key.AFTER);
+      exchange.removeKeyRange(exchange.getKey(), to);
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to clear values from cache " + name, e);
+    }
+  }
+
+  @Override
+  public synchronized Set<Object> keySet(Object[] prefix) {
+    try {
+      Set<Object> keys = Sets.newLinkedHashSet();
+      resetKey(prefix);
+      Exchange iteratorExchange = new Exchange(exchange);
+      iteratorExchange.append(Key.BEFORE);
+      while (iteratorExchange.next(false)) {
+        keys.add(iteratorExchange.getKey().indexTo(-1).decode());
+      }
+      return keys;
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to get keys from cache " + name, e);
+    }
+  }
+
+  @Override
+  public Iterator<Object> values(Object[] prefix) {
+    return new ValueIterator(iteratorExchange(prefix), filterOf(prefix));
+  }
+
+  @Override
+  public Iterator<Cache.Entry<Object>> entries(Object[] prefix) {
+    return new EntryIterator(iteratorExchange(prefix), filterOf(prefix));
+  }
+
+  @Override
+  public void close() {
+    // the exchange is released by Caches
+  }
+
+  private synchronized Exchange iteratorExchange(Object[] prefix) {
+    resetKey(prefix);
+    exchange.append(Key.BEFORE);
+    return new Exchange(exchange);
+  }
+
+  private static KeyFilter filterOf(Object[] prefix) {
+    KeyFilter filter = new KeyFilter();
+    for (Object key : prefix) {
+      filter = filter.append(KeyFilter.simpleTerm(key));
+    }
+    return filter;
+  }
+
+  private void resetKey(Object[] keys) {
+    exchange.clear();
+    for (Object o : keys) {
+      exchange.append(o);
+    }
+  }
+
+  //
+  // LAZY ITERATORS
+  //
+
+  private abstract static class ExchangeIterator<T> implements Iterator<T> {
+    final Exchange exchange;
+    private final KeyFilter keyFilter;
+
+    private ExchangeIterator(Exchange exchange, KeyFilter keyFilter) {
+      this.exchange = exchange;
+      this.keyFilter = keyFilter;
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        return exchange.hasNext(keyFilter);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public T next() {
+      try {
+        exchange.next(keyFilter);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+      if (exchange.getValue().isDefined()) {
+        return current();
+      }
+      throw new NoSuchElementException();
+    }
+
+    abstract T current();
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Removing an item is not supported");
+    }
+  }
+
+  private static class ValueIterator extends ExchangeIterator<Object> {
+    private ValueIterator(Exchange exchange, KeyFilter keyFilter) {
+      super(exchange, keyFilter);
+    }
+
+    @Override
+    Object current() {
+      return exchange.getValue().get();
+    }
+  }
+
+  private static class EntryIterator extends ExchangeIterator<Cache.Entry<Object>> {
+    private EntryIterator(Exchange exchange, KeyFilter keyFilter) {
+      super(exchange, keyFilter);
+    }
+
+    @Override
+    Cache.Entry<Object> current() {
+      Object value = exchange.getValue().get();
+      Key key = exchange.getKey();
+      Object[] array = new Object[key.getDepth()];
+      for (int i = 0; i < key.getDepth(); i++) {
+        array[i] = key.indexTo(i - key.getDepth()).decode();
+      }
+      return new Cache.Entry<>(array, value);
+    }
+  }
+}
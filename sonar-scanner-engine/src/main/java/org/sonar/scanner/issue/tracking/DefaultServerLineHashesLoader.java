@@ -19,34 +19,150 @@
  */
 package org.sonar.scanner.issue.tracking;
 
-import org.sonarqube.ws.client.GetRequest;
-
-import java.io.IOException;
-import java.io.Reader;
-
+import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.annotation.CheckForNull;
 import org.apache.commons.io.IOUtils;
+import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.api.utils.log.Profiler;
 import org.sonar.scanner.bootstrap.BatchWsClient;
+import org.sonar.scanner.protocol.input.ScannerInput;
 import org.sonar.scanner.util.BatchUtils;
+import org.sonarqube.ws.client.GetRequest;
+import org.sonarqube.ws.client.HttpException;
+import org.sonarqube.ws.client.PostRequest;
 
 public class DefaultServerLineHashesLoader implements ServerLineHashesLoader {
-  private BatchWsClient wsClient;
+
+  private static final Logger LOG = Loggers.get(DefaultServerLineHashesLoader.class);
+
+  /**
+   * Number of files per request to batch/files. Must not be greater than the limit of the server.
+   */
+  static final int CHUNK_SIZE = 100;
+  static final int MAX_CONCURRENT_REQUESTS = 4;
+
+  private final BatchWsClient wsClient;
+  private final Map<String, Future<Map<String, String[]>>> prefetchedByFileKey = new ConcurrentHashMap<>();
 
   public DefaultServerLineHashesLoader(BatchWsClient wsClient) {
     this.wsClient = wsClient;
   }
 
+  @Override
+  public void prefetch(Collection<String> fileKeys) {
+    if (fileKeys.isEmpty()) {
+      return;
+    }
+    int chunks = (fileKeys.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    ExecutorService executorService = Executors.newFixedThreadPool(Math.min(chunks, MAX_CONCURRENT_REQUESTS),
+      new ThreadFactoryBuilder().setNameFormat("LineHashesLoader-%d").setDaemon(true).build());
+    try {
+      // chunks are requested in the order of the keys, so that the first files to be tracked are available first
+      for (final List<String> chunk : Iterables.partition(fileKeys, CHUNK_SIZE)) {
+        Future<Map<String, String[]>> future = executorService.submit(new Callable<Map<String, String[]>>() {
+          @Override
+          public Map<String, String[]> call() {
+            return loadChunkFromWs(chunk);
+          }
+        });
+        for (String fileKey : chunk) {
+          prefetchedByFileKey.put(fileKey, future);
+        }
+      }
+    } finally {
+      // threads stop once all the chunks are loaded
+      executorService.shutdown();
+    }
+  }
+
   @Override
   public String[] getLineHashes(String fileKey) {
+    String[] prefetched = getPrefetched(fileKey);
+    if (prefetched != null) {
+      return prefetched;
+    }
     String hashesFromWs = loadHashesFromWs(fileKey);
     return Iterators.toArray(Splitter.on('\n').split(hashesFromWs).iterator(), String.class);
   }
 
+  /**
+   * Hashes of the file from the prefetched chunks, or null if the file was not prefetched or if its chunk
+   * could not be loaded. The hashes are returned only once, in order to release memory.
+   */
+  @CheckForNull
+  private String[] getPrefetched(String fileKey) {
+    Future<Map<String, String[]>> future = prefetchedByFileKey.remove(fileKey);
+    if (future == null) {
+      return null;
+    }
+    try {
+      return future.get().remove(fileKey);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      // fall back to the request of the single file, which fails with the relevant error if the server is not reachable
+      LOG.debug("Fail to load line hashes of multiple files", e.getCause());
+      return null;
+    }
+  }
+
+  private Map<String, String[]> loadChunkFromWs(List<String> fileKeys) {
+    Profiler profiler = Profiler.createIfDebug(LOG)
+      .addContext("files", fileKeys.size())
+      .startDebug("Load line hashes");
+    Map<String, String[]> hashesByFileKey = new ConcurrentHashMap<>();
+    PostRequest request = new PostRequest("/batch/files")
+      .setParam("keys", Joiner.on(',').join(fileKeys))
+      .setParam("issues", false);
+    InputStream input = null;
+    try {
+      input = wsClient.call(request).contentStream();
+      ScannerInput.ServerFile file;
+      while ((file = ScannerInput.ServerFile.parseDelimitedFrom(input)) != null) {
+        hashesByFileKey.put(file.getKey(), toArray(file));
+      }
+    } catch (HttpException e) {
+      if (e.code() != 404) {
+        throw e;
+      }
+      // server older than 6.0. Files are loaded one by one.
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to load line hashes", e);
+    } finally {
+      IOUtils.closeQuietly(input);
+      profiler.stopDebug();
+    }
+    return hashesByFileKey;
+  }
+
+  private static String[] toArray(ScannerInput.ServerFile file) {
+    if (file.getLineHashCount() == 0) {
+      // same as the empty response of api/sources/hash
+      return new String[] {""};
+    }
+    return file.getLineHashList().toArray(new String[file.getLineHashCount()]);
+  }
+
   private String loadHashesFromWs(String fileKey) {
-    Profiler profiler = Profiler.createIfDebug(Loggers.get(getClass()))
+    Profiler profiler = Profiler.createIfDebug(LOG)
       .addContext("file", fileKey)
       .startDebug("Load line hashes");
 
@@ -62,7 +62,7 @@ public class IssueTransition {
 
   public void execute() {
     if (localIssueTracking != null) {
-      localIssueTracking.init();
+      localIssueTracking.init(componentCache.all());
     }
 
     ScannerReportReader reader = new ScannerReportReader(reportPublisher.getReportDir());
@@ -64,12 +64,29 @@ public class LocalIssueTracking {
     this.hasServerAnalysis = projectRepositories.lastAnalysisDate() != null;
   }
 
-  public void init() {
+  public void init(Collection<BatchComponent> components) {
     if (hasServerAnalysis) {
       serverIssueRepository.load();
+      lastLineHashes.prefetch(changedFileKeys(components));
     }
   }
 
+  /**
+   * Keys of the files whose line hashes are loaded by {@link SourceHashHolder}
+   */
+  private List<String> changedFileKeys(Collection<BatchComponent> components) {
+    List<String> keys = new ArrayList<>();
+    for (BatchComponent component : components) {
+      if (component.isFile() && !shouldCopyServerIssues(component)) {
+        DefaultInputFile inputFile = (DefaultInputFile) component.inputComponent();
+        if (inputFile.status() == Status.CHANGED) {
+          keys.add(inputFile.key());
+        }
+      }
+    }
+    return keys;
+  }
+
   public List<TrackedIssue> trackIssues(BatchComponent component, Collection<ScannerReport.Issue> reportIssues, Date analysisDate) {
     List<TrackedIssue> trackedIssues = new LinkedList<>();
     if (hasServerAnalysis) {
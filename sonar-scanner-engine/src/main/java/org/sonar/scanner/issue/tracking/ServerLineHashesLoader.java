@@ -19,10 +19,17 @@
  */
 package org.sonar.scanner.issue.tracking;
 
+import java.util.Collection;
 import org.sonar.api.batch.ScannerSide;
 
 @ScannerSide
 public interface ServerLineHashesLoader {
 
   String[] getLineHashes(String fileKey);
+
+  /**
+   * Starts loading the line hashes of files that will be requested by {@link #getLineHashes(String)},
+   * without waiting for the responses.
+   */
+  void prefetch(Collection<String> fileKeys);
 }
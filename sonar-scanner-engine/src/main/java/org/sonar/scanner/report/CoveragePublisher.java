@@ -19,131 +19,90 @@
  */
 package org.sonar.scanner.report;
 
-import com.google.common.base.Function;
-import com.google.common.collect.Iterables;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import javax.annotation.Nonnull;
-import org.apache.commons.lang.StringUtils;
+import java.util.ArrayList;
+import java.util.List;
 import org.sonar.api.batch.fs.InputFile;
-import org.sonar.api.measures.CoreMetrics;
-import org.sonar.api.measures.Measure;
-import org.sonar.api.utils.KeyValueFormat;
-import org.sonar.scanner.protocol.output.ScannerReport.LineCoverage;
-import org.sonar.scanner.protocol.output.ScannerReport.LineCoverage.Builder;
-import org.sonar.scanner.scan.measure.MeasureCache;
+import org.sonar.api.batch.sensor.coverage.CoverageType;
 import org.sonar.scanner.index.BatchComponent;
 import org.sonar.scanner.index.BatchComponentCache;
+import org.sonar.scanner.protocol.output.ScannerReport.LineCoverage;
 import org.sonar.scanner.protocol.output.ScannerReportWriter;
+import org.sonar.scanner.sensor.coverage.LineCoverageCache;
+import org.sonar.scanner.sensor.coverage.LineCoverageCache.FileCoverage;
+import org.sonar.scanner.sensor.coverage.LineCoverageCache.Kind;
 
 public class CoveragePublisher implements ReportPublisherStep {
 
   private final BatchComponentCache resourceCache;
-  private final MeasureCache measureCache;
+  private final LineCoverageCache lineCoverageCache;
 
-  public CoveragePublisher(BatchComponentCache resourceCache, MeasureCache measureCache) {
+  public CoveragePublisher(BatchComponentCache resourceCache, LineCoverageCache lineCoverageCache) {
     this.resourceCache = resourceCache;
-    this.measureCache = measureCache;
+    this.lineCoverageCache = lineCoverageCache;
   }
 
   @Override
   public void publish(ScannerReportWriter writer) {
+    LineCoverage.Builder builder = LineCoverage.newBuilder();
     for (final BatchComponent resource : resourceCache.all()) {
       if (!resource.isFile()) {
         continue;
       }
-      Map<Integer, LineCoverage.Builder> coveragePerLine = new LinkedHashMap<>();
-
-      int lineCount = ((InputFile) resource.inputComponent()).lines();
-      applyLineMeasure(resource.key(), lineCount, CoreMetrics.COVERAGE_LINE_HITS_DATA_KEY, coveragePerLine,
-        new MeasureOperation() {
-          @Override
-          public void apply(String value, LineCoverage.Builder builder) {
-            builder.setUtHits(Integer.parseInt(value) > 0);
-          }
-        });
-      applyLineMeasure(resource.key(), lineCount, CoreMetrics.IT_COVERAGE_LINE_HITS_DATA_KEY, coveragePerLine,
-        new MeasureOperation() {
-          @Override
-          public void apply(String value, LineCoverage.Builder builder) {
-            builder.setItHits(Integer.parseInt(value) > 0);
-          }
-        });
-      // Just in case we have only IT and no UT, we first take conditions from ITs, then from UTs (UTs will override ITs).
-      // Note that it would be very strange (and unsupported in scanner report) to have ITs and UTs don't report the same number of
-      // conditions. Not even talking about overall conditions...
-      applyLineMeasure(resource.key(), lineCount, CoreMetrics.IT_CONDITIONS_BY_LINE_KEY, coveragePerLine,
-        new MeasureOperation() {
-          @Override
-          public void apply(String value, LineCoverage.Builder builder) {
-            builder.setConditions(Integer.parseInt(value));
-          }
-        });
-      applyLineMeasure(resource.key(), lineCount, CoreMetrics.CONDITIONS_BY_LINE_KEY, coveragePerLine,
-        new MeasureOperation() {
-          @Override
-          public void apply(String value, LineCoverage.Builder builder) {
-            builder.setConditions(Integer.parseInt(value));
-          }
-        });
-      applyLineMeasure(resource.key(), lineCount, CoreMetrics.COVERED_CONDITIONS_BY_LINE_KEY, coveragePerLine,
-        new MeasureOperation() {
-          @Override
-          public void apply(String value, LineCoverage.Builder builder) {
-            builder.setUtCoveredConditions(Integer.parseInt(value));
-          }
-        });
-      applyLineMeasure(resource.key(), lineCount, CoreMetrics.IT_COVERED_CONDITIONS_BY_LINE_KEY, coveragePerLine,
-        new MeasureOperation() {
-          @Override
-          public void apply(String value, LineCoverage.Builder builder) {
-            builder.setItCoveredConditions(Integer.parseInt(value));
-          }
-        });
-      applyLineMeasure(resource.key(), lineCount, CoreMetrics.OVERALL_COVERED_CONDITIONS_BY_LINE_KEY, coveragePerLine,
-        new MeasureOperation() {
-          @Override
-          public void apply(String value, LineCoverage.Builder builder) {
-            builder.setOverallCoveredConditions(Integer.parseInt(value));
-          }
-        });
-      writer.writeComponentCoverage(resource.batchId(), Iterables.transform(coveragePerLine.values(), BuildCoverage.INSTANCE));
-    }
-  }
-
-  void applyLineMeasure(String inputFileKey, int lineCount, String metricKey, Map<Integer, LineCoverage.Builder> coveragePerLine, MeasureOperation op) {
-    Measure measure = measureCache.byMetric(inputFileKey, metricKey);
-    if (measure != null) {
-      Map<Integer, String> lineMeasures = KeyValueFormat.parseIntString((String) measure.value());
-      for (Map.Entry<Integer, String> lineMeasure : lineMeasures.entrySet()) {
-        int lineIdx = lineMeasure.getKey();
-        if (lineIdx <= lineCount) {
-          String value = lineMeasure.getValue();
-          if (StringUtils.isNotEmpty(value)) {
-            LineCoverage.Builder coverageBuilder = coveragePerLine.get(lineIdx);
-            if (coverageBuilder == null) {
-              coverageBuilder = LineCoverage.newBuilder();
-              coverageBuilder.setLine(lineIdx);
-              coveragePerLine.put(lineIdx, coverageBuilder);
-            }
-            op.apply(value, coverageBuilder);
-          }
+      FileCoverage coverage = lineCoverageCache.byComponent(resource.key());
+      if (coverage == null) {
+        continue;
+      }
+      int lineCount = Math.min(((InputFile) resource.inputComponent()).lines(), coverage.maxLine());
+      List<LineCoverage> lines = new ArrayList<>();
+      for (int line = 1; line <= lineCount; line++) {
+        builder.clear();
+        if (applyLine(coverage, line, builder)) {
+          lines.add(builder.setLine(line).build());
         }
       }
+      writer.writeComponentCoverage(resource.batchId(), lines);
     }
   }
 
-  interface MeasureOperation {
-    void apply(String value, LineCoverage.Builder builder);
-  }
-
-  private enum BuildCoverage implements Function<LineCoverage.Builder, LineCoverage> {
-    INSTANCE;
-
-    @Override
-    public LineCoverage apply(@Nonnull Builder input) {
-      return input.build();
+  private static boolean applyLine(FileCoverage coverage, int line, LineCoverage.Builder builder) {
+    boolean hasData = false;
+    int value = coverage.get(CoverageType.UNIT, Kind.HITS, line);
+    if (value >= 0) {
+      builder.setUtHits(value > 0);
+      hasData = true;
+    }
+    value = coverage.get(CoverageType.IT, Kind.HITS, line);
+    if (value >= 0) {
+      builder.setItHits(value > 0);
+      hasData = true;
+    }
+    // Just in case we have only IT and no UT, we first take conditions from ITs, then from UTs (UTs will override ITs).
+    // Note that it would be very strange (and unsupported in scanner report) to have ITs and UTs don't report the same number of
+    // conditions. Not even talking about overall conditions...
+    value = coverage.get(CoverageType.UNIT, Kind.CONDITIONS, line);
+    if (value < 0) {
+      value = coverage.get(CoverageType.IT, Kind.CONDITIONS, line);
+    }
+    if (value >= 0) {
+      builder.setConditions(value);
+      hasData = true;
+    }
+    value = coverage.get(CoverageType.UNIT, Kind.COVERED_CONDITIONS, line);
+    if (value >= 0) {
+      builder.setUtCoveredConditions(value);
+      hasData = true;
+    }
+    value = coverage.get(CoverageType.IT, Kind.COVERED_CONDITIONS, line);
+    if (value >= 0) {
+      builder.setItCoveredConditions(value);
+      hasData = true;
+    }
+    value = coverage.get(CoverageType.OVERALL, Kind.COVERED_CONDITIONS, line);
+    if (value >= 0) {
+      builder.setOverallCoveredConditions(value);
+      hasData = true;
     }
+    return hasData;
   }
 
 }
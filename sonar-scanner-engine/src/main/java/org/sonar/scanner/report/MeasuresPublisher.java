@@ -37,7 +37,9 @@ import org.sonar.scanner.protocol.output.ScannerReport.Measure.LongValue;
 import org.sonar.scanner.protocol.output.ScannerReport.Measure.StringValue;
 import org.sonar.scanner.scan.measure.MeasureCache;
 import org.sonar.scanner.protocol.output.ScannerReportWriter;
+import org.sonar.scanner.sensor.coverage.LineCoverageCache;
 
+import static com.google.common.collect.Iterables.concat;
 import static com.google.common.collect.Iterables.filter;
 import static com.google.common.collect.Iterables.transform;
 import static com.google.common.collect.Sets.newHashSet;
@@ -125,11 +127,13 @@ public class MeasuresPublisher implements ReportPublisherStep {
 
   private final BatchComponentCache resourceCache;
   private final MeasureCache measureCache;
+  private final LineCoverageCache lineCoverageCache;
   private final ScannerMetrics scannerMetrics;
 
-  public MeasuresPublisher(BatchComponentCache resourceCache, MeasureCache measureCache, ScannerMetrics scannerMetrics) {
+  public MeasuresPublisher(BatchComponentCache resourceCache, MeasureCache measureCache, LineCoverageCache lineCoverageCache, ScannerMetrics scannerMetrics) {
     this.resourceCache = resourceCache;
     this.measureCache = measureCache;
+    this.lineCoverageCache = lineCoverageCache;
     this.scannerMetrics = scannerMetrics;
   }
 
@@ -137,7 +141,8 @@ public class MeasuresPublisher implements ReportPublisherStep {
   public void publish(ScannerReportWriter writer) {
     final Set<String> allowedMetricKeys = newHashSet(transform(scannerMetrics.getMetrics(), new MetricToKey()));
     for (final BatchComponent resource : resourceCache.all()) {
-      Iterable<Measure> batchMeasures = measureCache.byResource(resource.resource());
+      // coverage by line is still sent as measures, as they are used by the Compute Engine to compute coverage on new code
+      Iterable<Measure> batchMeasures = concat(measureCache.byResource(resource.resource()), lineCoverageCache.measuresOf(resource.key()));
       Iterable<org.sonar.scanner.protocol.output.ScannerReport.Measure> reportMeasures = transform(
         filter(batchMeasures, new IsMetricAllowed(allowedMetricKeys)),
         new MeasureToReportMeasure(resource));
@@ -74,6 +74,7 @@ import org.sonar.scanner.scan.filesystem.StatusDetectionFactory;
 import org.sonar.scanner.scan.report.IssuesReports;
 import org.sonar.scanner.sensor.DefaultSensorStorage;
 import org.sonar.scanner.sensor.SensorOptimizer;
+import org.sonar.scanner.sensor.cache.IncrementalSensorExecutor;
 import org.sonar.scanner.sensor.coverage.CoverageExclusions;
 import org.sonar.scanner.source.HighlightableBuilder;
 import org.sonar.scanner.source.SymbolizableBuilder;
@@ -142,6 +143,7 @@ public class ModuleScanContainer extends ComponentContainer {
 
       DefaultPostJobContext.class,
       DefaultSensorStorage.class,
+      IncrementalSensorExecutor.class,
       DeprecatedSensorContext.class,
       BatchExtensionDictionnary.class,
       IssueFilters.class,
@@ -185,7 +187,8 @@ public class ModuleScanContainer extends ComponentContainer {
   @Override
   protected void doAfterStart() {
     DefaultIndex index = getComponentByType(DefaultIndex.class);
-    index.setCurrentProject(module, getComponentByType(DefaultSensorStorage.class));
+    // modules may be analyzed in parallel
+    index.setThreadProject(module, getComponentByType(DefaultSensorStorage.class));
 
     getComponentByType(AbstractPhaseExecutor.class).execute(module);
 
@@ -0,0 +1,211 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.scan;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.sonar.api.batch.ScannerSide;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Project;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Schedules the analysis of the modules of the project. A module is analyzed after its sub-modules, so by default
+ * modules are analyzed one after the other in depth-first order.
+ * <p/>
+ * When {@value #THREADS_PROPERTY} is greater than 1, modules that do not depend on each other, for example siblings,
+ * are analyzed concurrently by a pool of this number of workers. In order to keep the report independent of the
+ * number of workers, components of the file system of the modules are still indexed in the depth-first order:
+ * the indexing of a module waits for the indexing of the modules that precede it. Only the analysis that follows
+ * (sensors, issues, ...) runs concurrently.
+ *
+ * @since 6.0
+ */
+@ScannerSide
+public class ModuleScanScheduler {
+
+  public interface ModuleScanner {
+    void scan(Project module);
+  }
+
+  static final String THREADS_PROPERTY = "sonar.scanner.moduleThreads";
+
+  private static final Logger LOG = Loggers.get(ModuleScanScheduler.class);
+
+  private final int threads;
+
+  // modules in depth-first order, as long as the parallel analysis is running
+  private List<Project> order = new ArrayList<>();
+  private final Set<Project> indexed = new HashSet<>();
+  private int nextToIndex = 0;
+  private boolean failed = false;
+
+  public ModuleScanScheduler(Settings settings) {
+    int value = settings.getInt(THREADS_PROPERTY);
+    this.threads = value > 0 ? value : 1;
+  }
+
+  @VisibleForTesting
+  int threads() {
+    return threads;
+  }
+
+  public void scan(Project rootModule, ModuleScanner scanner) {
+    List<Project> modules = new ArrayList<>();
+    addDepthFirst(rootModule, modules);
+    if (threads == 1 || modules.size() == 1) {
+      for (Project module : modules) {
+        scanner.scan(module);
+      }
+    } else {
+      scanInParallel(modules, scanner);
+    }
+  }
+
+  /**
+   * Executes the indexing of the components of a module. When modules are analyzed in parallel, waits for
+   * the indexing of the preceding modules.
+   */
+  public void index(Project module, Runnable indexing) {
+    awaitTurn(module);
+    try {
+      indexing.run();
+    } finally {
+      markIndexed(module);
+    }
+  }
+
+  private static void addDepthFirst(Project module, List<Project> modules) {
+    for (Project subModule : module.getModules()) {
+      addDepthFirst(subModule, modules);
+    }
+    modules.add(module);
+  }
+
+  private void scanInParallel(List<Project> modules, final ModuleScanner scanner) {
+    LOG.info("Analyze {} modules with {} threads", modules.size(), threads);
+    synchronized (this) {
+      order = modules;
+      indexed.clear();
+      nextToIndex = 0;
+      failed = false;
+    }
+    ExecutorService executorService = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("ModuleScanner-%d").build());
+    final Map<Project, Future<Void>> futures = new ConcurrentHashMap<>();
+    try {
+      // the pool starts the tasks in the order of submission, so a module waits only for modules that are already started
+      for (final Project module : modules) {
+        futures.put(module, executorService.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            try {
+              for (Project subModule : module.getModules()) {
+                futures.get(subModule).get();
+              }
+              scanner.scan(module);
+              return null;
+            } finally {
+              // modules that do not index their file system must not block the others
+              markIndexed(module);
+            }
+          }
+        }));
+      }
+      for (Project module : modules) {
+        waitFor(futures.get(module));
+      }
+    } finally {
+      executorService.shutdownNow();
+      synchronized (this) {
+        order = new ArrayList<>();
+      }
+    }
+  }
+
+  private void waitFor(Future<Void> future) {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      fail();
+      throw new IllegalStateException("Interrupted while analyzing modules", e);
+    } catch (ExecutionException e) {
+      fail();
+      Throwable cause = e.getCause();
+      if (cause instanceof ExecutionException) {
+        // failure of a sub-module, which is reported by its own future
+        cause = cause.getCause();
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException("Fail to analyze modules", cause);
+    }
+  }
+
+  private synchronized void awaitTurn(Project module) {
+    int position = order.indexOf(module);
+    if (position < 0) {
+      // not analyzed in parallel
+      return;
+    }
+    while (!failed && nextToIndex < position) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for the indexing of other modules", e);
+      }
+    }
+    if (failed) {
+      throw new IllegalStateException("Analysis of another module failed");
+    }
+  }
+
+  private synchronized void markIndexed(Project module) {
+    if (!order.contains(module) || !indexed.add(module)) {
+      return;
+    }
+    while (nextToIndex < order.size() && indexed.contains(order.get(nextToIndex))) {
+      nextToIndex++;
+    }
+    notifyAll();
+  }
+
+  private synchronized void fail() {
+    failed = true;
+    notifyAll();
+  }
+}
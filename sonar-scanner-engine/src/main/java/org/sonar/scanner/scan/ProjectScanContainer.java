@@ -22,6 +22,7 @@ package org.sonar.scanner.scan;
 import com.google.common.annotations.VisibleForTesting;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.batch.InstantiationStrategy;
+import org.sonar.api.batch.fs.internal.FileContentCache;
 import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Languages;
 import org.sonar.api.resources.Project;
@@ -87,6 +88,8 @@ import org.sonar.scanner.scan.filesystem.InputPathCache;
 import org.sonar.scanner.scan.measure.DefaultMetricFinder;
 import org.sonar.scanner.scan.measure.DeprecatedMetricFinder;
 import org.sonar.scanner.scan.measure.MeasureCache;
+import org.sonar.scanner.sensor.cache.AnalysisCache;
+import org.sonar.scanner.sensor.coverage.LineCoverageCache;
 import org.sonar.scanner.source.CodeColorizers;
 import org.sonar.scanner.test.TestPlanBuilder;
 import org.sonar.scanner.test.TestableBuilder;
@@ -137,6 +140,7 @@ public class ProjectScanContainer extends ComponentContainer {
       MetricProvider.class,
       ProjectConfigurator.class,
       DefaultIndex.class,
+      ModuleScanScheduler.class,
       Caches.class,
       BatchComponentCache.class,
       DefaultIssueCallback.class,
@@ -148,6 +152,7 @@ public class ProjectScanContainer extends ComponentContainer {
 
       // file system
       InputPathCache.class,
+      FileContentCache.class,
       PathResolver.class,
 
       // rules
@@ -173,6 +178,8 @@ public class ProjectScanContainer extends ComponentContainer {
 
       // Measures
       MeasureCache.class,
+      LineCoverageCache.class,
+      AnalysisCache.class,
 
       ProjectSettings.class,
 
@@ -223,19 +230,17 @@ public class ProjectScanContainer extends ComponentContainer {
     analysisMode.printMode();
     LOG.debug("Start recursive analysis of project modules");
     DefaultProjectTree tree = getComponentByType(DefaultProjectTree.class);
-    scanRecursively(tree.getRootProject());
+    getComponentByType(ModuleScanScheduler.class).scan(tree.getRootProject(), new ModuleScanScheduler.ModuleScanner() {
+      @Override
+      public void scan(Project module) {
+        ProjectScanContainer.this.scan(module);
+      }
+    });
     if (analysisMode.isMediumTest()) {
       getComponentByType(ScanTaskObservers.class).notifyEndOfScanTask();
     }
   }
 
-  private void scanRecursively(Project module) {
-    for (Project subModules : module.getModules()) {
-      scanRecursively(subModules);
-    }
-    scan(module);
-  }
-
   @VisibleForTesting
   void scan(Project module) {
     new ModuleScanContainer(this, module).execute();
@@ -19,6 +19,7 @@
  */
 package org.sonar.scanner.scan.filesystem;
 
+import javax.annotation.Nullable;
 import org.sonar.api.batch.ScannerSide;
 import org.sonar.api.batch.fs.InputDir;
 import org.sonar.api.batch.fs.InputFile;
@@ -29,6 +30,7 @@ import org.sonar.api.resources.Resource;
 import org.sonar.scanner.index.BatchComponent;
 import org.sonar.scanner.index.BatchComponentCache;
 import org.sonar.scanner.index.DefaultIndex;
+import org.sonar.scanner.scan.ModuleScanScheduler;
 
 /**
  * Index all files/directories of the module in SQ database and importing source code.
@@ -42,16 +44,38 @@ public class ComponentIndexer {
   private final DefaultIndex sonarIndex;
   private final Project module;
   private final BatchComponentCache componentCache;
+  @Nullable
+  private final ModuleScanScheduler scheduler;
 
-  public ComponentIndexer(Project module, Languages languages, DefaultIndex sonarIndex, BatchComponentCache componentCache) {
+  public ComponentIndexer(Project module, Languages languages, DefaultIndex sonarIndex, BatchComponentCache componentCache,
+    @Nullable ModuleScanScheduler scheduler) {
     this.module = module;
     this.languages = languages;
     this.sonarIndex = sonarIndex;
     this.componentCache = componentCache;
+    this.scheduler = scheduler;
+  }
+
+  public ComponentIndexer(Project module, Languages languages, DefaultIndex sonarIndex, BatchComponentCache componentCache) {
+    this(module, languages, sonarIndex, componentCache, null);
   }
 
-  public void execute(DefaultModuleFileSystem fs) {
+  public void execute(final DefaultModuleFileSystem fs) {
     module.setBaseDir(fs.baseDir());
+    if (scheduler == null) {
+      indexComponents(fs);
+    } else {
+      // components are numbered in the order they are indexed, which must not depend on the modules analyzed in parallel
+      scheduler.index(module, new Runnable() {
+        @Override
+        public void run() {
+          indexComponents(fs);
+        }
+      });
+    }
+  }
+
+  private void indexComponents(DefaultModuleFileSystem fs) {
 
     for (InputFile inputFile : fs.inputFiles()) {
       String languageKey = inputFile.language();
@@ -21,6 +21,7 @@ package org.sonar.scanner.scan.filesystem;
 
 import com.google.common.collect.Table;
 import com.google.common.collect.TreeBasedTable;
+import java.util.ArrayList;
 import org.sonar.api.batch.ScannerSide;
 import org.sonar.api.batch.fs.InputDir;
 import org.sonar.api.batch.fs.InputFile;
@@ -30,6 +31,8 @@ import javax.annotation.CheckForNull;
 /**
  * Cache of all files and dirs. This cache is shared amongst all project modules. Inclusion and
  * exclusion patterns are already applied.
+ * <p/>
+ * Thread-safe, as modules may be analyzed in parallel. Iterables are copies.
  */
 @ScannerSide
 public class InputPathCache {
@@ -37,55 +40,55 @@ public class InputPathCache {
   private final Table<String, String, InputFile> inputFileCache = TreeBasedTable.create();
   private final Table<String, String, InputDir> inputDirCache = TreeBasedTable.create();
 
-  public Iterable<InputFile> allFiles() {
-    return inputFileCache.values();
+  public synchronized Iterable<InputFile> allFiles() {
+    return new ArrayList<>(inputFileCache.values());
   }
 
-  public Iterable<InputDir> allDirs() {
-    return inputDirCache.values();
+  public synchronized Iterable<InputDir> allDirs() {
+    return new ArrayList<>(inputDirCache.values());
   }
 
-  public Iterable<InputFile> filesByModule(String moduleKey) {
-    return inputFileCache.row(moduleKey).values();
+  public synchronized Iterable<InputFile> filesByModule(String moduleKey) {
+    return new ArrayList<>(inputFileCache.row(moduleKey).values());
   }
 
-  public Iterable<InputDir> dirsByModule(String moduleKey) {
-    return inputDirCache.row(moduleKey).values();
+  public synchronized Iterable<InputDir> dirsByModule(String moduleKey) {
+    return new ArrayList<>(inputDirCache.row(moduleKey).values());
   }
 
-  public InputPathCache removeModule(String moduleKey) {
+  public synchronized InputPathCache removeModule(String moduleKey) {
     inputFileCache.row(moduleKey).clear();
     inputDirCache.row(moduleKey).clear();
     return this;
   }
 
-  public InputPathCache remove(String moduleKey, InputFile inputFile) {
+  public synchronized InputPathCache remove(String moduleKey, InputFile inputFile) {
     inputFileCache.remove(moduleKey, inputFile.relativePath());
     return this;
   }
 
-  public InputPathCache remove(String moduleKey, InputDir inputDir) {
+  public synchronized InputPathCache remove(String moduleKey, InputDir inputDir) {
     inputDirCache.remove(moduleKey, inputDir.relativePath());
     return this;
   }
 
-  public InputPathCache put(String moduleKey, InputFile inputFile) {
+  public synchronized InputPathCache put(String moduleKey, InputFile inputFile) {
     inputFileCache.put(moduleKey, inputFile.relativePath(), inputFile);
     return this;
   }
 
-  public InputPathCache put(String moduleKey, InputDir inputDir) {
+  public synchronized InputPathCache put(String moduleKey, InputDir inputDir) {
     inputDirCache.put(moduleKey, inputDir.relativePath(), inputDir);
     return this;
   }
 
   @CheckForNull
-  public InputFile getFile(String moduleKey, String relativePath) {
+  public synchronized InputFile getFile(String moduleKey, String relativePath) {
     return inputFileCache.get(moduleKey, relativePath);
   }
 
   @CheckForNull
-  public InputDir getDir(String moduleKey, String relativePath) {
+  public synchronized InputDir getDir(String moduleKey, String relativePath) {
     return inputDirCache.get(moduleKey, relativePath);
   }
 
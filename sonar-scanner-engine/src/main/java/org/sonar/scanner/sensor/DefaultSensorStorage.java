@@ -49,10 +49,10 @@ import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Metric;
 import org.sonar.api.resources.File;
 import org.sonar.api.resources.Resource;
-import org.sonar.api.utils.KeyValueFormat;
 import org.sonar.api.utils.SonarException;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.internal.pmd.PmdBlockChunker;
+import org.sonar.duplications.internal.pmd.TokensLine;
 import org.sonar.scanner.cpd.deprecated.DefaultCpdBlockIndexer;
 import org.sonar.scanner.cpd.index.SonarCpdBlockIndex;
 import org.sonar.scanner.index.BatchComponent;
@@ -65,6 +65,8 @@ import org.sonar.scanner.report.ReportPublisher;
 import org.sonar.scanner.report.ScannerReportUtils;
 import org.sonar.scanner.scan.measure.MeasureCache;
 import org.sonar.scanner.sensor.coverage.CoverageExclusions;
+import org.sonar.scanner.sensor.coverage.LineCoverageCache;
+import org.sonar.scanner.sensor.coverage.LineCoverageCache.Kind;
 
 public class DefaultSensorStorage implements SensorStorage {
 
@@ -95,10 +97,12 @@ public class DefaultSensorStorage implements SensorStorage {
   private final MeasureCache measureCache;
   private final SonarCpdBlockIndex index;
   private final Settings settings;
+  private final LineCoverageCache lineCoverageCache;
 
   public DefaultSensorStorage(MetricFinder metricFinder, ModuleIssues moduleIssues,
     Settings settings,
-    CoverageExclusions coverageExclusions, BatchComponentCache componentCache, ReportPublisher reportPublisher, MeasureCache measureCache, SonarCpdBlockIndex index) {
+    CoverageExclusions coverageExclusions, BatchComponentCache componentCache, ReportPublisher reportPublisher, MeasureCache measureCache, SonarCpdBlockIndex index,
+    LineCoverageCache lineCoverageCache) {
     this.metricFinder = metricFinder;
     this.moduleIssues = moduleIssues;
     this.settings = settings;
@@ -107,6 +111,7 @@ public class DefaultSensorStorage implements SensorStorage {
     this.reportPublisher = reportPublisher;
     this.measureCache = measureCache;
     this.index = index;
+    this.lineCoverageCache = lineCoverageCache;
   }
 
   private Metric findMetricOrFail(String metricKey) {
@@ -144,6 +149,11 @@ public class DefaultSensorStorage implements SensorStorage {
       LOG.debug("Metric " + metric.key() + " is an internal metric computed by SonarQube. Provided value is ignored.");
       return measure;
     }
+    if (LineCoverageCache.isLineMetric(metric.key())) {
+      // coverage by line is not a measure of the report
+      lineCoverageCache.put(resource.getEffectiveKey(), metric.key(), measure.getData());
+      return measure;
+    }
     if (measureCache.contains(resource, measure)) {
       throw new SonarException("Can not add the same measure twice on " + resource + ": " + measure);
     }
@@ -245,13 +255,13 @@ public class DefaultSensorStorage implements SensorStorage {
     if (defaultCoverage.linesToCover() > 0) {
       saveMeasure(file, new org.sonar.api.measures.Measure(type.linesToCover(), (double) defaultCoverage.linesToCover()));
       saveMeasure(file, new org.sonar.api.measures.Measure(type.uncoveredLines(), (double) (defaultCoverage.linesToCover() - defaultCoverage.coveredLines())));
-      saveMeasure(file, new org.sonar.api.measures.Measure(type.lineHitsData()).setData(KeyValueFormat.format(defaultCoverage.hitsByLine())));
+      lineCoverageCache.put(file.getEffectiveKey(), type, Kind.HITS, defaultCoverage.hitsByLine());
     }
     if (defaultCoverage.conditions() > 0) {
       saveMeasure(file, new org.sonar.api.measures.Measure(type.conditionsToCover(), (double) defaultCoverage.conditions()));
       saveMeasure(file, new org.sonar.api.measures.Measure(type.uncoveredConditions(), (double) (defaultCoverage.conditions() - defaultCoverage.coveredConditions())));
-      saveMeasure(file, new org.sonar.api.measures.Measure(type.coveredConditionsByLine()).setData(KeyValueFormat.format(defaultCoverage.coveredConditionsByLine())));
-      saveMeasure(file, new org.sonar.api.measures.Measure(type.conditionsByLine()).setData(KeyValueFormat.format(defaultCoverage.conditionsByLine())));
+      lineCoverageCache.put(file.getEffectiveKey(), type, Kind.COVERED_CONDITIONS, defaultCoverage.coveredConditionsByLine());
+      lineCoverageCache.put(file.getEffectiveKey(), type, Kind.CONDITIONS, defaultCoverage.conditionsByLine());
     }
   }
 
@@ -273,9 +283,12 @@ public class DefaultSensorStorage implements SensorStorage {
 
   @Override
   public void store(DefaultCpdTokens defaultCpdTokens) {
-    InputFile inputFile = defaultCpdTokens.inputFile();
+    storeCpdTokens(defaultCpdTokens.inputFile(), defaultCpdTokens.getTokenLines());
+  }
+
+  public void storeCpdTokens(InputFile inputFile, List<TokensLine> tokensLines) {
     PmdBlockChunker blockChunker = new PmdBlockChunker(getBlockSize(inputFile.language()));
-    List<Block> blocks = blockChunker.chunk(inputFile.key(), defaultCpdTokens.getTokenLines());
+    List<Block> blocks = blockChunker.chunk(inputFile.key(), tokensLines);
     index.insert(inputFile, blocks);
   }
 
@@ -19,10 +19,12 @@
  */
 package org.sonar.scanner.sensor;
 
+import javax.annotation.Nullable;
 import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.internal.DefaultSensorDescriptor;
 import org.sonar.api.resources.Project;
+import org.sonar.scanner.sensor.cache.IncrementalSensorExecutor;
 
 public class SensorWrapper implements org.sonar.api.batch.Sensor {
 
@@ -30,10 +32,16 @@ public class SensorWrapper implements org.sonar.api.batch.Sensor {
   private SensorContext adaptor;
   private DefaultSensorDescriptor descriptor;
   private SensorOptimizer optimizer;
+  private IncrementalSensorExecutor incrementalExecutor;
 
   public SensorWrapper(Sensor newSensor, SensorContext adaptor, SensorOptimizer optimizer) {
+    this(newSensor, adaptor, optimizer, null);
+  }
+
+  public SensorWrapper(Sensor newSensor, SensorContext adaptor, SensorOptimizer optimizer, @Nullable IncrementalSensorExecutor incrementalExecutor) {
     this.wrappedSensor = newSensor;
     this.optimizer = optimizer;
+    this.incrementalExecutor = incrementalExecutor;
     descriptor = new DefaultSensorDescriptor();
     newSensor.describe(descriptor);
     this.adaptor = adaptor;
@@ -50,7 +58,11 @@ public class SensorWrapper implements org.sonar.api.batch.Sensor {
 
   @Override
   public void analyse(Project module, org.sonar.api.batch.SensorContext context) {
-    wrappedSensor.execute(adaptor);
+    if (descriptor.isIncremental() && incrementalExecutor != null && incrementalExecutor.isEnabled()) {
+      incrementalExecutor.execute(wrappedSensor, descriptor);
+    } else {
+      wrappedSensor.execute(adaptor);
+    }
   }
 
   @Override
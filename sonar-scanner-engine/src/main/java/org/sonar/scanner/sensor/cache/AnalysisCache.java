@@ -0,0 +1,147 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.sensor.cache;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.CheckForNull;
+import org.picocontainer.Startable;
+import org.sonar.api.batch.ScannerSide;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.home.cache.FileCache;
+
+/**
+ * Persistent cache of the data saved by incremental sensors on files, kept in the user cache (sonar-home)
+ * so that it survives the cleaning of the working directory. Entries are files named after their key.
+ * They are written atomically, so that concurrent analyses can share the cache, and removed when they
+ * have not been used for {@link #MAX_AGE_IN_DAYS} days.
+ * <p/>
+ * Shared by all the modules of the project. Thread-safe.
+ *
+ * @since 6.0
+ */
+@ScannerSide
+public class AnalysisCache implements Startable {
+
+  static final String ENABLED_PROPERTY = "sonar.scanner.analysisCache";
+  static final int MAX_AGE_IN_DAYS = 30;
+
+  private static final Logger LOG = Loggers.get(AnalysisCache.class);
+  private static final String PURGE_MARKER = "_purge";
+
+  private final File dir;
+  private final boolean enabled;
+  private final System2 system2;
+
+  public AnalysisCache(FileCache fileCache, Settings settings) {
+    this(new File(fileCache.getDir(), "_analysis"), !settings.hasKey(ENABLED_PROPERTY) || settings.getBoolean(ENABLED_PROPERTY), System2.INSTANCE);
+  }
+
+  @VisibleForTesting
+  AnalysisCache(File dir, boolean enabled, System2 system2) {
+    this.dir = dir;
+    this.enabled = enabled;
+    this.system2 = system2;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @CheckForNull
+  public byte[] get(String key) {
+    File file = entry(key);
+    if (!enabled || !file.isFile()) {
+      return null;
+    }
+    try {
+      byte[] data = Files.readAllBytes(file.toPath());
+      // used entries are kept
+      file.setLastModified(system2.now());
+      return data;
+    } catch (IOException e) {
+      LOG.debug("Fail to read analysis cache entry " + file, e);
+      return null;
+    }
+  }
+
+  public void put(String key, byte[] data) {
+    if (!enabled) {
+      return;
+    }
+    File file = entry(key);
+    try {
+      Files.createDirectories(file.getParentFile().toPath());
+      File tempFile = File.createTempFile(key, ".tmp", file.getParentFile());
+      Files.write(tempFile.toPath(), data);
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      // the cache is an optimization only
+      LOG.debug("Fail to write analysis cache entry " + file, e);
+    }
+  }
+
+  @Override
+  public void start() {
+    // nothing to do
+  }
+
+  /**
+   * Removes the entries not used since {@link #MAX_AGE_IN_DAYS} days, at most once a day
+   */
+  @Override
+  public void stop() {
+    if (!enabled || !dir.isDirectory()) {
+      return;
+    }
+    long now = system2.now();
+    File marker = new File(dir, PURGE_MARKER);
+    if (marker.exists() && now - marker.lastModified() < TimeUnit.DAYS.toMillis(1)) {
+      return;
+    }
+    long threshold = now - TimeUnit.DAYS.toMillis(MAX_AGE_IN_DAYS);
+    File[] subDirs = dir.listFiles();
+    for (File subDir : subDirs == null ? new File[0] : subDirs) {
+      File[] files = subDir.listFiles();
+      for (File file : files == null ? new File[0] : files) {
+        if (file.lastModified() < threshold) {
+          file.delete();
+        }
+      }
+    }
+    try {
+      Files.write(marker.toPath(), new byte[0]);
+      marker.setLastModified(now);
+    } catch (IOException e) {
+      LOG.debug("Fail to write " + marker, e);
+    }
+  }
+
+  private File entry(String key) {
+    return new File(new File(dir, key.substring(0, 2)), key);
+  }
+}
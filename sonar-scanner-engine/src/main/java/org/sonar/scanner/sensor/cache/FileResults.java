@@ -0,0 +1,478 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.sensor.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.batch.fs.InputComponent;
+import org.sonar.api.batch.fs.TextRange;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.measure.Metric;
+import org.sonar.api.batch.measure.MetricFinder;
+import org.sonar.api.batch.rule.Severity;
+import org.sonar.api.batch.sensor.highlighting.TypeOfText;
+import org.sonar.api.batch.sensor.highlighting.internal.DefaultHighlighting;
+import org.sonar.api.batch.sensor.highlighting.internal.SyntaxHighlightingRule;
+import org.sonar.api.batch.sensor.issue.Issue;
+import org.sonar.api.batch.sensor.issue.IssueLocation;
+import org.sonar.api.batch.sensor.issue.NewIssueLocation;
+import org.sonar.api.batch.sensor.issue.internal.DefaultIssue;
+import org.sonar.api.batch.sensor.issue.internal.DefaultIssueLocation;
+import org.sonar.api.batch.sensor.measure.Measure;
+import org.sonar.api.batch.sensor.measure.internal.DefaultMeasure;
+import org.sonar.api.batch.sensor.symbol.NewSymbol;
+import org.sonar.api.batch.sensor.symbol.internal.DefaultSymbolTable;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.duplications.internal.pmd.TokensLine;
+import org.sonar.scanner.sensor.DefaultSensorStorage;
+
+/**
+ * Data saved by an incremental sensor on a file, encoded to be stored in {@link AnalysisCache} and
+ * replayed on the same file at the next analyses. Only data located on the file itself are supported.
+ * <p/>
+ * Not thread-safe.
+ */
+class FileResults {
+
+  private static final int VERSION = 1;
+
+  private static final byte END = 0;
+  private static final byte MEASURE = 1;
+  private static final byte ISSUE = 2;
+  private static final byte HIGHLIGHTING = 3;
+  private static final byte SYMBOLS = 4;
+  private static final byte CPD_TOKENS = 5;
+
+  private static final byte INT_VALUE = 1;
+  private static final byte LONG_VALUE = 2;
+  private static final byte DOUBLE_VALUE = 3;
+  private static final byte STRING_VALUE = 4;
+  private static final byte BOOLEAN_VALUE = 5;
+
+  private final DefaultInputFile file;
+  private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+  private final DataOutputStream out = new DataOutputStream(bytes);
+  private boolean cacheable = true;
+
+  FileResults(DefaultInputFile file) {
+    this.file = file;
+    try {
+      out.writeInt(VERSION);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  boolean isCacheable() {
+    return cacheable;
+  }
+
+  /**
+   * The data of the file can not be replayed, for example because they depend on other files
+   */
+  void setNotCacheable() {
+    cacheable = false;
+  }
+
+  void addMeasure(Measure<?> measure) {
+    Serializable value = measure.value();
+    try {
+      out.writeByte(MEASURE);
+      out.writeUTF(measure.metric().key());
+      if (value instanceof Integer) {
+        out.writeByte(INT_VALUE);
+        out.writeInt((Integer) value);
+      } else if (value instanceof Long) {
+        out.writeByte(LONG_VALUE);
+        out.writeLong((Long) value);
+      } else if (value instanceof Double) {
+        out.writeByte(DOUBLE_VALUE);
+        out.writeDouble((Double) value);
+      } else if (value instanceof String) {
+        out.writeByte(STRING_VALUE);
+        writeLongString((String) value);
+      } else if (value instanceof Boolean) {
+        out.writeByte(BOOLEAN_VALUE);
+        out.writeBoolean((Boolean) value);
+      } else {
+        setNotCacheable();
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  void addIssue(Issue issue) {
+    if (!isOnFile(issue.primaryLocation())) {
+      setNotCacheable();
+      return;
+    }
+    for (Issue.Flow flow : issue.flows()) {
+      for (IssueLocation location : flow.locations()) {
+        if (!isOnFile(location)) {
+          setNotCacheable();
+          return;
+        }
+      }
+    }
+    try {
+      out.writeByte(ISSUE);
+      out.writeUTF(issue.ruleKey().toString());
+      Severity severity = issue.overriddenSeverity();
+      writeNullableString(severity == null ? null : severity.name());
+      Double gap = issue.gap();
+      out.writeBoolean(gap != null);
+      if (gap != null) {
+        out.writeDouble(gap);
+      }
+      writeLocation(issue.primaryLocation());
+      out.writeInt(issue.flows().size());
+      for (Issue.Flow flow : issue.flows()) {
+        out.writeInt(flow.locations().size());
+        for (IssueLocation location : flow.locations()) {
+          writeLocation(location);
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  void addHighlighting(DefaultHighlighting highlighting) {
+    try {
+      out.writeByte(HIGHLIGHTING);
+      out.writeInt(highlighting.getSyntaxHighlightingRuleSet().size());
+      for (SyntaxHighlightingRule rule : highlighting.getSyntaxHighlightingRuleSet()) {
+        writeRange(rule.range());
+        out.writeByte(rule.getTextType().ordinal());
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  void addSymbolTable(DefaultSymbolTable symbolTable) {
+    try {
+      out.writeByte(SYMBOLS);
+      out.writeInt(symbolTable.getReferencesBySymbol().size());
+      for (Map.Entry<TextRange, Set<TextRange>> symbol : symbolTable.getReferencesBySymbol().entrySet()) {
+        writeRange(symbol.getKey());
+        out.writeInt(symbol.getValue().size());
+        for (TextRange reference : symbol.getValue()) {
+          writeRange(reference);
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  void addCpdTokens(List<TokensLine> tokensLines) {
+    try {
+      out.writeByte(CPD_TOKENS);
+      out.writeInt(tokensLines.size());
+      for (TokensLine line : tokensLines) {
+        out.writeInt(line.getStartUnit());
+        out.writeInt(line.getEndUnit());
+        out.writeInt(line.getStartLine());
+        writeLongString(line.getValue());
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  byte[] toBytes() {
+    try {
+      out.writeByte(END);
+      out.flush();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  private boolean isOnFile(@Nullable IssueLocation location) {
+    if (location == null) {
+      return false;
+    }
+    InputComponent component = location.inputComponent();
+    return file.equals(component);
+  }
+
+  private void writeLocation(IssueLocation location) throws IOException {
+    writeNullableString(location.message());
+    TextRange range = location.textRange();
+    out.writeBoolean(range != null);
+    if (range != null) {
+      writeRange(range);
+    }
+  }
+
+  private void writeRange(TextRange range) throws IOException {
+    out.writeInt(range.start().line());
+    out.writeInt(range.start().lineOffset());
+    out.writeInt(range.end().line());
+    out.writeInt(range.end().lineOffset());
+  }
+
+  private void writeNullableString(@Nullable String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) {
+      writeLongString(s);
+    }
+  }
+
+  /**
+   * {@link DataOutputStream#writeUTF(String)} is limited to 64KB
+   */
+  private void writeLongString(String s) throws IOException {
+    byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(utf8.length);
+    out.write(utf8);
+  }
+
+  /**
+   * Saves again the data recorded on the file. Nothing is saved if the data can not be decoded, for example
+   * when a metric does not exist anymore.
+   *
+   * @return false if the data can not be decoded
+   */
+  static boolean replay(byte[] data, DefaultInputFile file, MetricFinder metricFinder, DefaultSensorStorage storage) {
+    List<Runnable> actions = decode(data, file, metricFinder, storage);
+    if (actions == null) {
+      return false;
+    }
+    for (Runnable action : actions) {
+      action.run();
+    }
+    return true;
+  }
+
+  @CheckForNull
+  private static List<Runnable> decode(byte[] data, DefaultInputFile file, MetricFinder metricFinder, DefaultSensorStorage storage) {
+    List<Runnable> actions = new ArrayList<>();
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+      if (in.readInt() != VERSION) {
+        return null;
+      }
+      Decoder decoder = new Decoder(in, file, storage);
+      byte type = in.readByte();
+      while (type != END) {
+        Runnable action;
+        switch (type) {
+          case MEASURE:
+            action = decoder.measure(metricFinder);
+            break;
+          case ISSUE:
+            action = decoder.issue();
+            break;
+          case HIGHLIGHTING:
+            action = decoder.highlighting();
+            break;
+          case SYMBOLS:
+            action = decoder.symbols();
+            break;
+          case CPD_TOKENS:
+            action = decoder.cpdTokens();
+            break;
+          default:
+            return null;
+        }
+        if (action == null) {
+          return null;
+        }
+        actions.add(action);
+        type = in.readByte();
+      }
+      return actions;
+    } catch (IOException | RuntimeException e) {
+      // corrupted entry, or data not valid anymore on the file
+      return null;
+    }
+  }
+
+  private static class Decoder {
+    private final DataInputStream in;
+    private final DefaultInputFile file;
+    private final DefaultSensorStorage storage;
+
+    private Decoder(DataInputStream in, DefaultInputFile file, DefaultSensorStorage storage) {
+      this.in = in;
+      this.file = file;
+      this.storage = storage;
+    }
+
+    @CheckForNull
+    private Runnable measure(MetricFinder metricFinder) throws IOException {
+      Metric<Serializable> metric = metricFinder.findByKey(in.readUTF());
+      Serializable value;
+      byte valueType = in.readByte();
+      switch (valueType) {
+        case INT_VALUE:
+          value = in.readInt();
+          break;
+        case LONG_VALUE:
+          value = in.readLong();
+          break;
+        case DOUBLE_VALUE:
+          value = in.readDouble();
+          break;
+        case STRING_VALUE:
+          value = readLongString();
+          break;
+        case BOOLEAN_VALUE:
+          value = in.readBoolean();
+          break;
+        default:
+          return null;
+      }
+      if (metric == null || !metric.valueType().equals(value.getClass())) {
+        return null;
+      }
+      final DefaultMeasure<Serializable> measure = new DefaultMeasure<Serializable>(storage).on(file).forMetric(metric).withValue(value);
+      return new Runnable() {
+        @Override
+        public void run() {
+          measure.save();
+        }
+      };
+    }
+
+    private Runnable issue() throws IOException {
+      final DefaultIssue issue = new DefaultIssue(storage).forRule(RuleKey.parse(in.readUTF()));
+      String severity = readNullableString();
+      if (severity != null) {
+        issue.overrideSeverity(Severity.valueOf(severity));
+      }
+      if (in.readBoolean()) {
+        issue.gap(in.readDouble());
+      }
+      issue.at(location());
+      int flows = in.readInt();
+      for (int i = 0; i < flows; i++) {
+        int locations = in.readInt();
+        List<NewIssueLocation> flow = new ArrayList<>(locations);
+        for (int j = 0; j < locations; j++) {
+          flow.add(location());
+        }
+        issue.addFlow(flow);
+      }
+      return new Runnable() {
+        @Override
+        public void run() {
+          issue.save();
+        }
+      };
+    }
+
+    private Runnable highlighting() throws IOException {
+      final DefaultHighlighting highlighting = new DefaultHighlighting(storage).onFile(file);
+      int rules = in.readInt();
+      for (int i = 0; i < rules; i++) {
+        TextRange range = range();
+        highlighting.highlight(range, TypeOfText.values()[in.readByte()]);
+      }
+      return new Runnable() {
+        @Override
+        public void run() {
+          highlighting.save();
+        }
+      };
+    }
+
+    private Runnable symbols() throws IOException {
+      final DefaultSymbolTable symbolTable = new DefaultSymbolTable(storage).onFile(file);
+      int symbols = in.readInt();
+      for (int i = 0; i < symbols; i++) {
+        NewSymbol symbol = symbolTable.newSymbol(range());
+        int references = in.readInt();
+        for (int j = 0; j < references; j++) {
+          symbol.newReference(range());
+        }
+      }
+      return new Runnable() {
+        @Override
+        public void run() {
+          symbolTable.save();
+        }
+      };
+    }
+
+    private Runnable cpdTokens() throws IOException {
+      int count = in.readInt();
+      final List<TokensLine> tokensLines = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        int startUnit = in.readInt();
+        int endUnit = in.readInt();
+        int startLine = in.readInt();
+        tokensLines.add(new TokensLine(startUnit, endUnit, startLine, readLongString()));
+      }
+      return new Runnable() {
+        @Override
+        public void run() {
+          storage.storeCpdTokens(file, tokensLines);
+        }
+      };
+    }
+
+    private DefaultIssueLocation location() throws IOException {
+      DefaultIssueLocation location = new DefaultIssueLocation().on(file);
+      String message = readNullableString();
+      if (message != null) {
+        location.message(message);
+      }
+      if (in.readBoolean()) {
+        location.at(range());
+      }
+      return location;
+    }
+
+    private TextRange range() throws IOException {
+      int startLine = in.readInt();
+      int startLineOffset = in.readInt();
+      int endLine = in.readInt();
+      int endLineOffset = in.readInt();
+      return file.newRange(startLine, startLineOffset, endLine, endLineOffset);
+    }
+
+    @CheckForNull
+    private String readNullableString() throws IOException {
+      return in.readBoolean() ? readLongString() : null;
+    }
+
+    private String readLongString() throws IOException {
+      byte[] utf8 = new byte[in.readInt()];
+      in.readFully(utf8);
+      return new String(utf8, StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.sensor.cache;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Set;
+import java.util.SortedSet;
+import javax.annotation.CheckForNull;
+import org.sonar.api.batch.fs.FilePredicate;
+import org.sonar.api.batch.fs.FilePredicates;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputDir;
+import org.sonar.api.batch.fs.InputFile;
+
+/**
+ * View of a file system without some of its files
+ */
+class FilteredFileSystem implements FileSystem {
+
+  private final FileSystem fs;
+  private final Set<InputFile> excluded;
+  private final FilePredicate notExcluded;
+
+  FilteredFileSystem(FileSystem fs, final Set<InputFile> excluded) {
+    this.fs = fs;
+    this.excluded = excluded;
+    this.notExcluded = new FilePredicate() {
+      @Override
+      public boolean apply(InputFile inputFile) {
+        return !excluded.contains(inputFile);
+      }
+    };
+  }
+
+  @Override
+  public File baseDir() {
+    return fs.baseDir();
+  }
+
+  @Override
+  public Charset encoding() {
+    return fs.encoding();
+  }
+
+  @Override
+  public File workDir() {
+    return fs.workDir();
+  }
+
+  @Override
+  public FilePredicates predicates() {
+    return fs.predicates();
+  }
+
+  @Override
+  @CheckForNull
+  public InputFile inputFile(FilePredicate predicate) {
+    InputFile inputFile = fs.inputFile(predicate);
+    return inputFile == null || excluded.contains(inputFile) ? null : inputFile;
+  }
+
+  @Override
+  @CheckForNull
+  public InputDir inputDir(File dir) {
+    return fs.inputDir(dir);
+  }
+
+  @Override
+  public Iterable<InputFile> inputFiles(FilePredicate predicate) {
+    return fs.inputFiles(fs.predicates().and(predicate, notExcluded));
+  }
+
+  @Override
+  public boolean hasFiles(FilePredicate predicate) {
+    return inputFiles(predicate).iterator().hasNext();
+  }
+
+  @Override
+  public Iterable<File> files(FilePredicate predicate) {
+    return fs.files(fs.predicates().and(predicate, notExcluded));
+  }
+
+  @Override
+  public SortedSet<String> languages() {
+    return fs.languages();
+  }
+
+  @Override
+  public File resolvePath(String path) {
+    return fs.resolvePath(path);
+  }
+}
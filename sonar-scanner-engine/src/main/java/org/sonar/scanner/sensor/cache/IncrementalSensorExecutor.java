@@ -0,0 +1,194 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.sensor.cache;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.sonar.api.SonarRuntime;
+import org.sonar.api.batch.AnalysisMode;
+import org.sonar.api.batch.ScannerSide;
+import org.sonar.api.batch.fs.FilePredicate;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.InputModule;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.measure.MetricFinder;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.batch.rule.ActiveRules;
+import org.sonar.api.batch.sensor.Sensor;
+import org.sonar.api.batch.sensor.internal.DefaultSensorDescriptor;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.core.platform.PluginInfo;
+import org.sonar.core.platform.PluginRepository;
+import org.sonar.scanner.sensor.DefaultSensorContext;
+import org.sonar.scanner.sensor.DefaultSensorStorage;
+
+/**
+ * Executes the sensors declared as {@link org.sonar.api.batch.sensor.SensorDescriptor#incremental()}. The data saved on
+ * a file during a previous analysis are replayed when the file, the plugin of the sensor, the active rules and the
+ * settings did not change. Such files are hidden from the sensor. The data saved on the other files are recorded
+ * in {@link AnalysisCache} for the next analyses.
+ *
+ * @since 6.0
+ */
+@ScannerSide
+public class IncrementalSensorExecutor {
+
+  private static final Logger LOG = Loggers.get(IncrementalSensorExecutor.class);
+
+  /**
+   * Settings changing at each analysis, without impact on the results of sensors
+   */
+  private static final List<String> VOLATILE_PROPERTIES = Arrays.asList("sonar.projectDate", "sonar.projectVersion", "sonar.buildString",
+    "sonar.login", "sonar.password");
+  private static final String VOLATILE_PROPERTIES_PREFIX = "sonar.analysis.";
+
+  private final InputModule module;
+  private final Settings settings;
+  private final FileSystem fs;
+  private final ActiveRules activeRules;
+  private final AnalysisMode analysisMode;
+  private final DefaultSensorStorage storage;
+  private final SonarRuntime sonarRuntime;
+  private final AnalysisCache cache;
+  private final MetricFinder metricFinder;
+  private final PluginRepository pluginRepository;
+
+  public IncrementalSensorExecutor(InputModule module, Settings settings, FileSystem fs, ActiveRules activeRules, AnalysisMode analysisMode,
+    DefaultSensorStorage storage, SonarRuntime sonarRuntime, AnalysisCache cache, MetricFinder metricFinder, PluginRepository pluginRepository) {
+    this.module = module;
+    this.settings = settings;
+    this.fs = fs;
+    this.activeRules = activeRules;
+    this.analysisMode = analysisMode;
+    this.storage = storage;
+    this.sonarRuntime = sonarRuntime;
+    this.cache = cache;
+    this.metricFinder = metricFinder;
+    this.pluginRepository = pluginRepository;
+  }
+
+  public boolean isEnabled() {
+    return cache.isEnabled();
+  }
+
+  public void execute(Sensor sensor, DefaultSensorDescriptor descriptor) {
+    String sensorFingerprint = sensorFingerprint(sensor, descriptor);
+    Set<InputFile> replayed = new HashSet<>();
+    Map<InputFile, String> keysOfAnalyzedFiles = new LinkedHashMap<>();
+    for (InputFile inputFile : fs.inputFiles(filesOf(descriptor))) {
+      DefaultInputFile file = (DefaultInputFile) inputFile;
+      String key = entryKey(sensorFingerprint, file);
+      byte[] data = cache.get(key);
+      if (data != null && FileResults.replay(data, file, metricFinder, storage)) {
+        replayed.add(file);
+      } else {
+        keysOfAnalyzedFiles.put(file, key);
+      }
+    }
+    if (!replayed.isEmpty()) {
+      LOG.info("Reuse results of {} unchanged file(s)", replayed.size());
+    }
+
+    RecordingSensorStorage recordingStorage = new RecordingSensorStorage(storage);
+    sensor.execute(new DefaultSensorContext(module, settings, new FilteredFileSystem(fs, replayed), activeRules, analysisMode, recordingStorage, sonarRuntime));
+
+    for (Map.Entry<InputFile, String> entry : keysOfAnalyzedFiles.entrySet()) {
+      FileResults results = recordingStorage.resultsOf(entry.getKey());
+      if (results == null) {
+        // nothing was saved on the file, that is worth to be known too
+        results = new FileResults((DefaultInputFile) entry.getKey());
+      }
+      if (results.isCacheable()) {
+        cache.put(entry.getValue(), results.toBytes());
+      }
+    }
+  }
+
+  private FilePredicate filesOf(DefaultSensorDescriptor descriptor) {
+    List<FilePredicate> predicates = new ArrayList<>();
+    predicates.add(fs.predicates().all());
+    if (!descriptor.languages().isEmpty()) {
+      predicates.add(fs.predicates().hasLanguages(descriptor.languages()));
+    }
+    if (descriptor.type() != null) {
+      predicates.add(fs.predicates().hasType(descriptor.type()));
+    }
+    return fs.predicates().and(predicates);
+  }
+
+  private static String entryKey(String sensorFingerprint, DefaultInputFile file) {
+    return DigestUtils.md5Hex(sensorFingerprint + "\n" + file.key() + "\n" + file.hash() + "\n" + file.language() + "\n" + file.type() + "\n" + file.charset());
+  }
+
+  /**
+   * Hash of everything but the files that may change the results of the sensor
+   */
+  @VisibleForTesting
+  String sensorFingerprint(Sensor sensor, DefaultSensorDescriptor descriptor) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(sensor.getClass().getName()).append('\n');
+    sb.append(pluginFingerprint(sensor)).append('\n');
+    sb.append(analysisMode.isIssues() ? "issues" : "publish").append('\n');
+
+    Map<String, String> rules = new TreeMap<>();
+    for (ActiveRule rule : activeRules.findAll()) {
+      if (descriptor.ruleRepositories().isEmpty() || descriptor.ruleRepositories().contains(rule.ruleKey().repository())) {
+        rules.put(rule.ruleKey().toString(), rule.severity() + "|" + rule.language() + "|" + rule.internalKey() + "|" + rule.templateRuleKey()
+          + "|" + new TreeMap<>(rule.params()));
+      }
+    }
+    sb.append(rules).append('\n');
+
+    Map<String, String> properties = new TreeMap<>();
+    for (Map.Entry<String, String> property : settings.getProperties().entrySet()) {
+      if (!VOLATILE_PROPERTIES.contains(property.getKey()) && !property.getKey().startsWith(VOLATILE_PROPERTIES_PREFIX)) {
+        properties.put(property.getKey(), property.getValue());
+      }
+    }
+    sb.append(properties);
+    return DigestUtils.md5Hex(sb.toString());
+  }
+
+  /**
+   * Version of the plugin providing the sensor. The path of the JAR is added, as it contains the hash of the file in
+   * the user cache, so that a new build of a SNAPSHOT version is detected.
+   */
+  private String pluginFingerprint(Sensor sensor) {
+    ClassLoader classLoader = sensor.getClass().getClassLoader();
+    for (PluginInfo info : pluginRepository.getPluginInfos()) {
+      if (pluginRepository.getPluginInstance(info.getKey()).getClass().getClassLoader() == classLoader) {
+        return info.getKey() + "|" + info.getVersion() + "|" + info.getJarFile();
+      }
+    }
+    // sensor of the scanner itself
+    return "runtime|" + sonarRuntime.getApiVersion();
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.sensor.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.batch.fs.InputComponent;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.sensor.coverage.internal.DefaultCoverage;
+import org.sonar.api.batch.sensor.cpd.internal.DefaultCpdTokens;
+import org.sonar.api.batch.sensor.highlighting.internal.DefaultHighlighting;
+import org.sonar.api.batch.sensor.internal.SensorStorage;
+import org.sonar.api.batch.sensor.issue.Issue;
+import org.sonar.api.batch.sensor.measure.Measure;
+import org.sonar.api.batch.sensor.symbol.internal.DefaultSymbolTable;
+
+/**
+ * Storage given to an incremental sensor. Data are saved as usual and also recorded by file,
+ * so that they can be replayed at the next analyses.
+ */
+class RecordingSensorStorage implements SensorStorage {
+
+  private final SensorStorage delegate;
+  private final Map<InputFile, FileResults> resultsByFile = new HashMap<>();
+
+  RecordingSensorStorage(SensorStorage delegate) {
+    this.delegate = delegate;
+  }
+
+  @CheckForNull
+  synchronized FileResults resultsOf(InputFile file) {
+    return resultsByFile.get(file);
+  }
+
+  @Override
+  public void store(Measure measure) {
+    delegate.store(measure);
+    FileResults results = results(measure.inputComponent());
+    if (results != null) {
+      results.addMeasure(measure);
+    }
+  }
+
+  @Override
+  public void store(Issue issue) {
+    delegate.store(issue);
+    FileResults results = results(issue.primaryLocation().inputComponent());
+    if (results != null) {
+      results.addIssue(issue);
+    }
+  }
+
+  @Override
+  public void store(DefaultHighlighting highlighting) {
+    delegate.store(highlighting);
+    fileResults(highlighting.inputFile()).addHighlighting(highlighting);
+  }
+
+  @Override
+  public void store(DefaultCoverage defaultCoverage) {
+    delegate.store(defaultCoverage);
+    // coverage is not computed from the content of the file
+    fileResults(defaultCoverage.inputFile()).setNotCacheable();
+  }
+
+  @Override
+  public void store(DefaultCpdTokens defaultCpdTokens) {
+    delegate.store(defaultCpdTokens);
+    fileResults(defaultCpdTokens.inputFile()).addCpdTokens(defaultCpdTokens.getTokenLines());
+  }
+
+  @Override
+  public void store(DefaultSymbolTable symbolTable) {
+    delegate.store(symbolTable);
+    fileResults(symbolTable.inputFile()).addSymbolTable(symbolTable);
+  }
+
+  /**
+   * Results of the file, or null if the component is not a file
+   */
+  @CheckForNull
+  private FileResults results(@Nullable InputComponent component) {
+    if (component == null || !component.isFile()) {
+      return null;
+    }
+    return fileResults((InputFile) component);
+  }
+
+  private synchronized FileResults fileResults(InputFile file) {
+    FileResults results = resultsByFile.get(file);
+    if (results == null) {
+      results = new FileResults((DefaultInputFile) file);
+      resultsByFile.put(file, results);
+    }
+    return results;
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.sensor.coverage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.CheckForNull;
+import org.sonar.api.batch.ScannerSide;
+import org.sonar.api.batch.sensor.coverage.CoverageType;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.utils.KeyValueFormat;
+import org.sonar.api.utils.SonarException;
+
+/**
+ * Coverage by line of files, shared among all project modules. Hits and conditions of unit tests,
+ * integration tests and overall coverage of a file are merged in place into arrays indexed by line,
+ * so that they can be published to the report without intermediate string encoding. They are encoded
+ * as data measures of the by-line metrics only when such measures are requested, see {@link #measuresOf(String)}.
+ *
+ * @since 6.0
+ */
+@ScannerSide
+public class LineCoverageCache {
+
+  /**
+   * Data stored by line
+   */
+  public enum Kind {
+    HITS, CONDITIONS, COVERED_CONDITIONS
+  }
+
+  private static final Map<String, MetricTarget> TARGETS_BY_METRIC_KEY = new LinkedHashMap<>();
+
+  static {
+    for (CoverageType type : CoverageType.values()) {
+      TARGETS_BY_METRIC_KEY.put(type.lineHitsData().key(), new MetricTarget(type.lineHitsData(), type, Kind.HITS));
+      TARGETS_BY_METRIC_KEY.put(type.conditionsByLine().key(), new MetricTarget(type.conditionsByLine(), type, Kind.CONDITIONS));
+      TARGETS_BY_METRIC_KEY.put(type.coveredConditionsByLine().key(), new MetricTarget(type.coveredConditionsByLine(), type, Kind.COVERED_CONDITIONS));
+    }
+  }
+
+  private final ConcurrentMap<String, FileCoverage> byComponentKey = new ConcurrentHashMap<>();
+
+  /**
+   * Whether values of the metric are stored in this cache rather than as measures
+   */
+  public static boolean isLineMetric(String metricKey) {
+    return TARGETS_BY_METRIC_KEY.containsKey(metricKey);
+  }
+
+  /**
+   * Stores the data of a by-line metric (for example {@code coverage_line_hits_data}) encoded with
+   * {@link KeyValueFormat}, as provided by the deprecated measure API.
+   */
+  public void put(String componentKey, String metricKey, String data) {
+    MetricTarget target = TARGETS_BY_METRIC_KEY.get(metricKey);
+    if (target == null) {
+      throw new IllegalArgumentException("Metric is not a coverage by line: " + metricKey);
+    }
+    put(componentKey, target.type, target.kind, KeyValueFormat.parseIntInt(data));
+  }
+
+  public void put(String componentKey, CoverageType type, Kind kind, Map<Integer, Integer> valuesByLine) {
+    FileCoverage coverage = byComponentKey.get(componentKey);
+    if (coverage == null) {
+      FileCoverage newCoverage = new FileCoverage();
+      coverage = byComponentKey.putIfAbsent(componentKey, newCoverage);
+      if (coverage == null) {
+        coverage = newCoverage;
+      }
+    }
+    if (!coverage.set(type, kind, valuesByLine)) {
+      throw new SonarException("Can not add the same coverage twice on " + componentKey + ": " + type + " " + kind);
+    }
+  }
+
+  @CheckForNull
+  public FileCoverage byComponent(String componentKey) {
+    return byComponentKey.get(componentKey);
+  }
+
+  /**
+   * Data measure of a by-line metric, with values encoded with {@link KeyValueFormat}, as it was stored
+   * before coverage by line was kept in this cache. Null if the metric is not a coverage by line or if the
+   * file has no such coverage.
+   */
+  @CheckForNull
+  public Measure measureOf(String componentKey, String metricKey) {
+    MetricTarget target = TARGETS_BY_METRIC_KEY.get(metricKey);
+    FileCoverage coverage = byComponentKey.get(componentKey);
+    if (target == null || coverage == null) {
+      return null;
+    }
+    return target.toMeasure(coverage);
+  }
+
+  /**
+   * Data measures of all the by-line metrics of the file, see {@link #measureOf(String, String)}
+   */
+  public List<Measure> measuresOf(String componentKey) {
+    FileCoverage coverage = byComponentKey.get(componentKey);
+    if (coverage == null) {
+      return Collections.emptyList();
+    }
+    List<Measure> measures = new ArrayList<>();
+    for (MetricTarget target : TARGETS_BY_METRIC_KEY.values()) {
+      Measure measure = target.toMeasure(coverage);
+      if (measure != null) {
+        measures.add(measure);
+      }
+    }
+    return measures;
+  }
+
+  /**
+   * Coverage of a file. Missing values are stored as -1.
+   */
+  public static class FileCoverage {
+    private static final int MISSING = -1;
+
+    private final int[][] values = new int[CoverageType.values().length * Kind.values().length][];
+    private int maxLine = 0;
+
+    private synchronized boolean set(CoverageType type, Kind kind, Map<Integer, Integer> valuesByLine) {
+      int index = index(type, kind);
+      if (values[index] != null) {
+        return false;
+      }
+      int max = 0;
+      for (Integer line : valuesByLine.keySet()) {
+        max = Math.max(max, line);
+      }
+      int[] array = new int[max + 1];
+      Arrays.fill(array, MISSING);
+      for (Map.Entry<Integer, Integer> entry : valuesByLine.entrySet()) {
+        if (entry.getKey() > 0 && entry.getValue() != null) {
+          array[entry.getKey()] = entry.getValue();
+        }
+      }
+      values[index] = array;
+      maxLine = Math.max(maxLine, max);
+      return true;
+    }
+
+    public synchronized int maxLine() {
+      return maxLine;
+    }
+
+    public synchronized boolean has(CoverageType type, Kind kind, int line) {
+      return get(type, kind, line) != MISSING;
+    }
+
+    /**
+     * Value at the given line, or -1 if none.
+     */
+    public synchronized int get(CoverageType type, Kind kind, int line) {
+      int[] array = values[index(type, kind)];
+      if (array == null || line >= array.length) {
+        return MISSING;
+      }
+      return array[line];
+    }
+
+    /**
+     * Values encoded with {@link KeyValueFormat}, for example {@code "1=2;3=0"}, or null if none
+     */
+    @CheckForNull
+    public synchronized String format(CoverageType type, Kind kind) {
+      int[] array = values[index(type, kind)];
+      if (array == null) {
+        return null;
+      }
+      StringBuilder sb = new StringBuilder();
+      for (int line = 1; line < array.length; line++) {
+        if (array[line] != MISSING) {
+          if (sb.length() > 0) {
+            sb.append(KeyValueFormat.PAIR_SEPARATOR);
+          }
+          sb.append(line).append(KeyValueFormat.FIELD_SEPARATOR).append(array[line]);
+        }
+      }
+      return sb.toString();
+    }
+
+    private static int index(CoverageType type, Kind kind) {
+      return type.ordinal() * Kind.values().length + kind.ordinal();
+    }
+  }
+
+  private static class MetricTarget {
+    private final Metric<String> metric;
+    private final CoverageType type;
+    private final Kind kind;
+
+    private MetricTarget(Metric<String> metric, CoverageType type, Kind kind) {
+      this.metric = metric;
+      this.type = type;
+      this.kind = kind;
+    }
+
+    @CheckForNull
+    private Measure toMeasure(FileCoverage coverage) {
+      String data = coverage.format(type, kind);
+      return data == null ? null : new Measure<>(metric).setData(data);
+    }
+  }
+}
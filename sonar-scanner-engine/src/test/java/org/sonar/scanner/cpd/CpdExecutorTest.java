@@ -36,6 +36,8 @@ import org.sonar.api.resources.Project;
 import org.sonar.api.utils.log.LogTester;
 import org.sonar.api.utils.log.LoggerLevel;
 import org.sonar.core.util.CloseableIterator;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
 import org.sonar.duplications.index.CloneGroup;
 import org.sonar.duplications.index.ClonePart;
 import org.sonar.scanner.protocol.output.ScannerReport.Duplicate;
@@ -113,6 +115,43 @@ public class CpdExecutorTest {
     assertThat(executor.getMinimumTokens("php")).isEqualTo(33);
   }
 
+  @Test
+  public void single_thread_by_default() {
+    assertThat(executor.getThreads()).isEqualTo(1);
+
+    settings.setProperty("sonar.cpd.threads", "4");
+    assertThat(executor.getThreads()).isEqualTo(4);
+
+    settings.setProperty("sonar.cpd.threads", "0");
+    assertThat(executor.getThreads()).isEqualTo(1);
+  }
+
+  @Test
+  public void detect_duplications_with_several_threads() {
+    settings.setProperty("sonar.cpd.threads", "3");
+    SonarCpdBlockIndex realIndex = new SonarCpdBlockIndex(publisher, componentCache, settings);
+    BatchComponent[] components = new BatchComponent[6];
+    for (int i = 0; i < components.length; i++) {
+      components[i] = createComponent("src/Bar" + i + ".java", 10);
+      ((DefaultInputFile) components[i].inputComponent()).setLanguage("java");
+      realIndex.insert((DefaultInputFile) components[i].inputComponent(), newBlocks(components[i].key(), 4));
+    }
+    executor = new CpdExecutor(settings, realIndex, publisher, componentCache);
+
+    executor.execute();
+
+    for (BatchComponent component : components) {
+      List<Duplication> dups = new ArrayList<>();
+      try (CloseableIterator<Duplication> it = reader.readComponentDuplications(component.batchId())) {
+        while (it.hasNext()) {
+          dups.add(it.next());
+        }
+      }
+      assertThat(dups).hasSize(1);
+      assertThat(dups.get(0).getDuplicateList()).hasSize(components.length - 1);
+    }
+  }
+
   @Test
   public void testNothingToSave() {
     executor.saveDuplications(batchComponent1, Collections.<CloneGroup>emptyList());
@@ -234,6 +273,20 @@ public class CpdExecutorTest {
     assertThat(d.getDuplicate(0).getRange().getEndLine()).isEqualTo(rangeEndLine);
   }
 
+  private static List<Block> newBlocks(String resourceId, int count) {
+    List<Block> blocks = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      blocks.add(Block.builder()
+        .setResourceId(resourceId)
+        .setBlockHash(new ByteArray((long) i))
+        .setIndexInFile(i)
+        .setLines(i + 1, i + 2)
+        .setUnit(i, i + 10)
+        .build());
+    }
+    return blocks;
+  }
+
   private CloneGroup newCloneGroup(ClonePart... parts) {
     return CloneGroup.builder().setLength(0).setOrigin(parts[0]).setParts(Arrays.asList(parts)).build();
   }
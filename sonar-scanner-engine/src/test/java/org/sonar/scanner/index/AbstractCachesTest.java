@@ -43,10 +43,17 @@ public abstract class AbstractCachesTest {
   protected Caches caches;
 
   private static CachesManager createCacheOnTemp() {
-    Map<String, String> props = ImmutableMap.of(CoreProperties.WORKING_DIRECTORY, temp.getRoot().getAbsolutePath(),
-      CoreProperties.GLOBAL_WORKING_DIRECTORY, temp.getRoot().getAbsolutePath());
+    return createCacheOnTemp(ImmutableMap.<String, String>of());
+  }
 
-    return new CachesManager(new GlobalTempFolderProvider().provide(new GlobalProperties(props)));
+  protected static CachesManager createCacheOnTemp(Map<String, String> cacheProps) {
+    Map<String, String> props = ImmutableMap.<String, String>builder()
+      .put(CoreProperties.WORKING_DIRECTORY, temp.getRoot().getAbsolutePath())
+      .put(CoreProperties.GLOBAL_WORKING_DIRECTORY, temp.getRoot().getAbsolutePath())
+      .putAll(cacheProps)
+      .build();
+    GlobalProperties globalProperties = new GlobalProperties(props);
+    return new CachesManager(new GlobalTempFolderProvider().provide(globalProperties), globalProperties);
   }
 
   @BeforeClass
@@ -0,0 +1,98 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.index;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.scanner.index.CacheValueStore.Overflow;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CacheValueStoreTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void keep_values_on_heap_within_budget() throws IOException {
+    CacheValueStore underTest = new CacheValueStore(10, Overflow.MMAP, temp.newFolder(), 16);
+
+    Object handle = underTest.store(new byte[] {1, 2, 3});
+
+    assertThat(handle).isInstanceOf(byte[].class);
+    assertThat(underTest.load(handle)).isEqualTo(new byte[] {1, 2, 3});
+    assertThat(underTest.heapSize()).isEqualTo(3);
+    assertThat(underTest.segmentCount()).isZero();
+
+    underTest.release(handle);
+    assertThat(underTest.heapSize()).isZero();
+  }
+
+  @Test
+  public void overflow_in_memory_mapped_files() throws IOException {
+    File dir = temp.newFolder();
+    CacheValueStore underTest = new CacheValueStore(4, Overflow.MMAP, dir, 16);
+
+    verifyOverflow(underTest);
+    assertThat(dir.listFiles()).hasSize(2);
+
+    underTest.close();
+    assertThat(dir.listFiles()).isEmpty();
+  }
+
+  @Test
+  public void overflow_in_direct_buffers() throws IOException {
+    File dir = temp.newFolder();
+    CacheValueStore underTest = new CacheValueStore(4, Overflow.DIRECT, dir, 16);
+
+    verifyOverflow(underTest);
+    assertThat(dir.listFiles()).isEmpty();
+  }
+
+  @Test
+  public void keep_values_bigger_than_segments_on_heap() throws IOException {
+    CacheValueStore underTest = new CacheValueStore(0, Overflow.DIRECT, temp.newFolder(), 16);
+
+    Object handle = underTest.store(new byte[20]);
+
+    assertThat(handle).isInstanceOf(byte[].class);
+    assertThat(underTest.segmentCount()).isZero();
+  }
+
+  private static void verifyOverflow(CacheValueStore underTest) {
+    Object onHeap = underTest.store(new byte[] {1, 2, 3});
+    Object offHeap1 = underTest.store(new byte[] {4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+    Object offHeap2 = underTest.store(new byte[] {14, 15, 16, 17, 18, 19, 20, 21});
+
+    assertThat(onHeap).isInstanceOf(byte[].class);
+    assertThat(offHeap1).isNotInstanceOf(byte[].class);
+    assertThat(offHeap2).isNotInstanceOf(byte[].class);
+    assertThat(underTest.load(onHeap)).isEqualTo(new byte[] {1, 2, 3});
+    assertThat(underTest.load(offHeap1)).isEqualTo(new byte[] {4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+    assertThat(underTest.load(offHeap2)).isEqualTo(new byte[] {14, 15, 16, 17, 18, 19, 20, 21});
+    assertThat(underTest.heapSize()).isEqualTo(3);
+    assertThat(underTest.offHeapSize()).isEqualTo(18);
+    // second value does not fit in the remaining space of the first segment
+    assertThat(underTest.segmentCount()).isEqualTo(2);
+  }
+}
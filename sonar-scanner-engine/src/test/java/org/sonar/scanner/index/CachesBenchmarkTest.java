@@ -0,0 +1,172 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.index;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.sonar.api.batch.measure.MetricFinder;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Measure;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.resources.File;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.scanner.issue.IssueCache;
+import org.sonar.scanner.issue.tracking.TrackedIssue;
+import org.sonar.scanner.scan.measure.MeasureCache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Not a strict benchmark, but gives an idea of the gain of the in-memory engine over Persistit
+ * on the measure and issue caches, sequentially and from concurrent threads.
+ */
+@Ignore("Benchmark, to be run manually")
+public class CachesBenchmarkTest extends AbstractCachesTest {
+
+  private static final Logger LOG = Loggers.get(CachesBenchmarkTest.class);
+
+  private static final int NB_FILES = 2_000;
+  private static final int NB_ISSUES_PER_FILE = 5;
+  private static final int NB_THREADS = 4;
+  private static final List<Metric> METRICS = ImmutableList.<Metric>of(CoreMetrics.NCLOC, CoreMetrics.LINES, CoreMetrics.COMPLEXITY);
+
+  @Test
+  public void compare_memory_and_persistit_engines() throws Exception {
+    long persistit = run("persistit", ImmutableMap.of(CachesManager.ENGINE_PROPERTY, "persistit", CachesManager.HEAP_SIZE_PROPERTY, "0"));
+    long memory = run("memory", ImmutableMap.of(CachesManager.ENGINE_PROPERTY, "memory"));
+    long offHeap = run("memory with mmap overflow", ImmutableMap.of(CachesManager.ENGINE_PROPERTY, "memory", CachesManager.HEAP_SIZE_PROPERTY, "0"));
+
+    LOG.info("{} files, {} measures, {} issues: persistit {} ms, memory {} ms, memory with mmap overflow {} ms", NB_FILES, NB_FILES * METRICS.size(),
+      NB_FILES * NB_ISSUES_PER_FILE, persistit, memory, offHeap);
+  }
+
+  private static long run(String name, ImmutableMap<String, String> props) throws Exception {
+    CachesManager manager = createCacheOnTemp(props);
+    Caches benchCaches = new Caches(manager);
+    try {
+      MeasureCache measureCache = new MeasureCache(benchCaches, metricFinder());
+      IssueCache issueCache = new IssueCache(benchCaches);
+
+      long start = System.currentTimeMillis();
+      write(measureCache, issueCache, 0, NB_FILES);
+      read(measureCache, issueCache, 0, NB_FILES);
+      long sequential = System.currentTimeMillis() - start;
+
+      start = System.currentTimeMillis();
+      ExecutorService executor = Executors.newFixedThreadPool(NB_THREADS);
+      try {
+        List<Future<Void>> futures = new ArrayList<>();
+        int filesPerThread = NB_FILES / NB_THREADS;
+        for (int t = 0; t < NB_THREADS; t++) {
+          futures.add(executor.submit(new Worker(measureCache, issueCache, NB_FILES + t * filesPerThread, filesPerThread)));
+        }
+        for (Future<Void> future : futures) {
+          future.get();
+        }
+      } finally {
+        executor.shutdown();
+      }
+      long concurrent = System.currentTimeMillis() - start;
+
+      assertThat(measureCache.all()).hasSize(2 * NB_FILES * METRICS.size());
+      assertThat(issueCache.all()).hasSize(2 * NB_FILES * NB_ISSUES_PER_FILE);
+      assertThat(issueCache.componentKeys()).hasSize(2 * NB_FILES);
+
+      LOG.info("{}: sequential {} ms, {} threads {} ms", name, sequential, NB_THREADS, concurrent);
+      return sequential + concurrent;
+    } finally {
+      benchCaches.stop();
+      manager.stop();
+    }
+  }
+
+  private static void write(MeasureCache measureCache, IssueCache issueCache, int firstFile, int nbFiles) {
+    for (int i = firstFile; i < firstFile + nbFiles; i++) {
+      File file = file(i);
+      for (Metric metric : METRICS) {
+        measureCache.put(file, new Measure(metric, (double) i));
+      }
+      for (int j = 0; j < NB_ISSUES_PER_FILE; j++) {
+        TrackedIssue issue = new TrackedIssue();
+        issue.setKey("ISSUE_" + i + "_" + j);
+        issue.setComponentKey(file.getEffectiveKey());
+        issue.setMessage("message of issue " + j);
+        issueCache.put(issue);
+      }
+    }
+  }
+
+  private static void read(MeasureCache measureCache, IssueCache issueCache, int firstFile, int nbFiles) {
+    for (int i = firstFile; i < firstFile + nbFiles; i++) {
+      File file = file(i);
+      for (Metric metric : METRICS) {
+        assertThat(measureCache.byMetric(file, metric.getKey()).getValue()).isEqualTo((double) i);
+      }
+      assertThat(measureCache.byResource(file)).hasSize(METRICS.size());
+      assertThat(issueCache.byComponent(file.getEffectiveKey())).hasSize(NB_ISSUES_PER_FILE);
+    }
+  }
+
+  private static File file(int index) {
+    File file = File.create("src/Foo" + index + ".java");
+    file.setEffectiveKey("struts:src/Foo" + index + ".java");
+    return file;
+  }
+
+  private static MetricFinder metricFinder() {
+    MetricFinder metricFinder = mock(MetricFinder.class);
+    for (Metric metric : METRICS) {
+      when(metricFinder.findByKey(metric.getKey())).thenReturn(metric);
+    }
+    return metricFinder;
+  }
+
+  private static class Worker implements Callable<Void> {
+    private final MeasureCache measureCache;
+    private final IssueCache issueCache;
+    private final int firstFile;
+    private final int nbFiles;
+
+    private Worker(MeasureCache measureCache, IssueCache issueCache, int firstFile, int nbFiles) {
+      this.measureCache = measureCache;
+      this.issueCache = issueCache;
+      this.firstFile = firstFile;
+      this.nbFiles = nbFiles;
+    }
+
+    @Override
+    public Void call() {
+      write(measureCache, issueCache, firstFile, nbFiles);
+      read(measureCache, issueCache, firstFile, nbFiles);
+      return null;
+    }
+  }
+}
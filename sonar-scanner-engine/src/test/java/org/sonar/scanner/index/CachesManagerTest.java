@@ -19,13 +19,20 @@
  */
 package org.sonar.scanner.index;
 
+import com.google.common.collect.ImmutableMap;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 
 import java.io.File;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class CachesManagerTest extends AbstractCachesTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
   @Test
   public void should_stop_and_clean_temp_dir() {
     File tempDir = cachesManager.tempDir();
@@ -39,4 +46,47 @@ public class CachesManagerTest extends AbstractCachesTest {
     assertThat(cachesManager.tempDir()).isNull();
     assertThat(cachesManager.persistit()).isNull();
   }
+
+  @Test
+  public void memory_engine_by_default() {
+    CachesManager underTest = createCacheOnTemp(ImmutableMap.<String, String>of());
+    try {
+      assertThat(underTest.engine()).isEqualTo(CachesManager.Engine.MEMORY);
+      assertThat(underTest.heapBudget()).isEqualTo(Runtime.getRuntime().maxMemory() / 5);
+      assertThat(underTest.overflow()).isEqualTo(CacheValueStore.Overflow.MMAP);
+    } finally {
+      underTest.stop();
+    }
+  }
+
+  @Test
+  public void configure_engine() {
+    CachesManager underTest = createCacheOnTemp(ImmutableMap.of(
+      CachesManager.ENGINE_PROPERTY, "persistit",
+      CachesManager.HEAP_SIZE_PROPERTY, "16",
+      CachesManager.OVERFLOW_PROPERTY, "Direct"));
+    try {
+      assertThat(underTest.engine()).isEqualTo(CachesManager.Engine.PERSISTIT);
+      assertThat(underTest.heapBudget()).isEqualTo(16L * 1024 * 1024);
+      assertThat(underTest.overflow()).isEqualTo(CacheValueStore.Overflow.DIRECT);
+    } finally {
+      underTest.stop();
+    }
+  }
+
+  @Test
+  public void fail_if_engine_is_unknown() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Invalid value of property sonar.scanner.cache.engine: foo");
+
+    createCacheOnTemp(ImmutableMap.of(CachesManager.ENGINE_PROPERTY, "foo"));
+  }
+
+  @Test
+  public void fail_if_heap_size_is_negative() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Property sonar.scanner.cache.heapSizeInMb must be positive: -1");
+
+    createCacheOnTemp(ImmutableMap.of(CachesManager.HEAP_SIZE_PROPERTY, "-1"));
+  }
 }
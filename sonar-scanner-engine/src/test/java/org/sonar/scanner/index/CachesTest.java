@@ -19,6 +19,7 @@
  */
 package org.sonar.scanner.index;
 
+import com.google.common.collect.ImmutableMap;
 import java.io.Serializable;
 
 import com.persistit.exception.PersistitException;
@@ -36,6 +37,33 @@ public class CachesTest extends AbstractCachesTest {
     assertThat(cache).isNotNull();
   }
 
+  @Test
+  public void should_create_memory_storage_by_default() {
+    Cache<String> cache = caches.createCache("foo");
+    assertThat(cache.storage()).isInstanceOf(MemoryCacheStorage.class);
+    assertThat(caches.valueStore()).isNotNull();
+  }
+
+  @Test
+  public void should_create_persistit_storage_if_configured() {
+    CachesManager persistitManager = createCacheOnTemp(ImmutableMap.of(CachesManager.ENGINE_PROPERTY, "persistit"));
+    Caches persistitCaches = new Caches(persistitManager);
+    try {
+      Cache<String> cache = persistitCaches.createCache("foo");
+      assertThat(cache.storage()).isInstanceOf(PersistitCacheStorage.class);
+      assertThat(persistitCaches.valueStore()).isNull();
+
+      cache.put("europe", "france", "paris");
+      cache.put("europe", "italy", "rome");
+      assertThat(cache.get("europe", "france")).isEqualTo("paris");
+      assertThat(cache.keySet("europe")).containsOnly("france", "italy");
+      assertThat(cache.values("europe")).containsOnly("paris", "rome");
+    } finally {
+      persistitCaches.stop();
+      persistitManager.stop();
+    }
+  }
+
   @Test
   public void should_not_create_cache_twice() {
     caches.<Element>createCache("foo");
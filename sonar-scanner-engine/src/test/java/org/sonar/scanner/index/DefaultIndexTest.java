@@ -40,6 +40,7 @@ import org.sonar.scanner.index.BatchComponentCache;
 import org.sonar.scanner.index.DefaultIndex;
 import org.sonar.scanner.scan.measure.MeasureCache;
 import org.sonar.scanner.sensor.DefaultSensorStorage;
+import org.sonar.scanner.sensor.coverage.LineCoverageCache;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
@@ -66,7 +67,7 @@ public class DefaultIndexTest {
 
     DefaultProjectTree projectTree = mock(DefaultProjectTree.class);
     BatchComponentCache resourceCache = new BatchComponentCache();
-    index = new DefaultIndex(resourceCache, projectTree, mock(MeasureCache.class));
+    index = new DefaultIndex(resourceCache, projectTree, mock(MeasureCache.class), new LineCoverageCache());
 
     baseDir = temp.newFolder();
     project = new Project("project");
@@ -153,6 +154,36 @@ public class DefaultIndexTest {
     assertThat(index.getMeasures(dir, MeasuresFilters.metric("ncloc"))).isNull();
   }
 
+  @Test
+  public void shouldIndexResourcesOfModulesAnalyzedInParallel() throws Exception {
+    final File fileOfA = File.create("src/org/foo/Bar.java", null, false);
+    final File fileOfB = File.create("src/org/foo/Bar.java", null, false);
+
+    Thread threadOfA = new Thread() {
+      @Override
+      public void run() {
+        index.setThreadProject(moduleA, mock(DefaultSensorStorage.class));
+        index.index(fileOfA);
+      }
+    };
+    threadOfA.start();
+    threadOfA.join();
+    index.setThreadProject(moduleB, mock(DefaultSensorStorage.class));
+    assertThat(index.index(fileOfB)).isTrue();
+
+    assertThat(fileOfA.getEffectiveKey()).isEqualTo("moduleA:src/org/foo/Bar.java");
+    assertThat(fileOfB.getEffectiveKey()).isEqualTo("moduleB:src/org/foo/Bar.java");
+    assertThat(index.getProject()).isEqualTo(moduleB);
+    assertThat(index.getParent(File.create("src/org/foo/Bar.java", null, false)).getEffectiveKey()).isEqualTo("moduleB:src/org/foo");
+
+    // resources of module A are kept when module B is done
+    index.clear();
+    index.setThreadProject(moduleA, mock(DefaultSensorStorage.class));
+    assertThat(index.isIndexed(File.create("src/org/foo/Bar.java", null, false), true)).isTrue();
+    index.clear();
+    assertThat(index.isIndexed(File.create("src/org/foo/Bar.java", null, false), true)).isFalse();
+  }
+
   @Test
   public void shouldComputePathOfIndexedModules() {
     assertThat(index.getResource(project).getPath()).isNull();
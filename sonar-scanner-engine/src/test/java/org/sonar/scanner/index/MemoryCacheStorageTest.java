@@ -0,0 +1,127 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.index;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.scanner.index.CacheValueStore.Overflow;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MemoryCacheStorageTest extends AbstractCachesTest {
+
+  private CacheValueStore store;
+  private MemoryCacheStorage underTest;
+
+  @Before
+  public void setUp() throws Exception {
+    store = new CacheValueStore(1024, Overflow.DIRECT, temp.newFolder(), 4096);
+    underTest = new MemoryCacheStorage("test", new CacheCodec(cachesManager.persistit()), store);
+  }
+
+  @Test
+  public void values_overflow_off_heap() {
+    for (int i = 0; i < 1_000; i++) {
+      underTest.put(new Object[] {"file" + i, "metric"}, "value of file " + i);
+    }
+
+    assertThat(store.heapSize()).isLessThanOrEqualTo(1024);
+    assertThat(store.offHeapSize()).isGreaterThan(0);
+    assertThat(store.segmentCount()).isGreaterThan(1);
+    for (int i = 0; i < 1_000; i++) {
+      assertThat(underTest.get(new Object[] {"file" + i, "metric"})).isEqualTo("value of file " + i);
+    }
+    assertThat(ImmutableList.copyOf(underTest.values(new Object[0]))).hasSize(1_000);
+  }
+
+  @Test
+  public void replaced_and_removed_values_release_heap() {
+    underTest.put(new Object[] {"foo"}, "bar");
+    long size = store.heapSize();
+    assertThat(size).isGreaterThan(0);
+
+    underTest.put(new Object[] {"foo"}, "baz");
+    assertThat(store.heapSize()).isEqualTo(size);
+
+    underTest.remove(new Object[] {"foo"});
+    assertThat(store.heapSize()).isZero();
+  }
+
+  @Test
+  public void key_set_ignores_value_of_prefix() {
+    underTest.put(new Object[] {"europe"}, "continent");
+    underTest.put(new Object[] {"europe", "france"}, "paris");
+    underTest.put(new Object[] {"europe", "france", "poitiers"}, "notre dame");
+    underTest.put(new Object[] {"europe", "italy"}, "rome");
+
+    assertThat(underTest.keySet(new Object[] {"europe"})).containsExactly("france", "italy");
+    assertThat(underTest.keySet(new Object[0])).containsExactly("europe");
+    assertThat(ImmutableList.copyOf(underTest.values(new Object[] {"europe"}))).containsExactly("continent", "paris", "notre dame", "rome");
+  }
+
+  @Test
+  public void support_concurrent_accesses() throws Exception {
+    int nbThreads = 8;
+    final int nbKeys = 5_000;
+    ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+    try {
+      List<Future<Integer>> futures = new ArrayList<>();
+      for (int t = 0; t < nbThreads; t++) {
+        final String thread = "thread" + t;
+        futures.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            int found = 0;
+            for (int i = 0; i < nbKeys; i++) {
+              underTest.put(new Object[] {thread, i}, thread + i);
+              if ((thread + i).equals(underTest.get(new Object[] {thread, i}))) {
+                found++;
+              }
+            }
+            return found;
+          }
+        }));
+      }
+      for (Future<Integer> future : futures) {
+        assertThat(future.get()).isEqualTo(nbKeys);
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    assertThat(underTest.size()).isEqualTo(nbThreads * nbKeys);
+    assertThat(underTest.keySet(new Object[0])).hasSize(nbThreads);
+    assertThat(ImmutableList.copyOf(underTest.values(new Object[] {"thread3"}))).hasSize(nbKeys);
+  }
+
+  @Test
+  public void successor_of_bytes() {
+    assertThat(MemoryCacheStorage.successor(new byte[] {1, 2, 0})).isEqualTo(new byte[] {1, 2, 1});
+    assertThat(MemoryCacheStorage.successor(new byte[] {1, (byte) 0xFF})).isEqualTo(new byte[] {2});
+    assertThat(MemoryCacheStorage.successor(new byte[] {(byte) 0xFF, (byte) 0xFF})).isNull();
+  }
+}
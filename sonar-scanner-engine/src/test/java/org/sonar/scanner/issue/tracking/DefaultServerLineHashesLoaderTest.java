@@ -19,9 +19,13 @@
  */
 package org.sonar.scanner.issue.tracking;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Arrays;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -29,9 +33,15 @@ import org.junit.rules.ExpectedException;
 import org.sonar.api.utils.HttpDownloader;
 import org.sonar.scanner.WsTestUtil;
 import org.sonar.scanner.bootstrap.BatchWsClient;
+import org.sonar.scanner.protocol.input.ScannerInput;
+import org.sonarqube.ws.client.HttpException;
+import org.sonarqube.ws.client.WsRequest;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 public class DefaultServerLineHashesLoaderTest {
   private BatchWsClient wsClient;
@@ -73,4 +83,44 @@ public class DefaultServerLineHashesLoaderTest {
     lastSnapshots.getLineHashes("foo");
   }
 
+  @Test
+  public void should_use_prefetched_line_hashes() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ScannerInput.ServerFile.newBuilder().setKey("foo").addLineHash("ae12").addLineHash("").addLineHash("43fb").build().writeDelimitedTo(output);
+    ScannerInput.ServerFile.newBuilder().setKey("bar").build().writeDelimitedTo(output);
+    WsTestUtil.mockStream(wsClient, "/batch/files", new ByteArrayInputStream(output.toByteArray()));
+    ServerLineHashesLoader lastSnapshots = new DefaultServerLineHashesLoader(wsClient);
+
+    lastSnapshots.prefetch(Arrays.asList("foo", "bar"));
+
+    assertThat(lastSnapshots.getLineHashes("foo")).containsExactly("ae12", "", "43fb");
+    assertThat(lastSnapshots.getLineHashes("bar")).containsExactly("");
+    verify(wsClient, times(1)).call(any(WsRequest.class));
+  }
+
+  @Test
+  public void should_load_single_file_if_not_prefetched() throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ScannerInput.ServerFile.newBuilder().setKey("foo").addLineHash("ae12").build().writeDelimitedTo(output);
+    WsTestUtil.mockStream(wsClient, "/batch/files", new ByteArrayInputStream(output.toByteArray()));
+    WsTestUtil.mockReader(wsClient, "/api/sources/hash?key=bar", new StringReader("43fb"));
+    ServerLineHashesLoader lastSnapshots = new DefaultServerLineHashesLoader(wsClient);
+
+    lastSnapshots.prefetch(Arrays.asList("foo", "bar"));
+
+    assertThat(lastSnapshots.getLineHashes("bar")).containsExactly("43fb");
+    WsTestUtil.verifyCall(wsClient, "/api/sources/hash?key=bar");
+  }
+
+  @Test
+  public void should_load_single_file_if_bulk_loading_is_not_supported() {
+    WsTestUtil.mockException(wsClient, "/batch/files", new HttpException("/batch/files", 404));
+    WsTestUtil.mockReader(wsClient, "/api/sources/hash?key=foo", new StringReader("ae12\n43fb"));
+    ServerLineHashesLoader lastSnapshots = new DefaultServerLineHashesLoader(wsClient);
+
+    lastSnapshots.prefetch(Arrays.asList("foo"));
+
+    assertThat(lastSnapshots.getLineHashes("foo")).containsExactly("ae12", "43fb");
+  }
+
 }
@@ -19,15 +19,19 @@
  */
 package org.sonar.scanner.report;
 
+import com.google.common.collect.ImmutableMap;
 import java.io.File;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.sensor.coverage.CoverageType;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Measure;
 import org.sonar.api.resources.Project;
@@ -40,9 +44,12 @@ import org.sonar.scanner.protocol.output.ScannerReportReader;
 import org.sonar.scanner.protocol.output.ScannerReportWriter;
 import org.sonar.scanner.report.MeasuresPublisher;
 import org.sonar.scanner.scan.measure.MeasureCache;
+import org.sonar.scanner.sensor.coverage.LineCoverageCache;
+import org.sonar.scanner.sensor.coverage.LineCoverageCache.Kind;
 
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
@@ -57,6 +64,7 @@ public class MeasuresPublisherTest {
   public TemporaryFolder temp = new TemporaryFolder();
 
   private MeasureCache measureCache;
+  private LineCoverageCache lineCoverageCache = new LineCoverageCache();
   private MeasuresPublisher publisher;
 
   private org.sonar.api.resources.Resource sampleFile;
@@ -70,7 +78,7 @@ public class MeasuresPublisherTest {
     resourceCache.add(sampleFile, null);
     measureCache = mock(MeasureCache.class);
     when(measureCache.byResource(any(Resource.class))).thenReturn(Collections.<Measure>emptyList());
-    publisher = new MeasuresPublisher(resourceCache, measureCache, new ScannerMetrics());
+    publisher = new MeasuresPublisher(resourceCache, measureCache, lineCoverageCache, new ScannerMetrics());
   }
 
   @Test
@@ -95,6 +103,31 @@ public class MeasuresPublisherTest {
     }
   }
 
+  @Test
+  public void publish_coverage_by_line_as_data_measures() throws Exception {
+    lineCoverageCache.put("foo:src/Foo.php", CoverageType.UNIT, Kind.HITS, ImmutableMap.of(1, 2, 3, 0));
+    lineCoverageCache.put("foo:src/Foo.php", CoverageType.UNIT, Kind.CONDITIONS, ImmutableMap.of(1, 4));
+    lineCoverageCache.put("foo:src/Foo.php", CoverageType.UNIT, Kind.COVERED_CONDITIONS, ImmutableMap.of(1, 3));
+    lineCoverageCache.put("foo:src/Foo.php", CoverageType.IT, Kind.HITS, ImmutableMap.of(2, 1));
+
+    File outputDir = temp.newFolder();
+    publisher.publish(new ScannerReportWriter(outputDir));
+
+    Map<String, String> dataByMetricKey = new HashMap<>();
+    try (CloseableIterator<ScannerReport.Measure> componentMeasures = new ScannerReportReader(outputDir).readComponentMeasures(2)) {
+      while (componentMeasures.hasNext()) {
+        ScannerReport.Measure measure = componentMeasures.next();
+        dataByMetricKey.put(measure.getMetricKey(), measure.getStringValue().getValue());
+      }
+    }
+    // inputs of the computation of coverage on new code
+    assertThat(dataByMetricKey).containsOnly(
+      entry(CoreMetrics.COVERAGE_LINE_HITS_DATA_KEY, "1=2;3=0"),
+      entry(CoreMetrics.CONDITIONS_BY_LINE_KEY, "1=4"),
+      entry(CoreMetrics.COVERED_CONDITIONS_BY_LINE_KEY, "1=3"),
+      entry(CoreMetrics.IT_COVERAGE_LINE_HITS_DATA_KEY, "2=1"));
+  }
+
   @Test
   public void fail_with_IAE_when_measure_has_no_value() throws Exception {
     Measure measure = new Measure<>(CoreMetrics.LINES_TO_COVER);
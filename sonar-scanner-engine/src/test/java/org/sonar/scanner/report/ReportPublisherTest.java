@@ -19,6 +19,7 @@
  */
 package org.sonar.scanner.report;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -40,13 +41,20 @@ import org.sonar.api.utils.log.LoggerLevel;
 import org.sonar.core.config.CorePropertyDefinitions;
 import org.sonar.scanner.analysis.DefaultAnalysisMode;
 import org.sonar.scanner.bootstrap.BatchWsClient;
+import org.sonar.scanner.protocol.output.ReportArchive;
+import org.sonar.scanner.protocol.output.ScannerReport;
+import org.sonar.scanner.protocol.output.ScannerReportReader;
 import org.sonar.scanner.report.AnalysisContextReportPublisher;
 import org.sonar.scanner.report.ReportPublisher;
 import org.sonar.scanner.report.ReportPublisherStep;
 import org.sonar.scanner.scan.ImmutableProjectReactor;
+import org.sonarqube.ws.WsCe;
+import org.sonarqube.ws.client.WsRequest;
+import org.sonarqube.ws.client.WsResponse;
 
 import static org.apache.commons.io.FileUtils.readFileToString;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -140,6 +148,27 @@ public class ReportPublisherTest {
     assertThat(detailsFile).doesNotExist();
   }
 
+  @Test
+  public void report_directory_is_dropped_once_archived() throws IOException {
+    TempFolder tempFolder = mock(TempFolder.class);
+    File archive = temp.newFile();
+    when(tempFolder.newFile("batch-report", ".bin")).thenReturn(archive);
+    WsResponse response = mock(WsResponse.class);
+    when(response.contentStream()).thenReturn(new ByteArrayInputStream(WsCe.SubmitResponse.newBuilder().setTaskId("TASK-123").build().toByteArray()));
+    when(wsClient.call(any(WsRequest.class)).failIfNotSuccessful()).thenReturn(response);
+    ReportPublisherStep step = writer -> writer.writeMetadata(ScannerReport.Metadata.newBuilder().setRootComponentRef(1).build());
+    ReportPublisher underTest = new ReportPublisher(settings, wsClient, server, contextPublisher, reactor, mode, tempFolder, new ReportPublisherStep[] {step});
+
+    underTest.start();
+    underTest.execute();
+
+    assertThat(temp.getRoot().toPath().resolve("batch-report")).doesNotExist();
+    assertThat(ReportArchive.isArchive(archive)).isTrue();
+    try (ScannerReportReader reader = new ScannerReportReader(archive)) {
+      assertThat(reader.readMetadata().getRootComponentRef()).isEqualTo(1);
+    }
+  }
+
   @Test
   public void should_not_delete_report_if_property_is_set() throws IOException {
     settings.setProperty("sonar.batch.keepReport", true);
@@ -0,0 +1,170 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.scan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.sonar.api.config.Settings;
+import org.sonar.api.resources.Project;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ModuleScanSchedulerTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  Project root = new Project("root");
+  Project moduleA = new Project("A").setParent(root);
+  Project moduleA1 = new Project("A1").setParent(moduleA);
+  Project moduleA2 = new Project("A2").setParent(moduleA);
+  Project moduleB = new Project("B").setParent(root);
+
+  @Test
+  public void analyze_modules_sequentially_by_default() {
+    ModuleScanScheduler underTest = new ModuleScanScheduler(new Settings());
+    final List<String> scanned = new ArrayList<>();
+
+    underTest.scan(root, new ModuleScanScheduler.ModuleScanner() {
+      @Override
+      public void scan(Project module) {
+        scanned.add(module.getKey());
+      }
+    });
+
+    assertThat(underTest.threads()).isEqualTo(1);
+    assertThat(scanned).containsExactly("A1", "A2", "A", "B", "root");
+  }
+
+  @Test
+  public void analyze_modules_in_parallel_after_their_sub_modules() {
+    ModuleScanScheduler underTest = newParallelScheduler(3);
+    final List<String> scanned = Collections.synchronizedList(new ArrayList<String>());
+
+    underTest.scan(root, new ModuleScanScheduler.ModuleScanner() {
+      @Override
+      public void scan(Project module) {
+        scanned.add(module.getKey());
+      }
+    });
+
+    assertThat(scanned).containsOnly("A1", "A2", "A", "B", "root");
+    assertThat(scanned.indexOf("A")).isGreaterThan(scanned.indexOf("A1")).isGreaterThan(scanned.indexOf("A2"));
+    assertThat(scanned.get(4)).isEqualTo("root");
+  }
+
+  @Test
+  public void index_modules_in_depth_first_order_when_analyzed_in_parallel() {
+    final ModuleScanScheduler underTest = newParallelScheduler(4);
+    final List<String> indexed = Collections.synchronizedList(new ArrayList<String>());
+    final AtomicInteger delay = new AtomicInteger(50);
+
+    underTest.scan(root, new ModuleScanScheduler.ModuleScanner() {
+      @Override
+      public void scan(final Project module) {
+        // first modules are the slowest to reach the indexing
+        sleep(delay.getAndAdd(-10));
+        underTest.index(module, new Runnable() {
+          @Override
+          public void run() {
+            indexed.add(module.getKey());
+          }
+        });
+      }
+    });
+
+    assertThat(indexed).containsExactly("A1", "A2", "A", "B", "root");
+  }
+
+  @Test
+  public void do_not_wait_for_modules_without_indexing() {
+    final ModuleScanScheduler underTest = newParallelScheduler(2);
+    final List<String> indexed = Collections.synchronizedList(new ArrayList<String>());
+
+    underTest.scan(root, new ModuleScanScheduler.ModuleScanner() {
+      @Override
+      public void scan(final Project module) {
+        if (module != moduleA1) {
+          underTest.index(module, new Runnable() {
+            @Override
+            public void run() {
+              indexed.add(module.getKey());
+            }
+          });
+        }
+      }
+    });
+
+    assertThat(indexed).containsExactly("A2", "A", "B", "root");
+  }
+
+  @Test
+  public void fail_with_the_failure_of_a_module() {
+    ModuleScanScheduler underTest = newParallelScheduler(2);
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Fail on A2");
+
+    underTest.scan(root, new ModuleScanScheduler.ModuleScanner() {
+      @Override
+      public void scan(Project module) {
+        if (module == moduleA2) {
+          throw new IllegalStateException("Fail on A2");
+        }
+      }
+    });
+  }
+
+  @Test
+  public void index_directly_when_not_in_parallel() {
+    ModuleScanScheduler underTest = newParallelScheduler(2);
+    final List<String> indexed = new ArrayList<>();
+
+    underTest.index(moduleA, new Runnable() {
+      @Override
+      public void run() {
+        indexed.add("A");
+      }
+    });
+
+    assertThat(indexed).containsExactly("A");
+  }
+
+  private static ModuleScanScheduler newParallelScheduler(int threads) {
+    Settings settings = new Settings();
+    settings.setProperty(ModuleScanScheduler.THREADS_PROPERTY, threads);
+    ModuleScanScheduler scheduler = new ModuleScanScheduler(settings);
+    assertThat(scheduler.threads()).isEqualTo(threads);
+    return scheduler;
+  }
+
+  private static void sleep(int millis) {
+    try {
+      Thread.sleep(Math.max(0, millis));
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -29,6 +29,8 @@ import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.batch.fs.internal.DefaultInputModule;
 import org.sonar.api.batch.measure.MetricFinder;
+import org.sonar.api.batch.sensor.coverage.CoverageType;
+import org.sonar.api.batch.sensor.coverage.internal.DefaultCoverage;
 import org.sonar.api.batch.sensor.highlighting.internal.DefaultHighlighting;
 import org.sonar.api.batch.sensor.measure.internal.DefaultMeasure;
 import org.sonar.api.batch.sensor.symbol.internal.DefaultSymbolTable;
@@ -45,11 +47,17 @@ import org.sonar.scanner.protocol.output.ScannerReportWriter;
 import org.sonar.scanner.report.ReportPublisher;
 import org.sonar.scanner.scan.measure.MeasureCache;
 import org.sonar.scanner.sensor.coverage.CoverageExclusions;
+import org.sonar.scanner.sensor.coverage.LineCoverageCache;
+import org.sonar.scanner.sensor.coverage.LineCoverageCache.FileCoverage;
+import org.sonar.scanner.sensor.coverage.LineCoverageCache.Kind;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class DefaultSensorStorageTest {
@@ -65,6 +73,7 @@ public class DefaultSensorStorageTest {
   private ModuleIssues moduleIssues;
   private Project project;
   private MeasureCache measureCache;
+  private LineCoverageCache lineCoverageCache;
 
   private BatchComponentCache resourceCache;
 
@@ -73,6 +82,11 @@ public class DefaultSensorStorageTest {
     MetricFinder metricFinder = mock(MetricFinder.class);
     when(metricFinder.<Integer>findByKey(CoreMetrics.NCLOC_KEY)).thenReturn(CoreMetrics.NCLOC);
     when(metricFinder.<String>findByKey(CoreMetrics.FUNCTION_COMPLEXITY_DISTRIBUTION_KEY)).thenReturn(CoreMetrics.FUNCTION_COMPLEXITY_DISTRIBUTION);
+    when(metricFinder.<Integer>findByKey(CoreMetrics.LINES_TO_COVER_KEY)).thenReturn(CoreMetrics.LINES_TO_COVER);
+    when(metricFinder.<Integer>findByKey(CoreMetrics.UNCOVERED_LINES_KEY)).thenReturn(CoreMetrics.UNCOVERED_LINES);
+    when(metricFinder.<Integer>findByKey(CoreMetrics.CONDITIONS_TO_COVER_KEY)).thenReturn(CoreMetrics.CONDITIONS_TO_COVER);
+    when(metricFinder.<Integer>findByKey(CoreMetrics.UNCOVERED_CONDITIONS_KEY)).thenReturn(CoreMetrics.UNCOVERED_CONDITIONS);
+    when(metricFinder.<String>findByKey(CoreMetrics.IT_COVERAGE_LINE_HITS_DATA_KEY)).thenReturn(CoreMetrics.IT_COVERAGE_LINE_HITS_DATA);
     settings = new Settings();
     moduleIssues = mock(ModuleIssues.class);
     project = new Project("myProject");
@@ -82,8 +96,49 @@ public class DefaultSensorStorageTest {
     resourceCache = new BatchComponentCache();
     ReportPublisher reportPublisher = mock(ReportPublisher.class);
     when(reportPublisher.getWriter()).thenReturn(new ScannerReportWriter(temp.newFolder()));
+    lineCoverageCache = new LineCoverageCache();
     underTest = new DefaultSensorStorage(metricFinder,
-      moduleIssues, settings, coverageExclusions, resourceCache, reportPublisher, measureCache, mock(SonarCpdBlockIndex.class));
+      moduleIssues, settings, coverageExclusions, resourceCache, reportPublisher, measureCache, mock(SonarCpdBlockIndex.class), lineCoverageCache);
+  }
+
+  @Test
+  public void store_coverage_by_line_in_line_coverage_cache() {
+    DefaultInputFile file = new DefaultInputFile("foo", "src/Foo.php").setLines(10);
+    Resource sonarFile = File.create("src/Foo.php").setEffectiveKey("foo:src/Foo.php");
+    resourceCache.add(sonarFile, null).setInputComponent(file);
+
+    new DefaultCoverage(underTest)
+      .onFile(file)
+      .ofType(CoverageType.UNIT)
+      .lineHits(2, 3)
+      .lineHits(4, 0)
+      .conditions(4, 2, 1)
+      .save();
+
+    FileCoverage coverage = lineCoverageCache.byComponent("foo:src/Foo.php");
+    assertThat(coverage.maxLine()).isEqualTo(4);
+    assertThat(coverage.get(CoverageType.UNIT, Kind.HITS, 2)).isEqualTo(3);
+    assertThat(coverage.get(CoverageType.UNIT, Kind.HITS, 3)).isEqualTo(-1);
+    assertThat(coverage.get(CoverageType.UNIT, Kind.HITS, 4)).isEqualTo(0);
+    assertThat(coverage.get(CoverageType.UNIT, Kind.CONDITIONS, 4)).isEqualTo(2);
+    assertThat(coverage.get(CoverageType.UNIT, Kind.COVERED_CONDITIONS, 4)).isEqualTo(1);
+    assertThat(coverage.has(CoverageType.IT, Kind.HITS, 2)).isFalse();
+    ArgumentCaptor<Measure> argumentCaptor = ArgumentCaptor.forClass(Measure.class);
+    verify(measureCache, times(4)).put(eq(sonarFile), argumentCaptor.capture());
+    assertThat(argumentCaptor.getAllValues()).extracting("metricKey").containsOnly(CoreMetrics.LINES_TO_COVER_KEY, CoreMetrics.UNCOVERED_LINES_KEY,
+      CoreMetrics.CONDITIONS_TO_COVER_KEY, CoreMetrics.UNCOVERED_CONDITIONS_KEY);
+  }
+
+  @Test
+  public void store_deprecated_coverage_by_line_measure_in_line_coverage_cache() {
+    Resource sonarFile = File.create("src/Foo.php").setEffectiveKey("foo:src/Foo.php");
+
+    underTest.saveMeasure(sonarFile, new Measure(CoreMetrics.IT_COVERAGE_LINE_HITS_DATA).setData("1=0;3=5"));
+
+    FileCoverage coverage = lineCoverageCache.byComponent("foo:src/Foo.php");
+    assertThat(coverage.get(CoverageType.IT, Kind.HITS, 1)).isEqualTo(0);
+    assertThat(coverage.get(CoverageType.IT, Kind.HITS, 3)).isEqualTo(5);
+    verify(measureCache, never()).put(any(Resource.class), any(Measure.class));
   }
 
   @Test
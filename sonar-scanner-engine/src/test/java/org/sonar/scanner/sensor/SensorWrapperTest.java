@@ -0,0 +1,106 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.sensor;
+
+import org.junit.Test;
+import org.sonar.api.batch.sensor.Sensor;
+import org.sonar.api.batch.sensor.SensorContext;
+import org.sonar.api.batch.sensor.SensorDescriptor;
+import org.sonar.api.batch.sensor.internal.DefaultSensorDescriptor;
+import org.sonar.api.resources.Project;
+import org.sonar.scanner.sensor.cache.IncrementalSensorExecutor;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SensorWrapperTest {
+
+  private SensorContext adaptor = mock(SensorContext.class);
+  private SensorOptimizer optimizer = mock(SensorOptimizer.class);
+  private IncrementalSensorExecutor incrementalExecutor = mock(IncrementalSensorExecutor.class);
+
+  @Test
+  public void execute_incremental_sensor_through_incremental_executor() {
+    Sensor sensor = spy(new FakeSensor(true));
+    when(incrementalExecutor.isEnabled()).thenReturn(true);
+
+    new SensorWrapper(sensor, adaptor, optimizer, incrementalExecutor).analyse(mock(Project.class), null);
+
+    verify(incrementalExecutor).execute(same(sensor), any(DefaultSensorDescriptor.class));
+    verify(sensor, never()).execute(adaptor);
+  }
+
+  @Test
+  public void execute_incremental_sensor_directly_when_cache_is_disabled() {
+    Sensor sensor = spy(new FakeSensor(true));
+    when(incrementalExecutor.isEnabled()).thenReturn(false);
+
+    new SensorWrapper(sensor, adaptor, optimizer, incrementalExecutor).analyse(mock(Project.class), null);
+
+    verify(sensor).execute(adaptor);
+    verify(incrementalExecutor, never()).execute(any(Sensor.class), any(DefaultSensorDescriptor.class));
+  }
+
+  @Test
+  public void execute_incremental_sensor_directly_without_incremental_executor() {
+    Sensor sensor = spy(new FakeSensor(true));
+
+    new SensorWrapper(sensor, adaptor, optimizer).analyse(mock(Project.class), null);
+
+    verify(sensor).execute(adaptor);
+  }
+
+  @Test
+  public void execute_other_sensors_directly() {
+    Sensor sensor = spy(new FakeSensor(false));
+    when(incrementalExecutor.isEnabled()).thenReturn(true);
+
+    new SensorWrapper(sensor, adaptor, optimizer, incrementalExecutor).analyse(mock(Project.class), null);
+
+    verify(sensor).execute(adaptor);
+    verify(incrementalExecutor, never()).execute(any(Sensor.class), any(DefaultSensorDescriptor.class));
+  }
+
+  static class FakeSensor implements Sensor {
+    private final boolean incremental;
+
+    FakeSensor(boolean incremental) {
+      this.incremental = incremental;
+    }
+
+    @Override
+    public void describe(SensorDescriptor descriptor) {
+      descriptor.name("Fake");
+      if (incremental) {
+        descriptor.incremental();
+      }
+    }
+
+    @Override
+    public void execute(SensorContext context) {
+      // nothing to do
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.sensor.cache;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.System2;
+import org.sonar.home.cache.FileCache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AnalysisCacheTest {
+
+  private static final String KEY = "0123456789abcdef0123456789abcdef";
+  private static final long NOW = 1_500_000_000_000L;
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private File dir;
+  private System2 system2 = mock(System2.class);
+
+  @Before
+  public void setUp() throws Exception {
+    dir = temp.newFolder();
+    when(system2.now()).thenReturn(NOW);
+  }
+
+  @Test
+  public void put_and_get_entries() {
+    AnalysisCache underTest = new AnalysisCache(dir, true, system2);
+    assertThat(underTest.get(KEY)).isNull();
+
+    underTest.put(KEY, new byte[] {1, 2, 3});
+    assertThat(underTest.get(KEY)).isEqualTo(new byte[] {1, 2, 3});
+
+    underTest.put(KEY, new byte[] {4});
+    assertThat(underTest.get(KEY)).isEqualTo(new byte[] {4});
+  }
+
+  @Test
+  public void do_nothing_when_disabled() {
+    AnalysisCache underTest = new AnalysisCache(dir, false, system2);
+    underTest.put(KEY, new byte[] {1, 2, 3});
+
+    assertThat(underTest.isEnabled()).isFalse();
+    assertThat(underTest.get(KEY)).isNull();
+    assertThat(dir.list()).isEmpty();
+  }
+
+  @Test
+  public void enabled_by_default_in_user_cache() throws Exception {
+    FileCache fileCache = mock(FileCache.class);
+    when(fileCache.getDir()).thenReturn(dir);
+    Settings settings = new Settings();
+
+    assertThat(new AnalysisCache(fileCache, settings).isEnabled()).isTrue();
+    settings.setProperty(AnalysisCache.ENABLED_PROPERTY, false);
+    assertThat(new AnalysisCache(fileCache, settings).isEnabled()).isFalse();
+  }
+
+  @Test
+  public void purge_entries_not_used_recently() {
+    AnalysisCache underTest = new AnalysisCache(dir, true, system2);
+    String otherKey = "fedcba9876543210fedcba9876543210";
+    underTest.put(KEY, new byte[] {1});
+    underTest.put(otherKey, new byte[] {2});
+    File oldEntry = new File(new File(dir, "fe"), otherKey);
+    oldEntry.setLastModified(NOW - TimeUnit.DAYS.toMillis(AnalysisCache.MAX_AGE_IN_DAYS + 1));
+    // used entries are kept
+    underTest.get(KEY);
+
+    underTest.stop();
+
+    assertThat(underTest.get(KEY)).isNotNull();
+    assertThat(underTest.get(otherKey)).isNull();
+  }
+}
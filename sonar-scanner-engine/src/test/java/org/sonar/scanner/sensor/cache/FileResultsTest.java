@@ -0,0 +1,180 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.sensor.cache;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.measure.MetricFinder;
+import org.sonar.api.batch.rule.Severity;
+import org.sonar.api.batch.sensor.highlighting.TypeOfText;
+import org.sonar.api.batch.sensor.highlighting.internal.DefaultHighlighting;
+import org.sonar.api.batch.sensor.internal.SensorStorage;
+import org.sonar.api.batch.sensor.issue.Issue;
+import org.sonar.api.batch.sensor.issue.internal.DefaultIssue;
+import org.sonar.api.batch.sensor.issue.internal.DefaultIssueLocation;
+import org.sonar.api.batch.sensor.measure.Measure;
+import org.sonar.api.batch.sensor.measure.internal.DefaultMeasure;
+import org.sonar.api.batch.sensor.symbol.internal.DefaultSymbolTable;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.duplications.internal.pmd.TokensLine;
+import org.sonar.scanner.sensor.DefaultSensorStorage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class FileResultsTest {
+
+  private DefaultInputFile file = new DefaultInputFile("foo", "src/Foo.php").initMetadata("first line\nsecond line\nthird line\n");
+  private MetricFinder metricFinder = mock(MetricFinder.class);
+  private DefaultSensorStorage storage = mock(DefaultSensorStorage.class);
+
+  @Before
+  public void setUp() {
+    when(metricFinder.<Integer>findByKey(CoreMetrics.NCLOC_KEY)).thenReturn(CoreMetrics.NCLOC);
+    when(metricFinder.<String>findByKey(CoreMetrics.FUNCTION_COMPLEXITY_DISTRIBUTION_KEY)).thenReturn(CoreMetrics.FUNCTION_COMPLEXITY_DISTRIBUTION);
+  }
+
+  @Test
+  public void replay_measures() {
+    FileResults results = new FileResults(file);
+    results.addMeasure(new DefaultMeasure<Integer>().on(file).forMetric(CoreMetrics.NCLOC).withValue(3));
+    results.addMeasure(new DefaultMeasure<String>().on(file).forMetric(CoreMetrics.FUNCTION_COMPLEXITY_DISTRIBUTION).withValue("1=0;2=1"));
+
+    assertThat(FileResults.replay(results.toBytes(), file, metricFinder, storage)).isTrue();
+
+    ArgumentCaptor<Measure> captor = ArgumentCaptor.forClass(Measure.class);
+    verify(storage, times(2)).store(captor.capture());
+    assertThat(captor.getAllValues()).extracting("metric", "value", "component").containsExactly(
+      tuple(CoreMetrics.NCLOC, 3, file),
+      tuple(CoreMetrics.FUNCTION_COMPLEXITY_DISTRIBUTION, "1=0;2=1", file));
+  }
+
+  @Test
+  public void replay_issues() {
+    FileResults results = new FileResults(file);
+    DefaultIssue issue = new DefaultIssue()
+      .forRule(RuleKey.of("php", "S1"))
+      .gap(2.0)
+      .overrideSeverity(Severity.BLOCKER)
+      .at(new DefaultIssueLocation().on(file).at(file.newRange(1, 0, 1, 5)).message("Fix it"));
+    issue.addLocation(new DefaultIssueLocation().on(file).at(file.selectLine(2)));
+    results.addIssue(issue);
+    results.addIssue(new DefaultIssue().forRule(RuleKey.of("php", "S2")).at(new DefaultIssueLocation().on(file)));
+    assertThat(results.isCacheable()).isTrue();
+
+    assertThat(FileResults.replay(results.toBytes(), file, metricFinder, storage)).isTrue();
+
+    ArgumentCaptor<Issue> captor = ArgumentCaptor.forClass(Issue.class);
+    verify(storage, times(2)).store(captor.capture());
+    Issue replayed = captor.getAllValues().get(0);
+    assertThat(replayed.ruleKey()).isEqualTo(RuleKey.of("php", "S1"));
+    assertThat(replayed.gap()).isEqualTo(2.0);
+    assertThat(replayed.overriddenSeverity()).isEqualTo(Severity.BLOCKER);
+    assertThat(replayed.primaryLocation().inputComponent()).isEqualTo(file);
+    assertThat(replayed.primaryLocation().message()).isEqualTo("Fix it");
+    assertThat(replayed.primaryLocation().textRange()).isEqualTo(file.newRange(1, 0, 1, 5));
+    assertThat(replayed.flows()).hasSize(1);
+    assertThat(replayed.flows().get(0).locations().get(0).textRange()).isEqualTo(file.selectLine(2));
+
+    Issue withoutRange = captor.getAllValues().get(1);
+    assertThat(withoutRange.ruleKey()).isEqualTo(RuleKey.of("php", "S2"));
+    assertThat(withoutRange.gap()).isNull();
+    assertThat(withoutRange.overriddenSeverity()).isNull();
+    assertThat(withoutRange.primaryLocation().textRange()).isNull();
+    assertThat(withoutRange.primaryLocation().message()).isNull();
+  }
+
+  @Test
+  public void replay_highlighting_symbols_and_cpd_tokens() {
+    FileResults results = new FileResults(file);
+    results.addHighlighting(new DefaultHighlighting(mock(SensorStorage.class)).onFile(file).highlight(1, 0, 1, 5, TypeOfText.KEYWORD));
+    DefaultSymbolTable symbolTable = new DefaultSymbolTable(mock(SensorStorage.class)).onFile(file);
+    symbolTable.newSymbol(1, 6, 1, 10).newReference(2, 0, 2, 6);
+    results.addSymbolTable(symbolTable);
+    List<TokensLine> tokensLines = Arrays.asList(new TokensLine(0, 1, 1, "firstline"), new TokensLine(2, 3, 2, "secondline"));
+    results.addCpdTokens(tokensLines);
+
+    assertThat(FileResults.replay(results.toBytes(), file, metricFinder, storage)).isTrue();
+
+    ArgumentCaptor<DefaultHighlighting> highlighting = ArgumentCaptor.forClass(DefaultHighlighting.class);
+    verify(storage).store(highlighting.capture());
+    assertThat(highlighting.getValue().getSyntaxHighlightingRuleSet()).hasSize(1);
+    assertThat(highlighting.getValue().getSyntaxHighlightingRuleSet().get(0).range()).isEqualTo(file.newRange(1, 0, 1, 5));
+    assertThat(highlighting.getValue().getSyntaxHighlightingRuleSet().get(0).getTextType()).isEqualTo(TypeOfText.KEYWORD);
+
+    ArgumentCaptor<DefaultSymbolTable> symbols = ArgumentCaptor.forClass(DefaultSymbolTable.class);
+    verify(storage).store(symbols.capture());
+    assertThat(symbols.getValue().getReferencesBySymbol()).containsOnlyKeys(file.newRange(1, 6, 1, 10));
+    assertThat(symbols.getValue().getReferencesBySymbol().get(file.newRange(1, 6, 1, 10))).containsOnly(file.newRange(2, 0, 2, 6));
+
+    ArgumentCaptor<List> tokens = ArgumentCaptor.forClass(List.class);
+    verify(storage).storeCpdTokens(eq(file), tokens.capture());
+    assertThat(tokens.getValue()).extracting("startUnit", "endUnit", "startLine", "value").containsExactly(
+      tuple(0, 1, 1, "firstline"),
+      tuple(2, 3, 2, "secondline"));
+  }
+
+  @Test
+  public void issues_located_on_other_files_are_not_cacheable() {
+    DefaultInputFile otherFile = new DefaultInputFile("foo", "src/Bar.php").initMetadata("bar\n");
+    FileResults results = new FileResults(file);
+    DefaultIssue issue = new DefaultIssue()
+      .forRule(RuleKey.of("php", "S1"))
+      .at(new DefaultIssueLocation().on(file));
+    issue.addLocation(new DefaultIssueLocation().on(otherFile));
+    results.addIssue(issue);
+
+    assertThat(results.isCacheable()).isFalse();
+  }
+
+  @Test
+  public void do_not_replay_anything_when_a_metric_does_not_exist_anymore() {
+    FileResults results = new FileResults(file);
+    results.addIssue(new DefaultIssue().forRule(RuleKey.of("php", "S2")).at(new DefaultIssueLocation().on(file)));
+    results.addMeasure(new DefaultMeasure<Integer>().on(file).forMetric(CoreMetrics.COMPLEXITY).withValue(3));
+
+    assertThat(FileResults.replay(results.toBytes(), file, metricFinder, storage)).isFalse();
+    verifyZeroInteractions(storage);
+  }
+
+  @Test
+  public void do_not_replay_corrupted_data() {
+    FileResults results = new FileResults(file);
+    results.addMeasure(new DefaultMeasure<Integer>().on(file).forMetric(CoreMetrics.NCLOC).withValue(3));
+    byte[] bytes = results.toBytes();
+
+    assertThat(FileResults.replay(Arrays.copyOf(bytes, bytes.length - 2), file, metricFinder, storage)).isFalse();
+    assertThat(FileResults.replay(new byte[0], file, metricFinder, storage)).isFalse();
+    verify(storage, never()).store(any(Measure.class));
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.sensor.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FilteredFileSystemTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private DefaultFileSystem fs;
+  private DefaultInputFile foo = new DefaultInputFile("foo", "src/Foo.php").setLanguage("php");
+  private DefaultInputFile bar = new DefaultInputFile("foo", "src/Bar.php").setLanguage("php");
+  private FilteredFileSystem underTest;
+
+  @Before
+  public void setUp() throws Exception {
+    fs = new DefaultFileSystem(temp.newFolder().toPath()).setEncoding(StandardCharsets.UTF_8).setWorkDir(temp.newFolder());
+    fs.add(foo).add(bar);
+    underTest = new FilteredFileSystem(fs, Collections.<InputFile>singleton(bar));
+  }
+
+  @Test
+  public void hide_excluded_files() {
+    assertThat(underTest.inputFiles(fs.predicates().all())).containsOnly(foo);
+    assertThat(underTest.files(fs.predicates().all())).containsOnly(foo.file());
+    assertThat(underTest.inputFile(fs.predicates().hasRelativePath("src/Foo.php"))).isEqualTo(foo);
+    assertThat(underTest.inputFile(fs.predicates().hasRelativePath("src/Bar.php"))).isNull();
+    assertThat(underTest.inputFile(fs.predicates().hasRelativePath("src/Unknown.php"))).isNull();
+    assertThat(underTest.hasFiles(fs.predicates().hasLanguage("php"))).isTrue();
+    assertThat(underTest.hasFiles(fs.predicates().hasRelativePath("src/Bar.php"))).isFalse();
+  }
+
+  @Test
+  public void delegate_everything_else() {
+    assertThat(underTest.baseDir()).isEqualTo(fs.baseDir());
+    assertThat(underTest.workDir()).isEqualTo(fs.workDir());
+    assertThat(underTest.encoding()).isEqualTo(StandardCharsets.UTF_8);
+    assertThat(underTest.predicates()).isSameAs(fs.predicates());
+    assertThat(underTest.languages()).containsOnly("php");
+    assertThat(underTest.resolvePath("src/Bar.php")).isEqualTo(fs.resolvePath("src/Bar.php"));
+  }
+}
@@ -0,0 +1,299 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.sensor.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.Plugin;
+import org.sonar.api.SonarProduct;
+import org.sonar.api.SonarQubeSide;
+import org.sonar.api.SonarQubeVersion;
+import org.sonar.api.batch.AnalysisMode;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.InputModule;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.measure.MetricFinder;
+import org.sonar.api.batch.rule.ActiveRules;
+import org.sonar.api.batch.rule.internal.ActiveRulesBuilder;
+import org.sonar.api.batch.sensor.Sensor;
+import org.sonar.api.batch.sensor.SensorContext;
+import org.sonar.api.batch.sensor.SensorDescriptor;
+import org.sonar.api.batch.sensor.coverage.CoverageType;
+import org.sonar.api.batch.sensor.coverage.internal.DefaultCoverage;
+import org.sonar.api.batch.sensor.highlighting.TypeOfText;
+import org.sonar.api.batch.sensor.highlighting.internal.DefaultHighlighting;
+import org.sonar.api.batch.sensor.internal.DefaultSensorDescriptor;
+import org.sonar.api.batch.sensor.issue.Issue;
+import org.sonar.api.batch.sensor.issue.NewIssue;
+import org.sonar.api.batch.sensor.measure.Measure;
+import org.sonar.api.config.Settings;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.Version;
+import org.sonar.core.platform.PluginInfo;
+import org.sonar.core.platform.PluginRepository;
+import org.sonar.scanner.sensor.DefaultSensorStorage;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IncrementalSensorExecutorTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private DefaultFileSystem fs;
+  private DefaultInputFile foo;
+  private DefaultInputFile bar;
+  private Settings settings = new Settings();
+  private ActiveRules activeRules = new ActiveRulesBuilder().build();
+  private AnalysisMode analysisMode = mock(AnalysisMode.class);
+  private DefaultSensorStorage storage = mock(DefaultSensorStorage.class);
+  private MetricFinder metricFinder = mock(MetricFinder.class);
+  private PluginRepository pluginRepository = mock(PluginRepository.class);
+  private SonarQubeVersion sonarRuntime = new SonarQubeVersion(Version.parse("6.0"), SonarProduct.SONARQUBE, SonarQubeSide.SCANNER);
+  private AnalysisCache cache;
+  private FakeIncrementalSensor sensor = new FakeIncrementalSensor();
+
+  @Before
+  public void setUp() throws Exception {
+    fs = new DefaultFileSystem(temp.newFolder().toPath());
+    foo = new DefaultInputFile("foo", "src/Foo.php").setLanguage("php").initMetadata("first line\nsecond line\n");
+    bar = new DefaultInputFile("foo", "src/Bar.php").setLanguage("php").initMetadata("bar\n");
+    fs.add(foo).add(bar);
+    cache = new AnalysisCache(temp.newFolder(), true, mock(System2.class));
+    when(metricFinder.<Integer>findByKey(CoreMetrics.NCLOC_KEY)).thenReturn(CoreMetrics.NCLOC);
+    when(pluginRepository.getPluginInfos()).thenReturn(Collections.<PluginInfo>emptyList());
+  }
+
+  @Test
+  public void replay_results_of_unchanged_files_and_hide_them_from_sensor() {
+    execute();
+    assertThat(sensor.analyzedFiles).containsOnly(foo, bar);
+    verify(storage, times(2)).store(any(Measure.class));
+    verify(storage, times(2)).store(any(DefaultHighlighting.class));
+
+    sensor.analyzedFiles.clear();
+    execute();
+
+    assertThat(sensor.analyzedFiles).isEmpty();
+    // data of the previous analysis are stored again
+    verify(storage, times(4)).store(any(Measure.class));
+    verify(storage, times(4)).store(any(DefaultHighlighting.class));
+  }
+
+  @Test
+  public void analyze_again_changed_files() {
+    execute();
+
+    bar.initMetadata("bar has changed\n");
+    sensor.analyzedFiles.clear();
+    execute();
+
+    assertThat(sensor.analyzedFiles).containsOnly(bar);
+    verify(storage, times(4)).store(any(Measure.class));
+  }
+
+  @Test
+  public void analyze_again_all_files_when_fingerprint_of_sensor_changes() {
+    execute();
+
+    settings.setProperty("sonar.php.file.suffixes", "php,inc");
+    sensor.analyzedFiles.clear();
+    execute();
+
+    assertThat(sensor.analyzedFiles).containsOnly(foo, bar);
+  }
+
+  @Test
+  public void remember_files_on_which_nothing_is_saved() {
+    sensor.silentFiles.add(bar);
+    execute();
+    verify(storage).store(any(Measure.class));
+
+    sensor.analyzedFiles.clear();
+    execute();
+
+    assertThat(sensor.analyzedFiles).isEmpty();
+    verify(storage, times(2)).store(any(Measure.class));
+  }
+
+  @Test
+  public void do_not_cache_files_with_coverage() {
+    sensor.coveredFiles.add(foo);
+    execute();
+    verify(storage).store(any(DefaultCoverage.class));
+
+    sensor.analyzedFiles.clear();
+    execute();
+
+    assertThat(sensor.analyzedFiles).containsOnly(foo);
+    verify(storage, times(2)).store(any(DefaultCoverage.class));
+  }
+
+  @Test
+  public void do_not_cache_files_with_issues_located_on_other_files() {
+    sensor.secondaryFile = bar;
+    execute();
+    verify(storage).store(any(Issue.class));
+
+    sensor.analyzedFiles.clear();
+    execute();
+
+    assertThat(sensor.analyzedFiles).containsOnly(foo);
+    verify(storage, times(2)).store(any(Issue.class));
+  }
+
+  @Test
+  public void analyze_all_files_when_cache_is_disabled() throws Exception {
+    cache = new AnalysisCache(temp.newFolder(), false, mock(System2.class));
+    execute();
+
+    sensor.analyzedFiles.clear();
+    execute();
+
+    assertThat(sensor.analyzedFiles).containsOnly(foo, bar);
+    verify(storage, times(4)).store(any(Measure.class));
+  }
+
+  @Test
+  public void fingerprint_changes_with_active_rules_of_sensor_repositories() {
+    String fingerprint = fingerprint();
+
+    activeRules = new ActiveRulesBuilder().create(RuleKey.of("java", "S1")).setSeverity(Severity.MAJOR).activate().build();
+    assertThat(fingerprint()).isEqualTo(fingerprint);
+
+    activeRules = new ActiveRulesBuilder().create(RuleKey.of("php", "S1")).setSeverity(Severity.MAJOR).activate().build();
+    String withRule = fingerprint();
+    assertThat(withRule).isNotEqualTo(fingerprint);
+
+    activeRules = new ActiveRulesBuilder().create(RuleKey.of("php", "S1")).setSeverity(Severity.MAJOR).setParam("max", "10").activate().build();
+    assertThat(fingerprint()).isNotEqualTo(withRule);
+  }
+
+  @Test
+  public void fingerprint_changes_with_settings_but_not_with_volatile_properties() {
+    String fingerprint = fingerprint();
+
+    settings.setProperty("sonar.projectDate", "2016-06-01");
+    settings.setProperty("sonar.projectVersion", "1.1");
+    settings.setProperty("sonar.buildString", "build-42");
+    settings.setProperty("sonar.login", "admin");
+    settings.setProperty("sonar.analysis.buildNumber", "42");
+    assertThat(fingerprint()).isEqualTo(fingerprint);
+
+    settings.setProperty("sonar.php.file.suffixes", "php,inc");
+    assertThat(fingerprint()).isNotEqualTo(fingerprint);
+  }
+
+  @Test
+  public void fingerprint_changes_with_plugin_of_sensor() {
+    String runtimeFingerprint = fingerprint();
+
+    PluginInfo info = new PluginInfo("php").setVersion(Version.create(2, 0)).setJarFile(temp.getRoot());
+    when(pluginRepository.getPluginInfos()).thenReturn(asList(info));
+    when(pluginRepository.getPluginInstance("php")).thenReturn(new FakePlugin());
+    String pluginFingerprint = fingerprint();
+    assertThat(pluginFingerprint).isNotEqualTo(runtimeFingerprint);
+
+    info.setVersion(Version.create(2, 1));
+    assertThat(fingerprint()).isNotEqualTo(pluginFingerprint);
+  }
+
+  @Test
+  public void fingerprint_changes_with_analysis_mode() {
+    String fingerprint = fingerprint();
+
+    when(analysisMode.isIssues()).thenReturn(true);
+    assertThat(fingerprint()).isNotEqualTo(fingerprint);
+  }
+
+  private void execute() {
+    newExecutor().execute(sensor, describe(sensor));
+  }
+
+  private String fingerprint() {
+    return newExecutor().sensorFingerprint(sensor, describe(sensor));
+  }
+
+  private IncrementalSensorExecutor newExecutor() {
+    return new IncrementalSensorExecutor(mock(InputModule.class), settings, fs, activeRules, analysisMode, storage, sonarRuntime, cache, metricFinder,
+      pluginRepository);
+  }
+
+  private static DefaultSensorDescriptor describe(Sensor sensor) {
+    DefaultSensorDescriptor descriptor = new DefaultSensorDescriptor();
+    sensor.describe(descriptor);
+    return descriptor;
+  }
+
+  private static class FakePlugin implements Plugin {
+    @Override
+    public void define(Context context) {
+      // no extensions
+    }
+  }
+
+  private static class FakeIncrementalSensor implements Sensor {
+    private final List<InputFile> analyzedFiles = new ArrayList<>();
+    private final Set<InputFile> silentFiles = new HashSet<>();
+    private final Set<InputFile> coveredFiles = new HashSet<>();
+    private InputFile secondaryFile;
+
+    @Override
+    public void describe(SensorDescriptor descriptor) {
+      descriptor.name("Fake").onlyOnLanguage("php").createIssuesForRuleRepository("php").incremental();
+    }
+
+    @Override
+    public void execute(SensorContext context) {
+      for (InputFile file : context.fileSystem().inputFiles(context.fileSystem().predicates().all())) {
+        analyzedFiles.add(file);
+        if (silentFiles.contains(file)) {
+          continue;
+        }
+        context.<Integer>newMeasure().on(file).forMetric(CoreMetrics.NCLOC).withValue(file.lines()).save();
+        context.newHighlighting().onFile(file).highlight(1, 0, 1, 3, TypeOfText.KEYWORD).save();
+        if (coveredFiles.contains(file)) {
+          context.newCoverage().onFile(file).ofType(CoverageType.UNIT).lineHits(1, 2).save();
+        }
+        if (secondaryFile != null && !file.equals(secondaryFile)) {
+          NewIssue issue = context.newIssue().forRule(RuleKey.of("php", "S1"));
+          issue.at(issue.newLocation().on(file)).addLocation(issue.newLocation().on(secondaryFile)).save();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.sensor.cache;
+
+import org.junit.Test;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.fs.internal.DefaultInputModule;
+import org.sonar.api.batch.sensor.coverage.CoverageType;
+import org.sonar.api.batch.sensor.coverage.internal.DefaultCoverage;
+import org.sonar.api.batch.sensor.highlighting.TypeOfText;
+import org.sonar.api.batch.sensor.highlighting.internal.DefaultHighlighting;
+import org.sonar.api.batch.sensor.internal.SensorStorage;
+import org.sonar.api.batch.sensor.issue.internal.DefaultIssue;
+import org.sonar.api.batch.sensor.issue.internal.DefaultIssueLocation;
+import org.sonar.api.batch.sensor.measure.internal.DefaultMeasure;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.rule.RuleKey;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class RecordingSensorStorageTest {
+
+  private DefaultInputFile file = new DefaultInputFile("foo", "src/Foo.php").initMetadata("first line\nsecond line\n");
+  private DefaultInputFile otherFile = new DefaultInputFile("foo", "src/Bar.php").initMetadata("bar\n");
+  private DefaultInputModule module = new DefaultInputModule("foo");
+  private SensorStorage delegate = mock(SensorStorage.class);
+  private RecordingSensorStorage underTest = new RecordingSensorStorage(delegate);
+
+  @Test
+  public void record_data_saved_on_files() {
+    DefaultMeasure<Integer> measure = new DefaultMeasure<Integer>().on(file).forMetric(CoreMetrics.NCLOC).withValue(2);
+    DefaultIssue issue = new DefaultIssue().forRule(RuleKey.of("php", "S1")).at(new DefaultIssueLocation().on(file));
+    DefaultHighlighting highlighting = new DefaultHighlighting(mock(SensorStorage.class)).onFile(otherFile).highlight(1, 0, 1, 3, TypeOfText.KEYWORD);
+
+    underTest.store(measure);
+    underTest.store(issue);
+    underTest.store(highlighting);
+
+    verify(delegate).store(measure);
+    verify(delegate).store(issue);
+    verify(delegate).store(highlighting);
+    assertThat(underTest.resultsOf(file).isCacheable()).isTrue();
+    assertThat(underTest.resultsOf(otherFile).isCacheable()).isTrue();
+  }
+
+  @Test
+  public void do_not_record_data_saved_on_modules() {
+    DefaultMeasure<Integer> measure = new DefaultMeasure<Integer>().on(module).forMetric(CoreMetrics.NCLOC).withValue(2);
+    DefaultIssue issue = new DefaultIssue().forRule(RuleKey.of("php", "S1")).at(new DefaultIssueLocation().on(module));
+
+    underTest.store(measure);
+    underTest.store(issue);
+
+    verify(delegate).store(measure);
+    verify(delegate).store(issue);
+    assertThat(underTest.resultsOf(file)).isNull();
+  }
+
+  @Test
+  public void files_with_coverage_are_not_cacheable() {
+    DefaultCoverage coverage = new DefaultCoverage();
+    coverage.onFile(file).ofType(CoverageType.UNIT).lineHits(1, 2);
+
+    underTest.store(coverage);
+
+    verify(delegate).store(coverage);
+    assertThat(underTest.resultsOf(file).isCacheable()).isFalse();
+  }
+
+  @Test
+  public void files_with_issues_located_on_other_files_are_not_cacheable() {
+    DefaultIssue issue = new DefaultIssue().forRule(RuleKey.of("php", "S1")).at(new DefaultIssueLocation().on(file));
+    issue.addLocation(new DefaultIssueLocation().on(otherFile));
+
+    underTest.store(issue);
+
+    assertThat(underTest.resultsOf(file).isCacheable()).isFalse();
+    assertThat(underTest.resultsOf(otherFile)).isNull();
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.sensor.coverage;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.sonar.api.batch.sensor.coverage.CoverageType;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.utils.SonarException;
+import org.sonar.scanner.sensor.coverage.LineCoverageCache.FileCoverage;
+import org.sonar.scanner.sensor.coverage.LineCoverageCache.Kind;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LineCoverageCacheTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private LineCoverageCache underTest = new LineCoverageCache();
+
+  @Test
+  public void merge_coverage_types_of_a_file() {
+    underTest.put("foo:src/Foo.php", CoverageType.UNIT, Kind.HITS, ImmutableMap.of(1, 2, 3, 0));
+    underTest.put("foo:src/Foo.php", CoverageType.IT, Kind.HITS, ImmutableMap.of(5, 1));
+    underTest.put("foo:src/Foo.php", CoreMetrics.OVERALL_CONDITIONS_BY_LINE_KEY, "3=4");
+
+    FileCoverage coverage = underTest.byComponent("foo:src/Foo.php");
+    assertThat(coverage.maxLine()).isEqualTo(5);
+    assertThat(coverage.get(CoverageType.UNIT, Kind.HITS, 1)).isEqualTo(2);
+    assertThat(coverage.get(CoverageType.UNIT, Kind.HITS, 3)).isEqualTo(0);
+    assertThat(coverage.get(CoverageType.UNIT, Kind.HITS, 5)).isEqualTo(-1);
+    assertThat(coverage.get(CoverageType.IT, Kind.HITS, 5)).isEqualTo(1);
+    assertThat(coverage.get(CoverageType.OVERALL, Kind.CONDITIONS, 3)).isEqualTo(4);
+    assertThat(coverage.has(CoverageType.OVERALL, Kind.COVERED_CONDITIONS, 3)).isFalse();
+    assertThat(underTest.byComponent("foo:src/Bar.php")).isNull();
+  }
+
+  @Test
+  public void format_coverage_as_data_measures() {
+    underTest.put("foo:src/Foo.php", CoverageType.UNIT, Kind.HITS, ImmutableMap.of(1, 2, 3, 0));
+    underTest.put("foo:src/Foo.php", CoreMetrics.IT_CONDITIONS_BY_LINE_KEY, "5=4");
+
+    assertThat(underTest.measureOf("foo:src/Foo.php", CoreMetrics.COVERAGE_LINE_HITS_DATA_KEY).getData()).isEqualTo("1=2;3=0");
+    assertThat(underTest.measureOf("foo:src/Foo.php", CoreMetrics.IT_CONDITIONS_BY_LINE_KEY).getData()).isEqualTo("5=4");
+    assertThat(underTest.measureOf("foo:src/Foo.php", CoreMetrics.CONDITIONS_BY_LINE_KEY)).isNull();
+    assertThat(underTest.measureOf("foo:src/Foo.php", CoreMetrics.LINES_TO_COVER_KEY)).isNull();
+    assertThat(underTest.measureOf("foo:src/Bar.php", CoreMetrics.COVERAGE_LINE_HITS_DATA_KEY)).isNull();
+    assertThat(underTest.measuresOf("foo:src/Foo.php")).extracting("metricKey")
+      .containsOnly(CoreMetrics.COVERAGE_LINE_HITS_DATA_KEY, CoreMetrics.IT_CONDITIONS_BY_LINE_KEY);
+    assertThat(underTest.measuresOf("foo:src/Bar.php")).isEmpty();
+  }
+
+  @Test
+  public void is_line_metric() {
+    assertThat(LineCoverageCache.isLineMetric(CoreMetrics.COVERAGE_LINE_HITS_DATA_KEY)).isTrue();
+    assertThat(LineCoverageCache.isLineMetric(CoreMetrics.IT_COVERED_CONDITIONS_BY_LINE_KEY)).isTrue();
+    assertThat(LineCoverageCache.isLineMetric(CoreMetrics.OVERALL_CONDITIONS_BY_LINE_KEY)).isTrue();
+    assertThat(LineCoverageCache.isLineMetric(CoreMetrics.LINES_TO_COVER_KEY)).isFalse();
+  }
+
+  @Test
+  public void fail_to_store_same_coverage_twice() {
+    underTest.put("foo:src/Foo.php", CoverageType.UNIT, Kind.HITS, ImmutableMap.of(1, 2));
+
+    thrown.expect(SonarException.class);
+    thrown.expectMessage("Can not add the same coverage twice on foo:src/Foo.php: UNIT HITS");
+
+    underTest.put("foo:src/Foo.php", CoreMetrics.COVERAGE_LINE_HITS_DATA_KEY, "1=3");
+  }
+
+  @Test
+  public void fail_if_metric_is_not_by_line() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Metric is not a coverage by line: lines_to_cover");
+
+    underTest.put("foo:src/Foo.php", CoreMetrics.LINES_TO_COVER_KEY, "10");
+  }
+}
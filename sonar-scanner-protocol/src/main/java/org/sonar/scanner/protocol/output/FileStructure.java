@@ -48,8 +48,33 @@ public class FileStructure {
       this.filePrefix = filePrefix;
       this.fileSuffix = fileSuffix;
     }
+
+    /**
+     * Reference of the component of the file with the specified name, or -1 if the file does not belong to
+     * this domain.
+     */
+    int componentRefOf(String fileName) {
+      if (!fileName.startsWith(filePrefix) || !fileName.endsWith(fileSuffix) || fileName.length() == filePrefix.length() + fileSuffix.length()) {
+        return -1;
+      }
+      String ref = fileName.substring(filePrefix.length(), fileName.length() - fileSuffix.length());
+      for (int i = 0; i < ref.length(); i++) {
+        if (!Character.isDigit(ref.charAt(i))) {
+          return -1;
+        }
+      }
+      try {
+        return Integer.parseInt(ref);
+      } catch (NumberFormatException e) {
+        return -1;
+      }
+    }
   }
 
+  static final String METADATA_FILENAME = "metadata.pb";
+  static final String ANALYSIS_LOG_FILENAME = "analysis.log";
+  static final String ACTIVE_RULES_FILENAME = "activerules.pb";
+
   private final File dir;
 
   public FileStructure(File dir) {
@@ -59,20 +84,32 @@ public class FileStructure {
     this.dir = dir;
   }
 
+  public File getDirectory() {
+    return dir;
+  }
+
   public File metadataFile() {
-    return new File(dir, "metadata.pb");
+    return new File(dir, METADATA_FILENAME);
   }
 
   public File analysisLog() {
-    return new File(dir, "analysis.log");
+    return new File(dir, ANALYSIS_LOG_FILENAME);
   }
 
   public File activeRules() {
-    return new File(dir, "activerules.pb");
+    return new File(dir, ACTIVE_RULES_FILENAME);
   }
 
   public File fileFor(Domain domain, int componentRef) {
-    return new File(dir, domain.filePrefix + componentRef + domain.fileSuffix);
+    return new File(dir, fileNameFor(domain, componentRef));
+  }
+
+  /**
+   * Name of the file of the report, relative to the report directory, containing the data of the specified domain
+   * and component.
+   */
+  public static String fileNameFor(Domain domain, int componentRef) {
+    return domain.filePrefix + componentRef + domain.fileSuffix;
   }
 
 }
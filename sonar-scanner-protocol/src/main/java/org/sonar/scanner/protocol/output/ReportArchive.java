@@ -0,0 +1,227 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.protocol.output;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Single-file container of the analysis report, sent by the scanner to the server and read in place by
+ * the Compute Engine (see {@link ReportArchiveReader}). It replaces the zip of the report directory, which had to be
+ * fully compressed by the scanner and fully extracted to disk by the Compute Engine.
+ * <p>
+ * The archive starts with the magic bytes {@code SQRA} and the version of the format (int). It is followed
+ * by the entries of the report. Each entry is made of:
+ * <ul>
+ *   <li>the length (unsigned short) and the UTF-8 bytes of the path of the file, relative to the report directory</li>
+ *   <li>the codec of the content (byte), see {@link #CODEC_STORED} and {@link #CODEC_LZ4}</li>
+ *   <li>the size of the uncompressed content (long)</li>
+ *   <li>the size of the stored content (long)</li>
+ *   <li>the stored content</li>
+ * </ul>
+ * Entries are followed by an index, so that the entries can be located without reading all the headers. The index
+ * repeats the header of each entry, followed by the position of its content (long). The archive ends with the
+ * position of the index (long), the number of entries (int) and the magic bytes.
+ * </p>
+ */
+public final class ReportArchive {
+
+  static final byte[] MAGIC = {'S', 'Q', 'R', 'A'};
+  static final int VERSION = 1;
+  static final byte CODEC_STORED = 0;
+  static final byte CODEC_LZ4 = 1;
+  static final int TRAILER_SIZE = 8 + 4 + MAGIC.length;
+  /**
+   * Files smaller than this size are not compressed, so that they can be read without copy. Gain of compression
+   * is low on such files anyway.
+   */
+  static final long COMPRESSION_THRESHOLD = 4 * 1024L;
+
+  private ReportArchive() {
+    // only static methods
+  }
+
+  /**
+   * Writes all the files of {@code reportDir} into {@code toFile}. Content of large files is compressed with LZ4.
+   *
+   * @throws IllegalStateException if the archive can not be written
+   */
+  public static void write(File reportDir, File toFile) {
+    write(reportDir, toFile, false);
+  }
+
+  /**
+   * Same as {@link #write(File, File)}, except that each file is deleted as soon as it is copied into the
+   * archive, so that the report is not stored twice on disk. {@code reportDir} is deleted once the archive
+   * is written.
+   *
+   * @throws IllegalStateException if the archive can not be written
+   */
+  public static void move(File reportDir, File toFile) {
+    write(reportDir, toFile, true);
+    FileUtils.deleteQuietly(reportDir);
+  }
+
+  private static void write(File reportDir, File toFile, boolean deleteArchivedFiles) {
+    List<File> files = new ArrayList<>(FileUtils.listFiles(reportDir, null, true));
+    Collections.sort(files);
+    String basePath = reportDir.getAbsolutePath();
+    List<IndexEntry> index = new ArrayList<>(files.size());
+    try (RandomAccessFile archive = new RandomAccessFile(toFile, "rw")) {
+      archive.setLength(0L);
+      archive.write(MAGIC);
+      archive.writeInt(VERSION);
+      for (File file : files) {
+        String path = file.getAbsolutePath().substring(basePath.length() + 1).replace(File.separatorChar, '/');
+        index.add(writeEntry(archive, path, file));
+        if (deleteArchivedFiles) {
+          Files.delete(file.toPath());
+        }
+      }
+      writeIndex(archive, index);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to write analysis report archive " + toFile, e);
+    }
+  }
+
+  private static IndexEntry writeEntry(RandomAccessFile archive, String path, File file) throws IOException {
+    byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+    long uncompressedSize = file.length();
+    byte codec = uncompressedSize < COMPRESSION_THRESHOLD ? CODEC_STORED : CODEC_LZ4;
+    archive.writeShort(pathBytes.length);
+    archive.write(pathBytes);
+    archive.writeByte(codec);
+    archive.writeLong(uncompressedSize);
+    long storedSizePosition = archive.getFilePointer();
+    // stored size is known once content is compressed
+    archive.writeLong(0L);
+
+    long contentPosition = archive.getFilePointer();
+    OutputStream output = new BufferedOutputStream(new UnclosableOutputStream(Channels.newOutputStream(archive.getChannel())));
+    if (codec == CODEC_LZ4) {
+      output = new LZ4BlockOutputStream(output);
+    }
+    try (InputStream input = new FileInputStream(file)) {
+      IOUtils.copyLarge(input, output);
+    } finally {
+      // flushes data without closing the archive
+      output.close();
+    }
+    long endPosition = archive.getChannel().position();
+    archive.seek(storedSizePosition);
+    archive.writeLong(endPosition - contentPosition);
+    archive.seek(endPosition);
+    return new IndexEntry(pathBytes, codec, uncompressedSize, endPosition - contentPosition, contentPosition);
+  }
+
+  private static void writeIndex(RandomAccessFile archive, List<IndexEntry> index) throws IOException {
+    long indexPosition = archive.getFilePointer();
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new UnclosableOutputStream(Channels.newOutputStream(archive.getChannel()))));
+    for (IndexEntry entry : index) {
+      output.writeShort(entry.path.length);
+      output.write(entry.path);
+      output.writeByte(entry.codec);
+      output.writeLong(entry.uncompressedSize);
+      output.writeLong(entry.storedSize);
+      output.writeLong(entry.position);
+    }
+    output.writeLong(indexPosition);
+    output.writeInt(index.size());
+    output.write(MAGIC);
+    output.close();
+  }
+
+  /**
+   * Whether {@code file} is a report archive. Returns {@code false} for a zip or a directory.
+   */
+  public static boolean isArchive(File file) {
+    if (!file.isFile()) {
+      return false;
+    }
+    try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+      byte[] magic = new byte[MAGIC.length];
+      input.readFully(magic);
+      return Arrays.equals(MAGIC, magic);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static final class IndexEntry {
+    private final byte[] path;
+    private final byte codec;
+    private final long uncompressedSize;
+    private final long storedSize;
+    private final long position;
+
+    private IndexEntry(byte[] path, byte codec, long uncompressedSize, long storedSize, long position) {
+      this.path = path;
+      this.codec = codec;
+      this.uncompressedSize = uncompressedSize;
+      this.storedSize = storedSize;
+      this.position = position;
+    }
+  }
+
+  private static class UnclosableOutputStream extends OutputStream {
+    private final OutputStream delegate;
+
+    private UnclosableOutputStream(OutputStream delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      delegate.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      delegate.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+}
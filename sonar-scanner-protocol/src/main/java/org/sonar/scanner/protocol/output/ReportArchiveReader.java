@@ -0,0 +1,441 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.protocol.output;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import net.jpountz.lz4.LZ4BlockInputStream;
+import org.sonar.scanner.protocol.output.FileStructure.Domain;
+
+import static org.sonar.scanner.protocol.output.ReportArchive.CODEC_LZ4;
+import static org.sonar.scanner.protocol.output.ReportArchive.CODEC_STORED;
+import static org.sonar.scanner.protocol.output.ReportArchive.MAGIC;
+import static org.sonar.scanner.protocol.output.ReportArchive.TRAILER_SIZE;
+import static org.sonar.scanner.protocol.output.ReportArchive.VERSION;
+
+/**
+ * Reads the entries of a {@link ReportArchive} directly from the archive file, without extracting it.
+ * <p>
+ * The index of entries is loaded when the reader is created. Data of components are indexed by domain and
+ * component reference, so that they are found without building file names.
+ * </p>
+ * <p>
+ * The archive is memory-mapped: entries which are not compressed are served from the mapped buffer without
+ * any copy. On Windows, where a mapped file can not be deleted before the buffer is garbage collected, entries
+ * are read with positional reads on the file channel instead.
+ * </p>
+ */
+public class ReportArchiveReader implements Closeable {
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+  private static final boolean MMAP_SUPPORTED = !System.getProperty("os.name", "").startsWith("Windows");
+  /**
+   * A mapped segment covers two times this size, so that any entry of at most this size and starting in the segment
+   * is fully contained in the segment. Larger entries are mapped separately.
+   */
+  private static final long SEGMENT_SIZE = 512L * 1024 * 1024;
+
+  private final File file;
+  private final FileChannel channel;
+  private final long size;
+  private final Map<String, Entry> entriesByPath = new HashMap<>();
+  private final Map<Domain, ComponentEntries> entriesByDomain = new EnumMap<>(Domain.class);
+  @CheckForNull
+  private MappedByteBuffer[] segments;
+
+  public ReportArchiveReader(File file) {
+    this(file, MMAP_SUPPORTED);
+  }
+
+  ReportArchiveReader(File file, boolean mmap) {
+    this.file = file;
+    try {
+      this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      this.size = channel.size();
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to open analysis report archive " + file, e);
+    }
+    try {
+      readEntries();
+      if (mmap) {
+        mapSegments();
+      }
+    } catch (IOException | RuntimeException e) {
+      closeQuietly();
+      throw new IllegalStateException("Fail to read analysis report archive " + file, e);
+    }
+  }
+
+  private void readEntries() throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 4);
+    readFully(header, 0L);
+    checkMagic(header);
+    int version = header.getInt();
+    if (version != VERSION) {
+      throw new IllegalStateException("Unsupported version of analysis report archive: " + version);
+    }
+    Map<Domain, List<Entry>> componentEntries = new EnumMap<>(Domain.class);
+    readIndex(componentEntries);
+    for (Map.Entry<Domain, List<Entry>> domainEntries : componentEntries.entrySet()) {
+      entriesByDomain.put(domainEntries.getKey(), new ComponentEntries(domainEntries.getValue()));
+    }
+  }
+
+  private void readIndex(Map<Domain, List<Entry>> componentEntries) throws IOException {
+    ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+    readFully(trailer, size - TRAILER_SIZE);
+    long indexPosition = trailer.getLong();
+    int count = trailer.getInt();
+    checkMagic(trailer);
+
+    try (DataInputStream index = new DataInputStream(new BufferedInputStream(new RegionInputStream(channel, indexPosition, size - TRAILER_SIZE - indexPosition), BUFFER_SIZE))) {
+      for (int i = 0; i < count; i++) {
+        byte[] path = new byte[index.readUnsignedShort()];
+        index.readFully(path);
+        byte codec = index.readByte();
+        long uncompressedSize = index.readLong();
+        long storedSize = index.readLong();
+        long position = index.readLong();
+        addEntry(new String(path, StandardCharsets.UTF_8), new Entry(codec, position, storedSize, uncompressedSize), componentEntries);
+      }
+    }
+  }
+
+  private void addEntry(String path, Entry entry, Map<Domain, List<Entry>> componentEntries) {
+    if (entry.codec != CODEC_STORED && entry.codec != CODEC_LZ4) {
+      throw new IllegalStateException("Unsupported codec " + entry.codec + " of entry " + path);
+    }
+    if (entry.position < 0 || entry.storedSize < 0 || entry.position + entry.storedSize > size) {
+      throw new IllegalStateException("Archive is truncated");
+    }
+    for (Domain domain : Domain.values()) {
+      int componentRef = domain.componentRefOf(path);
+      if (componentRef >= 0) {
+        entry.componentRef = componentRef;
+        List<Entry> domainEntries = componentEntries.get(domain);
+        if (domainEntries == null) {
+          domainEntries = new ArrayList<>();
+          componentEntries.put(domain, domainEntries);
+        }
+        domainEntries.add(entry);
+        return;
+      }
+    }
+    entriesByPath.put(path, entry);
+  }
+
+  private void mapSegments() throws IOException {
+    int count = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+    MappedByteBuffer[] mapped = new MappedByteBuffer[count];
+    for (int i = 0; i < count; i++) {
+      long start = i * SEGMENT_SIZE;
+      mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, 2 * SEGMENT_SIZE));
+    }
+    this.segments = mapped;
+  }
+
+  private static void checkMagic(ByteBuffer buffer) {
+    byte[] magic = new byte[MAGIC.length];
+    buffer.get(magic);
+    if (!Arrays.equals(MAGIC, magic)) {
+      throw new IllegalStateException("File is not an analysis report archive");
+    }
+  }
+
+  private void readFully(ByteBuffer buffer, long position) throws IOException {
+    if (position < 0 || position + buffer.capacity() > size) {
+      throw new IllegalStateException("Archive is truncated");
+    }
+    buffer.clear();
+    long offset = position;
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, offset);
+      if (read < 0) {
+        throw new IllegalStateException("Archive is truncated");
+      }
+      offset += read;
+    }
+    buffer.flip();
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public boolean hasEntry(String path) {
+    return findEntry(path) != null;
+  }
+
+  public boolean hasEntry(Domain domain, int componentRef) {
+    return findEntry(domain, componentRef) != null;
+  }
+
+  /**
+   * Size of the uncompressed content of the entry, or -1 if the entry does not exist.
+   */
+  public long sizeOf(String path) {
+    Entry entry = findEntry(path);
+    return entry == null ? -1L : entry.uncompressedSize;
+  }
+
+  /**
+   * Opens the content of the entry with the specified path, relative to the report directory. The returned stream
+   * must be closed by caller. Closing it does not close the reader.
+   *
+   * @return {@code null} if the entry does not exist
+   */
+  @CheckForNull
+  public InputStream openEntry(String path) {
+    Entry entry = findEntry(path);
+    return entry == null ? null : open(entry);
+  }
+
+  /**
+   * Opens the content of the entry of the specified domain and component. The returned stream must be closed
+   * by caller. Closing it does not close the reader.
+   *
+   * @return {@code null} if the entry does not exist
+   */
+  @CheckForNull
+  public InputStream openEntry(Domain domain, int componentRef) {
+    Entry entry = findEntry(domain, componentRef);
+    return entry == null ? null : open(entry);
+  }
+
+  @CheckForNull
+  private Entry findEntry(String path) {
+    Entry entry = entriesByPath.get(path);
+    if (entry != null) {
+      return entry;
+    }
+    for (Domain domain : Domain.values()) {
+      int componentRef = domain.componentRefOf(path);
+      if (componentRef >= 0) {
+        return findEntry(domain, componentRef);
+      }
+    }
+    return null;
+  }
+
+  @CheckForNull
+  private Entry findEntry(Domain domain, int componentRef) {
+    ComponentEntries domainEntries = entriesByDomain.get(domain);
+    return domainEntries == null ? null : domainEntries.get(componentRef);
+  }
+
+  private InputStream open(Entry entry) {
+    InputStream content;
+    if (segments == null) {
+      content = new BufferedInputStream(new RegionInputStream(channel, entry.position, entry.storedSize), BUFFER_SIZE);
+    } else {
+      content = new ByteBufferInputStream(slice(entry));
+    }
+    if (entry.codec == CODEC_LZ4) {
+      return new LZ4BlockInputStream(content);
+    }
+    return content;
+  }
+
+  private ByteBuffer slice(Entry entry) {
+    if (entry.storedSize > SEGMENT_SIZE) {
+      try {
+        return channel.map(FileChannel.MapMode.READ_ONLY, entry.position, entry.storedSize);
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to map analysis report archive " + file, e);
+      }
+    }
+    int segment = (int) (entry.position / SEGMENT_SIZE);
+    int offset = (int) (entry.position - segment * SEGMENT_SIZE);
+    // buffers are duplicated so that the entries can be read concurrently
+    ByteBuffer buffer = segments[segment].duplicate();
+    buffer.position(offset);
+    buffer.limit(offset + (int) entry.storedSize);
+    return buffer.slice();
+  }
+
+  @Override
+  public void close() throws IOException {
+    segments = null;
+    channel.close();
+  }
+
+  private void closeQuietly() {
+    try {
+      close();
+    } catch (IOException ignored) {
+      // an exception is already being thrown
+    }
+  }
+
+  private static final class Entry {
+    private final byte codec;
+    private final long position;
+    private final long storedSize;
+    private final long uncompressedSize;
+    private int componentRef = -1;
+
+    private Entry(byte codec, long position, long storedSize, long uncompressedSize) {
+      this.codec = codec;
+      this.position = position;
+      this.storedSize = storedSize;
+      this.uncompressedSize = uncompressedSize;
+    }
+  }
+
+  /**
+   * Entries of a domain, sorted by component reference
+   */
+  private static final class ComponentEntries {
+    private final int[] componentRefs;
+    private final Entry[] entries;
+
+    private ComponentEntries(List<Entry> list) {
+      Collections.sort(list, EntryComponentRefComparator.INSTANCE);
+      this.entries = list.toArray(new Entry[list.size()]);
+      this.componentRefs = new int[entries.length];
+      for (int i = 0; i < entries.length; i++) {
+        componentRefs[i] = entries[i].componentRef;
+      }
+    }
+
+    @CheckForNull
+    private Entry get(int componentRef) {
+      int index = Arrays.binarySearch(componentRefs, componentRef);
+      return index < 0 ? null : entries[index];
+    }
+  }
+
+  private enum EntryComponentRefComparator implements Comparator<Entry> {
+    INSTANCE;
+
+    @Override
+    public int compare(Entry e1, Entry e2) {
+      return Integer.compare(e1.componentRef, e2.componentRef);
+    }
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int toRead = Math.min(len, buffer.remaining());
+      buffer.get(b, off, toRead);
+      return toRead;
+    }
+
+    @Override
+    public long skip(long n) {
+      int skipped = (int) Math.max(0L, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+
+  /**
+   * Stream over a region of a file, based on positional reads which do not change the position of the channel.
+   */
+  private static class RegionInputStream extends InputStream {
+    private final FileChannel channel;
+    private long position;
+    private long remaining;
+
+    private RegionInputStream(FileChannel channel, long position, long length) {
+      this.channel = channel;
+      this.position = position;
+      this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      int read = read(b, 0, 1);
+      return read < 0 ? -1 : (b[0] & 0xFF);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int toRead = (int) Math.min(len, remaining);
+      int read = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+      if (read < 0) {
+        throw new IOException("Unexpected end of archive");
+      }
+      position += read;
+      remaining -= read;
+      return read;
+    }
+
+    @Override
+    public long skip(long n) {
+      long skipped = Math.max(0L, Math.min(n, remaining));
+      position += skipped;
+      remaining -= skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return (int) Math.min(Integer.MAX_VALUE, remaining);
+    }
+
+    @Override
+    public void close() {
+      // the channel is shared by all the entries and is closed by the reader
+    }
+  }
+}
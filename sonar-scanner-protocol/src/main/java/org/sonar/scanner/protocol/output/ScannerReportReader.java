@@ -19,154 +19,346 @@
  */
 package org.sonar.scanner.protocol.output;
 
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import javax.annotation.CheckForNull;
 import org.sonar.core.util.CloseableIterator;
+import org.sonar.core.util.ContextException;
 import org.sonar.core.util.Protobuf;
+import org.sonar.scanner.protocol.output.FileStructure.Domain;
 
 import static org.sonar.core.util.CloseableIterator.emptyCloseableIterator;
+import static org.sonar.scanner.protocol.output.FileStructure.ACTIVE_RULES_FILENAME;
+import static org.sonar.scanner.protocol.output.FileStructure.ANALYSIS_LOG_FILENAME;
+import static org.sonar.scanner.protocol.output.FileStructure.METADATA_FILENAME;
 
-public class ScannerReportReader {
+/**
+ * Reads an analysis report, either from a {@link ReportArchive} or from the report directory, where each
+ * domain of each component is stored in a separate file.
+ * <p>
+ * Reports read from an archive are not extracted: messages are streamed from the archive file, which is closed
+ * by {@link #close()}. Methods returning a {@link File} are supported only when reading a directory, the
+ * equivalent {@code open*} methods must be used otherwise.
+ * </p>
+ */
+public class ScannerReportReader implements Closeable {
 
+  private final Source source;
+  @CheckForNull
   private final FileStructure fileStructure;
 
-  public ScannerReportReader(File dir) {
-    this.fileStructure = new FileStructure(dir);
+  /**
+   * @param dirOrArchive the report directory or a {@link ReportArchive}
+   */
+  public ScannerReportReader(File dirOrArchive) {
+    if (ReportArchive.isArchive(dirOrArchive)) {
+      this.fileStructure = null;
+      this.source = new ArchiveSource(new ReportArchiveReader(dirOrArchive));
+    } else {
+      this.fileStructure = new FileStructure(dirOrArchive);
+      this.source = new DirectorySource(fileStructure);
+    }
   }
 
   public ScannerReport.Metadata readMetadata() {
-    File file = fileStructure.metadataFile();
-    if (!fileExists(file)) {
-      throw new IllegalStateException("Metadata file is missing in analysis report: " + file);
+    if (!source.exists(METADATA_FILENAME)) {
+      throw new IllegalStateException("Metadata file is missing in analysis report: " + source.describe(METADATA_FILENAME));
     }
-    return Protobuf.read(file, ScannerReport.Metadata.parser());
+    return read(source.open(METADATA_FILENAME), source.describe(METADATA_FILENAME), ScannerReport.Metadata.parser());
   }
 
   public CloseableIterator<ScannerReport.ActiveRule> readActiveRules() {
-    File file = fileStructure.activeRules();
-    if (!fileExists(file)) {
+    InputStream input = source.open(ACTIVE_RULES_FILENAME);
+    if (input == null) {
       return emptyCloseableIterator();
     }
-    return Protobuf.readStream(file, ScannerReport.ActiveRule.parser());
+    return Protobuf.readStream(input, ScannerReport.ActiveRule.parser());
   }
 
   public CloseableIterator<ScannerReport.Measure> readComponentMeasures(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.MEASURES, componentRef);
-    if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.Measure.parser());
-    }
-    return emptyCloseableIterator();
+    return readStream(Domain.MEASURES, componentRef, ScannerReport.Measure.parser());
   }
 
   @CheckForNull
   public ScannerReport.Changesets readChangesets(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.CHANGESETS, componentRef);
-    if (fileExists(file)) {
-      return Protobuf.read(file, ScannerReport.Changesets.parser());
+    InputStream input = source.open(Domain.CHANGESETS, componentRef);
+    if (input == null) {
+      return null;
     }
-    return null;
+    return read(input, source.describe(Domain.CHANGESETS, componentRef), ScannerReport.Changesets.parser());
   }
 
   public ScannerReport.Component readComponent(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COMPONENT, componentRef);
-    if (!fileExists(file)) {
-      throw new IllegalStateException("Unable to find report for component #" + componentRef + ". File does not exist: " + file);
+    InputStream input = source.open(Domain.COMPONENT, componentRef);
+    if (input == null) {
+      throw new IllegalStateException("Unable to find report for component #" + componentRef + ". File does not exist: "
+        + source.describe(Domain.COMPONENT, componentRef));
     }
-    return Protobuf.read(file, ScannerReport.Component.parser());
+    return read(input, source.describe(Domain.COMPONENT, componentRef), ScannerReport.Component.parser());
   }
 
   public CloseableIterator<ScannerReport.Issue> readComponentIssues(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.ISSUES, componentRef);
-    if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.Issue.parser());
-    }
-    return emptyCloseableIterator();
+    return readStream(Domain.ISSUES, componentRef, ScannerReport.Issue.parser());
   }
 
   public CloseableIterator<ScannerReport.Duplication> readComponentDuplications(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.DUPLICATIONS, componentRef);
-    if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.Duplication.parser());
-    }
-    return emptyCloseableIterator();
+    return readStream(Domain.DUPLICATIONS, componentRef, ScannerReport.Duplication.parser());
   }
 
   public CloseableIterator<ScannerReport.CpdTextBlock> readCpdTextBlocks(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.CPD_TEXT_BLOCKS, componentRef);
-    if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.CpdTextBlock.parser());
-    }
-    return emptyCloseableIterator();
+    return readStream(Domain.CPD_TEXT_BLOCKS, componentRef, ScannerReport.CpdTextBlock.parser());
   }
 
   public CloseableIterator<ScannerReport.Symbol> readComponentSymbols(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYMBOLS, componentRef);
-    if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.Symbol.parser());
-    }
-    return emptyCloseableIterator();
+    return readStream(Domain.SYMBOLS, componentRef, ScannerReport.Symbol.parser());
   }
 
   public boolean hasSyntaxHighlighting(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef);
-    return file.exists();
+    return source.exists(Domain.SYNTAX_HIGHLIGHTINGS, componentRef);
   }
 
   public CloseableIterator<ScannerReport.SyntaxHighlightingRule> readComponentSyntaxHighlighting(int fileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, fileRef);
-    if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.SyntaxHighlightingRule.parser());
-    }
-    return emptyCloseableIterator();
+    return readStream(Domain.SYNTAX_HIGHLIGHTINGS, fileRef, ScannerReport.SyntaxHighlightingRule.parser());
   }
 
   public boolean hasCoverage(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGES, componentRef);
-    return file.exists();
+    return source.exists(Domain.COVERAGES, componentRef);
   }
 
   public CloseableIterator<ScannerReport.LineCoverage> readComponentCoverage(int fileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGES, fileRef);
-    if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.LineCoverage.parser());
-    }
-    return emptyCloseableIterator();
+    return readStream(Domain.COVERAGES, fileRef, ScannerReport.LineCoverage.parser());
   }
 
   @CheckForNull
   public File readFileSource(int fileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SOURCE, fileRef);
-    if (fileExists(file)) {
-      return file;
-    }
-    return null;
+    return fileInDirectory(Domain.SOURCE, fileRef);
+  }
+
+  /**
+   * Content of the source file, encoded in UTF-8. Stream must be closed by caller.
+   *
+   * @return {@code null} if the report does not contain the source of the file
+   */
+  @CheckForNull
+  public InputStream openFileSource(int fileRef) {
+    return source.open(Domain.SOURCE, fileRef);
   }
 
   @CheckForNull
   public File readTests(int testFileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.TESTS, testFileRef);
-    if (fileExists(file)) {
-      return file;
-    }
+    return fileInDirectory(Domain.TESTS, testFileRef);
+  }
 
-    return null;
+  /**
+   * Stream of delimited {@link ScannerReport.Test} messages. Stream must be closed by caller.
+   *
+   * @return {@code null} if the report does not contain tests for the file
+   */
+  @CheckForNull
+  public InputStream openTests(int testFileRef) {
+    return source.open(Domain.TESTS, testFileRef);
   }
 
   @CheckForNull
   public File readCoverageDetails(int testFileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGE_DETAILS, testFileRef);
+    return fileInDirectory(Domain.COVERAGE_DETAILS, testFileRef);
+  }
+
+  /**
+   * Stream of delimited {@link ScannerReport.CoverageDetail} messages. Stream must be closed by caller.
+   *
+   * @return {@code null} if the report does not contain coverage details for the file
+   */
+  @CheckForNull
+  public InputStream openCoverageDetails(int testFileRef) {
+    return source.open(Domain.COVERAGE_DETAILS, testFileRef);
+  }
+
+  /**
+   * Logs of the scanner, encoded in UTF-8. Stream must be closed by caller.
+   *
+   * @return {@code null} if the report does not contain the logs
+   */
+  @CheckForNull
+  public InputStream openAnalysisLog() {
+    return source.open(ANALYSIS_LOG_FILENAME);
+  }
+
+  /**
+   * @throws IllegalStateException if the report is read from an archive
+   */
+  public FileStructure getFileStructure() {
+    if (fileStructure == null) {
+      throw new IllegalStateException("Analysis report is read from an archive, it has no directory structure");
+    }
+    return fileStructure;
+  }
+
+  @Override
+  public void close() throws IOException {
+    source.close();
+  }
+
+  @CheckForNull
+  private File fileInDirectory(Domain domain, int componentRef) {
+    File file = getFileStructure().fileFor(domain, componentRef);
     if (fileExists(file)) {
       return file;
     }
-
     return null;
   }
 
+  private <MSG extends Message> CloseableIterator<MSG> readStream(Domain domain, int componentRef, Parser<MSG> parser) {
+    InputStream input = source.open(domain, componentRef);
+    if (input == null) {
+      return emptyCloseableIterator();
+    }
+    return Protobuf.readStream(input, parser);
+  }
+
+  private static <MSG extends Message> MSG read(InputStream input, String description, Parser<MSG> parser) {
+    try {
+      return Protobuf.read(input, parser);
+    } catch (ContextException e) {
+      throw e.addContext("file", description);
+    }
+  }
+
   private static boolean fileExists(File file) {
     return file.exists() && file.isFile();
   }
 
-  public FileStructure getFileStructure() {
-    return fileStructure;
+  /**
+   * Layout of the report
+   */
+  private interface Source extends Closeable {
+    boolean exists(String fileName);
+
+    @CheckForNull
+    InputStream open(String fileName);
+
+    String describe(String fileName);
+
+    boolean exists(Domain domain, int componentRef);
+
+    @CheckForNull
+    InputStream open(Domain domain, int componentRef);
+
+    String describe(Domain domain, int componentRef);
+  }
+
+  /**
+   * Report extracted to a directory, one file per domain and component
+   */
+  private static class DirectorySource implements Source {
+    private final FileStructure fileStructure;
+
+    private DirectorySource(FileStructure fileStructure) {
+      this.fileStructure = fileStructure;
+    }
+
+    @Override
+    public boolean exists(String fileName) {
+      return fileExists(new File(fileStructure.getDirectory(), fileName));
+    }
+
+    @Override
+    @CheckForNull
+    public InputStream open(String fileName) {
+      return open(new File(fileStructure.getDirectory(), fileName));
+    }
+
+    @Override
+    public String describe(String fileName) {
+      return new File(fileStructure.getDirectory(), fileName).toString();
+    }
+
+    @Override
+    public boolean exists(Domain domain, int componentRef) {
+      return fileExists(fileStructure.fileFor(domain, componentRef));
+    }
+
+    @Override
+    @CheckForNull
+    public InputStream open(Domain domain, int componentRef) {
+      return open(fileStructure.fileFor(domain, componentRef));
+    }
+
+    @Override
+    public String describe(Domain domain, int componentRef) {
+      return fileStructure.fileFor(domain, componentRef).toString();
+    }
+
+    @CheckForNull
+    private static InputStream open(File file) {
+      if (!fileExists(file)) {
+        return null;
+      }
+      try {
+        return new BufferedInputStream(new FileInputStream(file));
+      } catch (FileNotFoundException e) {
+        throw new IllegalStateException("Fail to open file " + file, e);
+      }
+    }
+
+    @Override
+    public void close() {
+      // nothing to release
+    }
+  }
+
+  /**
+   * Report stored in a single {@link ReportArchive}, indexed by domain and component
+   */
+  private static class ArchiveSource implements Source {
+    private final ReportArchiveReader archive;
+
+    private ArchiveSource(ReportArchiveReader archive) {
+      this.archive = archive;
+    }
+
+    @Override
+    public boolean exists(String fileName) {
+      return archive.hasEntry(fileName);
+    }
+
+    @Override
+    @CheckForNull
+    public InputStream open(String fileName) {
+      return archive.openEntry(fileName);
+    }
+
+    @Override
+    public String describe(String fileName) {
+      return archive.getFile() + "!/" + fileName;
+    }
+
+    @Override
+    public boolean exists(Domain domain, int componentRef) {
+      return archive.hasEntry(domain, componentRef);
+    }
+
+    @Override
+    @CheckForNull
+    public InputStream open(Domain domain, int componentRef) {
+      return archive.openEntry(domain, componentRef);
+    }
+
+    @Override
+    public String describe(Domain domain, int componentRef) {
+      return describe(FileStructure.fileNameFor(domain, componentRef));
+    }
+
+    @Override
+    public void close() throws IOException {
+      archive.close();
+    }
   }
 }
@@ -138,4 +138,22 @@ public class ScannerReportWriter {
     return fileStructure.fileFor(FileStructure.Domain.SOURCE, componentRef);
   }
 
+  /**
+   * Writes the whole report into a single {@link ReportArchive}, indexed by domain and component. It is
+   * the format sent to server.
+   */
+  public File writeArchive(File toFile) {
+    ReportArchive.write(fileStructure.getDirectory(), toFile);
+    return toFile;
+  }
+
+  /**
+   * Same as {@link #writeArchive(File)}, but the files of the report directory are deleted as soon as they are
+   * archived. The report directory does not exist anymore once the method returns.
+   */
+  public File moveToArchive(File toFile) {
+    ReportArchive.move(fileStructure.getDirectory(), toFile);
+    return toFile;
+  }
+
 }
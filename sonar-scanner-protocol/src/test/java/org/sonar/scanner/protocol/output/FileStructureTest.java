@@ -71,4 +71,15 @@ public class FileStructureTest {
     assertThat(structure.fileFor(FileStructure.Domain.ISSUES, 3)).exists().isFile();
     assertThat(structure.fileFor(FileStructure.Domain.ISSUES, 42)).doesNotExist();
   }
+
+  @Test
+  public void component_ref_of_file_name() {
+    assertThat(FileStructure.Domain.ISSUES.componentRefOf(FileStructure.fileNameFor(FileStructure.Domain.ISSUES, 42))).isEqualTo(42);
+    assertThat(FileStructure.Domain.SOURCE.componentRefOf("source-7.txt")).isEqualTo(7);
+    assertThat(FileStructure.Domain.SOURCE.componentRefOf("source-7.pb")).isEqualTo(-1);
+    assertThat(FileStructure.Domain.SOURCE.componentRefOf("source-.txt")).isEqualTo(-1);
+    assertThat(FileStructure.Domain.SOURCE.componentRefOf("source-a.txt")).isEqualTo(-1);
+    assertThat(FileStructure.Domain.COVERAGES.componentRefOf("coverage-details-3.pb")).isEqualTo(-1);
+    assertThat(FileStructure.Domain.ISSUES.componentRefOf("metadata.pb")).isEqualTo(-1);
+  }
 }
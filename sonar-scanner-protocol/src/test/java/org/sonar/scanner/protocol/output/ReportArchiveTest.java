@@ -0,0 +1,174 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2016 SonarSource SA
+ * mailto:contact AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.protocol.output;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReportArchiveTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  @Test
+  public void write_and_read_entries() throws Exception {
+    File dir = temp.newFolder();
+    FileUtils.write(new File(dir, "metadata.pb"), "metadata");
+    FileUtils.write(new File(dir, "source-1.txt"), "");
+    FileUtils.write(new File(dir, "sub/source-2.txt"), FileUtils.readFileToString(new File(dir, "metadata.pb")) + "\nfoo");
+    StringBuilder big = new StringBuilder();
+    for (int i = 0; i < 100_000; i++) {
+      big.append("line ").append(i).append('\n');
+    }
+    FileUtils.write(new File(dir, "source-3.txt"), big);
+    File archive = temp.newFile();
+
+    ReportArchive.write(dir, archive);
+
+    assertThat(ReportArchive.isArchive(archive)).isTrue();
+    verifyEntries(new ReportArchiveReader(archive, true), big.toString());
+    verifyEntries(new ReportArchiveReader(archive, false), big.toString());
+  }
+
+  @Test
+  public void move_deletes_report_directory() throws Exception {
+    File dir = temp.newFolder();
+    FileUtils.write(new File(dir, "metadata.pb"), "metadata");
+    FileUtils.write(new File(dir, "sub/source-2.txt"), "foo");
+    File archive = temp.newFile();
+
+    ReportArchive.move(dir, archive);
+
+    assertThat(dir).doesNotExist();
+    try (ReportArchiveReader reader = new ReportArchiveReader(archive)) {
+      assertThat(contentOf(reader, "metadata.pb")).isEqualTo("metadata");
+      assertThat(contentOf(reader, "sub/source-2.txt")).isEqualTo("foo");
+    }
+  }
+
+  private static void verifyEntries(ReportArchiveReader reader, String big) throws Exception {
+    try {
+      assertThat(reader.hasEntry("metadata.pb")).isTrue();
+      assertThat(reader.hasEntry("unknown.pb")).isFalse();
+      assertThat(reader.openEntry("unknown.pb")).isNull();
+      assertThat(reader.sizeOf("unknown.pb")).isEqualTo(-1L);
+      assertThat(reader.sizeOf("source-3.txt")).isEqualTo(big.length());
+      assertThat(contentOf(reader, "metadata.pb")).isEqualTo("metadata");
+      assertThat(contentOf(reader, "source-1.txt")).isEmpty();
+      assertThat(contentOf(reader, "sub/source-2.txt")).isEqualTo("metadata\nfoo");
+
+      // entries can be read concurrently
+      try (InputStream first = reader.openEntry("source-3.txt"); InputStream second = reader.openEntry("metadata.pb")) {
+        assertThat(IOUtils.toString(second, "UTF-8")).isEqualTo("metadata");
+        assertThat(IOUtils.toString(first, "UTF-8")).isEqualTo(big);
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void entries_of_components_are_indexed_by_domain_and_ref() throws Exception {
+    File dir = temp.newFolder();
+    ScannerReportWriter writer = new ScannerReportWriter(dir);
+    writer.writeComponent(ScannerReport.Component.newBuilder().setRef(1).build());
+    writer.writeComponent(ScannerReport.Component.newBuilder().setRef(20).build());
+    FileUtils.write(writer.getSourceFile(20), "source");
+    File archive = writer.writeArchive(temp.newFile());
+
+    try (ReportArchiveReader reader = new ReportArchiveReader(archive)) {
+      assertThat(reader.hasEntry(FileStructure.Domain.COMPONENT, 1)).isTrue();
+      assertThat(reader.hasEntry(FileStructure.Domain.COMPONENT, 20)).isTrue();
+      assertThat(reader.hasEntry(FileStructure.Domain.COMPONENT, 2)).isFalse();
+      assertThat(reader.hasEntry(FileStructure.Domain.SOURCE, 1)).isFalse();
+      assertThat(reader.hasEntry("source-20.txt")).isTrue();
+      try (InputStream source = reader.openEntry(FileStructure.Domain.SOURCE, 20)) {
+        assertThat(IOUtils.toString(source, "UTF-8")).isEqualTo("source");
+      }
+      assertThat(reader.openEntry(FileStructure.Domain.ISSUES, 1)).isNull();
+    }
+  }
+
+  @Test
+  public void fail_to_read_archive_of_unsupported_version() throws Exception {
+    File archive = temp.newFile();
+    try (RandomAccessFile file = new RandomAccessFile(archive, "rw")) {
+      file.write(ReportArchive.MAGIC);
+      file.writeInt(ReportArchive.VERSION + 1);
+    }
+
+    expectedException.expect(IllegalStateException.class);
+    expectedException.expectMessage("Fail to read analysis report archive " + archive);
+
+    new ReportArchiveReader(archive);
+  }
+
+  @Test
+  public void zip_and_directory_are_not_archives() throws Exception {
+    File dir = temp.newFolder();
+    File zip = temp.newFile();
+    try (ZipOutputStream output = new ZipOutputStream(new FileOutputStream(zip))) {
+      output.putNextEntry(new ZipEntry("metadata.pb"));
+      output.write(new byte[] {1, 2, 3});
+      output.closeEntry();
+    }
+
+    assertThat(ReportArchive.isArchive(zip)).isFalse();
+    assertThat(ReportArchive.isArchive(dir)).isFalse();
+    assertThat(ReportArchive.isArchive(temp.newFile())).isFalse();
+  }
+
+  @Test
+  public void fail_to_read_truncated_archive() throws Exception {
+    File dir = temp.newFolder();
+    FileUtils.write(new File(dir, "metadata.pb"), "metadata");
+    File archive = temp.newFile();
+    ReportArchive.write(dir, archive);
+    try (RandomAccessFile file = new RandomAccessFile(archive, "rw")) {
+      file.setLength(file.length() - 2);
+    }
+
+    expectedException.expect(IllegalStateException.class);
+    expectedException.expectMessage("Fail to read analysis report archive " + archive);
+
+    new ReportArchiveReader(archive);
+  }
+
+  private static String contentOf(ReportArchiveReader reader, String path) throws Exception {
+    try (InputStream input = reader.openEntry(path)) {
+      return IOUtils.toString(input, "UTF-8");
+    }
+  }
+}
@@ -386,4 +386,51 @@ public class ScannerReportReaderTest {
   public void return_null_when_no_file_source() throws Exception {
     assertThat(underTest.readFileSource(UNKNOWN_COMPONENT_REF)).isNull();
   }
+
+  @Test
+  public void read_report_from_archive() throws Exception {
+    ScannerReportWriter writer = new ScannerReportWriter(dir);
+    writer.writeMetadata(ScannerReport.Metadata.newBuilder().setProjectKey("PROJECT_A").build());
+    writer.writeComponent(ScannerReport.Component.newBuilder().setRef(1).setPath("src/main/java/Foo.java").build());
+    writer.writeComponentIssues(1, asList(ScannerReport.Issue.newBuilder().setMsg("issue").build()));
+    FileUtils.write(writer.getSourceFile(1), "line1\nline2");
+    File archive = temp.newFile();
+    ReportArchive.write(dir, archive);
+
+    try (ScannerReportReader archiveReader = new ScannerReportReader(archive)) {
+      assertThat(archiveReader.readMetadata().getProjectKey()).isEqualTo("PROJECT_A");
+      assertThat(archiveReader.readComponent(1).getPath()).isEqualTo("src/main/java/Foo.java");
+      assertThat(archiveReader.readComponentIssues(1)).hasSize(1);
+      assertThat(archiveReader.readComponentIssues(UNKNOWN_COMPONENT_REF)).isEmpty();
+      assertThat(archiveReader.readChangesets(1)).isNull();
+      try (InputStream source = archiveReader.openFileSource(1)) {
+        assertThat(IOUtils.toString(source, "UTF-8")).isEqualTo("line1\nline2");
+      }
+      assertThat(archiveReader.openFileSource(UNKNOWN_COMPONENT_REF)).isNull();
+      assertThat(archiveReader.openTests(1)).isNull();
+    }
+  }
+
+  @Test
+  public void open_streams_of_report_directory() throws Exception {
+    ScannerReportWriter writer = new ScannerReportWriter(dir);
+    FileUtils.write(writer.getSourceFile(1), "line1\nline2");
+    FileUtils.write(writer.getFileStructure().analysisLog(), "log");
+
+    try (InputStream source = underTest.openFileSource(1)) {
+      assertThat(IOUtils.toString(source, "UTF-8")).isEqualTo("line1\nline2");
+    }
+    try (InputStream log = underTest.openAnalysisLog()) {
+      assertThat(IOUtils.toString(log, "UTF-8")).isEqualTo("log");
+    }
+    assertThat(underTest.openCoverageDetails(1)).isNull();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void fail_to_get_file_structure_of_archive() throws Exception {
+    File archive = temp.newFile();
+    ReportArchive.write(dir, archive);
+
+    new ScannerReportReader(archive).getFileStructure();
+  }
 }
@@ -302,4 +302,20 @@ public class ScannerReportWriterTest {
 
     assertThat(underTest.hasComponentData(FileStructure.Domain.COVERAGE_DETAILS, 1)).isTrue();
   }
+
+  @Test
+  public void write_archive() throws Exception {
+    underTest.writeComponent(ScannerReport.Component.newBuilder().setRef(1).setPath("src/Foo.java").build());
+    underTest.writeComponentIssues(1, asList(ScannerReport.Issue.newBuilder().setMsg("the message").build()));
+
+    File archive = underTest.writeArchive(temp.newFile());
+
+    try (ScannerReportReader reader = new ScannerReportReader(archive)) {
+      assertThat(reader.readComponent(1).getPath()).isEqualTo("src/Foo.java");
+      try (CloseableIterator<ScannerReport.Issue> issues = reader.readComponentIssues(1)) {
+        assertThat(issues.next().getMsg()).isEqualTo("the message");
+        assertThat(issues.hasNext()).isFalse();
+      }
+    }
+  }
 }